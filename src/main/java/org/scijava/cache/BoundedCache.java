@@ -0,0 +1,901 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe cache bounded by its number of entries or by their total
+ * {@link Weigher weight}, with optional expiry.
+ * <p>
+ * Eviction follows the W-TinyLFU policy: new entries enter a small LRU
+ * <em>window</em>; entries leaving the window compete for admission to the
+ * <em>main</em> space with its least recently used entry, and the one which
+ * was accessed less often recently (according to a {@link FrequencySketch}) is
+ * evicted. The main space is a segmented LRU, in which entries accessed again
+ * are <em>protected</em> from eviction until pushed out by other protected
+ * entries. This keeps frequently used entries cached even across scans of
+ * many entries which are used only once.
+ * </p>
+ * <p>
+ * Entries can additionally expire a fixed time after they were written
+ * ({@link #setExpireAfterWrite}) or last accessed
+ * ({@link #setExpireAfterAccess}). Null keys and values are not supported.
+ * </p>
+ * <p>
+ * Values can be loaded on demand, synchronously or asynchronously. Concurrent
+ * loads of the same key are coalesced into a single computation, and entries
+ * can be {@link #setRefreshAfterWrite refreshed} in the background before
+ * they expire.
+ * </p>
+ * <p>
+ * Reads of cached entries take no lock. They are recorded in a bounded buffer,
+ * which is applied to the eviction policy in batches while holding the lock.
+ * When the buffer is full, further reads are not recorded until it is
+ * drained; this affects only which entries are evicted, not the results.
+ * </p>
+ * <p>
+ * The cache records {@link #stats() statistics} of its hits, misses, loads
+ * and evictions.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+public class BoundedCache<K, V> {
+
+	/** Fraction of the maximum weight reserved for the window. */
+	private static final double WINDOW_FRACTION = 0.01;
+
+	/** Fraction of the main space reserved for protected entries. */
+	private static final double PROTECTED_FRACTION = 0.8;
+
+	/** Maximum number of reads recorded until the buffer is drained. */
+	private static final int READ_BUFFER_SIZE = 128;
+
+	/** Number of recorded reads upon which the buffer is drained. */
+	private static final int DRAIN_THRESHOLD = 32;
+
+	private enum Queue {
+		WINDOW, PROBATION, PROTECTED
+	}
+
+	// NB: The map is only modified while holding the lock, but read without.
+	private final Map<K, Node<K, V>> map = new ConcurrentHashMap<>();
+
+	/** Entries read without holding the lock, not yet applied to the policy. */
+	private final ConcurrentLinkedQueue<Node<K, V>> readBuffer =
+		new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger readCount = new AtomicInteger();
+
+	/** Whether a reader is draining the read buffer. */
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	// NB: Linked hash sets are used as deques whose elements can be removed in
+	// constant time; the first element is the least recently used one.
+	private final LinkedHashSet<Node<K, V>> window = new LinkedHashSet<>();
+	private final LinkedHashSet<Node<K, V>> probation = new LinkedHashSet<>();
+	private final LinkedHashSet<Node<K, V>> protect = new LinkedHashSet<>();
+
+	/** All entries in order of their last write, if expiring after write. */
+	private final LinkedHashSet<Node<K, V>> writeOrder = new LinkedHashSet<>();
+
+	/** All entries in order of their last access, if expiring after access. */
+	private final LinkedHashSet<Node<K, V>> accessOrder = new LinkedHashSet<>();
+
+	/** Values currently being loaded or refreshed, by key. */
+	private final Map<K, CompletableFuture<V>> loading = new HashMap<>();
+
+	/** Threads running the loader of each value being loaded. */
+	private final Map<CompletableFuture<V>, Thread> loaders =
+		new IdentityHashMap<>();
+
+	private final FrequencySketch sketch = new FrequencySketch();
+
+	private Weigher<? super K, ? super V> weigher;
+
+	private long maximumWeight;
+	private volatile long expireAfterWrite;
+	private volatile long expireAfterAccess;
+	private volatile long refreshAfterWrite;
+	private Executor executor = ForkJoinPool.commonPool();
+	private RemovalListener<? super K, ? super V> removalListener;
+	private volatile LongSupplier ticker = System::nanoTime;
+
+	private long weight;
+	private long windowWeight;
+	private long protectedWeight;
+
+	private final LongAdder hitCount = new LongAdder();
+	private long missCount;
+	private long loadSuccessCount;
+	private long loadFailureCount;
+	private long totalLoadTime;
+	private long evictionCount;
+	private long evictionWeight;
+
+	/**
+	 * Creates a cache holding at most the given number of entries.
+	 */
+	public BoundedCache(final long maximumSize) {
+		this(maximumSize, null);
+	}
+
+	/**
+	 * Creates a cache whose entries weigh at most the given total weight.
+	 *
+	 * @param maximumWeight the maximum total weight of all entries
+	 * @param weigher the function calculating the weight of each entry, or null
+	 *          to weigh each entry 1
+	 */
+	public BoundedCache(final long maximumWeight,
+		final Weigher<? super K, ? super V> weigher)
+	{
+		setMaximumWeight(maximumWeight, weigher);
+	}
+
+	// -- BoundedCache methods --
+
+	/**
+	 * Gets the value cached for the given key.
+	 *
+	 * @return The cached value, or null if there is none.
+	 */
+	public V get(final K key) {
+		final V value = read(key, false);
+		if (value != null) return value;
+		synchronized (this) {
+			sketch.increment(key);
+			final Node<K, V> node = lookup(key, ticker.getAsLong());
+			record(node);
+			return node == null ? null : node.value;
+		}
+	}
+
+	/**
+	 * Gets the value cached for the given key, computing and caching it via the
+	 * given loader if there is none.
+	 * <p>
+	 * Concurrent calls for the same key share a single computation: the first
+	 * caller runs the loader, and the others wait for its result. If the entry
+	 * is due for {@link #setRefreshAfterWrite refresh}, its current value is
+	 * returned while a new one is loaded in the background. The loader must not
+	 * load the same key from this cache, which would wait for itself forever.
+	 * </p>
+	 *
+	 * @return The cached or loaded value, or null if the loader returned null.
+	 * @throws ExecutionException if the loader threw an exception, or the
+	 *           calling thread was interrupted while waiting for another
+	 *           caller's computation.
+	 * @throws IllegalStateException if called by the loader of the same key.
+	 */
+	public V get(final K key, final Callable<? extends V> loader)
+		throws ExecutionException
+	{
+		final V value = read(key, true);
+		if (value != null) return value;
+		CompletableFuture<V> future;
+		boolean first = false;
+		synchronized (this) {
+			final V cached = getOrRefresh(key, loader);
+			if (cached != null) return cached;
+			future = loading.get(key);
+			checkRecursion(key, future);
+			if (future == null) {
+				future = new CompletableFuture<>();
+				loading.put(key, future);
+				first = true;
+			}
+		}
+		// NB: The first caller loads the value in its own thread.
+		if (first) load(key, loader, future);
+		try {
+			return future.get();
+		}
+		catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(exc);
+		}
+	}
+
+	/**
+	 * Asynchronously gets the value cached for the given key, computing and
+	 * caching it via the given loader on the {@link #setExecutor executor} if
+	 * there is none.
+	 * <p>
+	 * Concurrent calls for the same key share a single computation. If the
+	 * entry is due for {@link #setRefreshAfterWrite refresh}, the returned
+	 * future completes immediately with the current value, while a new one is
+	 * loaded in the background.
+	 * </p>
+	 *
+	 * @return A future completing with the cached or loaded value, or null if
+	 *         the loader returned null; or exceptionally if the loader threw an
+	 *         exception.
+	 * @throws IllegalStateException if called by the loader of the same key.
+	 */
+	public CompletableFuture<V> getAsync(final K key,
+		final Callable<? extends V> loader)
+	{
+		final V value = read(key, true);
+		if (value != null) return CompletableFuture.completedFuture(value);
+		final CompletableFuture<V> future;
+		synchronized (this) {
+			final V cached = getOrRefresh(key, loader);
+			if (cached != null) return CompletableFuture.completedFuture(cached);
+			final CompletableFuture<V> inFlight = loading.get(key);
+			checkRecursion(key, inFlight);
+			if (inFlight != null) return dependent(inFlight);
+			future = new CompletableFuture<>();
+			loading.put(key, future);
+		}
+		submit(key, loader, future);
+		return dependent(future);
+	}
+
+	/**
+	 * Caches the given value for the given key, replacing any previously cached
+	 * value. A null value removes the entry.
+	 */
+	public synchronized void put(final K key, final V value) {
+		if (value == null) {
+			remove(key);
+			return;
+		}
+		sketch.increment(key);
+		// NB: A value being loaded would no longer be current.
+		loading.remove(key);
+		store(key, value);
+	}
+
+	/**
+	 * Removes the entry for the given key.
+	 *
+	 * @return The removed value, or null if there was none.
+	 */
+	public synchronized V remove(final K key) {
+		// NB: A value being loaded would no longer be current.
+		loading.remove(key);
+		final Node<K, V> node = map.get(key);
+		if (node == null) return null;
+		unlink(node, RemovalCause.EXPLICIT);
+		return node.value;
+	}
+
+	/** Removes all entries. */
+	public synchronized void clear() {
+		loading.clear();
+		drainReads();
+		if (removalListener != null) {
+			for (final Node<K, V> node : map.values()) {
+				removalListener.onRemoval(node.key, node.value,
+					RemovalCause.EXPLICIT);
+			}
+		}
+		map.clear();
+		window.clear();
+		probation.clear();
+		protect.clear();
+		writeOrder.clear();
+		accessOrder.clear();
+		weight = windowWeight = protectedWeight = 0;
+	}
+
+	/** Removes all expired entries. */
+	public synchronized void cleanUp() {
+		expire(ticker.getAsLong());
+	}
+
+	/**
+	 * Gets the number of cached entries, including expired ones which were not
+	 * removed yet.
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/** Gets the total weight of the cached entries. */
+	public synchronized long weight() {
+		return weight;
+	}
+
+	/** Gets the statistics recorded since the cache was created. */
+	public synchronized CacheStats stats() {
+		return new CacheStats(hitCount.sum(), missCount, loadSuccessCount,
+			loadFailureCount, totalLoadTime, evictionCount, evictionWeight);
+	}
+
+	/** Gets the maximum total weight of the cached entries. */
+	public synchronized long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	/**
+	 * Sets the maximum total weight of the cached entries, evicting entries if
+	 * they currently exceed it. For caches without a {@link Weigher}, this is
+	 * the maximum number of entries.
+	 */
+	public synchronized void setMaximumWeight(final long maximumWeight) {
+		if (maximumWeight < 0) {
+			throw new IllegalArgumentException("Negative weight: " + maximumWeight);
+		}
+		this.maximumWeight = maximumWeight;
+		// NB: Without a weigher, the number of entries is known in advance.
+		if (weigher == null) sketch.ensureCapacity(maximumWeight);
+		evict();
+	}
+
+	/**
+	 * Sets the maximum total weight of the cached entries, and the function
+	 * calculating the weight of each entry. All current entries are reweighed,
+	 * and evicted if they now exceed the maximum weight.
+	 *
+	 * @param maximumWeight the maximum total weight of all entries
+	 * @param weigher the function calculating the weight of each entry, or null
+	 *          to weigh each entry 1, bounding the cache by its number of
+	 *          entries
+	 */
+	public synchronized void setMaximumWeight(final long maximumWeight,
+		final Weigher<? super K, ? super V> weigher)
+	{
+		if (maximumWeight < 0) {
+			throw new IllegalArgumentException("Negative weight: " + maximumWeight);
+		}
+		this.weigher = weigher;
+		for (final Node<K, V> node : map.values()) {
+			reweigh(node, weigh(node.key, node.value));
+		}
+		setMaximumWeight(maximumWeight);
+	}
+
+	/**
+	 * Sets the time after which entries are reloaded in the background when
+	 * read via a loading method such as {@link #get(Object, Callable)}, while
+	 * their current value is still returned. This should be shorter than the
+	 * {@link #setExpireAfterWrite expiry time}, so that frequently read entries
+	 * are refreshed before they expire. A non-positive duration disables
+	 * refreshing.
+	 */
+	public synchronized void setRefreshAfterWrite(final long duration,
+		final TimeUnit unit)
+	{
+		refreshAfterWrite = Math.max(0, unit.toNanos(duration));
+	}
+
+	/**
+	 * Sets the listener notified of each entry removed from the cache, for
+	 * whatever {@link RemovalCause cause}. The listener is called while holding
+	 * the cache's lock, so it must be fast and must not access the cache.
+	 */
+	public synchronized void setRemovalListener(
+		final RemovalListener<? super K, ? super V> removalListener)
+	{
+		this.removalListener = removalListener;
+	}
+
+	/** Passes each cached entry to the given action, while holding the lock. */
+	public synchronized void forEach(
+		final BiConsumer<? super K, ? super V> action)
+	{
+		for (final Node<K, V> node : map.values()) {
+			action.accept(node.key, node.value);
+		}
+	}
+
+	/**
+	 * Sets the executor running asynchronous loads and background refreshes.
+	 * By default, this is the {@link ForkJoinPool#commonPool() common pool}.
+	 * Loads which the executor rejects fail with its exception.
+	 */
+	public synchronized void setExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Sets the time after which entries expire once written. A non-positive
+	 * duration disables this expiry.
+	 */
+	public synchronized void setExpireAfterWrite(final long duration,
+		final TimeUnit unit)
+	{
+		expireAfterWrite = Math.max(0, unit.toNanos(duration));
+		reorder(writeOrder, expireAfterWrite > 0, node -> node.writeTime);
+		expire(ticker.getAsLong());
+	}
+
+	/**
+	 * Sets the time after which entries expire once last read or written. A
+	 * non-positive duration disables this expiry.
+	 */
+	public synchronized void setExpireAfterAccess(final long duration,
+		final TimeUnit unit)
+	{
+		expireAfterAccess = Math.max(0, unit.toNanos(duration));
+		reorder(accessOrder, expireAfterAccess > 0, node -> node.accessTime);
+		expire(ticker.getAsLong());
+	}
+
+	// -- Internal methods --
+
+	/** Sets the source of the current time in nanoseconds, e.g. for testing. */
+	synchronized void setTicker(final LongSupplier ticker) {
+		this.ticker = ticker;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Gets the value cached for the given key without holding the lock,
+	 * recording the read in the buffer.
+	 *
+	 * @param loading whether the value is read by a loading method, which must
+	 *          take the lock if a refresh is due
+	 * @return The value, or null if there is no live entry, in which case the
+	 *         caller must look the key up while holding the lock.
+	 */
+	private V read(final K key, final boolean loading) {
+		final Node<K, V> node = map.get(key);
+		if (node == null) return null;
+		final long now = ticker.getAsLong();
+		if (isExpired(node, now)) return null;
+		if (loading && refreshAfterWrite > 0 &&
+			now - node.writeTime >= refreshAfterWrite) return null;
+		final V value = node.value;
+		node.accessTime = now;
+		hitCount.increment();
+		// NB: If the buffer is full, the read is not recorded in the policy.
+		if (readCount.get() < READ_BUFFER_SIZE) {
+			readBuffer.add(node);
+			if (readCount.incrementAndGet() >= DRAIN_THRESHOLD &&
+				draining.compareAndSet(false, true))
+			{
+				try {
+					synchronized (this) {
+						drainReads();
+					}
+				}
+				finally {
+					draining.set(false);
+				}
+			}
+		}
+		return value;
+	}
+
+	/** Applies the reads recorded in the buffer to the policy. */
+	private void drainReads() {
+		Node<K, V> node;
+		while ((node = readBuffer.poll()) != null) {
+			readCount.decrementAndGet();
+			// NB: Skip entries which were removed or replaced meanwhile.
+			if (map.get(node.key) != node) continue;
+			sketch.increment(node.key);
+			access(node, node.accessTime);
+		}
+	}
+
+	/**
+	 * Fails fast if the given value being loaded for the given key is loaded by
+	 * the calling thread, which would otherwise wait for itself forever.
+	 */
+	private void checkRecursion(final K key, final CompletableFuture<V> future) {
+		if (future != null && loaders.get(future) == Thread.currentThread()) {
+			throw new IllegalStateException("Recursive load of key: " + key);
+		}
+	}
+
+	/**
+	 * Gets the value cached for the given key, starting a background refresh
+	 * if it is due.
+	 */
+	private V getOrRefresh(final K key, final Callable<? extends V> loader) {
+		sketch.increment(key);
+		final long now = ticker.getAsLong();
+		final Node<K, V> node = lookup(key, now);
+		record(node);
+		if (node == null) return null;
+		if (refreshAfterWrite > 0 && now - node.writeTime >= refreshAfterWrite &&
+			!loading.containsKey(key))
+		{
+			final CompletableFuture<V> future = new CompletableFuture<>();
+			loading.put(key, future);
+			submit(key, loader, future);
+		}
+		return node.value;
+	}
+
+	/**
+	 * Runs the load of the given key on the executor. If the executor rejects
+	 * the load, or it is canceled before it runs, the load is abandoned, so that
+	 * callers waiting for it fail instead of blocking forever.
+	 */
+	private void submit(final K key, final Callable<? extends V> loader,
+		final CompletableFuture<V> future)
+	{
+		try {
+			executor.execute(new LoadTask(key, loader, future));
+		}
+		catch (final RuntimeException exc) {
+			abandon(key, future, exc);
+		}
+	}
+
+	/** Fails the given load of the given key, unless it completed already. */
+	private void abandon(final K key, final CompletableFuture<V> future,
+		final Throwable cause)
+	{
+		synchronized (this) {
+			loading.remove(key, future);
+		}
+		future.completeExceptionally(cause);
+	}
+
+	/**
+	 * Loads the value for the given key, caching it unless the load was
+	 * superseded meanwhile, and completes the given future with it.
+	 */
+	private void load(final K key, final Callable<? extends V> loader,
+		final CompletableFuture<V> future)
+	{
+		synchronized (this) {
+			loaders.put(future, Thread.currentThread());
+		}
+		final long start = ticker.getAsLong();
+		final V value;
+		try {
+			value = loader.call();
+		}
+		catch (final Throwable t) {
+			synchronized (this) {
+				loaders.remove(future);
+				loadFailureCount++;
+				totalLoadTime += ticker.getAsLong() - start;
+				loading.remove(key, future);
+			}
+			future.completeExceptionally(t);
+			return;
+		}
+		synchronized (this) {
+			loaders.remove(future);
+			loadSuccessCount++;
+			totalLoadTime += ticker.getAsLong() - start;
+			if (loading.remove(key, future) && value != null) store(key, value);
+		}
+		future.complete(value);
+	}
+
+	/**
+	 * Gets a future completing along with the given shared one, so that callers
+	 * cannot complete or cancel the shared one.
+	 */
+	private static <T> CompletableFuture<T> dependent(
+		final CompletableFuture<T> future)
+	{
+		return future.thenApply(Function.identity());
+	}
+
+	/** Looks up the live entry for the given key, recording the access. */
+	private Node<K, V> lookup(final K key, final long now) {
+		final Node<K, V> node = map.get(key);
+		if (node == null) return null;
+		if (isExpired(node, now)) {
+			unlink(node, RemovalCause.EXPIRED);
+			return null;
+		}
+		access(node, now);
+		return node;
+	}
+
+	/** Records a lookup of the given entry, or a miss if it is null. */
+	private void record(final Node<K, V> node) {
+		if (node == null) missCount++;
+		else hitCount.increment();
+	}
+
+	/** Records an access of the given entry. */
+	private void access(final Node<K, V> node, final long now) {
+		node.accessTime = now;
+		if (expireAfterAccess > 0) moveToEnd(accessOrder, node);
+		switch (node.queue) {
+			case WINDOW:
+				moveToEnd(window, node);
+				break;
+			case PROBATION:
+				// NB: An entry accessed again while on probation is protected.
+				probation.remove(node);
+				node.queue = Queue.PROTECTED;
+				protect.add(node);
+				protectedWeight += node.weight;
+				demoteProtected();
+				break;
+			case PROTECTED:
+				moveToEnd(protect, node);
+				break;
+		}
+	}
+
+	/** Adds or replaces an entry, then evicts entries as needed. */
+	private void store(final K key, final V value) {
+		final long w = weigh(key, value);
+		final long now = ticker.getAsLong();
+		final Node<K, V> old = map.get(key);
+		if (w > maximumWeight) {
+			// NB: The entry could never fit.
+			if (old != null) unlink(old, RemovalCause.REPLACED);
+			return;
+		}
+		if (old != null) {
+			// NB: A replaced entry keeps its place in the policy.
+			if (removalListener != null) {
+				removalListener.onRemoval(key, old.value, RemovalCause.REPLACED);
+			}
+			old.value = value;
+			reweigh(old, w);
+			old.writeTime = now;
+			if (expireAfterWrite > 0) moveToEnd(writeOrder, old);
+			access(old, now);
+			evict();
+			return;
+		}
+
+		final Node<K, V> node = new Node<>(key, value, w, now);
+		map.put(key, node);
+		window.add(node);
+		windowWeight += w;
+		weight += w;
+		if (expireAfterWrite > 0) writeOrder.add(node);
+		if (expireAfterAccess > 0) accessOrder.add(node);
+		sketch.ensureCapacity(map.size());
+
+		expire(now);
+		evict();
+	}
+
+	/**
+	 * Moves entries exceeding the window to the main space, letting each of
+	 * them compete with the main space's victim while the cache is too heavy.
+	 */
+	private void evict() {
+		drainReads();
+		final long windowMax = Math.max(1, (long) (maximumWeight *
+			WINDOW_FRACTION));
+		while (windowWeight > windowMax && !window.isEmpty()) {
+			final Node<K, V> candidate = first(window);
+			if (weight > maximumWeight) {
+				final Node<K, V> victim = mainVictim();
+				if (victim != null && !admit(candidate, victim)) {
+					unlink(candidate, RemovalCause.SIZE);
+					continue;
+				}
+				if (victim != null) unlink(victim, RemovalCause.SIZE);
+			}
+			window.remove(candidate);
+			windowWeight -= candidate.weight;
+			candidate.queue = Queue.PROBATION;
+			probation.add(candidate);
+		}
+		// NB: Large entries may require evicting more than one victim.
+		while (weight > maximumWeight) {
+			Node<K, V> victim = mainVictim();
+			if (victim == null) victim = first(window);
+			unlink(victim, RemovalCause.SIZE);
+		}
+	}
+
+	/** Gets whether the candidate should replace the victim in the cache. */
+	private boolean admit(final Node<K, V> candidate, final Node<K, V> victim) {
+		return sketch.frequency(candidate.key) > sketch.frequency(victim.key);
+	}
+
+	/** Gets the least recently used entry of the main space, if any. */
+	private Node<K, V> mainVictim() {
+		if (!probation.isEmpty()) return first(probation);
+		if (!protect.isEmpty()) return first(protect);
+		return null;
+	}
+
+	/** Demotes protected entries to probation while there are too many. */
+	private void demoteProtected() {
+		final long mainMax = maximumWeight - Math.max(1, (long) (maximumWeight *
+			WINDOW_FRACTION));
+		final long protectedMax = (long) (mainMax * PROTECTED_FRACTION);
+		while (protectedWeight > protectedMax && !protect.isEmpty()) {
+			final Node<K, V> node = first(protect);
+			protect.remove(node);
+			protectedWeight -= node.weight;
+			node.queue = Queue.PROBATION;
+			probation.add(node);
+		}
+	}
+
+	/** Rebuilds the given expiry order of all entries, if enabled. */
+	private void reorder(final LinkedHashSet<Node<K, V>> order,
+		final boolean enabled, final ToLongFunction<Node<K, V>> time)
+	{
+		order.clear();
+		if (!enabled) return;
+		final List<Node<K, V>> nodes = new ArrayList<>(map.values());
+		nodes.sort(Comparator.comparingLong(time));
+		order.addAll(nodes);
+	}
+
+	/** Removes the entries which have expired as of the given time. */
+	private void expire(final long now) {
+		drainReads();
+		expireFrom(writeOrder, now);
+		expireFrom(accessOrder, now);
+	}
+
+	private void expireFrom(final LinkedHashSet<Node<K, V>> order,
+		final long now)
+	{
+		while (!order.isEmpty()) {
+			final Node<K, V> node = first(order);
+			if (!isExpired(node, now)) break;
+			unlink(node, RemovalCause.EXPIRED);
+		}
+	}
+
+	private boolean isExpired(final Node<K, V> node, final long now) {
+		return expireAfterWrite > 0 && now - node.writeTime >= expireAfterWrite ||
+			expireAfterAccess > 0 && now - node.accessTime >= expireAfterAccess;
+	}
+
+	private long weigh(final K key, final V value) {
+		if (weigher == null) return 1;
+		final long w = weigher.weigh(key, value);
+		if (w < 0) throw new IllegalArgumentException("Negative weight: " + w);
+		return w;
+	}
+
+	/** Updates the weight of the given entry. */
+	private void reweigh(final Node<K, V> node, final long w) {
+		final long delta = w - node.weight;
+		node.weight = w;
+		weight += delta;
+		if (node.queue == Queue.WINDOW) windowWeight += delta;
+		if (node.queue == Queue.PROTECTED) protectedWeight += delta;
+	}
+
+	/** Removes the given entry from all data structures. */
+	private void unlink(final Node<K, V> node, final RemovalCause cause) {
+		map.remove(node.key);
+		switch (node.queue) {
+			case WINDOW:
+				window.remove(node);
+				windowWeight -= node.weight;
+				break;
+			case PROBATION:
+				probation.remove(node);
+				break;
+			case PROTECTED:
+				protect.remove(node);
+				protectedWeight -= node.weight;
+				break;
+		}
+		writeOrder.remove(node);
+		accessOrder.remove(node);
+		weight -= node.weight;
+		if (cause.wasEvicted()) {
+			evictionCount++;
+			evictionWeight += node.weight;
+		}
+		if (removalListener != null) {
+			removalListener.onRemoval(node.key, node.value, cause);
+		}
+	}
+
+	private static <T> T first(final LinkedHashSet<T> set) {
+		final Iterator<T> iter = set.iterator();
+		return iter.hasNext() ? iter.next() : null;
+	}
+
+	private static <T> void moveToEnd(final LinkedHashSet<T> set, final T item) {
+		set.remove(item);
+		set.add(item);
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * A load submitted to the executor, which is abandoned if it is canceled
+	 * before it runs, e.g. when the executor is shut down.
+	 */
+	private class LoadTask extends FutureTask<Void> {
+
+		private final K key;
+		private final CompletableFuture<V> future;
+
+		private LoadTask(final K key, final Callable<? extends V> loader,
+			final CompletableFuture<V> future)
+		{
+			super(() -> load(key, loader, future), null);
+			this.key = key;
+			this.future = future;
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) {
+				abandon(key, future, new CancellationException("Load canceled"));
+			}
+		}
+	}
+
+	/**
+	 * A cache entry. Compared by identity. Its value and times are also read
+	 * without holding the lock.
+	 */
+	private static class Node<K, V> {
+
+		private final K key;
+		private volatile V value;
+		private long weight;
+		private volatile long writeTime;
+		private volatile long accessTime;
+		private Queue queue = Queue.WINDOW;
+
+		private Node(final K key, final V value, final long weight,
+			final long now)
+		{
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+			writeTime = accessTime = now;
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A named cache obtained from a {@link CacheService}, with its own capacity,
+ * expiry and {@link Weigher}, and its own {@link #stats() statistics}.
+ * <p>
+ * Regions are backed by a {@link BoundedCache}. Under memory pressure, as
+ * reported by the {@link MemoryGovernor}, each region shrinks to a fraction of
+ * its configured maximum.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ * @see CacheService#region(String)
+ */
+public class CacheRegion implements MemorySensitive {
+
+	/** Name of the region used by the {@link CacheService} methods. */
+	public static final String DEFAULT_NAME = "default";
+
+	/** Default maximum number of entries of a region. */
+	public static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+
+	private final String name;
+
+	private final BoundedCache<Object, Object> cache = new BoundedCache<>(
+		DEFAULT_MAXIMUM_SIZE);
+
+	/** The configured maximum, before applying the memory budget. */
+	private long maximumWeight = DEFAULT_MAXIMUM_SIZE;
+
+	private Weigher<Object, Object> weigher;
+
+	private double budgetFraction = 1;
+
+	CacheRegion(final String name) {
+		this.name = name;
+	}
+
+	// -- CacheRegion methods --
+
+	/** Gets the name of this region. */
+	public String getName() {
+		return name;
+	}
+
+	/** Caches the given value for the given key. A null value removes it. */
+	public void put(final Object key, final Object value) {
+		cache.put(key, value);
+	}
+
+	/** Gets the cached value for the given key, or null if there is none. */
+	public Object get(final Object key) {
+		return cache.get(key);
+	}
+
+	/** @see BoundedCache#get(Object, Callable) */
+	@SuppressWarnings("unchecked")
+	public <V> V get(final Object key, final Callable<V> valueLoader)
+		throws ExecutionException
+	{
+		return (V) cache.get(key, valueLoader);
+	}
+
+	/** @see BoundedCache#getAsync(Object, Callable) */
+	@SuppressWarnings("unchecked")
+	public <V> CompletableFuture<V> getAsync(final Object key,
+		final Callable<V> valueLoader)
+	{
+		return (CompletableFuture<V>) cache.getAsync(key, valueLoader);
+	}
+
+	/** Removes the cached value for the given key, if any. */
+	public void remove(final Object key) {
+		cache.remove(key);
+	}
+
+	/** Removes all cached values. */
+	public void clear() {
+		cache.clear();
+	}
+
+	/** Gets the number of cached values. */
+	public int size() {
+		return cache.size();
+	}
+
+	/** Gets the statistics of this region. */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	/** Gets the maximum number of cached entries, or their maximum weight. */
+	public synchronized long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	/** Bounds the region by its number of entries. */
+	public void setMaximumSize(final long maximumSize) {
+		setMaximumWeight(maximumSize, null);
+	}
+
+	/**
+	 * Bounds the region by the total weight of its entries, as calculated by the
+	 * given weigher.
+	 */
+	public synchronized void setMaximumWeight(final long maximumWeight,
+		final Weigher<Object, Object> weigher)
+	{
+		cache.setMaximumWeight(budget(maximumWeight), weigher);
+		this.maximumWeight = maximumWeight;
+		this.weigher = weigher;
+	}
+
+	/** @see BoundedCache#setExpireAfterWrite */
+	public void setExpireAfterWrite(final long duration, final TimeUnit unit) {
+		cache.setExpireAfterWrite(duration, unit);
+	}
+
+	/** @see BoundedCache#setRefreshAfterWrite */
+	public void setRefreshAfterWrite(final long duration, final TimeUnit unit) {
+		cache.setRefreshAfterWrite(duration, unit);
+	}
+
+	/** @see BoundedCache#setExpireAfterAccess */
+	public void setExpireAfterAccess(final long duration, final TimeUnit unit) {
+		cache.setExpireAfterAccess(duration, unit);
+	}
+
+	// -- MemorySensitive methods --
+
+	@Override
+	public synchronized void memoryBudgetChanged(final double fraction) {
+		budgetFraction = fraction;
+		cache.setMaximumWeight(budget(maximumWeight), weigher);
+	}
+
+	// -- Internal methods --
+
+	/** Gets the cache backing this region. */
+	BoundedCache<Object, Object> cache() {
+		return cache;
+	}
+
+	/** Sets the executor running asynchronous loads and refreshes. */
+	void setExecutor(final Executor executor) {
+		cache.setExecutor(executor);
+	}
+
+	// -- Helper methods --
+
+	/** Applies the current memory budget to the given maximum. */
+	private long budget(final long maximum) {
+		return Math.max(1, (long) (maximum * budgetFraction));
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
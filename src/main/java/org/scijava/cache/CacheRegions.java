@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.scijava.cache.event.CacheStatsEvent;
+import org.scijava.thread.ThreadService;
+
+/**
+ * The {@link CacheRegion}s of a {@link CacheService}, sharing its
+ * {@link ThreadService} and memory budget, and periodically publishing their
+ * statistics.
+ *
+ * @author Gabriel Einsdorf
+ */
+final class CacheRegions implements MemorySensitive {
+
+	private final Map<String, CacheRegion> regions = new LinkedHashMap<>();
+
+	/** The statistics last published, by region name. */
+	private final Map<String, CacheStats> published = new HashMap<>();
+
+	private ThreadService threadService;
+	private Executor executor;
+	private double budgetFraction = 1;
+
+	private long statsInterval;
+	private Consumer<CacheStatsEvent> publisher;
+	private ScheduledFuture<?> publishing;
+
+	CacheRegions() {
+		regions.put(CacheRegion.DEFAULT_NAME, new CacheRegion(
+			CacheRegion.DEFAULT_NAME));
+	}
+
+	/** Gets the region used by the {@link CacheService} methods. */
+	synchronized CacheRegion getDefault() {
+		return regions.get(CacheRegion.DEFAULT_NAME);
+	}
+
+	/**
+	 * Gets the region of the given name, creating it if needed, in which case
+	 * it is passed to the given initializer, if any. Once a named region exists,
+	 * statistics are published periodically.
+	 */
+	synchronized CacheRegion get(final String name,
+		final Consumer<CacheRegion> initializer)
+	{
+		if (name == null) throw new NullPointerException("Null region name");
+		CacheRegion region = regions.get(name);
+		if (region == null) {
+			region = new CacheRegion(name);
+			if (initializer != null) initializer.accept(region);
+			if (executor != null) region.setExecutor(executor);
+			if (budgetFraction < 1) region.memoryBudgetChanged(budgetFraction);
+			regions.put(name, region);
+			schedule();
+		}
+		return region;
+	}
+
+	/** Gets all regions. */
+	synchronized List<CacheRegion> all() {
+		return new ArrayList<>(regions.values());
+	}
+
+	/** Gets the statistics of all regions, by name. */
+	synchronized Map<String, CacheStats> stats() {
+		final Map<String, CacheStats> stats = new LinkedHashMap<>();
+		for (final CacheRegion region : regions.values()) {
+			stats.put(region.getName(), region.stats());
+		}
+		return Collections.unmodifiableMap(stats);
+	}
+
+	/**
+	 * Sets the {@link ThreadService} running the regions' asynchronous loads
+	 * and the publishing of their statistics.
+	 */
+	synchronized void setThreadService(final ThreadService threadService) {
+		this.threadService = threadService;
+		executor = r -> {
+			// NB: A disposed thread service drops the task instead of rejecting it.
+			if (threadService.run(r) == null) {
+				throw new RejectedExecutionException("Thread service disposed");
+			}
+		};
+		for (final CacheRegion region : regions.values()) {
+			region.setExecutor(executor);
+		}
+	}
+
+	/**
+	 * Sets how often the statistics of each region which changed are passed to
+	 * the given publisher. A non-positive interval disables publishing.
+	 */
+	synchronized void setStatsInterval(final long interval, final TimeUnit unit,
+		final Consumer<CacheStatsEvent> publisher)
+	{
+		statsInterval = Math.max(0, unit.toMillis(interval));
+		this.publisher = publisher;
+		stopPublishing();
+		if (regions.size() > 1) schedule();
+	}
+
+	/** Publishes the statistics of each region changed since last time. */
+	void publish() {
+		final List<CacheStatsEvent> events = new ArrayList<>();
+		final Consumer<CacheStatsEvent> target;
+		synchronized (this) {
+			target = publisher;
+			if (target == null) return;
+			for (final CacheRegion region : regions.values()) {
+				final CacheStats stats = region.stats();
+				final CacheStats last = published.put(region.getName(), stats);
+				if (stats.equals(last)) continue;
+				final CacheStats recent = last == null ? stats : stats.minus(last);
+				events.add(new CacheStatsEvent(region.getName(), stats, recent));
+			}
+		}
+		events.forEach(target);
+	}
+
+	/** Stops publishing statistics. */
+	synchronized void close() {
+		stopPublishing();
+	}
+
+	// -- MemorySensitive methods --
+
+	@Override
+	public synchronized void memoryBudgetChanged(final double fraction) {
+		budgetFraction = fraction;
+		for (final CacheRegion region : regions.values()) {
+			region.memoryBudgetChanged(fraction);
+		}
+	}
+
+	// -- Helper methods --
+
+	private void schedule() {
+		if (publishing != null || statsInterval <= 0 || publisher == null ||
+			threadService == null) return;
+		publishing = threadService.scheduleWithFixedDelay(this::publish,
+			statsInterval, statsInterval, TimeUnit.MILLISECONDS);
+	}
+
+	private void stopPublishing() {
+		if (publishing == null) return;
+		publishing.cancel(false);
+		publishing = null;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.scijava.plugin.HandlerPlugin;
+import org.scijava.plugin.Plugin;
+
+/**
+ * {@code CacheSerializer} is a plugin that writes cached objects (keys as well
+ * as values) to bytes and reads them back, so that a {@link CacheService} can
+ * keep them on disk.
+ * <p>
+ * Cache serializers discoverable at runtime must implement this interface and
+ * be annotated with @{@link Plugin} with attribute {@link Plugin#type()} =
+ * {@link CacheSerializer}.class. The serializer with the highest priority
+ * which {@link #supports} an object is used to write it; the same serializer
+ * (identified by its class name) is used to read it back. While it possible to
+ * create a cache serializer merely by implementing this interface, it is
+ * encouraged to instead extend {@link AbstractCacheSerializer}, for
+ * convenience.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ * @see Plugin
+ * @see TieredCacheService
+ */
+public interface CacheSerializer extends HandlerPlugin<Object> {
+
+	/** Writes the given object to the given stream. */
+	void write(Object object, OutputStream out) throws IOException;
+
+	/** Reads an object written by {@link #write} from the given stream. */
+	Object read(InputStream in) throws IOException;
+
+	// -- Typed methods --
+
+	@Override
+	default Class<Object> getType() {
+		return Object.class;
+	}
+
+}
@@ -32,8 +32,13 @@
 
 package org.scijava.cache;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 import org.scijava.service.SciJavaService;
 
@@ -61,14 +66,94 @@ public interface CacheService extends SciJavaService {
 	 * @param valueLoader A value loader which will be used if null is returned
 	 *          for the given key.
 	 * @return The cached object, or if the object is not in the cache the result
-	 *         of the value loader.
-	 * @throws ExecutionException
+	 *         of the value loader, which is then cached.
+	 * @throws ExecutionException if the value loader threw an exception.
 	 */
 	@SuppressWarnings("unchecked")
 	default <V> V get(final Object key, final Callable<V> valueLoader)
 		throws ExecutionException
 	{
-		return (V)get(key);
+		final V cached = (V) get(key);
+		if (cached != null) return cached;
+		final V loaded;
+		try {
+			loaded = valueLoader.call();
+		}
+		catch (final Exception exc) {
+			throw new ExecutionException(exc);
+		}
+		if (loaded != null) put(key, loaded);
+		return loaded;
+	}
+
+	/**
+	 * Asynchronously gets the cached object for the given key, computing it via
+	 * the given value loader if it is not in the cache. Concurrent requests for
+	 * the same key should share a single computation.
+	 *
+	 * @param key A key
+	 * @param valueLoader A value loader which will be used if the object is not
+	 *          in the cache.
+	 * @return A future completing with the cached object, or with the result of
+	 *         the value loader, which is then cached; or exceptionally if the
+	 *         value loader threw an exception.
+	 */
+	default <V> CompletableFuture<V> getAsync(final Object key,
+		final Callable<V> valueLoader)
+	{
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return get(key, valueLoader);
+			}
+			catch (final ExecutionException exc) {
+				throw new CompletionException(exc.getCause());
+			}
+		});
+	}
+
+	/**
+	 * Gets the named cache region of the given name, creating it if needed.
+	 * Regions are independent of each other and of the objects cached via this
+	 * service's other methods, and can each be configured with their own
+	 * capacity, expiry and weigher.
+	 *
+	 * @param name The name of the region, e.g. {@code "thumbnails"}.
+	 * @return The region of the given name.
+	 * @throws UnsupportedOperationException if this service has no regions.
+	 */
+	default CacheRegion region(final String name) {
+		throw new UnsupportedOperationException(getClass().getName() +
+			" does not support cache regions");
+	}
+
+	/**
+	 * Gets the named cache region of the given name, creating it if needed. A
+	 * newly created region is passed to the given initializer before it is
+	 * available to anyone else, so that it can be configured exactly once.
+	 *
+	 * @param name The name of the region, e.g. {@code "thumbnails"}.
+	 * @param initializer Configures the region upon its creation.
+	 * @return The region of the given name.
+	 * @throws UnsupportedOperationException if this service has no regions.
+	 * @see #region(String)
+	 */
+	default CacheRegion region(final String name,
+		final Consumer<CacheRegion> initializer)
+	{
+		throw new UnsupportedOperationException(getClass().getName() +
+			" does not support cache regions");
+	}
+
+	/**
+	 * Gets the statistics of each cache region, by name, including those of the
+	 * objects cached via this service's other methods as
+	 * {@link CacheRegion#DEFAULT_NAME}.
+	 *
+	 * @return The statistics of all regions, or an empty map if this service
+	 *         records none.
+	 */
+	default Map<String, CacheStats> stats() {
+		return Collections.emptyMap();
 	}
 
 }
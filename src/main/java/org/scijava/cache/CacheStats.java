@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+/**
+ * Immutable snapshot of the statistics of a cache, such as a
+ * {@link CacheRegion}.
+ * <p>
+ * Lookups which find a value are hits, all others are misses, even if another
+ * caller is already loading the value. Load times are measured in
+ * nanoseconds, and include failed loads.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+public final class CacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long loadSuccessCount;
+	private final long loadFailureCount;
+	private final long totalLoadTime;
+	private final long evictionCount;
+	private final long evictionWeight;
+
+	public CacheStats(final long hitCount, final long missCount,
+		final long loadSuccessCount, final long loadFailureCount,
+		final long totalLoadTime, final long evictionCount,
+		final long evictionWeight)
+	{
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.totalLoadTime = totalLoadTime;
+		this.evictionCount = evictionCount;
+		this.evictionWeight = evictionWeight;
+	}
+
+	// -- CacheStats methods --
+
+	/** Gets the number of lookups which found a cached value. */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/** Gets the number of lookups which did not find a cached value. */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/** Gets the number of lookups. */
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/** Gets the fraction of lookups which were hits, or 1 if there were none. */
+	public double getHitRate() {
+		final long requests = getRequestCount();
+		return requests == 0 ? 1 : (double) hitCount / requests;
+	}
+
+	/** Gets the number of values loaded successfully. */
+	public long getLoadSuccessCount() {
+		return loadSuccessCount;
+	}
+
+	/** Gets the number of loads which threw an exception. */
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	/** Gets the total time spent loading values, in nanoseconds. */
+	public long getTotalLoadTime() {
+		return totalLoadTime;
+	}
+
+	/** Gets the average time spent per load, in nanoseconds. */
+	public double getAverageLoadPenalty() {
+		final long loads = loadSuccessCount + loadFailureCount;
+		return loads == 0 ? 0 : (double) totalLoadTime / loads;
+	}
+
+	/**
+	 * Gets the number of entries evicted, due to the size bound or expiry.
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/** Gets the total weight of the evicted entries. */
+	public long getEvictionWeight() {
+		return evictionWeight;
+	}
+
+	/**
+	 * Gets the difference between these statistics and the given earlier ones,
+	 * i.e. the statistics of the time in between.
+	 */
+	public CacheStats minus(final CacheStats other) {
+		return new CacheStats(hitCount - other.hitCount,
+			missCount - other.missCount, loadSuccessCount - other.loadSuccessCount,
+			loadFailureCount - other.loadFailureCount,
+			totalLoadTime - other.totalLoadTime, evictionCount - other.evictionCount,
+			evictionWeight - other.evictionWeight);
+	}
+
+	// -- Object methods --
+
+	@Override
+	public boolean equals(final Object o) {
+		if (!(o instanceof CacheStats)) return false;
+		final CacheStats other = (CacheStats) o;
+		return hitCount == other.hitCount && missCount == other.missCount &&
+			loadSuccessCount == other.loadSuccessCount &&
+			loadFailureCount == other.loadFailureCount &&
+			totalLoadTime == other.totalLoadTime &&
+			evictionCount == other.evictionCount &&
+			evictionWeight == other.evictionWeight;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(hitCount) * 31 + Long.hashCode(missCount);
+	}
+
+	@Override
+	public String toString() {
+		return "hits = " + hitCount + ", misses = " + missCount +
+			", loadSuccesses = " + loadSuccessCount + ", loadFailures = " +
+			loadFailureCount + ", totalLoadTime = " + totalLoadTime +
+			", evictions = " + evictionCount + ", evictionWeight = " +
+			evictionWeight;
+	}
+}
@@ -33,37 +33,195 @@
 package org.scijava.cache;
 
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import org.scijava.Priority;
+import org.scijava.cache.event.CacheStatsEvent;
+import org.scijava.event.EventService;
+import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.AbstractService;
 import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
 
 /**
- * Trivial {@link CacheService} implementation. Wraps a {@link WeakHashMap}
+ * Default {@link CacheService} implementation, backed by a
+ * {@link BoundedCache}.
+ * <p>
+ * By default, the cache holds at most {@link #DEFAULT_MAXIMUM_SIZE} entries,
+ * which do not expire. Both can be configured, as can a {@link Weigher} to
+ * bound the cache by the total weight (e.g. estimated memory size) of its
+ * entries instead.
+ * </p>
+ * <p>
+ * Values are loaded at most once at a time per key, and asynchronous loads
+ * and background refreshes run via the {@link ThreadService}.
+ * </p>
+ * <p>
+ * Under memory pressure, the cache is shrunk to a fraction of its configured
+ * maximum, as directed by the {@link MemoryGovernor}.
+ * </p>
+ * <p>
+ * Named {@link CacheRegion}s can be obtained via {@link #region(String)}. Once
+ * one exists, a {@link CacheStatsEvent} is published for each region whose
+ * statistics changed every {@link #DEFAULT_STATS_INTERVAL} seconds, unless
+ * {@link #setStatsInterval configured} otherwise.
+ * </p>
  */
 @Plugin(type = Service.class, priority = Priority.VERY_LOW)
 public class DefaultCacheService extends AbstractService implements
-	CacheService
+	CacheService, MemorySensitive
 {
 
-	private Map<Object, Object> map;
+	/** Default maximum number of cached entries. */
+	public static final long DEFAULT_MAXIMUM_SIZE =
+		CacheRegion.DEFAULT_MAXIMUM_SIZE;
+
+	/** Default number of seconds between statistics events. */
+	public static final long DEFAULT_STATS_INTERVAL = 60;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter(required = false)
+	private EventService eventService;
+
+	private final CacheRegions regions = new CacheRegions();
+
+	private final CacheRegion cache = regions.getDefault();
+
+	// -- DefaultCacheService methods --
+
+	/** Gets the maximum number of cached entries, or their maximum weight. */
+	public long getMaximumWeight() {
+		return cache.getMaximumWeight();
+	}
+
+	/** Bounds the cache by its number of entries. */
+	public void setMaximumSize(final long maximumSize) {
+		cache.setMaximumSize(maximumSize);
+	}
+
+	/**
+	 * Bounds the cache by the total weight of its entries, as calculated by the
+	 * given weigher.
+	 */
+	public void setMaximumWeight(final long maximumWeight,
+		final Weigher<Object, Object> weigher)
+	{
+		cache.setMaximumWeight(maximumWeight, weigher);
+	}
+
+	/** @see BoundedCache#setExpireAfterWrite */
+	public void setExpireAfterWrite(final long duration, final TimeUnit unit) {
+		cache.setExpireAfterWrite(duration, unit);
+	}
+
+	/** @see BoundedCache#setRefreshAfterWrite */
+	public void setRefreshAfterWrite(final long duration, final TimeUnit unit) {
+		cache.setRefreshAfterWrite(duration, unit);
+	}
+
+	/** @see BoundedCache#setExpireAfterAccess */
+	public void setExpireAfterAccess(final long duration, final TimeUnit unit) {
+		cache.setExpireAfterAccess(duration, unit);
+	}
+
+	/**
+	 * Sets how often statistics events are published. A non-positive interval
+	 * disables them.
+	 */
+	public void setStatsInterval(final long interval, final TimeUnit unit) {
+		regions.setStatsInterval(interval, unit, eventService == null ? null
+			: eventService::publish);
+	}
+
+	/** Removes the cached object for the given key, if any. */
+	public void remove(final Object key) {
+		cache.remove(key);
+	}
+
+	/** Removes all cached objects. */
+	public void clear() {
+		cache.clear();
+	}
+
+	/** Gets the number of cached objects. */
+	public int size() {
+		return cache.size();
+	}
+
+	// -- CacheService methods --
 
 	@Override
 	public void put(final Object key, final Object value) {
-		map.put(key, value);
+		cache.put(key, value);
 	}
 
 	@Override
 	public Object get(final Object key) {
-		return map.get(key);
+		return cache.get(key);
 	}
 
-	// -- Service Methods --
+	@Override
+	public <V> V get(final Object key, final Callable<V> valueLoader)
+		throws ExecutionException
+	{
+		return cache.get(key, valueLoader);
+	}
+
+	@Override
+	public <V> CompletableFuture<V> getAsync(final Object key,
+		final Callable<V> valueLoader)
+	{
+		return cache.getAsync(key, valueLoader);
+	}
+
+	@Override
+	public CacheRegion region(final String name) {
+		return regions.get(name, null);
+	}
+
+	@Override
+	public CacheRegion region(final String name,
+		final Consumer<CacheRegion> initializer)
+	{
+		return regions.get(name, initializer);
+	}
+
+	@Override
+	public Map<String, CacheStats> stats() {
+		return regions.stats();
+	}
+
+	// -- MemorySensitive methods --
+
+	@Override
+	public void memoryBudgetChanged(final double fraction) {
+		regions.memoryBudgetChanged(fraction);
+	}
+
+	// -- Service methods --
 
 	@Override
 	public void initialize() {
-		map = new WeakHashMap<>();
+		regions.setThreadService(threadService);
+		setStatsInterval(DEFAULT_STATS_INTERVAL, TimeUnit.SECONDS);
+		MemoryGovernor.getInstance().register(this);
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		MemoryGovernor.getInstance().unregister(this);
+		regions.close();
+		for (final CacheRegion region : regions.all()) {
+			region.clear();
+		}
 	}
 }
@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+/**
+ * Probabilistic estimate of how often keys were accessed recently, as used by
+ * the TinyLFU admission policy of {@link BoundedCache}.
+ * <p>
+ * This is a count-min sketch with four 4-bit counters per key, packed sixteen
+ * to a {@code long}. To keep the estimate recent, all counters are halved once
+ * the number of increments reaches ten times the table size.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+		0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	/** Upper bound of the table length. */
+	private static final int MAXIMUM_LENGTH = 1 << 24;
+
+	private long[] table = new long[0];
+	private int tableMask;
+	private int sampleSize;
+	private int size;
+
+	/**
+	 * Grows the table to suit the given number of keys, if it is currently
+	 * smaller. Growing the table forgets all counts.
+	 */
+	void ensureCapacity(final long keys) {
+		final int length = (int) Math.min(MAXIMUM_LENGTH, Math.max(16, keys));
+		if (table.length >= length) return;
+		final int n = Integer.highestOneBit(length - 1) << 1;
+		table = new long[n];
+		tableMask = n - 1;
+		sampleSize = 10 * n;
+		size = 0;
+	}
+
+	/** Gets the estimated number of recent accesses of the given key, 0-15. */
+	int frequency(final Object key) {
+		if (table.length == 0) return 0;
+		final int hash = spread(key.hashCode());
+		final int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			final int index = indexOf(hash, i);
+			final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/** Records an access of the given key. */
+	void increment(final Object key) {
+		if (table.length == 0) return;
+		final int hash = spread(key.hashCode());
+		final int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size >= sampleSize) reset();
+	}
+
+	// -- Helper methods --
+
+	/** Increments the given counter of the given table entry, unless full. */
+	private boolean incrementAt(final int index, final int counter) {
+		final int offset = counter << 2;
+		final long mask = 0xfL << offset;
+		if ((table[index] & mask) == mask) return false;
+		table[index] += 1L << offset;
+		return true;
+	}
+
+	/** Halves all counters. */
+	private void reset() {
+		int odd = 0;
+		for (int i = 0; i < table.length; i++) {
+			odd += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (odd >>> 2);
+	}
+
+	private int indexOf(final int hash, final int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return (int) h & tableMask;
+	}
+
+	/** Improves the distribution of a possibly poor hash code. */
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+import org.scijava.Priority;
+import org.scijava.plugin.Plugin;
+
+/**
+ * {@link CacheSerializer} for {@link Serializable} objects, using Java
+ * serialization. As this is comparatively slow and verbose, it has a low
+ * priority, so that more specific serializers take precedence.
+ *
+ * @author Gabriel Einsdorf
+ */
+@Plugin(type = CacheSerializer.class, priority = Priority.LOW)
+public class JavaCacheSerializer extends AbstractCacheSerializer {
+
+	// -- CacheSerializer methods --
+
+	@Override
+	public void write(final Object object, final OutputStream out)
+		throws IOException
+	{
+		final ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(object);
+		oos.flush();
+	}
+
+	@Override
+	public Object read(final InputStream in) throws IOException {
+		try {
+			return new ClassLoaderObjectInputStream(in).readObject();
+		}
+		catch (final ClassNotFoundException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	// -- Typed methods --
+
+	@Override
+	public boolean supports(final Object object) {
+		return object instanceof Serializable;
+	}
+
+	// -- Helper classes --
+
+	/**
+	 * Resolves classes via the thread context class loader, which sees plugin
+	 * classes unknown to the class loader of this class.
+	 */
+	private static class ClassLoaderObjectInputStream extends
+		ObjectInputStream
+	{
+
+		private ClassLoaderObjectInputStream(final InputStream in)
+			throws IOException
+		{
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(final ObjectStreamClass desc)
+			throws IOException, ClassNotFoundException
+		{
+			final ClassLoader loader = Thread.currentThread()
+				.getContextClassLoader();
+			if (loader == null) return super.resolveClass(desc);
+			try {
+				return Class.forName(desc.getName(), false, loader);
+			}
+			catch (final ClassNotFoundException exc) {
+				return super.resolveClass(desc);
+			}
+		}
+	}
+}
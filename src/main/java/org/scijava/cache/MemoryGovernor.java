@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Shares the heap among the {@link MemorySensitive} caches of the JVM.
+ * <p>
+ * The governor listens to the collection usage threshold notifications of the
+ * heap memory pools which support them, typically the old generation.
+ * Whenever a pool is still filled beyond {@link #COLLECTION_USAGE_THRESHOLD}
+ * after a garbage collection, the budget fraction of all registered objects is
+ * halved, down to {@link #MINIMUM_FRACTION}. The usage before a collection is
+ * not considered, as the old generation routinely fills up with garbage. As
+ * there is no notification for usage dropping again, the pools are checked
+ * periodically while the budget is reduced, and the fraction is doubled each
+ * time no pool is beyond {@link #RELIEF_THRESHOLD} after the last garbage
+ * collection.
+ * </p>
+ * <p>
+ * Registered objects are only weakly referenced by the governor.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+public final class MemoryGovernor {
+
+	/**
+	 * Fraction of a pool's maximum which triggers a reduction when still used
+	 * after a garbage collection.
+	 */
+	public static final double COLLECTION_USAGE_THRESHOLD = 0.75;
+
+	/**
+	 * Fraction of a pool's maximum below which the usage after a garbage
+	 * collection must drop before budgets grow again.
+	 */
+	public static final double RELIEF_THRESHOLD = 0.5;
+
+	/** Smallest budget fraction the governor reduces to. */
+	public static final double MINIMUM_FRACTION = 0.1;
+
+	/** Milliseconds between checks whether a reduced budget can grow again. */
+	private static final long CHECK_INTERVAL = 2000;
+
+	private static MemoryGovernor instance;
+
+	private final Map<MemorySensitive, Boolean> consumers = new WeakHashMap<>();
+
+	private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+
+	private double fraction = 1;
+
+	/** Creates a governor which is not connected to the JVM's memory pools. */
+	MemoryGovernor() {}
+
+	/** Gets the governor of this JVM, monitoring its heap memory pools. */
+	public static synchronized MemoryGovernor getInstance() {
+		if (instance == null) {
+			instance = new MemoryGovernor();
+			instance.monitor();
+		}
+		return instance;
+	}
+
+	// -- MemoryGovernor methods --
+
+	/**
+	 * Registers the given object to be notified of budget changes. If the
+	 * budget is currently reduced, the object is notified immediately.
+	 */
+	public void register(final MemorySensitive consumer) {
+		final double f;
+		synchronized (this) {
+			consumers.put(consumer, Boolean.TRUE);
+			f = fraction;
+		}
+		if (f < 1) consumer.memoryBudgetChanged(f);
+	}
+
+	/** Stops notifying the given object of budget changes. */
+	public synchronized void unregister(final MemorySensitive consumer) {
+		consumers.remove(consumer);
+	}
+
+	/** Gets the fraction of their configured budget caches should use. */
+	public synchronized double getBudgetFraction() {
+		return fraction;
+	}
+
+	// -- Helper methods --
+
+	/** Halves the budget fraction, due to memory pressure. */
+	void reduce() {
+		update(Math.max(MINIMUM_FRACTION, getBudgetFraction() / 2));
+	}
+
+	/** Doubles the budget fraction, since memory pressure subsided. */
+	void relieve() {
+		update(Math.min(1, getBudgetFraction() * 2));
+	}
+
+	private void update(final double newFraction) {
+		final List<MemorySensitive> toNotify;
+		synchronized (this) {
+			if (newFraction == fraction) return;
+			fraction = newFraction;
+			toNotify = new ArrayList<>(consumers.keySet());
+		}
+		for (final MemorySensitive consumer : toNotify) {
+			consumer.memoryBudgetChanged(newFraction);
+		}
+	}
+
+	/** Connects the governor to the JVM's heap memory pools. */
+	private void monitor() {
+		for (final MemoryPoolMXBean pool : ManagementFactory
+			.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() != MemoryType.HEAP) continue;
+			final long max = pool.getUsage().getMax();
+			if (max <= 0) continue;
+			// NB: Only the old generation supports usage thresholds, too.
+			if (!pool.isUsageThresholdSupported() || !pool
+				.isCollectionUsageThresholdSupported()) continue;
+			// NB: Respect thresholds configured by someone else.
+			if (pool.getCollectionUsageThreshold() == 0) {
+				pool.setCollectionUsageThreshold((long) (max *
+					COLLECTION_USAGE_THRESHOLD));
+			}
+			pools.add(pool);
+		}
+		if (pools.isEmpty()) return;
+
+		final NotificationEmitter emitter = //
+			(NotificationEmitter) ManagementFactory.getMemoryMXBean();
+		emitter.addNotificationListener((notification, handback) -> {
+			if (isPressure(notification)) reduce();
+		}, null, null);
+
+		final ScheduledExecutorService checker = Executors
+			.newSingleThreadScheduledExecutor(r -> {
+				final Thread t = new Thread(r, "SciJava-MemoryGovernor");
+				t.setDaemon(true);
+				return t;
+			});
+		checker.scheduleWithFixedDelay(this::check, CHECK_INTERVAL,
+			CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	private boolean isPressure(final Notification notification) {
+		if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(
+			notification.getType())) return false;
+		final String poolName = MemoryNotificationInfo.from(
+			(CompositeData) notification.getUserData()).getPoolName();
+		for (final MemoryPoolMXBean pool : pools) {
+			if (pool.getName().equals(poolName)) return true;
+		}
+		return false;
+	}
+
+	/** Grows a reduced budget again if no pool is under pressure anymore. */
+	private void check() {
+		if (getBudgetFraction() >= 1) return;
+		for (final MemoryPoolMXBean pool : pools) {
+			final MemoryUsage usage = pool.getCollectionUsage();
+			if (usage == null) continue;
+			if (!isRelieved(usage.getUsed(), usage.getMax())) return;
+		}
+		relieve();
+	}
+
+	/** Gets whether the given usage of a pool is low enough to grow budgets. */
+	static boolean isRelieved(final long used, final long max) {
+		return max <= 0 || used < max * RELIEF_THRESHOLD;
+	}
+
+	/** Gets the registered objects; only meant for tests. */
+	synchronized List<MemorySensitive> consumers() {
+		return Collections.unmodifiableList(new ArrayList<>(consumers.keySet()));
+	}
+}
@@ -0,0 +1,434 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Disk store of byte array entries, kept in append-only segment files.
+ * <p>
+ * Each write appends a record (or, for removals, a tombstone) to the current
+ * segment, which is replaced by a new one once it reaches the segment size.
+ * An in-memory index locates the latest record of each key; it is rebuilt by
+ * replaying all segments in order when the store is opened, stopping at the
+ * first damaged record of a segment (e.g. one cut off by a crash). Once
+ * obsolete records make up most of the segments, all live records are
+ * rewritten to new segments (compaction). While the live records exceed the
+ * maximum size, the oldest segment is dropped entirely.
+ * </p>
+ * <p>
+ * A store holds an exclusive lock on its directory while open.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+class SegmentStore implements Closeable {
+
+	private static final String SUFFIX = ".seg";
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 0;
+
+	/** Size of a record without its key and payload. */
+	private static final int OVERHEAD = 1 + 4 + 4 + 8;
+
+	/** Fraction of obsolete bytes above which the store is compacted. */
+	private static final double COMPACTION_THRESHOLD = 0.5;
+
+	private final File dir;
+	private final long maximumSize;
+	private final long segmentSize;
+	private final FileChannel lockChannel;
+
+	/** Latest records, by key. */
+	private final Map<ByteBuffer, Entry> index = new HashMap<>();
+
+	/** Segments, by ascending ID. */
+	private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+	private Segment active;
+
+	/** Total size of all live records. */
+	private long size;
+
+	/** Total size of all segments. */
+	private long length;
+
+	/**
+	 * Opens the store in the given directory, creating it if needed.
+	 *
+	 * @param dir the directory holding the segment files
+	 * @param maximumSize the maximum total size of the live records
+	 * @param segmentSize the size at which a new segment is started
+	 * @throws IOException if the store cannot be opened, e.g. because another
+	 *           process is using it.
+	 */
+	SegmentStore(final File dir, final long maximumSize, final long segmentSize)
+		throws IOException
+	{
+		this.dir = dir;
+		this.maximumSize = maximumSize;
+		this.segmentSize = segmentSize;
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Cannot create directory: " + dir);
+		}
+		lockChannel = FileChannel.open(new File(dir, "lock").toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			if (!tryLock()) throw new IOException("Store in use: " + dir);
+			replay();
+		}
+		catch (final IOException | RuntimeException exc) {
+			close();
+			throw exc;
+		}
+	}
+
+	// -- SegmentStore methods --
+
+	/**
+	 * Reads the payload stored for the given key.
+	 *
+	 * @return The payload, or null if the key is not stored.
+	 */
+	synchronized byte[] get(final byte[] key) throws IOException {
+		final Entry entry = index.get(ByteBuffer.wrap(key));
+		if (entry == null) return null;
+		final byte[] payload = new byte[entry.payloadLength];
+		final RandomAccessFile file = entry.segment.file;
+		file.seek(entry.offset + OVERHEAD - 8 + key.length);
+		file.readFully(payload);
+		return payload;
+	}
+
+	/**
+	 * Stores the given payload for the given key, replacing any previously
+	 * stored one. Payloads too large for the store are not stored.
+	 */
+	synchronized void put(final byte[] key, final byte[] payload)
+		throws IOException
+	{
+		if (OVERHEAD + key.length + payload.length > maximumSize) {
+			remove(key);
+			return;
+		}
+		final Segment written = append(PUT, key, payload);
+		while (size > maximumSize) {
+			final Segment oldest = segments.firstEntry().getValue();
+			// NB: Never drop the record just written.
+			if (oldest == written) break;
+			drop(oldest);
+		}
+		compactIfNeeded();
+	}
+
+	/**
+	 * Removes the given key from the store.
+	 *
+	 * @return True iff the key was stored.
+	 */
+	synchronized boolean remove(final byte[] key) throws IOException {
+		if (!index.containsKey(ByteBuffer.wrap(key))) return false;
+		append(REMOVE, key, new byte[0]);
+		compactIfNeeded();
+		return true;
+	}
+
+	/** Gets whether the given key is stored. */
+	synchronized boolean contains(final byte[] key) {
+		return index.containsKey(ByteBuffer.wrap(key));
+	}
+
+	/** Gets the number of stored keys. */
+	synchronized int count() {
+		return index.size();
+	}
+
+	/** Gets the total size of the live records. */
+	synchronized long size() {
+		return size;
+	}
+
+	/** Gets the number of segment files. */
+	synchronized int segmentCount() {
+		return segments.size();
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (final Segment segment : segments.values()) {
+			segment.file.close();
+		}
+		segments.clear();
+		index.clear();
+		// NB: Closing the channel releases the lock.
+		lockChannel.close();
+	}
+
+	// -- Helper methods --
+
+	private boolean tryLock() throws IOException {
+		try {
+			return lockChannel.tryLock() != null;
+		}
+		catch (final OverlappingFileLockException exc) {
+			// NB: The store is already open within this process.
+			return false;
+		}
+	}
+
+	/** Rebuilds the index from the existing segments. */
+	private void replay() throws IOException {
+		final File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+		if (files != null) {
+			for (final File file : files) {
+				final String name = file.getName();
+				try {
+					final long id = Long.parseLong(name.substring(0, name.length() -
+						SUFFIX.length()), 16);
+					segments.put(id, new Segment(id, file));
+				}
+				catch (final NumberFormatException exc) {
+					// NB: Not one of our segments.
+				}
+			}
+		}
+		for (final Segment segment : segments.values()) {
+			replay(segment);
+		}
+		if (segments.isEmpty() || segments.lastEntry().getValue().length >=
+			segmentSize)
+		{
+			roll();
+		}
+		else active = segments.lastEntry().getValue();
+	}
+
+	/** Replays the records of the given segment, truncating damaged ones. */
+	private void replay(final Segment segment) throws IOException {
+		long offset = 0;
+		try (final DataInputStream in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(segment.path))))
+		{
+			while (true) {
+				final byte type = in.readByte();
+				final int keyLength = in.readInt();
+				final int payloadLength = in.readInt();
+				if (keyLength < 0 || payloadLength < 0 ||
+					offset + OVERHEAD + keyLength + payloadLength > segment.path
+						.length())
+				{
+					break;
+				}
+				final byte[] key = new byte[keyLength];
+				in.readFully(key);
+				final CRC32 crc = new CRC32();
+				crc.update(type);
+				crc.update(key);
+				final byte[] buf = new byte[8192];
+				for (int remain = payloadLength; remain > 0;) {
+					final int n = in.read(buf, 0, Math.min(buf.length, remain));
+					if (n < 0) throw new EOFException();
+					crc.update(buf, 0, n);
+					remain -= n;
+				}
+				if (in.readLong() != crc.getValue()) break;
+				index(type, key, new Entry(segment, offset, payloadLength));
+				offset += OVERHEAD + keyLength + payloadLength;
+			}
+		}
+		catch (final EOFException exc) {
+			// NB: End of segment, possibly cut off within a record.
+		}
+		if (offset < segment.path.length()) segment.file.setLength(offset);
+		segment.length = offset;
+		length += offset;
+	}
+
+	/**
+	 * Appends a record to the active segment, and indexes it.
+	 *
+	 * @return The segment to which the record was written.
+	 */
+	private Segment append(final byte type, final byte[] key, final byte[] payload)
+		throws IOException
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(type);
+		crc.update(key);
+		crc.update(payload);
+		final ByteBuffer record = ByteBuffer.allocate(OVERHEAD + key.length +
+			payload.length);
+		record.put(type).putInt(key.length).putInt(payload.length);
+		record.put(key).put(payload).putLong(crc.getValue());
+
+		final Segment segment = active;
+		final Entry entry = new Entry(segment, segment.length, payload.length);
+		segment.file.seek(segment.length);
+		segment.file.write(record.array());
+		segment.length += record.capacity();
+		length += record.capacity();
+		index(type, key, entry);
+		if (segment.length >= segmentSize) roll();
+		return segment;
+	}
+
+	/** Updates the index for the given record. */
+	private void index(final byte type, final byte[] key, final Entry entry) {
+		final ByteBuffer k = ByteBuffer.wrap(key);
+		final Entry old = type == PUT ? index.put(k, entry) : index.remove(k);
+		if (old != null) {
+			old.segment.live -= old.length(key.length);
+			size -= old.length(key.length);
+		}
+		if (type == PUT) {
+			entry.segment.live += entry.length(key.length);
+			size += entry.length(key.length);
+		}
+	}
+
+	/** Starts a new active segment. */
+	private void roll() throws IOException {
+		final long id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+		final File file = new File(dir, String.format("%016x", id) + SUFFIX);
+		active = new Segment(id, file);
+		segments.put(id, active);
+	}
+
+	/** Deletes the given segment, along with all records in it. */
+	private void drop(final Segment segment) throws IOException {
+		final Iterator<Map.Entry<ByteBuffer, Entry>> iter = index.entrySet()
+			.iterator();
+		while (iter.hasNext()) {
+			final Map.Entry<ByteBuffer, Entry> e = iter.next();
+			if (e.getValue().segment != segment) continue;
+			size -= e.getValue().length(e.getKey().capacity());
+			iter.remove();
+		}
+		delete(segment);
+	}
+
+	private void delete(final Segment segment) throws IOException {
+		segments.remove(segment.id);
+		length -= segment.length;
+		segment.file.close();
+		if (!segment.path.delete()) {
+			throw new IOException("Cannot delete segment: " + segment.path);
+		}
+	}
+
+	/** Rewrites all live records, once obsolete ones dominate. */
+	private void compactIfNeeded() throws IOException {
+		if (length < segmentSize || size >= length * COMPACTION_THRESHOLD) return;
+		final List<Segment> old = new ArrayList<>(segments.values());
+		roll();
+		final List<Map.Entry<ByteBuffer, Entry>> live = new ArrayList<>(index
+			.entrySet());
+		// NB: Keep the order of the records, so the oldest are dropped first.
+		live.sort((e1, e2) -> {
+			final int c = Long.compare(e1.getValue().segment.id, e2
+				.getValue().segment.id);
+			return c != 0 ? c : Long.compare(e1.getValue().offset, e2
+				.getValue().offset);
+		});
+		for (final Map.Entry<ByteBuffer, Entry> e : live) {
+			final byte[] key = e.getKey().array();
+			append(PUT, key, get(key));
+		}
+		// NB: Delete older segments first, so that no tombstone is deleted
+		// before the record it removes.
+		for (final Segment segment : old) {
+			delete(segment);
+		}
+	}
+
+	// -- Helper classes --
+
+	private static class Segment {
+
+		private final long id;
+		private final File path;
+		private final RandomAccessFile file;
+
+		/** Number of bytes in the segment. */
+		private long length;
+
+		/** Number of bytes of the live records in the segment. */
+		private long live;
+
+		private Segment(final long id, final File path) throws IOException {
+			this.id = id;
+			this.path = path;
+			file = new RandomAccessFile(path, "rw");
+		}
+	}
+
+	/** Location of a record. */
+	private static class Entry {
+
+		private final Segment segment;
+		private final long offset;
+		private final int payloadLength;
+
+		private Entry(final Segment segment, final long offset,
+			final int payloadLength)
+		{
+			this.segment = segment;
+			this.offset = offset;
+			this.payloadLength = payloadLength;
+		}
+
+		private long length(final int keyLength) {
+			return OVERHEAD + keyLength + payloadLength;
+		}
+	}
+}
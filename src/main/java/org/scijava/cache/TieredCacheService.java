@@ -0,0 +1,531 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.scijava.event.EventService;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.PluginService;
+import org.scijava.service.AbstractService;
+import org.scijava.thread.ThreadService;
+import org.scijava.util.DigestUtils;
+
+/**
+ * {@link CacheService} implementation with a memory tier and a disk tier.
+ * <p>
+ * Entries are cached in a {@link BoundedCache} in memory. Entries evicted from
+ * memory for lack of space are demoted to a {@link SegmentStore} on disk, and
+ * promoted back to memory when accessed again. When the service is disposed,
+ * all entries still in memory are written to disk as well, so that the cached
+ * data survives restarts. Keys and values are written to disk by the
+ * {@link CacheSerializer} plugin of highest priority supporting them; entries
+ * which cannot be serialized are only cached in memory.
+ * </p>
+ * <p>
+ * As serialized forms need not be canonical, e.g. for hash-based collections,
+ * entries are found on disk by a digest of the key's class name and
+ * {@link Object#hashCode() hash code}, and the key stored with the value is
+ * compared via {@link Object#equals equals}. Keys whose hash code differs
+ * between sessions, such as enum constants, are thus only found on disk
+ * within the session which demoted them.
+ * </p>
+ * <p>
+ * Under memory pressure, as reported by the {@link MemoryGovernor}, the memory
+ * tier shrinks to a fraction of its configured maximum, demoting the excess
+ * entries to disk.
+ * </p>
+ * <p>
+ * Named {@link CacheRegion}s obtained via {@link #region(String)} are cached
+ * in memory only. Their statistics are published like those of the
+ * {@link DefaultCacheService}.
+ * </p>
+ * <p>
+ * As this service uses disk space and background threads, it is not a
+ * {@link Plugin} discovered by every {@link org.scijava.Context}; it is used
+ * only by contexts created with it explicitly, e.g.
+ * {@code new Context(TieredCacheService.class)}, in which it takes precedence
+ * over the {@link DefaultCacheService}.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+public class TieredCacheService extends AbstractService implements
+	CacheService, MemorySensitive
+{
+
+	/** Default maximum number of entries in memory. */
+	public static final long DEFAULT_MAXIMUM_MEMORY_SIZE =
+		DefaultCacheService.DEFAULT_MAXIMUM_SIZE;
+
+	/** Default maximum size in bytes of the entries on disk: 1 GiB. */
+	public static final long DEFAULT_MAXIMUM_DISK_SIZE = 1L << 30;
+
+	/** Maximum size of a single segment file: 64 MiB. */
+	private static final long MAXIMUM_SEGMENT_SIZE = 64L << 20;
+
+	@Parameter
+	private PluginService pluginService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter(required = false)
+	private LogService log;
+
+	@Parameter(required = false)
+	private EventService eventService;
+
+	private final CacheRegions regions = new CacheRegions();
+
+	private final CacheRegion memoryRegion = regions.getDefault();
+
+	private final BoundedCache<Object, Object> memory = memoryRegion.cache();
+
+	/** Entries evicted from memory, still to be written to disk. */
+	private final Queue<Map.Entry<Object, Object>> demotions =
+		new ConcurrentLinkedQueue<>();
+
+	private File directory = new File(System.getProperty("user.home") +
+		File.separator + ".scijava" + File.separator + "cache" + File.separator +
+		"objects");
+
+	private long maximumDiskSize = DEFAULT_MAXIMUM_DISK_SIZE;
+
+	/** The disk tier, opened on first use. */
+	private SegmentStore disk;
+
+	/** True iff the disk tier could not be opened. */
+	private boolean diskUnavailable;
+
+	private List<CacheSerializer> serializers;
+
+	// -- TieredCacheService methods --
+
+	/** Gets the directory of the disk tier. */
+	public synchronized File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Sets the directory of the disk tier. Entries on disk in the previous
+	 * directory are no longer available.
+	 */
+	public synchronized void setDirectory(final File directory) {
+		closeDisk();
+		this.directory = directory;
+	}
+
+	/** Gets the maximum size in bytes of the entries on disk. */
+	public synchronized long getMaximumDiskSize() {
+		return maximumDiskSize;
+	}
+
+	/**
+	 * Sets the maximum size in bytes of the entries on disk. The least recently
+	 * demoted entries are discarded once the disk tier exceeds this size.
+	 */
+	public synchronized void setMaximumDiskSize(final long maximumDiskSize) {
+		if (maximumDiskSize < 0) {
+			throw new IllegalArgumentException("Negative size: " + maximumDiskSize);
+		}
+		closeDisk();
+		this.maximumDiskSize = maximumDiskSize;
+	}
+
+	/** Bounds the memory tier by its number of entries. */
+	public void setMaximumMemorySize(final long maximumSize) {
+		setMaximumMemoryWeight(maximumSize, null);
+	}
+
+	/**
+	 * Bounds the memory tier by the total weight of its entries, as calculated
+	 * by the given weigher.
+	 */
+	public void setMaximumMemoryWeight(final long maximumWeight,
+		final Weigher<Object, Object> weigher)
+	{
+		memoryRegion.setMaximumWeight(maximumWeight, weigher);
+		demote();
+	}
+
+	/**
+	 * Sets how often statistics events are published. A non-positive interval
+	 * disables them.
+	 */
+	public void setStatsInterval(final long interval, final TimeUnit unit) {
+		regions.setStatsInterval(interval, unit, eventService == null ? null
+			: eventService::publish);
+	}
+
+	/** Gets the number of entries in memory. */
+	public int memorySize() {
+		return memory.size();
+	}
+
+	/** Gets the number of entries on disk. */
+	public int diskSize() {
+		final SegmentStore store = disk();
+		return store == null ? 0 : store.count();
+	}
+
+	/** Removes the cached object for the given key from both tiers. */
+	public void remove(final Object key) {
+		memory.remove(key);
+		// NB: Hold the lock so that a demotion in progress cannot write the
+		// removed value to disk afterwards.
+		synchronized (demotions) {
+			demotions.removeIf(pending -> pending.getKey().equals(key));
+			final SegmentStore store = disk();
+			if (store == null) return;
+			try {
+				store.remove(slot(key));
+			}
+			catch (final IOException exc) {
+				warn("Cannot remove cached object from disk", exc);
+			}
+		}
+	}
+
+	// -- CacheService methods --
+
+	@Override
+	public void put(final Object key, final Object value) {
+		// NB: A value on disk would no longer be current.
+		remove(key);
+		memory.put(key, value);
+		demote();
+	}
+
+	@Override
+	public Object get(final Object key) {
+		try {
+			return get(key, () -> null);
+		}
+		catch (final ExecutionException exc) {
+			// NB: Cannot happen, as the loader does not throw.
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <V> V get(final Object key, final Callable<V> valueLoader)
+		throws ExecutionException
+	{
+		try {
+			return (V) memory.get(key, () -> promoteOrLoad(key, valueLoader));
+		}
+		finally {
+			demote();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <V> CompletableFuture<V> getAsync(final Object key,
+		final Callable<V> valueLoader)
+	{
+		final CompletableFuture<Object> future = memory.getAsync(key,
+			() -> promoteOrLoad(key, valueLoader));
+		return (CompletableFuture<V>) future.whenComplete((value, t) -> demote());
+	}
+
+	@Override
+	public CacheRegion region(final String name) {
+		return regions.get(name, null);
+	}
+
+	@Override
+	public CacheRegion region(final String name,
+		final Consumer<CacheRegion> initializer)
+	{
+		return regions.get(name, initializer);
+	}
+
+	@Override
+	public Map<String, CacheStats> stats() {
+		return regions.stats();
+	}
+
+	// -- MemorySensitive methods --
+
+	@Override
+	public void memoryBudgetChanged(final double fraction) {
+		regions.memoryBudgetChanged(fraction);
+		// NB: Do not write to disk on the thread reporting the memory pressure.
+		if (!demotions.isEmpty()) threadService.run(this::demote);
+	}
+
+	// -- Service methods --
+
+	@Override
+	public void initialize() {
+		regions.setThreadService(threadService);
+		memory.setRemovalListener((key, value, cause) -> {
+			if (cause == RemovalCause.SIZE) {
+				demotions.add(new SimpleImmutableEntry<>(key, value));
+			}
+		});
+		setStatsInterval(DefaultCacheService.DEFAULT_STATS_INTERVAL,
+			TimeUnit.SECONDS);
+		MemoryGovernor.getInstance().register(this);
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		MemoryGovernor.getInstance().unregister(this);
+		regions.close();
+		// NB: Keep the entries still in memory for the next session.
+		memory.forEach((key, value) -> demotions.add(new SimpleImmutableEntry<>(
+			key, value)));
+		demote();
+		synchronized (this) {
+			closeDisk();
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Promotes the value for the given key from disk, or else loads it. */
+	private Object promoteOrLoad(final Object key, final Callable<?> loader)
+		throws Exception
+	{
+		final Object promoted = promote(key);
+		return promoted != null ? promoted : loader.call();
+	}
+
+	/**
+	 * Removes the value for the given key from the disk tier (or from the
+	 * entries still to be written there), returning it.
+	 */
+	private Object promote(final Object key) {
+		// NB: Hold the lock so that an entry being demoted is found on disk.
+		synchronized (demotions) {
+			final Iterator<Map.Entry<Object, Object>> iter = demotions.iterator();
+			while (iter.hasNext()) {
+				final Map.Entry<Object, Object> pending = iter.next();
+				if (pending.getKey().equals(key)) {
+					iter.remove();
+					return pending.getValue();
+				}
+			}
+			final SegmentStore store = disk();
+			if (store == null) return null;
+			final byte[] slot = slot(key);
+			try {
+				final byte[] record = store.get(slot);
+				if (record == null) return null;
+				final Map.Entry<Object, Object> entry = read(record);
+				// NB: Another key with the same hash code may occupy the slot.
+				if (!key.equals(entry.getKey())) return null;
+				store.remove(slot);
+				return entry.getValue();
+			}
+			catch (final IOException exc) {
+				warn("Cannot read cached object from disk", exc);
+				return null;
+			}
+		}
+	}
+
+	/** Writes the entries evicted from memory to the disk tier. */
+	private void demote() {
+		if (demotions.isEmpty()) return;
+		synchronized (demotions) {
+			Map.Entry<Object, Object> entry;
+			while ((entry = demotions.poll()) != null) {
+				final SegmentStore store = disk();
+				if (store == null) {
+					demotions.clear();
+					return;
+				}
+				final byte[] record = write(entry);
+				if (record == null) continue; // NB: Only cached in memory.
+				try {
+					store.put(slot(entry.getKey()), record);
+				}
+				catch (final IOException exc) {
+					warn("Cannot write cached object to disk", exc);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the key of the given cache key's slot on disk, which is stable for
+	 * equal keys, unlike their serialized form.
+	 */
+	private static byte[] slot(final Object key) {
+		return DigestUtils.sha256(DigestUtils.bytes(key.getClass().getName() +
+			"#" + key.hashCode()));
+	}
+
+	/**
+	 * Serializes the given entry, as its serialized key followed by its
+	 * serialized value.
+	 *
+	 * @return The bytes, or null if the key or value cannot be serialized.
+	 */
+	private byte[] write(final Map.Entry<Object, Object> entry) {
+		final byte[] key = serialize(entry.getKey());
+		final byte[] value = key == null ? null : serialize(entry.getValue());
+		if (value == null) return null;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(key.length);
+			out.write(key);
+			out.write(value);
+		}
+		catch (final IOException exc) {
+			// NB: Cannot happen, as the stream is in memory.
+			throw new IllegalStateException(exc);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Deserializes an entry written by {@link #write}. */
+	private Map.Entry<Object, Object> read(final byte[] record)
+		throws IOException
+	{
+		if (record.length < 4) throw new IOException("Invalid cache record");
+		final int keyLength = ByteBuffer.wrap(record).getInt();
+		if (keyLength < 0 || keyLength > record.length - 4) {
+			throw new IOException("Invalid cache record");
+		}
+		final Object key = deserialize(Arrays.copyOfRange(record, 4, 4 +
+			keyLength));
+		final Object value = deserialize(Arrays.copyOfRange(record, 4 +
+			keyLength, record.length));
+		return new SimpleImmutableEntry<>(key, value);
+	}
+
+	/**
+	 * Serializes the given object, prefixed by the class name of the serializer
+	 * used.
+	 *
+	 * @return The bytes, or null if no serializer supports the object.
+	 */
+	private byte[] serialize(final Object object) {
+		for (final CacheSerializer serializer : serializers()) {
+			if (!serializer.supports(object)) continue;
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (final DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeUTF(serializer.getClass().getName());
+				serializer.write(object, out);
+			}
+			catch (final IOException exc) {
+				warn("Cannot serialize " + object.getClass().getName(), exc);
+				return null;
+			}
+			return bytes.toByteArray();
+		}
+		return null;
+	}
+
+	private Object deserialize(final byte[] bytes) throws IOException {
+		try (final DataInputStream in = new DataInputStream(
+			new ByteArrayInputStream(bytes)))
+		{
+			final String name = in.readUTF();
+			for (final CacheSerializer serializer : serializers()) {
+				if (serializer.getClass().getName().equals(name)) {
+					return serializer.read(in);
+				}
+			}
+			throw new IOException("No such serializer: " + name);
+		}
+	}
+
+	private synchronized List<CacheSerializer> serializers() {
+		if (serializers == null) {
+			serializers = pluginService.createInstancesOfType(
+				CacheSerializer.class);
+		}
+		return serializers;
+	}
+
+	private synchronized SegmentStore disk() {
+		if (disk == null && !diskUnavailable) {
+			final long segmentSize = Math.max(1, Math.min(MAXIMUM_SEGMENT_SIZE,
+				maximumDiskSize / 8));
+			try {
+				disk = new SegmentStore(directory, maximumDiskSize, segmentSize);
+			}
+			catch (final IOException exc) {
+				warn("Disk cache unavailable; caching in memory only", exc);
+				diskUnavailable = true;
+			}
+		}
+		return disk;
+	}
+
+	private void closeDisk() {
+		if (disk != null) {
+			try {
+				disk.close();
+			}
+			catch (final IOException exc) {
+				warn("Cannot close disk cache", exc);
+			}
+		}
+		disk = null;
+		diskUnavailable = false;
+	}
+
+	private void warn(final String message, final Throwable t) {
+		if (log != null) log.warn(message, t);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache.event;
+
+import org.scijava.cache.CacheRegion;
+import org.scijava.cache.CacheStats;
+import org.scijava.event.SciJavaEvent;
+
+/**
+ * An event periodically reporting the statistics of a {@link CacheRegion}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class CacheStatsEvent extends SciJavaEvent {
+
+	private final String region;
+	private final CacheStats stats;
+	private final CacheStats recent;
+
+	public CacheStatsEvent(final String region, final CacheStats stats,
+		final CacheStats recent)
+	{
+		this.region = region;
+		this.stats = stats;
+		this.recent = recent;
+	}
+
+	// -- CacheStatsEvent methods --
+
+	/** Gets the name of the region. */
+	public String getRegion() {
+		return region;
+	}
+
+	/** Gets the statistics since the region was created. */
+	public CacheStats getStats() {
+		return stats;
+	}
+
+	/** Gets the statistics since the previous event for the region. */
+	public CacheStats getRecentStats() {
+		return recent;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return super.toString() + "\n\tregion = " + region + "\n\tstats = " +
+			stats + "\n\trecent = " + recent;
+	}
+}
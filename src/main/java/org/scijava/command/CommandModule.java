@@ -45,6 +45,8 @@ import org.scijava.module.ModuleException;
 import org.scijava.module.ModuleInfo;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.PluginInfo;
+import org.scijava.thread.TaskScope;
+import org.scijava.thread.ThreadService;
 import org.scijava.util.ClassUtils;
 
 /**
@@ -87,6 +89,9 @@ public class CommandModule extends AbstractModule implements Cancelable,
 	@Parameter
 	private Context context;
 
+	@Parameter(required = false)
+	private ThreadService threadService;
+
 	/**
 	 * Reason for cancelation, or null if not canceled. Note that this field is
 	 * only relevant if the delegate {@link Command} is not itself
@@ -94,6 +99,12 @@ public class CommandModule extends AbstractModule implements Cancelable,
 	 */
 	private String cancelReason;
 
+	/**
+	 * Scope opened by the running command, canceled along with it; null while
+	 * the command is not running.
+	 */
+	private volatile TaskScope scope;
+
 	/** Creates a command module for the given {@link PluginInfo}. */
 	public CommandModule(final CommandInfo info) throws ModuleException {
 		super();
@@ -196,7 +207,25 @@ public class CommandModule extends AbstractModule implements Cancelable,
 
 	@Override
 	public void run() {
-		command.run();
+		if (threadService == null) {
+			command.run();
+			return;
+		}
+		try (final TaskScope s = threadService.newScope()) {
+			scope = s;
+			try {
+				// NB: The command may have been canceled before the scope was set.
+				if (isCanceled()) s.cancel(getCancelReason());
+				command.run();
+			}
+			finally {
+				// NB: The command may have canceled itself.
+				if (isCanceled()) s.cancel(getCancelReason());
+			}
+		}
+		finally {
+			scope = null;
+		}
 	}
 
 	// -- Cancelable methods --
@@ -213,9 +242,12 @@ public class CommandModule extends AbstractModule implements Cancelable,
 	public void cancel(final String reason) {
 		if (command instanceof Cancelable) {
 			((Cancelable) command).cancel(reason);
-			return;
 		}
-		cancelReason = reason == null ? "" : reason;
+		else cancelReason = reason == null ? "" : reason;
+
+		// interrupt the work spawned by the running command
+		final TaskScope s = scope;
+		if (s != null) s.cancel(reason);
 	}
 
 	@Override
@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.scijava.io.handle.DataHandle;
+
+/**
+ * Validator metadata of a cached source, recorded by a {@link LocationCache}
+ * beside the cached data.
+ * <p>
+ * The metadata describe the source as it was when its data was cached, so
+ * that a {@link DownloadService} can decide whether the cached data is still
+ * valid without reading it, and when the source was last confirmed to be
+ * unchanged, so that the cached data can be trusted for a while without
+ * accessing the source at all.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+public final class CacheMetadata {
+
+	private final long length;
+	private final Date lastModified;
+	private final String checksum;
+	private final long validated;
+
+	/**
+	 * @param length the length of the source, or -1 if unknown
+	 * @param lastModified the last modification time of the source, or null if
+	 *          unknown
+	 * @param checksum the checksum of the source (e.g., its HTTP
+	 *          {@code ETag}), or null if unknown
+	 * @param validated the time in milliseconds since the epoch at which the
+	 *          source was last found to match these metadata
+	 */
+	public CacheMetadata(final long length, final Date lastModified,
+		final String checksum, final long validated)
+	{
+		this.length = length;
+		this.lastModified = lastModified == null ? null : //
+			new Date(lastModified.getTime());
+		this.checksum = checksum;
+		this.validated = validated;
+	}
+
+	/**
+	 * Reads the metadata of the given source handle, validated as of now.
+	 *
+	 * @throws IOException If something goes wrong accessing the source.
+	 */
+	public static CacheMetadata of(final DataHandle<?> source)
+		throws IOException
+	{
+		return new CacheMetadata(source.length(), source.lastModified(), source
+			.checksum(), System.currentTimeMillis());
+	}
+
+	/** Gets the length of the source, or -1 if unknown. */
+	public long getLength() {
+		return length;
+	}
+
+	/** Gets the last modification time of the source, or null if unknown. */
+	public Date getLastModified() {
+		return lastModified == null ? null : new Date(lastModified.getTime());
+	}
+
+	/**
+	 * Gets the checksum of the source, or null if unknown.
+	 *
+	 * @see DataHandle#checksum()
+	 */
+	public String getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * Gets the time in milliseconds since the epoch at which the source was last
+	 * found to match these metadata.
+	 */
+	public long getValidated() {
+		return validated;
+	}
+
+	/**
+	 * Gets whether the given current metadata of the source are consistent with
+	 * these recorded ones. Values which are unknown on either side are not
+	 * compared.
+	 */
+	public boolean matches(final CacheMetadata current) {
+		if (length >= 0 && current.length >= 0 && length != current.length) {
+			return false;
+		}
+		if (lastModified != null && current.lastModified != null &&
+			!lastModified.equals(current.lastModified))
+		{
+			return false;
+		}
+		if (checksum != null && current.checksum != null && !checksum.equals(
+			current.checksum))
+		{
+			return false;
+		}
+		return true;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "length=" + length + ", lastModified=" + lastModified +
+			", checksum=" + checksum + ", validated=" + validated;
+	}
+}
@@ -33,21 +33,55 @@
 package org.scijava.download;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.Date;
 
+import org.scijava.Priority;
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.handle.DataHandleService;
 import org.scijava.io.handle.DataHandles;
+import org.scijava.io.location.FileLocation;
 import org.scijava.io.location.Location;
+import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.AbstractService;
 import org.scijava.service.Service;
 import org.scijava.task.Task;
 import org.scijava.task.TaskService;
+import org.scijava.thread.ThreadService;
 
 /**
  * Default implementation of {@link DownloadService}.
+ * <p>
+ * Data is transferred in blocks whose checksums are recorded as they complete.
+ * A failed transfer is retried up to {@link #getMaxAttempts()} times, each
+ * attempt resuming from the last completed block. When the data is written to
+ * a file (e.g., the staging file of a {@link DiskLocationCache}), this state is
+ * also persisted in a sidecar file, so that even a later download of the same,
+ * unchanged source resumes from the last verified block.
+ * </p>
+ * <p>
+ * Downloads are queued, and run with bounded concurrency (overall and per
+ * host) in order of their priority. Requests for a source which is already
+ * being downloaded share that download's result instead of fetching the same
+ * data again; see {@link DownloadScheduler}.
+ * </p>
+ * <p>
+ * Cached data is validated by comparing the {@link CacheMetadata} recorded by
+ * the {@link LocationCache} against the current metadata of the source, so
+ * the cached data itself is not read. Within the
+ * {@link #getCacheTrustPeriod() cache trust period}, cached data is used
+ * without accessing the source at all.
+ * </p>
+ * <p>
+ * Sources which report a known length and {@link DataHandle#supportsRangedAccess()
+ * support ranged access} are split into up to {@link #getSegmentCount()}
+ * segments of at least {@link #getMinimumSegmentSize()} bytes each, which are
+ * fetched concurrently into the pre-sized destination. All other sources are
+ * copied as a single stream.
+ * </p>
  *
  * @author Curtis Rueden
  */
@@ -56,109 +90,370 @@ public class DefaultDownloadService extends AbstractService implements
 	DownloadService
 {
 
+	/** Default maximum number of concurrently fetched segments. */
+	public static final int DEFAULT_SEGMENT_COUNT = 4;
+
+	/** Default minimum size of a concurrently fetched segment: 1 MiB. */
+	public static final long DEFAULT_MINIMUM_SEGMENT_SIZE = 1024 * 1024;
+
+	/** Default maximum number of attempts per download. */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/** Default delay in milliseconds before the first retry. */
+	public static final long DEFAULT_RETRY_DELAY = 1000;
+
+	/** Maximum size of a block whose completion is recorded: 1 MiB. */
+	private static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
 	@Parameter
 	private DataHandleService dataHandleService;
 
 	@Parameter
 	private TaskService taskService;
 
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private LogService log;
+
+	private int segmentCount = DEFAULT_SEGMENT_COUNT;
+
+	private long minimumSegmentSize = DEFAULT_MINIMUM_SEGMENT_SIZE;
+
+	private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+	private long retryDelay = DEFAULT_RETRY_DELAY;
+
+	private long cacheTrustPeriod;
+
+	private final DownloadScheduler scheduler = new DownloadScheduler(
+		this::copy);
+
+	// -- DefaultDownloadService methods --
+
+	/** Gets the maximum number of segments fetched concurrently per download. */
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	/**
+	 * Sets the maximum number of segments fetched concurrently per download. A
+	 * value of 1 disables segmented downloads.
+	 */
+	public void setSegmentCount(final int segmentCount) {
+		if (segmentCount < 1) {
+			throw new IllegalArgumentException("Invalid segment count: " +
+				segmentCount);
+		}
+		this.segmentCount = segmentCount;
+	}
+
+	/** Gets the minimum size in bytes of a concurrently fetched segment. */
+	public long getMinimumSegmentSize() {
+		return minimumSegmentSize;
+	}
+
+	/** Sets the minimum size in bytes of a concurrently fetched segment. */
+	public void setMinimumSegmentSize(final long minimumSegmentSize) {
+		if (minimumSegmentSize < 1) {
+			throw new IllegalArgumentException("Invalid segment size: " +
+				minimumSegmentSize);
+		}
+		this.minimumSegmentSize = minimumSegmentSize;
+	}
+
+	/** Gets the maximum number of attempts made per download. */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Sets the maximum number of attempts made per download. A value of 1
+	 * disables retries.
+	 */
+	public void setMaxAttempts(final int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Invalid attempt count: " +
+				maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Gets the delay in milliseconds before the first retry of a failed
+	 * download. The delay doubles with each further retry.
+	 */
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	/** Sets the delay in milliseconds before the first retry. */
+	public void setRetryDelay(final long retryDelay) {
+		if (retryDelay < 0) {
+			throw new IllegalArgumentException("Negative delay: " + retryDelay);
+		}
+		this.retryDelay = retryDelay;
+	}
+
+	/**
+	 * Gets the period in milliseconds for which cached data is used without
+	 * revalidating it against its source.
+	 */
+	public long getCacheTrustPeriod() {
+		return cacheTrustPeriod;
+	}
+
+	/**
+	 * Sets the period in milliseconds for which cached data is used without
+	 * revalidating it against its source, counted from the last time the source
+	 * was found unchanged. Within this period, a cache hit does not access the
+	 * source at all; afterwards, the recorded metadata of the cached data are
+	 * compared against those of the source, and only a changed source is
+	 * downloaded again. A value of 0 (the default) revalidates on every
+	 * download.
+	 */
+	public void setCacheTrustPeriod(final long cacheTrustPeriod) {
+		if (cacheTrustPeriod < 0) {
+			throw new IllegalArgumentException("Negative period: " +
+				cacheTrustPeriod);
+		}
+		this.cacheTrustPeriod = cacheTrustPeriod;
+	}
+
+	/** Gets the maximum number of downloads running concurrently. */
+	public int getMaxDownloads() {
+		return scheduler.getMaxDownloads();
+	}
+
+	/**
+	 * Sets the maximum number of downloads running concurrently. Further
+	 * downloads are queued, and started in order of their priority.
+	 */
+	public void setMaxDownloads(final int maxDownloads) {
+		if (maxDownloads < 1) {
+			throw new IllegalArgumentException("Invalid download count: " +
+				maxDownloads);
+		}
+		scheduler.setMaxDownloads(maxDownloads);
+	}
+
+	/** Gets the maximum number of downloads running concurrently per host. */
+	public int getMaxDownloadsPerHost() {
+		return scheduler.getMaxDownloadsPerHost();
+	}
+
+	/** Sets the maximum number of downloads running concurrently per host. */
+	public void setMaxDownloadsPerHost(final int maxDownloadsPerHost) {
+		if (maxDownloadsPerHost < 1) {
+			throw new IllegalArgumentException("Invalid download count: " +
+				maxDownloadsPerHost);
+		}
+		scheduler.setMaxDownloadsPerHost(maxDownloadsPerHost);
+	}
+
+	// -- DownloadService methods --
+
 	@Override
 	public Download download(final Location source, final Location destination) {
-		final Task task = taskService.createTask("Download");
-		return new DefaultDownload(source, destination, task, () -> {
-			try (final DataHandle<Location> in = dataHandleService.create(source);
-					final DataHandle<Location> out = dataHandleService.create(
-						destination))
-			{
-				task.setStatusMessage("Downloading " + source.getURI());
-				DataHandles.copy(in, out, task);
-			}
-			catch (final IOException exc) {
-				// TODO: Improve error handling:
-				// 1. Consider a better exception handling design here.
-				// 2. Retry at least a few times if something goes wrong.
-				throw new RuntimeException(exc);
-			}
-		});
+		return download(source, destination, null, Priority.NORMAL);
 	}
 
 	@Override
 	public Download download(final Location source, final Location destination,
 		final LocationCache cache)
 	{
+		return download(source, destination, cache, Priority.NORMAL);
+	}
+
+	@Override
+	public Download download(final Location source, final Location destination,
+		final LocationCache cache, final double priority)
+	{
+		final Task task = taskService.createTask("Download");
 		if (cache == null || !cache.canCache(source)) {
 			// Caching this location is not supported.
-			return download(source, destination);
+			scheduler.submit(source, destination, destination, priority, task,
+				() -> downloadDirect(source, destination, task));
 		}
+		else {
+			scheduler.submit(source, destination, cache.cachedLocation(source),
+				priority, task, () -> downloadCached(source, destination, cache, task));
+		}
+		return new DefaultDownload(source, destination, task);
+	}
 
-		final Task task = taskService.createTask("Download");
-		return new DefaultDownload(source, destination, task, () -> {
+	// -- Helper methods --
+
+	private void downloadDirect(final Location source, final Location destination,
+		final Task task)
+	{
+		try {
+			task.setStatusMessage("Downloading " + source.getURI());
+			fetch(source, destination, task);
+		}
+		catch (final IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+	}
+
+	private void downloadCached(final Location source,
+		final Location destination, final LocationCache cache, final Task task)
+	{
+		try {
 			final Location cached = cache.cachedLocation(source);
-			try (
-				final DataHandle<Location> sourceHandle = dataHandleService.create(source);
-				final DataHandle<Location> cachedHandle = dataHandleService.create(cached);
-				final DataHandle<Location> destHandle = dataHandleService.create(destination)
-			)
+			final CacheMetadata recorded = cache.loadMetadata(source);
+			final CacheMetadata current;
+			final boolean valid;
+			try (final DataHandle<Location> cachedHandle = //
+				dataHandleService.create(cached))
 			{
-				if (isCachedHandleValid(source, cache, sourceHandle, cachedHandle)) {
-					// The data is cached; download from the cached source instead.
-					task.setStatusMessage("Retrieving " + source.getURI());
-					DataHandles.copy(cachedHandle, destHandle, task);
+				if (cachedHandle.exists() && isTrusted(recorded)) {
+					// NB: The source was validated recently enough; do not access it.
+					current = null;
+					valid = true;
 				}
 				else {
-					// Data is not yet cached; write to the destination _and_ the cache.
-					task.setStatusMessage("Downloading + caching " + source.getURI());
-					DataHandles.copy(sourceHandle, //
-						new MultiWriteHandle(cachedHandle, destHandle), task);
+					try (final DataHandle<Location> sourceHandle = //
+						dataHandleService.create(source))
+					{
+						current = sourceHandle.exists() ? CacheMetadata.of(sourceHandle)
+							: null;
+					}
+					valid = isCachedHandleValid(recorded, current, cachedHandle);
+				}
+			}
+
+			if (valid) {
+				// NB: Record that the source is unchanged, to trust it for a while.
+				if (current != null) cache.saveMetadata(source, current);
+				cache.touch(source);
+			}
+			else {
+				// Data is not yet cached; download it into the cache first.
+				task.setStatusMessage("Downloading + caching " + source.getURI());
+				final Location staged = cache.stagingLocation(source);
+				try {
+					final boolean resumable;
+					try {
+						resumable = fetch(source, staged, task);
+					}
+					catch (final IOException exc) {
+						// NB: Keep resumable data around for the next download.
+						if (!(staged instanceof FileLocation)) cache.abort(source, staged);
+						throw exc;
+					}
+					if (task.isCanceled()) {
+						if (!resumable) cache.abort(source, staged);
+						return;
+					}
+					// NB: Publish the data only once it has been completely written.
+					cache.commit(source, staged);
+				}
+				finally {
+					cache.release(source, staged);
 				}
+				if (current != null) cache.saveMetadata(source, current);
+			}
+
+			// The data is cached; retrieve it from there.
+			task.setStatusMessage("Retrieving " + source.getURI());
+			task.setProgressValue(0);
+			copy(cached, destination, task);
+		}
+		catch (final IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+	}
+
+	/** Copies data which is available locally, e.g. from the cache. */
+	private void copy(final Location from, final Location to, final Task task)
+		throws IOException
+	{
+		try (final DataHandle<Location> in = dataHandleService.create(from);
+				final DataHandle<Location> out = dataHandleService.create(to))
+		{
+			DataHandles.copy(in, out, task);
+		}
+	}
+
+	/**
+	 * Transfers all data from the source to the output, retrying failed
+	 * attempts.
+	 *
+	 * @return Whether the transfer state was persisted, so that the transfer
+	 *         can be resumed later.
+	 * @throws IOException if the last attempt failed.
+	 */
+	private boolean fetch(final Location source, final Location output,
+		final Task task) throws IOException
+	{
+		final int blockSize = (int) Math.min(MAX_BLOCK_SIZE, minimumSegmentSize);
+		final Transfer transfer = new Transfer(dataHandleService, threadService,
+			source, output, task, segmentCount, minimumSegmentSize, blockSize);
+		for (int attempt = 1;; attempt++) {
+			try {
+				transfer.attempt();
+				if (!task.isCanceled()) transfer.finish();
+				return transfer.isResumable();
 			}
 			catch (final IOException exc) {
-				// TODO: Improve error handling:
-				// 1. Consider a better exception handling design here.
-				// 2. Retry at least a few times if something goes wrong.
-				throw new RuntimeException(exc);
+				if (task.isCanceled() || attempt >= maxAttempts) throw exc;
+				log.warn("Download attempt " + attempt + " of " + source.getURI() +
+					" failed; retrying", exc);
+			}
+			try {
+				Thread.sleep(retryDelay << (attempt - 1));
 			}
-		});
+			catch (final InterruptedException exc) {
+				throw new InterruptedIOException("Download interrupted: " + source
+					.getURI());
+			}
+		}
 	}
 
-	// -- Helper methods --
+	/**
+	 * Gets whether the given recorded metadata were validated within the
+	 * {@link #getCacheTrustPeriod() trust period}.
+	 */
+	private boolean isTrusted(final CacheMetadata recorded) {
+		if (recorded == null || cacheTrustPeriod <= 0) return false;
+		final long age = System.currentTimeMillis() - recorded.getValidated();
+		return age >= 0 && age < cacheTrustPeriod;
+	}
 
-	private boolean isCachedHandleValid(final Location source,
-		final LocationCache cache, final DataHandle<Location> sourceHandle,
-		final DataHandle<Location> cachedHandle) throws IOException
+	private boolean isCachedHandleValid(final CacheMetadata recorded,
+		final CacheMetadata current, final DataHandle<Location> cachedHandle)
+		throws IOException
 	{
 		if (!cachedHandle.exists()) return false; // No cached data is present.
 
+		// NB: We cannot validate the cache against a missing source.
+		if (current == null) return true;
+
 		// Compare data lengths.
-		final long sourceLen = sourceHandle.length();
-		final long cachedLen = cachedHandle.length();
+		final long sourceLen = current.getLength();
+		final long cachedLen = recorded != null && recorded.getLength() >= 0
+			? recorded.getLength() : cachedHandle.length();
 		if (sourceLen >= 0 && cachedLen >= 0 && sourceLen != cachedLen) {
 			// Original and cached sources report different lengths; cache is invalid.
 			return false;
 		}
 
-		// Compare last modified timestamps.
-		final Date sourceDate = sourceHandle.lastModified();
-		final Date cachedDate = cachedHandle.lastModified();
-		if (sourceDate != null && cachedDate != null && //
-			sourceDate.after(cachedDate))
-		{
-			// Source was changed after cache was written; cache is invalid.
-			return false;
-		}
-
-		// Compare checksums.
-		final String sourceChecksum = sourceHandle.checksum();
-		final String cachedChecksum = cache.loadChecksum(source);
-		if (sourceChecksum != null && cachedChecksum != null && //
-			!sourceChecksum.equals(cachedChecksum))
-		{
-			// Checksums do not match; cache is invalid.
-			return false;
+		// Compare last modified timestamps, unless the recorded ones are known.
+		if (recorded == null || recorded.getLastModified() == null) {
+			final Date sourceDate = current.getLastModified();
+			final Date cachedDate = cachedHandle.lastModified();
+			if (sourceDate != null && cachedDate != null && //
+				sourceDate.after(cachedDate))
+			{
+				// Source was changed after cache was written; cache is invalid.
+				return false;
+			}
 		}
 
-		// Everything matched; we're all good.
-		return true;
+		// Compare the recorded metadata, including checksums.
+		return recorded == null || recorded.matches(current);
 	}
 
 	// -- Helper classes --
@@ -170,12 +465,11 @@ public class DefaultDownloadService extends AbstractService implements
 		private Task task;
 
 		private DefaultDownload(final Location source, final Location destination,
-			final Task task, final Runnable r)
+			final Task task)
 		{
 			this.source = source;
 			this.destination = destination;
 			this.task = task;
-			task.run(r);
 		}
 
 		@Override
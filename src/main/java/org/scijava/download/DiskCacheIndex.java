@@ -0,0 +1,374 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * On-disk index of the entries of a {@link DiskLocationCache}, recording the
+ * size and last access time of each entry, and evicting the least recently
+ * used entries when the cache grows beyond its quota.
+ * <p>
+ * The index is an append-only journal of {@code key size accessTime} records,
+ * in which the last record for a key wins and a negative size marks a removed
+ * entry. It is compacted (rewritten to a new file, then renamed over the old
+ * one) once obsolete records dominate. All operations hold an exclusive file
+ * lock, so several processes can share the same cache directory; each process
+ * only reads the records appended since its last operation.
+ * </p>
+ * <p>
+ * Accesses are not written to the journal one by one. They are collected in
+ * memory, and written together at most once per {@link #TOUCH_INTERVAL}, or
+ * along with the next other operation. Accesses not yet written when the
+ * process ends are lost, which only affects the order of eviction.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+class DiskCacheIndex {
+
+	/** Prefix of the first line of the journal, followed by its generation. */
+	private static final String HEADER = "# scijava cache index ";
+
+	/** Fraction of the quota down to which the cache is shrunk on eviction. */
+	private static final double LOW_WATERMARK = 0.9;
+
+	/** Minimum time in milliseconds between writes of collected accesses. */
+	static final long TOUCH_INTERVAL = 60_000;
+
+	/** Number of collected accesses upon which they are written regardless. */
+	private static final int MAX_TOUCHES = 256;
+
+	/** In-process locks, by canonical lock file path. */
+	private static final Map<String, Object> MUTEXES = new ConcurrentHashMap<>();
+
+	private final File journal;
+	private final File lockFile;
+	private final Object mutex;
+	private final Consumer<String> evictor;
+
+	/** Known entries, by key. */
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/** Total size of all known entries. */
+	private long totalSize;
+
+	/** Generation of the journal as of the last read, or null if none. */
+	private String generation;
+
+	/** Offset in the journal up to which records have been read. */
+	private long position;
+
+	/** Number of records in the journal, including obsolete ones. */
+	private long records;
+
+	/** Accesses not yet written to the journal, by key; guarded by itself. */
+	private final Map<String, Long> touches = new HashMap<>();
+
+	/** Time in milliseconds when collected accesses were last written. */
+	private long lastTouchWrite;
+
+	/**
+	 * @param dir the directory holding the index files
+	 * @param evictor callback deleting the data of an evicted entry's key
+	 */
+	DiskCacheIndex(final File dir, final Consumer<String> evictor)
+		throws IOException
+	{
+		journal = new File(dir, "index");
+		lockFile = new File(dir, "index.lock");
+		this.evictor = evictor;
+		// NB: File locks are held per JVM, not per thread, so we additionally
+		// need to serialize access from within this process.
+		mutex = MUTEXES.computeIfAbsent(lockFile.getCanonicalPath(),
+			k -> new Object());
+	}
+
+	// -- DiskCacheIndex methods --
+
+	/**
+	 * Records the (re)written entry with the given key, then evicts least
+	 * recently used entries (other than this one) while the total size exceeds
+	 * the given quota.
+	 */
+	void put(final String key, final long size, final long quota)
+		throws IOException
+	{
+		locked(() -> {
+			final List<String> lines = new ArrayList<>();
+			lines.add(apply(key, size, System.currentTimeMillis()));
+			if (totalSize > quota) evict(key, quota, lines);
+			append(lines);
+		});
+	}
+
+	/**
+	 * Records an access to the entry with the given key, if it is known. The
+	 * access is written to the journal later, together with others.
+	 */
+	void touch(final String key) throws IOException {
+		final long now = System.currentTimeMillis();
+		synchronized (touches) {
+			touches.put(key, now);
+			if (touches.size() < MAX_TOUCHES &&
+				now - lastTouchWrite < TOUCH_INTERVAL) return;
+		}
+		// NB: Collected accesses are written by every operation.
+		locked(() -> {});
+	}
+
+	/** Removes the entry with the given key from the index, if it is known. */
+	void remove(final String key) throws IOException {
+		locked(() -> {
+			final Entry entry = entries.get(key);
+			if (entry == null) return;
+			final List<String> lines = new ArrayList<>();
+			lines.add(apply(key, -1, entry.accessTime));
+			append(lines);
+		});
+	}
+
+	/**
+	 * Records the given entries, unless already known, without evicting any.
+	 *
+	 * @param adopted the size and last access time of each entry, by key
+	 */
+	void adopt(final Map<String, long[]> adopted) throws IOException {
+		locked(() -> {
+			final List<String> lines = new ArrayList<>();
+			for (final Map.Entry<String, long[]> e : adopted.entrySet()) {
+				if (entries.containsKey(e.getKey())) continue;
+				lines.add(apply(e.getKey(), e.getValue()[0], e.getValue()[1]));
+			}
+			if (!lines.isEmpty()) append(lines);
+		});
+	}
+
+	/** Gets the total size of all entries recorded in the index. */
+	long totalSize() throws IOException {
+		final long[] size = new long[1];
+		locked(() -> size[0] = totalSize);
+		return size[0];
+	}
+
+	// -- Helper methods --
+
+	private void locked(final IndexOperation op) throws IOException {
+		synchronized (mutex) {
+			lockFile.getParentFile().mkdirs();
+			try (final FileChannel channel = FileChannel.open(lockFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					final FileLock lock = channel.lock())
+			{
+				refresh();
+				writeTouches();
+				op.run();
+			}
+		}
+	}
+
+	/** Reads the records appended to the journal by others since our last read. */
+	private void refresh() throws IOException {
+		if (!journal.exists()) {
+			reset(null);
+			return;
+		}
+		final String gen;
+		try (final BufferedReader in = reader(0)) {
+			final String header = in.readLine();
+			if (header == null || !header.startsWith(HEADER)) {
+				// NB: Unreadable index; start over, keeping files as orphans.
+				reset(null);
+				return;
+			}
+			gen = header.substring(HEADER.length());
+			if (!gen.equals(generation) || journal.length() < position) {
+				// The journal was compacted by someone else; reread it entirely.
+				reset(gen);
+				position = header.length() + 1;
+			}
+		}
+		try (final BufferedReader in = reader(position)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				position += line.length() + 1;
+				records++;
+				parse(line);
+			}
+		}
+	}
+
+	/** Writes the collected accesses of known entries to the journal. */
+	private void writeTouches() throws IOException {
+		final Map<String, Long> collected;
+		synchronized (touches) {
+			lastTouchWrite = System.currentTimeMillis();
+			if (touches.isEmpty()) return;
+			collected = new HashMap<>(touches);
+			touches.clear();
+		}
+		final List<String> lines = new ArrayList<>();
+		for (final Map.Entry<String, Long> touch : collected.entrySet()) {
+			final Entry entry = entries.get(touch.getKey());
+			if (entry == null || entry.accessTime >= touch.getValue()) continue;
+			lines.add(apply(entry.key, entry.size, touch.getValue()));
+		}
+		if (!lines.isEmpty()) append(lines);
+	}
+
+	private void reset(final String gen) {
+		entries.clear();
+		totalSize = 0;
+		generation = gen;
+		position = 0;
+		records = 0;
+	}
+
+	private void parse(final String line) {
+		final String[] tokens = line.split(" ");
+		if (tokens.length != 3) return; // NB: Skip damaged records.
+		try {
+			apply(tokens[0], Long.parseLong(tokens[1]), Long.parseLong(tokens[2]));
+		}
+		catch (final NumberFormatException exc) {
+			// NB: Skip damaged records.
+		}
+	}
+
+	/** Updates the in-memory state, returning the corresponding record. */
+	private String apply(final String key, final long size,
+		final long accessTime)
+	{
+		final Entry old = size < 0 ? entries.remove(key) : //
+			entries.put(key, new Entry(key, size, accessTime));
+		if (old != null) totalSize -= old.size;
+		if (size >= 0) totalSize += size;
+		return key + " " + size + " " + accessTime;
+	}
+
+	private void evict(final String keep, final long quota,
+		final List<String> lines)
+	{
+		final List<Entry> lru = new ArrayList<>(entries.values());
+		lru.sort((e1, e2) -> Long.compare(e1.accessTime, e2.accessTime));
+		final long target = (long) (quota * LOW_WATERMARK);
+		for (final Entry entry : lru) {
+			if (totalSize <= target) break;
+			if (entry.key.equals(keep)) continue;
+			evictor.accept(entry.key);
+			lines.add(apply(entry.key, -1, entry.accessTime));
+		}
+	}
+
+	private void append(final List<String> lines) throws IOException {
+		if (generation == null || records + lines.size() > 2 * entries.size() +
+			1000)
+		{
+			compact();
+			return;
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (final String line : lines) {
+			sb.append(line).append('\n');
+		}
+		final byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+		try (final FileOutputStream out = new FileOutputStream(journal, true)) {
+			out.write(bytes);
+		}
+		position += bytes.length;
+		records += lines.size();
+	}
+
+	/** Rewrites the journal with only the current entries. */
+	private void compact() throws IOException {
+		final String gen = UUID.randomUUID().toString();
+		final File temp = new File(journal.getPath() + "." + gen + ".tmp");
+		try (final Writer out = new OutputStreamWriter(new FileOutputStream(temp),
+			StandardCharsets.UTF_8))
+		{
+			out.write(HEADER + gen + "\n");
+			for (final Entry e : entries.values()) {
+				out.write(e.key + " " + e.size + " " + e.accessTime + "\n");
+			}
+		}
+		DiskLocationCache.moveAtomically(temp, journal);
+		generation = gen;
+		position = journal.length();
+		records = entries.size();
+	}
+
+	private BufferedReader reader(final long offset) throws IOException {
+		final FileInputStream in = new FileInputStream(journal);
+		in.getChannel().position(offset);
+		return new BufferedReader(new InputStreamReader(in,
+			StandardCharsets.UTF_8));
+	}
+
+	// -- Helper classes --
+
+	private interface IndexOperation {
+
+		void run() throws IOException;
+	}
+
+	private static class Entry {
+
+		private final String key;
+		private final long size;
+		private final long accessTime;
+
+		private Entry(final String key, final long size, final long accessTime) {
+			this.key = key;
+			this.size = size;
+			this.accessTime = accessTime;
+		}
+	}
+}
@@ -33,7 +33,26 @@
 package org.scijava.download;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.scijava.io.location.FileLocation;
 import org.scijava.io.location.Location;
@@ -42,27 +61,86 @@ import org.scijava.util.FileUtils;
 
 /**
  * A file-based implementation of {@link LocationCache}.
+ * <p>
+ * Entries are named by the SHA-256 hash of their source URI, and spread over
+ * subdirectories named by the first two hex digits of that hash. An on-disk
+ * index records the size and last access time of each entry, so that the least
+ * recently used entries can be evicted once the cache exceeds its
+ * {@link #getMaximumSize() maximum size}. Data is first written to a
+ * separate staging file, then renamed into place, so that other processes
+ * sharing the cache never observe partially written entries. As the staging
+ * file is named after its entry, an interrupted download can be resumed. Each
+ * staging file is locked for the duration of its transfer, so that concurrent
+ * downloads of the same entry, from this or other processes, take turns
+ * instead of overwriting each other's data.
+ * </p>
+ * <p>
+ * The {@link CacheMetadata validator metadata} of each entry are stored in a
+ * small properties file beside its data.
+ * </p>
+ * <p>
+ * Entries written by earlier versions, which were named by the hash code of
+ * their source in the base directory itself, are recorded in the index when
+ * it is first used, so that they count toward the maximum size and can be
+ * evicted. When their source is accessed again, they are moved to their
+ * current name.
+ * </p>
  *
  * @author Curtis Rueden
  */
 public class DiskLocationCache implements LocationCache {
 
+	/** Default maximum total size of the cached data: 4 GiB. */
+	public static final long DEFAULT_MAXIMUM_SIZE = 4L << 30;
+
+	private static final String DATA_SUFFIX = ".data";
+	private static final String CHECKSUM_SUFFIX = ".checksum";
+	private static final String METADATA_SUFFIX = ".meta";
+	private static final String PARTIAL_SUFFIX = ".partial";
+	private static final String LOCK_SUFFIX = ".lock";
+
+	/** Prefix of the index keys of entries named by the legacy scheme. */
+	private static final String LEGACY_PREFIX = "legacy-";
+
+	/** Name of the data file of an entry named by the legacy scheme. */
+	private static final Pattern LEGACY_DATA = Pattern.compile(
+		"[0-9a-f]{1,8}\\" + DATA_SUFFIX);
+
+	/**
+	 * Staging files currently locked within this JVM. A {@link FileLock} only
+	 * excludes other processes, so caches within the same JVM (e.g. of
+	 * different contexts) must additionally exclude each other here.
+	 */
+	private static final Set<File> STAGING = new HashSet<>();
+
 	private File baseDir = new File(System.getProperty("user.home") +
 		File.separator + ".scijava" + File.separator + "cache" + File.separator);
 
 	private boolean cacheFileLocations;
 
+	private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+	/** Index of the cache entries, created on first use. */
+	private DiskCacheIndex index;
+
+	/** Whether the index contains entries named by the legacy scheme. */
+	private volatile boolean legacyEntries;
+
+	/** Locks of the staging files in use via this cache, by staging file. */
+	private final Map<File, FileChannel> stagingLocks = new HashMap<>();
+
 	// -- DiskLocationCache methods --
 
 	public File getBaseDirectory() {
 		return baseDir;
 	}
 
-	public void setBaseDirectory(final File baseDir) {
+	public synchronized void setBaseDirectory(final File baseDir) {
 		if (!baseDir.isDirectory()) {
 			throw new IllegalArgumentException("Not a directory: " + baseDir);
 		}
 		this.baseDir = baseDir;
+		index = null;
 	}
 
 	public boolean isFileLocationCachingEnabled() {
@@ -75,6 +153,27 @@ public class DiskLocationCache implements LocationCache {
 		cacheFileLocations = enabled;
 	}
 
+	/** Gets the maximum total size in bytes of the cached data. */
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Sets the maximum total size in bytes of the cached data. Least recently
+	 * used entries are evicted when new data would exceed this size.
+	 */
+	public void setMaximumSize(final long maximumSize) {
+		if (maximumSize < 0) {
+			throw new IllegalArgumentException("Negative size: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+	}
+
+	/** Gets the total size in bytes of the cached data. */
+	public long size() throws IOException {
+		return index().totalSize();
+	}
+
 	// -- LocationCache methods --
 
 	@Override
@@ -96,6 +195,9 @@ public class DiskLocationCache implements LocationCache {
 
 	@Override
 	public String loadChecksum(final Location source) throws IOException {
+		migrate(source);
+		final CacheMetadata metadata = readMetadata(source);
+		if (metadata != null) return metadata.getChecksum();
 		final File cachedChecksum = cachedChecksum(source);
 		if (!cachedChecksum.exists()) return null;
 		return DigestUtils.string(FileUtils.readFile(cachedChecksum));
@@ -105,22 +207,323 @@ public class DiskLocationCache implements LocationCache {
 	public void saveChecksum(final Location source, final String checksum)
 		throws IOException
 	{
+		final CacheMetadata metadata = readMetadata(source);
+		if (metadata != null) {
+			saveMetadata(source, new CacheMetadata(metadata.getLength(), metadata
+				.getLastModified(), checksum, metadata.getValidated()));
+			return;
+		}
 		final File cachedChecksum = cachedChecksum(source);
-		FileUtils.writeFile(cachedChecksum, DigestUtils.bytes(checksum));
+		final File temp = createTempFile(cachedChecksum);
+		try {
+			FileUtils.writeFile(temp, DigestUtils.bytes(checksum));
+			moveAtomically(temp, cachedChecksum);
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	@Override
+	public CacheMetadata loadMetadata(final Location source) throws IOException {
+		migrate(source);
+		final CacheMetadata metadata = readMetadata(source);
+		return metadata != null ? metadata : LocationCache.super.loadMetadata(
+			source);
+	}
+
+	@Override
+	public void saveMetadata(final Location source,
+		final CacheMetadata metadata) throws IOException
+	{
+		final Properties props = new Properties();
+		props.setProperty("length", "" + metadata.getLength());
+		final Date lastModified = metadata.getLastModified();
+		if (lastModified != null) {
+			props.setProperty("lastModified", "" + lastModified.getTime());
+		}
+		if (metadata.getChecksum() != null) {
+			props.setProperty("checksum", metadata.getChecksum());
+		}
+		props.setProperty("validated", "" + metadata.getValidated());
+
+		final File cachedMetadata = cachedMetadata(source);
+		final File temp = createTempFile(cachedMetadata);
+		try {
+			try (final OutputStream out = new FileOutputStream(temp)) {
+				props.store(out, null);
+			}
+			moveAtomically(temp, cachedMetadata);
+		}
+		finally {
+			temp.delete();
+		}
+		// NB: The legacy checksum file would otherwise go stale.
+		cachedChecksum(source).delete();
+	}
+
+	@Override
+	public Location stagingLocation(final Location source) throws IOException {
+		if (!canCache(source)) {
+			throw new IllegalArgumentException("Uncacheable source: " + source);
+		}
+		// NB: The staging file is named deterministically, so that an interrupted
+		// download can be resumed by the next attempt to cache the same source.
+		final File staged = new File(cachedData(source).getAbsolutePath() +
+			PARTIAL_SUFFIX);
+		createDirectory(staged.getParentFile());
+		lock(staged);
+		return new FileLocation(staged);
+	}
+
+	@Override
+	public void commit(final Location source, final Location staged)
+		throws IOException
+	{
+		final File temp = ((FileLocation) staged).getFile();
+		try {
+			final long size = temp.length();
+			moveAtomically(temp, cachedData(source));
+			index().put(key(source), size, getMaximumSize());
+		}
+		finally {
+			unlock(temp);
+		}
+	}
+
+	@Override
+	public void abort(final Location source, final Location staged) {
+		final File file = ((FileLocation) staged).getFile();
+		file.delete();
+		TransferState.sidecar(file).delete();
+		unlock(file);
+	}
+
+	@Override
+	public void release(final Location source, final Location staged) {
+		unlock(((FileLocation) staged).getFile());
+	}
+
+	@Override
+	public void touch(final Location source) throws IOException {
+		index().touch(key(source));
+	}
+
+	// -- Internal methods --
+
+	/**
+	 * Renames the given file to the target, replacing it atomically where the
+	 * file system supports doing so.
+	 */
+	static void moveAtomically(final File source, final File target)
+		throws IOException
+	{
+		try {
+			Files.move(source.toPath(), target.toPath(),
+				StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (final AtomicMoveNotSupportedException exc) {
+			Files.move(source.toPath(), target.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
 	}
 
 	// -- Helper methods --
 
+	private synchronized DiskCacheIndex index() throws IOException {
+		if (index == null) {
+			index = new DiskCacheIndex(getBaseDirectory(), this::evict);
+			legacyEntries = adoptLegacyEntries(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Records the entries named by the legacy scheme in the given index.
+	 *
+	 * @return true iff there are any such entries
+	 */
+	private boolean adoptLegacyEntries(final DiskCacheIndex idx)
+		throws IOException
+	{
+		final File[] files = getBaseDirectory().listFiles((dir,
+			name) -> LEGACY_DATA.matcher(name).matches());
+		if (files == null || files.length == 0) return false;
+		final Map<String, long[]> legacy = new HashMap<>();
+		for (final File file : files) {
+			final String name = file.getName();
+			final String hex = name.substring(0, name.length() - DATA_SUFFIX
+				.length());
+			legacy.put(LEGACY_PREFIX + hex, new long[] { file.length(), file
+				.lastModified() });
+		}
+		idx.adopt(legacy);
+		return true;
+	}
+
+	/**
+	 * Moves the entry of the given source from its legacy name, i.e. the hash
+	 * code of the source, to its current name, unless the latter exists.
+	 */
+	private void migrate(final Location source) throws IOException {
+		if (!canCache(source)) return;
+		final DiskCacheIndex idx = index();
+		if (!legacyEntries) return;
+		final String hex = Integer.toHexString(source.hashCode());
+		final File legacyData = legacyFile(hex, DATA_SUFFIX);
+		if (!legacyData.exists()) return;
+		final File legacyChecksum = legacyFile(hex, CHECKSUM_SUFFIX);
+		final File data = cachedData(source);
+		if (!data.exists()) {
+			createDirectory(data.getParentFile());
+			try {
+				final long size = legacyData.length();
+				if (legacyChecksum.exists()) {
+					moveAtomically(legacyChecksum, cachedChecksum(source));
+				}
+				moveAtomically(legacyData, data);
+				idx.put(key(source), size, getMaximumSize());
+			}
+			catch (final NoSuchFileException exc) {
+				// NB: Another process migrated the entry meanwhile.
+			}
+		}
+		legacyData.delete();
+		legacyChecksum.delete();
+		idx.remove(LEGACY_PREFIX + hex);
+	}
+
+	/**
+	 * Locks the given staging file for exclusive use by the calling cache,
+	 * waiting until other users within this JVM or other processes unlock it.
+	 */
+	private void lock(final File staged) throws IOException {
+		synchronized (STAGING) {
+			while (!STAGING.add(staged)) {
+				try {
+					STAGING.wait();
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for " +
+						staged);
+				}
+			}
+		}
+		FileChannel channel = null;
+		try {
+			// NB: The staging file itself is renamed on commit, so a separate
+			// lock file is needed. It is never deleted, as another process might
+			// be waiting to lock it.
+			channel = FileChannel.open(new File(staged.getPath() + LOCK_SUFFIX)
+				.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			channel.lock();
+			synchronized (stagingLocks) {
+				stagingLocks.put(staged, channel);
+			}
+		}
+		catch (final IOException | RuntimeException exc) {
+			if (channel != null) channel.close();
+			unmark(staged);
+			throw exc;
+		}
+	}
+
+	/** Unlocks the given staging file, if it is locked by this cache. */
+	private void unlock(final File staged) {
+		final FileChannel channel;
+		synchronized (stagingLocks) {
+			channel = stagingLocks.remove(staged);
+		}
+		if (channel == null) return;
+		try {
+			// NB: Closing the channel releases its lock.
+			channel.close();
+		}
+		catch (final IOException exc) {
+			// NB: The lock is released by the operating system regardless.
+		}
+		unmark(staged);
+	}
+
+	/** Lets others within this JVM lock the given staging file. */
+	private static void unmark(final File staged) {
+		synchronized (STAGING) {
+			STAGING.remove(staged);
+			STAGING.notifyAll();
+		}
+	}
+
+	/** Deletes the files of the entry with the given key. */
+	private void evict(final String key) {
+		if (key.startsWith(LEGACY_PREFIX)) {
+			final String hex = key.substring(LEGACY_PREFIX.length());
+			legacyFile(hex, DATA_SUFFIX).delete();
+			legacyFile(hex, CHECKSUM_SUFFIX).delete();
+			return;
+		}
+		cachedFile(key, DATA_SUFFIX).delete();
+		cachedFile(key, CHECKSUM_SUFFIX).delete();
+		cachedFile(key, METADATA_SUFFIX).delete();
+	}
+
+	/** Reads the metadata file of the given source, if there is a valid one. */
+	private CacheMetadata readMetadata(final Location source) {
+		final File cachedMetadata = cachedMetadata(source);
+		if (!cachedMetadata.exists()) return null;
+		final Properties props = new Properties();
+		try (final InputStream in = new FileInputStream(cachedMetadata)) {
+			props.load(in);
+			final String lastModified = props.getProperty("lastModified");
+			return new CacheMetadata(Long.parseLong(props.getProperty("length")),
+				lastModified == null ? null : new Date(Long.parseLong(lastModified)),
+				props.getProperty("checksum"), Long.parseLong(props.getProperty(
+					"validated")));
+		}
+		catch (final IOException | RuntimeException exc) {
+			// NB: Damaged metadata only mean that the source must be revalidated.
+			return null;
+		}
+	}
+
 	private File cachedData(final Location source) {
-		return cachedFile(source, ".data");
+		return cachedFile(key(source), DATA_SUFFIX);
 	}
 
 	private File cachedChecksum(final Location source) {
-		return cachedFile(source, ".checksum");
+		return cachedFile(key(source), CHECKSUM_SUFFIX);
+	}
+
+	private File cachedMetadata(final Location source) {
+		return cachedFile(key(source), METADATA_SUFFIX);
+	}
+
+	private File cachedFile(final String key, final String suffix) {
+		final File dir = new File(getBaseDirectory(), key.substring(0, 2));
+		return new File(dir, key + suffix);
+	}
+
+	/** Gets a file of the entry with the given legacy name. */
+	private File legacyFile(final String hex, final String suffix) {
+		return new File(getBaseDirectory(), hex + suffix);
+	}
+
+	/** Gets the name of the cache entry for the given source. */
+	private String key(final Location source) {
+		final String uri = source.getURI().toString();
+		return DigestUtils.hex(DigestUtils.sha256(DigestUtils.bytes(uri)));
 	}
 
-	private File cachedFile(final Location source, final String suffix) {
-		final String hexCode = Integer.toHexString(source.hashCode());
-		return new File(getBaseDirectory(), hexCode + suffix);
+	/** Creates a uniquely named temporary file beside the given file. */
+	private File createTempFile(final File file) throws IOException {
+		final File dir = file.getParentFile();
+		createDirectory(dir);
+		return File.createTempFile(file.getName() + ".", ".tmp", dir);
+	}
+
+	private void createDirectory(final File dir) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Cannot create directory: " + dir);
+		}
 	}
 }
@@ -0,0 +1,287 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.scijava.io.location.Location;
+import org.scijava.task.Task;
+
+/**
+ * Schedules the downloads of a {@link DefaultDownloadService}.
+ * <p>
+ * Submitted downloads are queued, and started in order of descending priority
+ * (first come, first served among equal priorities) while fewer than
+ * {@link #getMaxDownloads()} downloads are running overall, and fewer than
+ * {@link #getMaxDownloadsPerHost()} from the source's host. A queued download
+ * does not occupy a thread.
+ * </p>
+ * <p>
+ * Requests for a source which is already being downloaded are coalesced into
+ * that download (<em>single-flight</em>): once it completes, its result is
+ * copied locally to the destination of each such request, and a failure is
+ * reported to all of them. If the shared download is canceled, the coalesced
+ * requests are queued again on their own.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+class DownloadScheduler {
+
+	/** Copies the result of a completed download to another destination. */
+	interface Copier {
+
+		void copy(Location from, Location to, Task task) throws IOException;
+	}
+
+	/** Default maximum number of concurrently running downloads. */
+	static final int DEFAULT_MAX_DOWNLOADS = 8;
+
+	/** Default maximum number of concurrently running downloads per host. */
+	static final int DEFAULT_MAX_DOWNLOADS_PER_HOST = 4;
+
+	/** Orders requests by descending priority, then by submission. */
+	private static final Comparator<Request> ORDER = (r1, r2) -> {
+		final int c = Double.compare(r2.priority, r1.priority);
+		return c != 0 ? c : Long.compare(r1.sequence, r2.sequence);
+	};
+
+	private final Copier copier;
+
+	private int maxDownloads = DEFAULT_MAX_DOWNLOADS;
+	private int maxDownloadsPerHost = DEFAULT_MAX_DOWNLOADS_PER_HOST;
+
+	/** Requests waiting to be started. */
+	private final TreeSet<Request> queue = new TreeSet<>(ORDER);
+
+	/** Queued or running requests, by source URI. */
+	private final Map<URI, Request> flights = new HashMap<>();
+
+	/** Number of running requests, by host. */
+	private final Map<String, Integer> running = new HashMap<>();
+
+	private int runningCount;
+	private long sequence;
+
+	DownloadScheduler(final Copier copier) {
+		this.copier = copier;
+	}
+
+	// -- DownloadScheduler methods --
+
+	synchronized int getMaxDownloads() {
+		return maxDownloads;
+	}
+
+	void setMaxDownloads(final int maxDownloads) {
+		synchronized (this) {
+			this.maxDownloads = maxDownloads;
+		}
+		dispatch();
+	}
+
+	synchronized int getMaxDownloadsPerHost() {
+		return maxDownloadsPerHost;
+	}
+
+	void setMaxDownloadsPerHost(final int maxDownloadsPerHost) {
+		synchronized (this) {
+			this.maxDownloadsPerHost = maxDownloadsPerHost;
+		}
+		dispatch();
+	}
+
+	/**
+	 * Submits a download.
+	 *
+	 * @param source the source of the download
+	 * @param destination the destination of the download
+	 * @param result the location where the downloaded data will be available
+	 *          once the download is complete, e.g. its cache location
+	 * @param priority the priority of the download
+	 * @param task the task in which to run the download
+	 * @param body the code performing the download
+	 */
+	void submit(final Location source, final Location destination,
+		final Location result, final double priority, final Task task,
+		final Runnable body)
+	{
+		final URI uri = source.getURI();
+		final String host = uri == null || uri.getHost() == null ? "" : uri
+			.getHost();
+		final Request request;
+		synchronized (this) {
+			request = new Request(uri, host, destination, result, priority,
+				sequence++, task, body);
+		}
+		enqueue(request);
+		dispatch();
+	}
+
+	// -- Helper methods --
+
+	/** Queues the given request, or coalesces it into an existing flight. */
+	private synchronized void enqueue(final Request request) {
+		final Request flight = request.uri == null ? null : flights.get(
+			request.uri);
+		if (flight == null) {
+			if (request.uri != null) flights.put(request.uri, request);
+			queue.add(request);
+			return;
+		}
+		flight.followers.add(request);
+		if (request.priority > flight.priority && queue.remove(flight)) {
+			// NB: The shared download is as urgent as its most urgent request.
+			flight.priority = request.priority;
+			queue.add(flight);
+		}
+	}
+
+	/** Starts queued requests, as far as the limits allow. */
+	private void dispatch() {
+		final List<Request> started = new ArrayList<>();
+		synchronized (this) {
+			final Iterator<Request> iter = queue.iterator();
+			while (runningCount < maxDownloads && iter.hasNext()) {
+				final Request request = iter.next();
+				if (running.getOrDefault(request.host, 0) >= maxDownloadsPerHost) {
+					continue;
+				}
+				iter.remove();
+				runningCount++;
+				running.merge(request.host, 1, Integer::sum);
+				started.add(request);
+			}
+		}
+		for (final Request request : started) {
+			request.task.run(() -> execute(request));
+		}
+	}
+
+	private void execute(final Request request) {
+		Throwable failure = null;
+		try {
+			request.body.run();
+		}
+		catch (final RuntimeException | Error exc) {
+			failure = exc;
+			throw exc;
+		}
+		finally {
+			complete(request, failure);
+		}
+	}
+
+	/** Releases the slot of a finished request, and serves its followers. */
+	private void complete(final Request request, final Throwable failure)
+	{
+		final List<Request> followers;
+		synchronized (this) {
+			runningCount--;
+			running.merge(request.host, -1, Integer::sum);
+			if (running.get(request.host) <= 0) running.remove(request.host);
+			if (request.uri != null) flights.remove(request.uri, request);
+			followers = new ArrayList<>(request.followers);
+		}
+		if (request.task.isCanceled()) {
+			// NB: The shared download was abandoned; download on our own.
+			for (final Request follower : followers) {
+				enqueue(follower);
+			}
+		}
+		else {
+			for (final Request follower : followers) {
+				follower.task.run(() -> follow(request, failure, follower));
+			}
+		}
+		dispatch();
+	}
+
+	/** Provides the result of a completed request to a follower. */
+	private void follow(final Request request, final Throwable failure,
+		final Request follower)
+	{
+		if (failure instanceof Error) throw (Error) failure;
+		if (failure != null) throw (RuntimeException) failure;
+		if (follower.task.isCanceled()) return;
+		if (request.result.equals(follower.destination)) return;
+		follower.task.setStatusMessage("Retrieving " + follower.uri);
+		try {
+			copier.copy(request.result, follower.destination, follower.task);
+		}
+		catch (final IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+	}
+
+	// -- Helper classes --
+
+	private static class Request {
+
+		private final URI uri;
+		private final String host;
+		private final Location destination;
+		private final Location result;
+		private final long sequence;
+		private final Task task;
+		private final Runnable body;
+		private double priority;
+
+		/** Requests coalesced into this one. */
+		private final List<Request> followers = new ArrayList<>();
+
+		private Request(final URI uri, final String host,
+			final Location destination, final Location result,
+			final double priority, final long sequence, final Task task,
+			final Runnable body)
+		{
+			this.uri = uri;
+			this.host = host;
+			this.destination = destination;
+			this.result = result;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.task = task;
+			this.body = body;
+		}
+	}
+}
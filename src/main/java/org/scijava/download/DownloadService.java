@@ -32,6 +32,7 @@
 
 package org.scijava.download;
 
+import org.scijava.Priority;
 import org.scijava.io.location.Location;
 import org.scijava.service.SciJavaService;
 
@@ -62,4 +63,26 @@ public interface DownloadService extends SciJavaService {
 	 *          stored for next time.
 	 */
 	Download download(Location source, Location destination, LocationCache cache);
+
+	/**
+	 * Downloads data from the given source, storing it into the given
+	 * destination, with the given priority relative to other downloads.
+	 * <p>
+	 * Implementations may queue downloads, e.g. to limit the number of
+	 * concurrent connections, in which case downloads with higher priority are
+	 * started first. By default, the priority is ignored.
+	 * </p>
+	 *
+	 * @param source The location of the needed data.
+	 * @param destination The location where the needed data should be stored.
+	 * @param cache The cache from which already-downloaded data should be pulled
+	 *          preferentially, and to which newly-downloaded data should be
+	 *          stored for next time. May be null.
+	 * @param priority The priority of the download; see {@link Priority}.
+	 */
+	default Download download(final Location source, final Location destination,
+		final LocationCache cache, final double priority)
+	{
+		return download(source, destination, cache);
+	}
 }
@@ -76,4 +76,103 @@ public interface LocationCache {
 	 * @throws IOException If something goes wrong caching the checksum.
 	 */
 	void saveChecksum(Location source, String checksum) throws IOException;
+
+	/**
+	 * Loads the validator metadata recorded for the cached data of the given
+	 * source. By default, only the {@link #loadChecksum checksum} is known, and
+	 * the source is never considered validated.
+	 *
+	 * @param source The source location for which the metadata are desired.
+	 * @return The loaded metadata, or null if none are available.
+	 * @throws IOException If something goes wrong accessing the metadata.
+	 */
+	default CacheMetadata loadMetadata(final Location source)
+		throws IOException
+	{
+		final String checksum = loadChecksum(source);
+		return checksum == null ? null : new CacheMetadata(-1, null, checksum, 0);
+	}
+
+	/**
+	 * Records the validator metadata of the cached data of the given source,
+	 * e.g. after the data was (re)cached, or the source was found unchanged. By
+	 * default, only the {@link #saveChecksum checksum} is recorded.
+	 *
+	 * @param source The source location whose metadata should be recorded.
+	 * @param metadata The metadata to record.
+	 * @throws IOException If something goes wrong recording the metadata.
+	 */
+	default void saveMetadata(final Location source,
+		final CacheMetadata metadata) throws IOException
+	{
+		if (metadata.getChecksum() != null) {
+			saveChecksum(source, metadata.getChecksum());
+		}
+	}
+
+	/**
+	 * Gets a location to which fresh data for the given source can be written
+	 * before being published to the cache via {@link #commit}. Caches which
+	 * publish entries atomically return a separate location here; if it is the
+	 * same for each call, partially written data left behind by an interrupted
+	 * download can be resumed. By default, the data is written to the
+	 * {@link #cachedLocation} directly.
+	 *
+	 * @param source The source location whose data will be cached.
+	 * @return A writable {@link Location} for the data.
+	 * @throws IOException If something goes wrong preparing the location.
+	 */
+	default Location stagingLocation(final Location source) throws IOException {
+		return cachedLocation(source);
+	}
+
+	/**
+	 * Publishes data completely written to a {@link #stagingLocation} as the
+	 * cached data of the given source.
+	 *
+	 * @param source The source location whose data was written.
+	 * @param staged The staging location holding the complete data.
+	 * @throws IOException If something goes wrong publishing the data.
+	 */
+	default void commit(final Location source, final Location staged)
+		throws IOException
+	{
+		// NB: No action needed.
+	}
+
+	/**
+	 * Discards data (partially) written to a {@link #stagingLocation}, e.g.
+	 * because the transfer failed.
+	 *
+	 * @param source The source location whose data was written.
+	 * @param staged The staging location to discard.
+	 */
+	default void abort(final Location source, final Location staged) {
+		// NB: No action needed.
+	}
+
+	/**
+	 * Stops using a {@link #stagingLocation} whose data is neither committed
+	 * nor aborted, but kept, e.g. to resume an interrupted download later.
+	 * Caches which reserve staging locations for exclusive use, e.g. by locking
+	 * them, release them here, as well as on {@link #commit} and {@link #abort}.
+	 * Releasing a location which is no longer in use has no effect.
+	 *
+	 * @param source The source location whose data was written.
+	 * @param staged The staging location to release.
+	 */
+	default void release(final Location source, final Location staged) {
+		// NB: No action needed.
+	}
+
+	/**
+	 * Records that the cached data of the given source was used, for caches
+	 * which evict least recently used data.
+	 *
+	 * @param source The source location whose cached data was used.
+	 * @throws IOException If something goes wrong recording the access.
+	 */
+	default void touch(final Location source) throws IOException {
+		// NB: No action needed.
+	}
 }
@@ -0,0 +1,361 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.task.Task;
+import org.scijava.thread.ThreadService;
+
+/**
+ * A resumable transfer of data from a source to an output {@link Location},
+ * performed by {@link DefaultDownloadService}.
+ * <p>
+ * The data is transferred in fixed-size blocks, whose completion is recorded
+ * in a {@link TransferState}. Each {@link #attempt()} resumes where the
+ * previous one stopped, as long as the source is unchanged. For outputs which
+ * are files, the state is also persisted to a sidecar file, so that even a new
+ * transfer (e.g., after a restart of the application) resumes from the last
+ * verified block.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+class Transfer {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Minimum time in milliseconds between persisting the state. */
+	private static final long SAVE_INTERVAL = 1000;
+
+	private final DataHandleService dataHandleService;
+	private final ThreadService threadService;
+	private final Location source;
+	private final Location output;
+	private final Task task;
+	private final int segmentCount;
+	private final long minimumSegmentSize;
+	private final int blockSize;
+
+	/** Sidecar file persisting the state, or null if not persisted. */
+	private final File sidecar;
+
+	private TransferState state;
+	private long lastSave;
+
+	/** Bytes transferred so far, including those of earlier attempts. */
+	private final AtomicLong progress = new AtomicLong();
+
+	Transfer(final DataHandleService dataHandleService,
+		final ThreadService threadService, final Location source,
+		final Location output, final Task task, final int segmentCount,
+		final long minimumSegmentSize, final int blockSize)
+	{
+		this.dataHandleService = dataHandleService;
+		this.threadService = threadService;
+		this.source = source;
+		this.output = output;
+		this.task = task;
+		this.segmentCount = segmentCount;
+		this.minimumSegmentSize = minimumSegmentSize;
+		this.blockSize = blockSize;
+		sidecar = output instanceof FileLocation ? //
+			TransferState.sidecar(((FileLocation) output).getFile()) : null;
+	}
+
+	// -- Transfer methods --
+
+	/** Gets whether partial data of this transfer can be resumed later. */
+	boolean isResumable() {
+		return sidecar != null;
+	}
+
+	/**
+	 * Transfers all data not yet transferred by earlier attempts.
+	 *
+	 * @throws IOException if the attempt fails; the state of the transfer is
+	 *           kept, so that another attempt resumes where this one stopped.
+	 */
+	void attempt() throws IOException {
+		try (final DataHandle<Location> in = dataHandleService.create(source);
+				final DataHandle<Location> out = dataHandleService.create(output))
+		{
+			final long length = in.length();
+			final String validator = validator(in);
+			prepare(out, length, validator);
+
+			task.setProgressMaximum(Math.max(length, 0));
+			progress.set(state.completedBytes());
+			task.setProgressValue(progress.get());
+
+			if (!fetchSegmented(in, out, length, validator)) {
+				fetchSequential(in, out, length);
+			}
+			if (task.isCanceled() || length < 0) return;
+
+			// Verify that the transferred blocks cover the whole source.
+			final long completed = state.completedBytes();
+			if (completed != length) {
+				throw new IOException("Incomplete download of " + source.getURI() +
+					": " + completed + " of " + length + " bytes");
+			}
+			if (out.length() > length) out.setLength(length);
+		}
+		finally {
+			save(true);
+		}
+	}
+
+	/** Discards the persisted state, once the transfer is complete. */
+	void finish() {
+		if (sidecar != null) sidecar.delete();
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Initializes the state of the transfer, resuming the persisted state if it
+	 * matches the current version of the source.
+	 */
+	private void prepare(final DataHandle<Location> out, final long length,
+		final String validator) throws IOException
+	{
+		if (state == null && sidecar != null && out.isReadable()) {
+			final TransferState persisted = TransferState.load(sidecar);
+			if (persisted != null && persisted.matches(validator, length)) {
+				// NB: The output may have been modified since the state was saved.
+				persisted.verify(out);
+				state = persisted;
+			}
+		}
+		if (state == null || !state.matches(validator, length)) {
+			state = new TransferState(validator, length, blockSize);
+		}
+	}
+
+	/**
+	 * Transfers the remaining blocks as a single stream, starting from the
+	 * first incomplete block.
+	 */
+	private void fetchSequential(final DataHandle<Location> in,
+		final DataHandle<Location> out, final long length) throws IOException
+	{
+		final int size = state.blockSize();
+		int block = state.contiguousBlocks();
+		final long start = (long) block * size;
+		in.seek(start);
+		out.seek(start);
+
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		final CRC32 crc = new CRC32();
+		long fill = 0;
+		while (!task.isCanceled()) {
+			final int r = in.read(buffer, 0, (int) Math.min(buffer.length, size -
+				fill));
+			if (r <= 0) break; // EOF
+			out.write(buffer, 0, r);
+			crc.update(buffer, 0, r);
+			fill += r;
+			if (!state.isComplete(block)) advance(r);
+			if (fill == size) {
+				complete(block++, crc.getValue(), fill);
+				crc.reset();
+				fill = 0;
+			}
+		}
+		if (task.isCanceled()) return;
+		final long end = (long) block * size + fill;
+		// NB: A short final block is only complete if it ends the source.
+		if (fill > 0 && (length < 0 || end == length)) {
+			complete(block, crc.getValue(), fill);
+		}
+		if (length < 0 && out.length() > end) out.setLength(end);
+	}
+
+	/**
+	 * Transfers the remaining blocks in concurrent segments, if the source
+	 * supports ranged access and enough data remains.
+	 *
+	 * @return False if the transfer is not suitable for segments.
+	 */
+	private boolean fetchSegmented(final DataHandle<Location> in,
+		final DataHandle<Location> out, final long length, final String validator)
+		throws IOException
+	{
+		if (length < 0 || !in.supportsRangedAccess()) return false;
+		final int size = state.blockSize();
+		final int blockCount = (int) ((length + size - 1) / size);
+		final List<Integer> missing = new ArrayList<>();
+		for (int b = 0; b < blockCount; b++) {
+			if (!state.isComplete(b)) missing.add(b);
+		}
+		final long remaining = length - state.completedBytes();
+		final int segments = (int) Math.min(Math.min(segmentCount, missing.size()),
+			remaining / minimumSegmentSize);
+		if (segments < 2) return false;
+
+		out.setLength(length);
+		if (out.length() < length) {
+			// NB: The output cannot be pre-sized, so must be written sequentially.
+			return false;
+		}
+
+		final List<Future<?>> futures = new ArrayList<>(segments);
+		for (int i = 0; i < segments; i++) {
+			final List<Integer> blocks = missing.subList(missing.size() * i /
+				segments, missing.size() * (i + 1) / segments);
+			futures.add(threadService.run(() -> {
+				fetchBlocks(blocks, length, validator, out);
+				return null;
+			}));
+		}
+		try {
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (final InterruptedException exc) {
+			throw new IOException("Download interrupted: " + source.getURI(), exc);
+		}
+		catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			throw new IOException("Download failed: " + source.getURI(), cause);
+		}
+		finally {
+			// NB: Stop any remaining segments if one of them failed.
+			for (final Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Transfers the given blocks of the source to the same ranges of the output,
+	 * using a handle of its own to the source.
+	 */
+	private void fetchBlocks(final List<Integer> blocks, final long length,
+		final String validator, final DataHandle<Location> out) throws IOException
+	{
+		try (final DataHandle<Location> in = dataHandleService.create(source)) {
+			// NB: Each segment may fetch data from a different request; make sure
+			// all of them see the same version of the source.
+			if (in.length() != length || !Objects.equals(validator(in), validator)) {
+				throw new IOException("Source changed during download: " + source
+					.getURI());
+			}
+			final int size = state.blockSize();
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			final CRC32 crc = new CRC32();
+			for (final int block : blocks) {
+				final long start = (long) block * size;
+				final long end = Math.min(start + size, length);
+				in.seek(start);
+				crc.reset();
+				long pos = start;
+				while (pos < end) {
+					if (task.isCanceled()) return;
+					final int r = in.read(buffer, 0, (int) Math.min(buffer.length, end -
+						pos));
+					if (r <= 0) {
+						throw new EOFException("Premature end of " + source.getURI() +
+							" at " + pos);
+					}
+					synchronized (out) {
+						out.seek(pos);
+						out.write(buffer, 0, r);
+					}
+					crc.update(buffer, 0, r);
+					pos += r;
+					advance(r);
+				}
+				complete(block, crc.getValue(), end - start);
+			}
+		}
+	}
+
+	private void advance(final long count) {
+		task.setProgressValue(progress.addAndGet(count));
+	}
+
+	private void complete(final int block, final long crc, final long size) {
+		state.complete(block, crc, size);
+		save(false);
+	}
+
+	/** Persists the state, at most once per {@link #SAVE_INTERVAL} unless forced. */
+	private void save(final boolean force) {
+		if (sidecar == null || state == null || !state.isPersistable()) return;
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			if (!force && now - lastSave < SAVE_INTERVAL) return;
+			lastSave = now;
+		}
+		try {
+			state.save(sidecar);
+		}
+		catch (final IOException exc) {
+			// NB: Failing to persist the state only means we cannot resume later.
+		}
+	}
+
+	/**
+	 * Gets a value identifying the version of the source: its checksum if
+	 * available, otherwise its last modification time.
+	 *
+	 * @return The validator, or null if the source cannot be identified.
+	 */
+	private static String validator(final DataHandle<Location> in)
+		throws IOException
+	{
+		final String checksum = in.checksum();
+		if (checksum != null) return checksum;
+		final Date lastModified = in.lastModified();
+		return lastModified == null ? null : "modified:" + lastModified.getTime();
+	}
+}
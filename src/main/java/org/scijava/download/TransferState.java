@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.scijava.io.handle.DataHandle;
+
+/**
+ * State of a (possibly partial) transfer, recording which fixed-size blocks of
+ * the source have been written to the output, along with the CRC-32 of each
+ * such block.
+ * <p>
+ * The state can be persisted to a sidecar file next to the output, so that an
+ * interrupted transfer can be resumed later: if the source still matches the
+ * recorded validator and length, the recorded blocks are verified against the
+ * output, and only the remaining ones need to be fetched again.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+class TransferState {
+
+	/** Suffix of the sidecar file holding the state of an output file. */
+	static final String SUFFIX = ".download";
+
+	private final String validator;
+	private final long length;
+	private final int blockSize;
+
+	/** CRC-32 and size of each completed block, by block index. */
+	private final Map<Integer, long[]> blocks = new TreeMap<>();
+
+	TransferState(final String validator, final long length,
+		final int blockSize)
+	{
+		this.validator = validator;
+		this.length = length;
+		this.blockSize = blockSize;
+	}
+
+	// -- TransferState methods --
+
+	/** Gets the sidecar file for the given output file. */
+	static File sidecar(final File output) {
+		return new File(output.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Loads the state persisted in the given sidecar file.
+	 *
+	 * @return The state, or null if no (readable) state is present.
+	 */
+	static TransferState load(final File sidecar) {
+		if (!sidecar.isFile()) return null;
+		final Properties props = new Properties();
+		try (final InputStream in = new FileInputStream(sidecar)) {
+			props.load(in);
+			final TransferState state = new TransferState(props.getProperty(
+				"validator"), Long.parseLong(props.getProperty("length")), Integer
+					.parseInt(props.getProperty("blockSize")));
+			for (final String key : props.stringPropertyNames()) {
+				if (!key.startsWith("block.")) continue;
+				final String[] value = props.getProperty(key).split(":");
+				state.blocks.put(Integer.parseInt(key.substring(6)), new long[] {
+					Long.parseLong(value[0], 16), Long.parseLong(value[1]) });
+			}
+			return state;
+		}
+		catch (final IOException | RuntimeException exc) {
+			// NB: A damaged state only means that we cannot resume.
+			return null;
+		}
+	}
+
+	/** Persists this state atomically to the given sidecar file. */
+	synchronized void save(final File sidecar) throws IOException {
+		final Properties props = new Properties();
+		props.setProperty("validator", validator);
+		props.setProperty("length", "" + length);
+		props.setProperty("blockSize", "" + blockSize);
+		for (final Map.Entry<Integer, long[]> entry : blocks.entrySet()) {
+			final long[] block = entry.getValue();
+			props.setProperty("block." + entry.getKey(), //
+				Long.toHexString(block[0]) + ":" + block[1]);
+		}
+		final File temp = File.createTempFile(sidecar.getName() + ".", ".tmp",
+			sidecar.getAbsoluteFile().getParentFile());
+		try {
+			try (final OutputStream out = new FileOutputStream(temp)) {
+				props.store(out, null);
+			}
+			DiskLocationCache.moveAtomically(temp, sidecar);
+		}
+		finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Gets whether this state belongs to the same version of the source as the
+	 * given validator and length describe.
+	 */
+	boolean matches(final String otherValidator, final long otherLength) {
+		return validator != null && validator.equals(otherValidator) &&
+			length == otherLength;
+	}
+
+	/** Gets whether this state can be persisted and later resumed. */
+	boolean isPersistable() {
+		return validator != null;
+	}
+
+	int blockSize() {
+		return blockSize;
+	}
+
+	/** Records the given block as completely written. */
+	synchronized void complete(final int block, final long crc,
+		final long size)
+	{
+		blocks.put(block, new long[] { crc, size });
+	}
+
+	synchronized boolean isComplete(final int block) {
+		return blocks.containsKey(block);
+	}
+
+	/** Gets the number of consecutive completed blocks from the start. */
+	synchronized int contiguousBlocks() {
+		int count = 0;
+		while (blocks.containsKey(count))
+			count++;
+		return count;
+	}
+
+	/** Gets the total number of bytes in completed blocks. */
+	synchronized long completedBytes() {
+		long total = 0;
+		for (final long[] block : blocks.values()) {
+			total += block[1];
+		}
+		return total;
+	}
+
+	/**
+	 * Rereads all completed blocks from the given output, forgetting those whose
+	 * contents no longer match their recorded checksum.
+	 */
+	synchronized void verify(final DataHandle<?> output) throws IOException {
+		final byte[] buffer = new byte[64 * 1024];
+		final CRC32 crc = new CRC32();
+		blocks.entrySet().removeIf(entry -> {
+			try {
+				final long size = entry.getValue()[1];
+				output.seek((long) entry.getKey() * blockSize);
+				crc.reset();
+				long remaining = size;
+				while (remaining > 0) {
+					final int r = output.read(buffer, 0, (int) Math.min(buffer.length,
+						remaining));
+					if (r <= 0) return true;
+					crc.update(buffer, 0, r);
+					remaining -= r;
+				}
+				return crc.getValue() != entry.getValue()[0];
+			}
+			catch (final IOException exc) {
+				return true;
+			}
+		});
+	}
+}
@@ -30,194 +30,280 @@
  * #L%
  */
 
+
 package org.scijava.event;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 
-import org.bushe.swing.event.CleanupEvent;
-import org.bushe.swing.event.ThreadSafeEventService;
 import org.scijava.log.LogService;
 import org.scijava.service.Service;
 import org.scijava.thread.ThreadService;
 
 /**
- * An {@link org.bushe.swing.event.EventService} implementation for SciJava.
+ * The event bus of the SciJava {@link DefaultEventService}.
  * <p>
  * It is called "DefaultEventBus" rather than "DefaultEventService" to avoid a
- * name clash with {@link DefaultEventService}, which is not an
- * {@link org.bushe.swing.event.EventService} but rather a SciJava
- * {@link Service} implementation.
+ * name clash with {@link DefaultEventService}, which is the SciJava
+ * {@link Service} implementation using it.
+ * </p>
+ * <p>
+ * Subscribers to an event class receive all events of that class and its
+ * subclasses. For each concrete event class published, the bus keeps a
+ * dispatch table of all subscribers over the event type hierarchy. The tables
+ * are copied on write: they are rebuilt whenever a subscriber is added or
+ * removed, such that publishing an event takes no locks.
+ * </p>
+ * <p>
+ * By default, events published immediately are delivered on a dispatch thread
+ * of the {@link ThreadService}, blocking the publishing thread meanwhile. In
+ * {@link #setSynchronous synchronous} mode, they are delivered on the
+ * publishing thread instead.
  * </p>
  * 
  * @author Curtis Rueden
  */
-public class DefaultEventBus extends ThreadSafeEventService {
+public class DefaultEventBus {
+
+	private static final EventSubscriber<?>[] NO_SUBSCRIBERS = {};
 
 	private final ThreadService threadService;
 	private final LogService log;
 
+	private volatile boolean synchronous;
+
+	/** The subscribers of each subscribed type, guarded by itself. */
+	private final Map<Class<?>, List<EventSubscriber<?>>> subscriptions =
+		new HashMap<>();
+
+	/** The dispatch table of each published class; replaced on write. */
+	private volatile Map<Class<?>, EventSubscriber<?>[]> tables =
+		Collections.emptyMap();
+
+	/** Identifies subscribers which are no longer needed, if any. */
+	private Predicate<EventSubscriber<?>> expiry;
+
 	public DefaultEventBus(final ThreadService threadService,
 		final LogService log)
 	{
-		super(200L, false, null, null, null);
 		this.threadService = threadService;
 		this.log = log;
 	}
 
 	// -- DefaultEventBus methods --
 
-	public void publishNow(final Object event) {
-		if (event == null) {
-			throw new IllegalArgumentException("Cannot publish null event.");
-		}
-		publishNow(event, null, null, getSubscribers(event.getClass()),
-			getVetoSubscribers(event.getClass()), null);
+	/** Gets whether events are delivered on the publishing thread. */
+	public boolean isSynchronous() {
+		return synchronous;
 	}
 
-	public void publishNow(final Type genericType, final Object event) {
-		if (genericType == null) {
-			throw new IllegalArgumentException("genericType must not be null.");
+	/**
+	 * Sets whether events published immediately are delivered on the
+	 * publishing thread, rather than on a dispatch thread of the
+	 * {@link ThreadService}.
+	 */
+	public void setSynchronous(final boolean synchronous) {
+		this.synchronous = synchronous;
+	}
+
+	/**
+	 * Publishes the given event immediately, blocking until all subscribers
+	 * received it.
+	 */
+	public void publishNow(final SciJavaEvent event) {
+		final EventSubscriber<?>[] subscribers = table(eventClass(event));
+		if (subscribers.length == 0) return;
+		if (synchronous) {
+			deliver(event, subscribers);
+			return;
 		}
-		if (event == null) {
-			throw new IllegalArgumentException("Cannot publish null event.");
+		try {
+			threadService.invoke(() -> deliver(event, subscribers));
+		}
+		catch (final InterruptedException exc) {
+			log.error(exc);
+		}
+		catch (final InvocationTargetException exc) {
+			log.error(exc);
 		}
-		publishNow(event, null, null, getSubscribers(genericType), null, null);
 	}
 
-	public void publishNow(final String topicName, final Object eventObj) {
-		publishNow(null, topicName, eventObj, getSubscribers(topicName),
-			getVetoEventListeners(topicName), null);
+	/**
+	 * Queues the given event for publication on a separate thread, returning
+	 * immediately.
+	 */
+	public void publishLater(final SciJavaEvent event) {
+		final EventSubscriber<?>[] subscribers = table(eventClass(event));
+		if (subscribers.length == 0) return;
+		threadService.run(() -> deliver(event, subscribers));
 	}
 
-	public void publishLater(final Object event) {
-		if (event == null) {
-			throw new IllegalArgumentException("Cannot publish null event.");
+	/**
+	 * Subscribes the given subscriber to events of the given class and its
+	 * subclasses.
+	 *
+	 * @return True if the subscriber was added; false if it was already
+	 *         subscribed to the given class.
+	 */
+	public <E extends SciJavaEvent> boolean subscribe(final Class<E> c,
+		final EventSubscriber<E> subscriber)
+	{
+		if (c == null) throw new NullPointerException("Null event class");
+		if (subscriber == null) throw new NullPointerException("Null subscriber");
+		synchronized (subscriptions) {
+			final List<EventSubscriber<?>> list = subscriptions.computeIfAbsent(c,
+				k -> new ArrayList<>());
+			if (list.contains(subscriber)) return false;
+			list.add(subscriber);
+			rebuild();
 		}
-		publishLater(event, null, null, getSubscribers(event.getClass()),
-			getVetoSubscribers(event.getClass()), null);
+		return true;
 	}
 
-	public void publishLater(final Type genericType, final Object event) {
-		if (genericType == null) {
-			throw new IllegalArgumentException("genericType must not be null.");
-		}
-		if (event == null) {
-			throw new IllegalArgumentException("Cannot publish null event.");
+	/**
+	 * Unsubscribes the given subscriber from events of the given class.
+	 *
+	 * @return True if the subscriber was removed; false if it was not
+	 *         subscribed to the given class.
+	 */
+	public <E extends SciJavaEvent> boolean unsubscribe(final Class<E> c,
+		final EventSubscriber<E> subscriber)
+	{
+		synchronized (subscriptions) {
+			final List<EventSubscriber<?>> list = subscriptions.get(c);
+			if (list == null || !list.remove(subscriber)) return false;
+			if (list.isEmpty()) subscriptions.remove(c);
+			rebuild();
 		}
-		publishLater(event, null, null, getSubscribers(genericType), null, null);
+		return true;
 	}
 
-	public void publishLater(final String topicName, final Object eventObj) {
-		publishLater(null, topicName, eventObj, getSubscribers(topicName),
-			getVetoEventListeners(topicName), null);
+	/**
+	 * Gets the subscribers which receive events of the given class, including
+	 * the subscribers to its supertypes.
+	 */
+	public <E extends SciJavaEvent> List<EventSubscriber<E>> getSubscribers(
+		final Class<E> c)
+	{
+		final List<EventSubscriber<E>> list = new ArrayList<>();
+		for (final EventSubscriber<?> subscriber : table(c)) {
+			@SuppressWarnings("unchecked")
+			final EventSubscriber<E> typed = (EventSubscriber<E>) subscriber;
+			list.add(typed);
+		}
+		return list;
 	}
 
-	// -- org.bushe.swing.event.EventService methods --
-
-	@Override
-	public void publish(final Object event) {
-		// HACK: Work around a deadlock problem caused by ThreadSafeEventService:
-
-		// 1) The ThreadSafeEventService superclass has a special cleanup thread
-		// that takes care of cleaning up stale references. Every time it runs, it
-		// publishes some CleanupEvents using publish(Object) to announce that this
-		// is occurring. Normally, such publication delegates to
-		// publishNow, which calls ThreadService#invoke, which calls
-		// EventQueue.invokeAndWait, which queues the publication for execution on
-		// the EDT and then blocks until publication is complete.
-
-		// 2) When the ThreadSafeEventService publishes the CleanupEvents, it does
-		// so inside a synchronized block that locks on a "listenerLock" object.
-
-		// 3) Unfortunately, since the CleanupEvent publication is merely *queued*,
-		// any other pending operations on the EDT happen first. If one such
-		// operation meanwhile calls e.g.
-		// ThreadSafeEventService#getSubscribers(Class<T>), it will deadlock because
-		// those getter methods are also synchronized on the listenerLock object.
-
-		// Hence, our hack workaround is to instead use publishLater for the
-		// CleanupEvents, since no one really cares about them anyway. ;-)
-
-		if (event instanceof CleanupEvent) {
-			publishLater(event);
-			return;
+	/** Removes all subscribers. */
+	public void clearAllSubscribers() {
+		synchronized (subscriptions) {
+			subscriptions.clear();
+			tables = Collections.emptyMap();
 		}
-
-		publishNow(event);
 	}
 
-	@Override
-	public void publish(final Type genericType, final Object event) {
-		publishNow(genericType, event);
-	}
+	// -- Internal methods --
 
-	@Override
-	public void publish(final String topicName, final Object eventObj) {
-		publishNow(topicName, eventObj);
+	/**
+	 * Sets the condition under which subscribers are no longer needed. Such
+	 * subscribers are removed whenever the subscriptions change.
+	 */
+	void setExpiry(final Predicate<EventSubscriber<?>> expiry) {
+		synchronized (subscriptions) {
+			this.expiry = expiry;
+		}
 	}
 
-	// -- Internal methods --
+	// -- Helper methods --
 
-	@Override
-	protected void publish(final Object event, final String topic,
-		final Object eventObj,
-		@SuppressWarnings("rawtypes") final List subscribers,
-		@SuppressWarnings("rawtypes") final List vetoSubscribers,
-		final StackTraceElement[] callingStack)
-	{
-		publishNow(event, topic, eventObj, subscribers, vetoSubscribers,
-			callingStack);
+	private Class<?> eventClass(final SciJavaEvent event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Cannot publish null event.");
+		}
+		return event.getClass();
 	}
 
-	// -- Helper methods --
+	/** Gets the dispatch table of the given class, building it if needed. */
+	private EventSubscriber<?>[] table(final Class<?> c) {
+		final EventSubscriber<?>[] table = tables.get(c);
+		if (table != null) return table;
+		synchronized (subscriptions) {
+			final Map<Class<?>, EventSubscriber<?>[]> current = tables;
+			final EventSubscriber<?>[] existing = current.get(c);
+			if (existing != null) return existing;
+			final EventSubscriber<?>[] built = build(c);
+			final Map<Class<?>, EventSubscriber<?>[]> copy = new HashMap<>(current);
+			copy.put(c, built);
+			tables = copy;
+			return built;
+		}
+	}
 
-	private void publishNow(final Object event, final String topic,
-		final Object eventObj,
-		@SuppressWarnings("rawtypes") final List subscribers,
-		@SuppressWarnings("rawtypes") final List vetoSubscribers,
-		final StackTraceElement[] callingStack)
-	{
-		if (subscribers == null || subscribers.isEmpty()) return;
-		try {
-			threadService.invoke(new Runnable() {
-
-				@Override
-				public void run() {
-					log.debug("publish(" + event + "," + topic + "," + eventObj +
-						"), called from non-EDT Thread:" + Arrays.toString(callingStack));
-					DefaultEventBus.super.publish(event, topic, eventObj, subscribers,
-						vetoSubscribers, callingStack);
-				}
-			});
+	/**
+	 * Removes expired subscribers, then rebuilds the dispatch tables of all
+	 * published classes.
+	 */
+	private void rebuild() {
+		if (expiry != null) {
+			final Iterator<List<EventSubscriber<?>>> iter = subscriptions.values()
+				.iterator();
+			while (iter.hasNext()) {
+				final List<EventSubscriber<?>> list = iter.next();
+				list.removeIf(expiry);
+				if (list.isEmpty()) iter.remove();
+			}
 		}
-		catch (final InterruptedException exc) {
-			log.error(exc);
+		final Map<Class<?>, EventSubscriber<?>[]> copy = new HashMap<>();
+		for (final Class<?> c : tables.keySet()) {
+			copy.put(c, build(c));
 		}
-		catch (final InvocationTargetException exc) {
-			log.error(exc);
+		tables = copy;
+	}
+
+	/** Collects the subscribers to the given class and its supertypes. */
+	private EventSubscriber<?>[] build(final Class<?> c) {
+		final Set<EventSubscriber<?>> table = new LinkedHashSet<>();
+		final Set<Class<?>> visited = new HashSet<>();
+		final Deque<Class<?>> types = new ArrayDeque<>();
+		types.add(c);
+		while (!types.isEmpty()) {
+			final Class<?> type = types.remove();
+			if (!visited.add(type)) continue;
+			final List<EventSubscriber<?>> list = subscriptions.get(type);
+			if (list != null) table.addAll(list);
+			if (type.getSuperclass() != null) types.add(type.getSuperclass());
+			types.addAll(Arrays.asList(type.getInterfaces()));
 		}
+		return table.isEmpty() ? NO_SUBSCRIBERS : table.toArray(NO_SUBSCRIBERS);
 	}
 
-	private void publishLater(final Object event, final String topic,
-		final Object eventObj,
-		@SuppressWarnings("rawtypes") final List subscribers,
-		@SuppressWarnings("rawtypes") final List vetoSubscribers,
-		final StackTraceElement[] callingStack)
+	private void deliver(final SciJavaEvent event,
+		final EventSubscriber<?>[] subscribers)
 	{
-		if (subscribers == null || subscribers.isEmpty()) return;
-		threadService.run(new Runnable() {
-
-			@Override
-			public void run() {
-				log.debug("publish(" + event + "," + topic + "," + eventObj +
-					"), called from non-EDT Thread:" + Arrays.toString(callingStack));
-				DefaultEventBus.super.publish(event, topic, eventObj, subscribers,
-					vetoSubscribers, callingStack);
+		if (log.isDebug()) log.debug("publish(" + event + ")");
+		for (final EventSubscriber<?> subscriber : subscribers) {
+			try {
+				@SuppressWarnings("unchecked")
+				final EventSubscriber<SciJavaEvent> typed =
+					(EventSubscriber<SciJavaEvent>) subscriber;
+				typed.onEvent(event);
 			}
-		});
+			catch (final Throwable t) {
+				log.error("Exception delivering " + event + " to " + subscriber, t);
+			}
+		}
 	}
 
 }
@@ -32,6 +32,7 @@
 
 package org.scijava.event;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -41,11 +42,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
-import org.bushe.swing.event.annotation.AbstractProxySubscriber;
-import org.bushe.swing.event.annotation.BaseProxySubscriber;
-import org.bushe.swing.event.annotation.ReferenceStrength;
 import org.scijava.Priority;
 import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
@@ -76,6 +73,13 @@ public class DefaultEventService extends AbstractService implements
 	 */
 	public static final double PRIORITY = 10 * Priority.VERY_HIGH;
 
+	/**
+	 * System property selecting where events are delivered: {@code dispatch}
+	 * (the default) delivers them on a dispatch thread of the
+	 * {@link ThreadService}, {@code sync} on the publishing thread.
+	 */
+	public static final String DISPATCH_PROPERTY = "scijava.event.dispatch";
+
 	@Parameter
 	private LogService log;
 
@@ -96,6 +100,23 @@ public class DefaultEventService extends AbstractService implements
 	 */
 	private final HashSet<String> keys = new HashSet<>();
 
+	// -- DefaultEventService methods --
+
+	/** Gets whether events are delivered on the publishing thread. */
+	public boolean isSynchronous() {
+		return eventBus.isSynchronous();
+	}
+
+	/**
+	 * Sets whether events published via {@link #publish} are delivered
+	 * synchronously on the publishing thread, rather than on a dispatch thread.
+	 * Handlers requesting the {@link EventHandler#dispatchThread() dispatch
+	 * thread} are called on a dispatch thread regardless.
+	 */
+	public void setSynchronous(final boolean synchronous) {
+		eventBus.setSynchronous(synchronous);
+	}
+
 	// -- EventService methods --
 
 	@Override
@@ -153,15 +174,7 @@ public class DefaultEventService extends AbstractService implements
 	public <E extends SciJavaEvent> List<EventSubscriber<E>> getSubscribers(
 		final Class<E> c)
 	{
-		// HACK - It appears that EventBus API is incorrect, in that
-		// EventBus#getSubscribers(Class<T>) returns a List<T> when it should
-		// actually be a List<EventSubscriber<T>>. This method works around the
-		// problem with casts.
-		@SuppressWarnings("rawtypes")
-		final List list = eventBus.getSubscribers(c);
-		@SuppressWarnings("unchecked")
-		final List<EventSubscriber<E>> typedList = list;
-		return typedList;
+		return eventBus.getSubscribers(c);
 	}
 
 	// -- Service methods --
@@ -169,6 +182,15 @@ public class DefaultEventService extends AbstractService implements
 	@Override
 	public void initialize() {
 		eventBus = new DefaultEventBus(threadService, log);
+		// NB: Purge the subscribers of garbage collected objects whenever the
+		// subscriptions change, not only when their events are published.
+		eventBus.setExpiry(subscriber -> subscriber instanceof ProxySubscriber &&
+			((ProxySubscriber<?>) subscriber).isExpired());
+		final String dispatch = System.getProperty(DISPATCH_PROPERTY, "dispatch");
+		if (dispatch.equalsIgnoreCase("sync")) eventBus.setSynchronous(true);
+		else if (!dispatch.equalsIgnoreCase("dispatch")) {
+			log.warn("Unknown " + DISPATCH_PROPERTY + ": " + dispatch);
+		}
 		super.initialize();
 	}
 
@@ -202,11 +224,30 @@ public class DefaultEventService extends AbstractService implements
 	private <E extends SciJavaEvent> EventSubscriber<E> subscribe(
 		final Class<E> c, final Object o, final Method m)
 	{
-		final ProxySubscriber<E> subscriber = new ProxySubscriber<>(c, o, m);
+		final ProxySubscriber<E> subscriber = new ProxySubscriber<>(c, reference(
+			c, o), m, m.getAnnotation(EventHandler.class).dispatchThread());
 		subscribe(c, subscriber);
 		return subscriber;
 	}
 
+	/**
+	 * Gets a weak reference to the given object, shared by all subscribers of
+	 * its handler methods to events of the given class. As the reference
+	 * identifies the object even once it was garbage collected, subscribers
+	 * can be compared consistently.
+	 */
+	private WeakReference<Object> reference(
+		final Class<? extends SciJavaEvent> c, final Object o)
+	{
+		for (final EventSubscriber<?> subscriber : eventBus.getSubscribers(c)) {
+			if (!(subscriber instanceof ProxySubscriber)) continue;
+			final WeakReference<Object> target =
+				((ProxySubscriber<?>) subscriber).target;
+			if (target.get() == o) return target;
+		}
+		return new WeakReference<>(o);
+	}
+
 	/** Gets the event class parameter of the given method. */
 	private Class<? extends SciJavaEvent> getEventClass(final Method m) {
 		// Check for a cached entry for the given method
@@ -229,62 +270,43 @@ public class DefaultEventService extends AbstractService implements
 		return typedClass;
 	}
 
-	// -- Event handlers garbage collection preventer --
-
-	private WeakHashMap<Object, List<ProxySubscriber<?>>> keepEm =
-			new WeakHashMap<>();
-
-	/**
-	 * Prevents {@link ProxySubscriber} instances from being garbage collected
-	 * prematurely.
-	 * <p>
-	 * We instantiate a {@link ProxySubscriber} for each method with an
-	 * {@link EventHandler} annotation. These instances are then passed to the
-	 * EventBus. The way the instances are created ensures that the event handlers
-	 * will be held only as weak references. But they are weak references to the
-	 * {@link ProxySubscriber} instances rather than the object containing the
-	 * {@link EventHandler}-annotated methods. Therefore, we have to make sure
-	 * that there is a non-GC'able reference to each {@link ProxySubscriber} as
-	 * long as there is a reference to the containing event handler object.
-	 * </p>
-	 * 
-	 * @param o the object containing {@link EventHandler}-annotated methods
-	 * @param subscriber a {@link ProxySubscriber} for a particular {@link EventHandler}
-	 */
-	private synchronized void keepIt(final Object o, final ProxySubscriber<?> subscriber) {
-		List<ProxySubscriber<?>> list = keepEm.get(o);
-		if (list == null) {
-			list = new ArrayList<>();
-			keepEm.put(o, list);
-		}
-		list.add(subscriber);
-	}
-
 	// -- Helper classes --
 
 	/**
-	 * Helper class used by {@link #subscribe(Object)}.
+	 * Helper class used by {@link #subscribe(Object)}, calling an
+	 * {@link EventHandler} method of an object.
 	 * <p>
-	 * Recapitulates some logic from {@link BaseProxySubscriber}, because that
-	 * class implements {@link org.bushe.swing.event.EventSubscriber} as a raw
-	 * type, which is incompatible with this class implementing SciJava's
-	 * {@link EventSubscriber} as a typed interface; it becomes impossible to
-	 * implement both {@code onEvent(Object)} and {@code onEvent(E)}.
+	 * The object is only weakly referenced, such that subscribing does not
+	 * prevent it from being garbage collected. Once it is, the subscriber is
+	 * removed upon the next event or change of subscriptions. Subscribers are
+	 * equal if they call the same method via the same reference.
 	 * </p>
 	 */
-	private class ProxySubscriber<E extends SciJavaEvent> extends
-		AbstractProxySubscriber implements EventSubscriber<E>
+	private class ProxySubscriber<E extends SciJavaEvent> implements
+		EventSubscriber<E>
 	{
 
 		private final Class<E> c;
+		private final WeakReference<Object> target;
+		private final Method method;
 
-		public ProxySubscriber(final Class<E> c, final Object o, final Method m) {
-			super(o, m, ReferenceStrength.WEAK, eventBus, false);
-			keepIt(o, this);
+		/** Whether the handler must be called on a dispatch thread. */
+		private final boolean dispatchThread;
+
+		/** Direct caller of the handler method. */
+		private final EventInvoker invoker;
+
+		public ProxySubscriber(final Class<E> c, final WeakReference<Object> target,
+			final Method m, final boolean dispatchThread)
+		{
 			this.c = c;
+			this.target = target;
+			method = m;
+			this.dispatchThread = dispatchThread;
 
 			// allow calling of non-public methods
 			m.setAccessible(true);
+			invoker = EventInvokers.get(m);
 		}
 
 		/**
@@ -295,23 +317,25 @@ public class DefaultEventService extends AbstractService implements
 		 */
 		@Override
 		public void onEvent(final E event) {
-			try {
-				final Object obj = getProxiedSubscriber();
-				if (obj == null) return; // has been garbage collected
-				getSubscriptionMethod().invoke(obj, event);
+			final Object obj = target.get();
+			if (obj == null) {
+				// has been garbage collected
+				eventBus.unsubscribe(c, this);
+				return;
 			}
-			catch (final IllegalAccessException exc) {
-				log.error("Exception during event handling:\n\t[Event] " +
-					event.getClass().getName() + ":" + event + "\n\t[Subscriber] " +
-					getProxiedSubscriber() + "\n\t[Method] " + getSubscriptionMethod(),
-					exc);
-			}
-			catch (final InvocationTargetException exc) {
-				log.error("Exception during event handling:\n\t[Event] " +
-					event.getClass().getName() + event + "\n\t[Subscriber] " +
-					getProxiedSubscriber() + "\n\t[Method] " + getSubscriptionMethod(),
-					exc.getCause());
+			if (dispatchThread && !threadService.isDispatchThread()) {
+				try {
+					threadService.invoke(() -> deliver(obj, event));
+				}
+				catch (final InterruptedException exc) {
+					log.error(exc);
+				}
+				catch (final InvocationTargetException exc) {
+					log.error("Exception during event handling", exc.getCause());
+				}
+				return;
 			}
+			deliver(obj, event);
 		}
 
 		@Override
@@ -319,6 +343,39 @@ public class DefaultEventService extends AbstractService implements
 			return c;
 		}
 
+		/** Gets whether the object was garbage collected. */
+		public boolean isExpired() {
+			return target.get() == null;
+		}
+
+		// -- Object methods --
+
+		@Override
+		public boolean equals(final Object o) {
+			if (o == this) return true;
+			if (!(o instanceof ProxySubscriber)) return false;
+			final ProxySubscriber<?> other = (ProxySubscriber<?>) o;
+			return method.equals(other.method) && target == other.target;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * method.hashCode() + System.identityHashCode(target);
+		}
+
+		// -- Helper methods --
+
+		private void deliver(final Object obj, final E event) {
+			try {
+				invoker.invoke(obj, event);
+			}
+			catch (final Throwable t) {
+				log.error("Exception during event handling:\n\t[Event] " +
+					event.getClass().getName() + ":" + event + "\n\t[Subscriber] " +
+					obj + "\n\t[Method] " + method, t);
+			}
+		}
+
 	}
 
 }
@@ -41,18 +41,6 @@ import java.lang.annotation.Target;
  * Annotation identifying an event handler method. This annotation allows a
  * class to subscribe to multiple types of events by implementing multiple event
  * handling methods and annotating each with @{@link EventHandler}.
- * <p>
- * Note to developers: This annotation serves exactly the same purpose as
- * EventBus's {@link org.bushe.swing.event.annotation.EventSubscriber}
- * annotation, recapitulating a subset of the same functionality. We do this to
- * avoid third party code depending directly on EventBus. That is, we do not
- * wish to require SciJava developers to {@code import org.bushe.swing.event.*}
- * or similar. In this way, EventBus is isolated as only a transitive dependency
- * of downstream code, rather than a direct dependency. Unfortunately, because
- * Java annotation interfaces cannot utilize inheritance, we have to
- * recapitulate the functionality rather than extend it (as we are able to do
- * with {@link EventSubscriber}).
- * </p>
  * 
  * @author Curtis Rueden
  * @see EventService
@@ -75,4 +63,14 @@ public @interface EventHandler {
 	 */
 	String key() default "";
 
+	/**
+	 * Whether the handler must be called on a dispatch thread, as identified by
+	 * {@link org.scijava.thread.ThreadService#isDispatchThread()}, e.g. because
+	 * it updates a user interface. Events published from other threads, e.g.
+	 * when the {@link EventService} delivers events synchronously on the
+	 * publishing thread, are then marshalled to a dispatch thread for this
+	 * handler.
+	 */
+	boolean dispatchThread() default false;
+
 }
@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.event;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Creates and caches an {@link EventInvoker} per {@link EventHandler} method.
+ * <p>
+ * Public instance methods of public classes visible to this class are called
+ * via a class generated with {@link LambdaMetafactory}, which the JIT compiler
+ * can inline like a direct call. Other methods are called via a
+ * {@link MethodHandle}. Either way, there is no argument array to allocate,
+ * and no access check per call.
+ * </p>
+ * <p>
+ * Invokers reference the classes declaring their methods, so they are only
+ * cached while in use, i.e. weakly, in a map keyed weakly by class. Unlike a
+ * {@link ClassValue}, the cache thus does not keep the class loaders of
+ * plugins or scripts alive once they subscribed a handler.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+final class EventInvokers {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodType INVOKE_TYPE = MethodType.methodType(
+		void.class, Object.class, Object.class);
+
+	/** The invokers in use of each class, by method signature. */
+	private static final Map<Class<?>, Map<String, //
+		WeakReference<EventInvoker>>> INVOKERS = new WeakHashMap<>();
+
+	private EventInvokers() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Gets the invoker of the given method, which must be accessible. The
+	 * invoker is only cached for as long as the caller references it.
+	 *
+	 * @throws IllegalArgumentException if the method is not accessible.
+	 */
+	static EventInvoker get(final Method m) {
+		final String signature = m.toString();
+		synchronized (INVOKERS) {
+			final Map<String, WeakReference<EventInvoker>> invokers = INVOKERS.get(m
+				.getDeclaringClass());
+			final WeakReference<EventInvoker> ref = invokers == null ? null
+				: invokers.get(signature);
+			final EventInvoker invoker = ref == null ? null : ref.get();
+			if (invoker != null) return invoker;
+		}
+		// NB: Created without the lock; a concurrent duplicate is harmless.
+		final EventInvoker invoker = create(m);
+		synchronized (INVOKERS) {
+			INVOKERS.computeIfAbsent(m.getDeclaringClass(), c -> new HashMap<>())
+				.put(signature, new WeakReference<>(invoker));
+		}
+		return invoker;
+	}
+
+	// -- Helper methods --
+
+	private static EventInvoker create(final Method m) {
+		final MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflect(m);
+		}
+		catch (final IllegalAccessException exc) {
+			throw new IllegalArgumentException("Inaccessible method: " + m, exc);
+		}
+		if (isLinkable(m)) {
+			try {
+				return generate(handle);
+			}
+			catch (final Throwable t) {
+				// NB: Fall back to the method handle.
+			}
+		}
+		final MethodHandle target = Modifier.isStatic(m.getModifiers()) ? //
+			MethodHandles.dropArguments(handle, 0, Object.class) : handle;
+		final MethodHandle exact = target.asType(INVOKE_TYPE);
+		// NB: A statement, for invokeExact to be called with a void return type.
+		return (obj, event) -> {
+			exact.invokeExact(obj, event);
+		};
+	}
+
+	private static EventInvoker generate(final MethodHandle handle)
+		throws Throwable
+	{
+		final CallSite site = LambdaMetafactory.metafactory(LOOKUP, "invoke",
+			MethodType.methodType(EventInvoker.class), INVOKE_TYPE, handle, handle
+				.type().changeReturnType(void.class));
+		return (EventInvoker) site.getTarget().invokeExact();
+	}
+
+	/**
+	 * Gets whether a class generated alongside this one can call the given
+	 * method directly.
+	 */
+	private static boolean isLinkable(final Method m) {
+		final int mods = m.getModifiers();
+		if (Modifier.isStatic(mods) || !Modifier.isPublic(mods)) return false;
+		if (!isVisible(m.getDeclaringClass())) return false;
+		for (final Class<?> type : m.getParameterTypes()) {
+			if (!isVisible(type)) return false;
+		}
+		return true;
+	}
+
+	/** Gets whether the given class is public and visible to this class. */
+	private static boolean isVisible(final Class<?> c) {
+		for (Class<?> t = c; t != null; t = t.getEnclosingClass()) {
+			if (!Modifier.isPublic(t.getModifiers())) return false;
+		}
+		try {
+			return Class.forName(c.getName(), false, EventInvokers.class
+				.getClassLoader()) == c;
+		}
+		catch (final ClassNotFoundException exc) {
+			return false;
+		}
+	}
+}
@@ -73,6 +73,13 @@ public interface EventService extends SciJavaService {
 	 * complete. This means that a chain of events published with a mixture of
 	 * {@link #publish} and {@link #publishLater} may result in event delivery in
 	 * an unintuitive order.
+	 * <p>
+	 * Implementations may also offer to deliver events synchronously on the
+	 * calling thread, regardless of the thread, which avoids a thread handoff
+	 * per publication. In that case, only handlers requesting the
+	 * {@link EventHandler#dispatchThread() dispatch thread} are called on a
+	 * dispatch thread.
+	 * </p>
 	 */
 	<E extends SciJavaEvent> void publish(E e);
 
@@ -46,11 +46,9 @@ package org.scijava.event;
  * @author Curtis Rueden
  * @param <E> Type of event for which to listen
  */
-public interface EventSubscriber<E extends SciJavaEvent> extends
-	org.bushe.swing.event.EventSubscriber<E>
-{
+public interface EventSubscriber<E extends SciJavaEvent> {
 
-	@Override
+	/** Handles the given event. */
 	void onEvent(E event);
 
 	Class<E> getEventClass();
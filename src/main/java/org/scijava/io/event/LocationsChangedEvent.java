@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.event;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.scijava.event.SciJavaEvent;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * An event indicating that one or more locations beneath a watched location
+ * have changed on disk.
+ * <p>
+ * Changes are batched: all changes observed for the same watched location
+ * within a short window are delivered as one event, with repeated changes to
+ * the same location coalesced into a single {@link Kind}.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ * @see org.scijava.io.location.LocationService#watch(FileLocation)
+ */
+public class LocationsChangedEvent extends SciJavaEvent {
+
+	/** The kind of change a location underwent. */
+	public enum Kind {
+			/** The location was created. */
+			CREATED,
+			/** The contents or metadata of the location were modified. */
+			MODIFIED,
+			/** The location was deleted. */
+			DELETED,
+			/**
+			 * Changes may have been lost, e.g. due to an overflowing event queue; the
+			 * location (the watched one) should be rescanned.
+			 */
+			OVERFLOW
+	}
+
+	/** The watched location beneath which the changes occurred. */
+	private final FileLocation watched;
+
+	/** The changed locations, with their kind of change. */
+	private final Map<Location, Kind> changes;
+
+	public LocationsChangedEvent(final FileLocation watched,
+		final Map<Location, Kind> changes)
+	{
+		this.watched = watched;
+		this.changes = Collections.unmodifiableMap(changes);
+	}
+
+	/** Gets the watched location beneath which the changes occurred. */
+	public FileLocation getWatched() {
+		return watched;
+	}
+
+	/** Gets the changed locations, in order of first change. */
+	public Map<Location, Kind> getChanges() {
+		return changes;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return super.toString() + "\n\twatched = " + watched + "\n\tchanges = " +
+			changes;
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.handle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.scijava.io.location.ContentLocation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Read-only {@link DataHandle} for a {@link ContentLocation}.
+ * <p>
+ * Reads directly from the shared buffer of the content store, without copying
+ * it. The {@link #checksum()} is the content digest.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+@Plugin(type = DataHandle.class)
+public class ContentHandle extends AbstractDataHandle<ContentLocation> {
+
+	/** Read-only view of the contents, or null if not yet initialized. */
+	private ByteBuffer buffer;
+
+	private long offset;
+
+	// -- DataHandle methods --
+
+	@Override
+	public boolean isReadable() {
+		return true;
+	}
+
+	@Override
+	public boolean isWritable() {
+		return false;
+	}
+
+	@Override
+	public boolean exists() {
+		return true;
+	}
+
+	@Override
+	public String checksum() {
+		return get().getDigest();
+	}
+
+	@Override
+	public long offset() {
+		return offset;
+	}
+
+	@Override
+	public void seek(final long pos) {
+		offset = pos;
+	}
+
+	@Override
+	public long length() {
+		return get().size();
+	}
+
+	@Override
+	public void setLength(final long length) throws IOException {
+		throw DataHandles.readOnlyException();
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) {
+		if (len == 0) return 0;
+		final long remain = length() - offset;
+		if (remain <= 0) return -1;
+		final int n = (int) Math.min(len, remain);
+		final ByteBuffer buf = buffer();
+		buf.position((int) offset);
+		buf.get(b, off, n);
+		offset += n;
+		return n;
+	}
+
+	// -- DataInput methods --
+
+	@Override
+	public byte readByte() throws IOException {
+		if (offset >= length()) throw new EOFException();
+		return buffer().get((int) offset++);
+	}
+
+	// -- DataOutput methods --
+
+	@Override
+	public void write(final int b) throws IOException {
+		throw DataHandles.readOnlyException();
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len)
+		throws IOException
+	{
+		throw DataHandles.readOnlyException();
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public void close() {
+		buffer = null;
+	}
+
+	// -- Typed methods --
+
+	@Override
+	public Class<ContentLocation> getType() {
+		return ContentLocation.class;
+	}
+
+	// -- Helper methods --
+
+	private ByteBuffer buffer() {
+		if (buffer == null) buffer = get().getBuffer();
+		return buffer;
+	}
+}
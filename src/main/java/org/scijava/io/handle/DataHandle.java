@@ -114,6 +114,19 @@ public interface DataHandle<L extends Location> extends WrapperPlugin<L>,
 		return null;
 	}
 
+	/**
+	 * Gets whether arbitrary byte ranges of the data can be fetched efficiently
+	 * and independently of each other, such that several handles to the same
+	 * location may read different ranges concurrently; e.g., to download the
+	 * data in parallel segments.
+	 *
+	 * @return True iff ranged access is known to be supported and efficient.
+	 * @throws IOException If something goes wrong determining this.
+	 */
+	default boolean supportsRangedAccess() throws IOException {
+		return false;
+	}
+
 	/** Returns the current offset in the stream. */
 	long offset() throws IOException;
 
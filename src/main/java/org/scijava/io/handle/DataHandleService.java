@@ -37,6 +37,7 @@ import java.util.Objects;
 
 import org.scijava.io.IOService;
 import org.scijava.io.location.Location;
+import org.scijava.plugin.PluginInfo;
 import org.scijava.plugin.WrapperService;
 import org.scijava.service.SciJavaService;
 
@@ -60,6 +61,25 @@ public interface DataHandleService extends
 		return (Class) DataHandle.class;
 	}
 
+	// -- TypedService methods --
+
+	@Override
+	default DataHandle<Location> find(final Location location) {
+		for (final PluginInfo<DataHandle<Location>> plugin : getPlugins()) {
+			final DataHandle<Location> instance = //
+				pluginService().createInstance(plugin);
+			if (instance == null) continue;
+			// NB: Handles for a narrower location type, such as HTTPHandle, override
+			// supports with that type, and throw ClassCastException otherwise.
+			final Class<Location> type = instance.getType();
+			if (type != null && location != null && !type.isInstance(location)) {
+				continue;
+			}
+			if (instance.supports(location)) return instance;
+		}
+		return null;
+	}
+
 	// -- Typed methods --
 
 	@Override
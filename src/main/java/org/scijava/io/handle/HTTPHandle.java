@@ -0,0 +1,450 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.handle;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Date;
+
+import org.scijava.io.location.URLLocation;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Read-only {@link DataHandle} for a {@link URLLocation} using the HTTP or
+ * HTTPS protocol.
+ * <p>
+ * Random access is implemented via HTTP {@code Range} requests: each read
+ * which misses the current read-ahead window fetches a new window of at least
+ * {@link #getReadAhead()} bytes starting at the requested offset. The length,
+ * last modified timestamp and checksum (i.e., the {@code ETag}) of the
+ * resource are obtained from a single {@code HEAD} request, issued lazily.
+ * </p>
+ * <p>
+ * Every response body is consumed completely, so that the underlying
+ * {@link HttpURLConnection} keep-alive mechanism can reuse the same persistent
+ * connection for subsequent requests.
+ * </p>
+ * <p>
+ * If the server ignores the {@code Range} header and sends the whole resource
+ * instead, the handle keeps reading that single response for all subsequent
+ * windows, rather than downloading the resource from its start for each of
+ * them. The resource is then only requested again to move backwards.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+@Plugin(type = DataHandle.class)
+public class HTTPHandle extends AbstractDataHandle<URLLocation> {
+
+	/** Default minimum number of bytes to request per range request. */
+	public static final int DEFAULT_READ_AHEAD = 64 * 1024; // 64 KB
+
+	/** Default connect and read timeout in milliseconds. */
+	public static final int DEFAULT_TIMEOUT = 15_000;
+
+	// -- Fields --
+
+	/** Current offset in the stream. */
+	private long offset;
+
+	/** Minimum number of bytes to request per range request. */
+	private int readAhead = DEFAULT_READ_AHEAD;
+
+	/** Connect and read timeout in milliseconds. */
+	private int timeout = DEFAULT_TIMEOUT;
+
+	/** Buffer holding the current read-ahead window. */
+	private byte[] window = new byte[0];
+
+	/** Stream offset of the first byte of the current window. */
+	private long windowStart;
+
+	/** Number of valid bytes in the current window. */
+	private int windowLength;
+
+	/** True iff the resource metadata has already been requested. */
+	private boolean headed;
+
+	private boolean exists;
+	private long length = -1;
+	private Date lastModified;
+	private String etag;
+	private boolean acceptRanges;
+
+	/** True iff the server answered a range request with the whole resource. */
+	private boolean rangesIgnored;
+
+	/** Open response with the whole resource, if ranges are ignored. */
+	private InputStream stream;
+
+	/** Stream offset of the next byte of the {@link #stream}. */
+	private long streamOffset;
+
+	/** True iff the {@link #close()} has already been called. */
+	private boolean closed;
+
+	// -- HTTPHandle methods --
+
+	/** Gets the minimum number of bytes requested per range request. */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Sets the minimum number of bytes requested per range request. Larger values
+	 * mean fewer round trips for sequential reads, at the cost of transferring
+	 * unneeded bytes for sparse random access.
+	 */
+	public void setReadAhead(final int readAhead) {
+		if (readAhead <= 0) {
+			throw new IllegalArgumentException("Invalid read-ahead: " + readAhead);
+		}
+		this.readAhead = readAhead;
+	}
+
+	/** Gets the connect and read timeout in milliseconds. */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/** Sets the connect and read timeout in milliseconds. */
+	public void setTimeout(final int timeout) {
+		this.timeout = timeout;
+	}
+
+	// -- DataHandle methods --
+
+	@Override
+	public boolean isReadable() {
+		return true;
+	}
+
+	@Override
+	public boolean isWritable() {
+		return false;
+	}
+
+	@Override
+	public boolean exists() throws IOException {
+		head();
+		return exists;
+	}
+
+	@Override
+	public Date lastModified() throws IOException {
+		head();
+		return lastModified;
+	}
+
+	@Override
+	public String checksum() throws IOException {
+		head();
+		return etag;
+	}
+
+	@Override
+	public boolean supportsRangedAccess() throws IOException {
+		head();
+		return acceptRanges && !rangesIgnored;
+	}
+
+	@Override
+	public long offset() {
+		return offset;
+	}
+
+	@Override
+	public void seek(final long pos) throws IOException {
+		// NB: No request is made until the next read.
+		offset = pos;
+	}
+
+	@Override
+	public long length() throws IOException {
+		if (length < 0) head();
+		return length;
+	}
+
+	@Override
+	public void setLength(final long length) throws IOException {
+		throw DataHandles.readOnlyException();
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+		throws IOException
+	{
+		if (len == 0) return 0;
+		if (!isBuffered(offset)) fill(offset, len);
+		if (!isBuffered(offset)) return -1; // EOF
+		final int windowOffset = (int) (offset - windowStart);
+		final int n = Math.min(len, windowLength - windowOffset);
+		System.arraycopy(window, windowOffset, b, off, n);
+		offset += n;
+		return n;
+	}
+
+	// -- DataInput methods --
+
+	@Override
+	public byte readByte() throws IOException {
+		if (!isBuffered(offset)) fill(offset, 1);
+		if (!isBuffered(offset)) throw new EOFException();
+		return window[(int) (offset++ - windowStart)];
+	}
+
+	// -- DataOutput methods --
+
+	@Override
+	public void write(final int b) throws IOException {
+		throw DataHandles.readOnlyException();
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len)
+		throws IOException
+	{
+		throw DataHandles.readOnlyException();
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public void close() {
+		closed = true;
+		window = null;
+		windowLength = 0;
+		closeStream();
+	}
+
+	// -- Typed methods --
+
+	@Override
+	public boolean supports(final URLLocation location) {
+		if (!super.supports(location)) return false;
+		final String protocol = location.getURL().getProtocol();
+		return "http".equals(protocol) || "https".equals(protocol);
+	}
+
+	@Override
+	public Class<URLLocation> getType() {
+		return URLLocation.class;
+	}
+
+	// -- Helper methods --
+
+	private boolean isBuffered(final long pos) {
+		return pos >= windowStart && pos < windowStart + windowLength;
+	}
+
+	/**
+	 * Requests the resource metadata via HTTP {@code HEAD}, if not done already.
+	 */
+	private void head() throws IOException {
+		if (headed) return;
+		ensureOpen();
+		final HttpURLConnection conn = connect("HEAD");
+		final int code = conn.getResponseCode();
+		exists = code < HttpURLConnection.HTTP_BAD_REQUEST;
+		if (exists) {
+			if (length < 0) length = conn.getContentLengthLong();
+			final long lm = conn.getLastModified();
+			lastModified = lm == 0 ? null : new Date(lm);
+			etag = conn.getHeaderField("ETag");
+			acceptRanges = "bytes".equalsIgnoreCase(conn.getHeaderField(
+				"Accept-Ranges"));
+		}
+		else {
+			length = -1;
+			drain(conn.getErrorStream());
+		}
+		headed = true;
+	}
+
+	/**
+	 * Replaces the read-ahead window with the bytes starting at the given
+	 * position. Afterwards, the window is empty if the position lies beyond the
+	 * end of the resource.
+	 */
+	private void fill(final long pos, final int len) throws IOException {
+		ensureOpen();
+		windowStart = pos;
+		windowLength = 0;
+
+		final int size = Math.max(len, readAhead);
+		long last = pos + size - 1;
+		if (length >= 0) {
+			if (pos >= length) return; // EOF
+			if (last >= length) last = length - 1;
+		}
+		final int count = (int) (last - pos + 1);
+		if (window.length < count) window = new byte[count];
+		if (rangesIgnored) {
+			fillFromStream(pos, count);
+			return;
+		}
+
+		final HttpURLConnection conn = connect("GET");
+		conn.setRequestProperty("Range", "bytes=" + pos + "-" + last);
+		final int code = conn.getResponseCode();
+		if (code == 416) { // Requested Range Not Satisfiable
+			drain(conn.getErrorStream());
+			return;
+		}
+		if (code != HttpURLConnection.HTTP_PARTIAL &&
+			code != HttpURLConnection.HTTP_OK)
+		{
+			drain(conn.getErrorStream());
+			throw new IOException("HTTP " + code + " for " + get().getURL());
+		}
+		if (code == HttpURLConnection.HTTP_OK) {
+			// NB: The server ignored the range. Rather than downloading the whole
+			// resource again for each window, keep reading this response.
+			if (length < 0) length = conn.getContentLengthLong();
+			rangesIgnored = true;
+			stream = conn.getInputStream();
+			streamOffset = 0;
+			fillFromStream(pos, count);
+			return;
+		}
+		parseTotalLength(conn);
+
+		try (final InputStream in = conn.getInputStream()) {
+			while (windowLength < count) {
+				final int r = in.read(window, windowLength, count - windowLength);
+				if (r < 0) break;
+				windowLength += r;
+			}
+			final long expected = conn.getContentLengthLong();
+			if (expected >= 0 && windowLength < Math.min(count, expected)) {
+				// NB: The connection broke off before delivering the whole range.
+				windowLength = 0;
+				throw new EOFException("Premature end of response for " + get()
+					.getURL() + " at " + pos);
+			}
+			// consume any remainder, so the connection can be reused
+			while (in.read() >= 0) {
+				// NB: No action needed.
+			}
+		}
+	}
+
+	/**
+	 * Fills the window with the given number of bytes starting at the given
+	 * position from the response with the whole resource, requesting it again
+	 * if the position lies before the response's current offset.
+	 */
+	private void fillFromStream(final long pos, final int count)
+		throws IOException
+	{
+		if (stream == null || pos < streamOffset) {
+			closeStream();
+			final HttpURLConnection conn = connect("GET");
+			final int code = conn.getResponseCode();
+			if (code != HttpURLConnection.HTTP_OK) {
+				drain(conn.getErrorStream());
+				throw new IOException("HTTP " + code + " for " + get().getURL());
+			}
+			stream = conn.getInputStream();
+			streamOffset = 0;
+		}
+		while (streamOffset < pos) {
+			final long s = stream.skip(pos - streamOffset);
+			if (s > 0) streamOffset += s;
+			else if (stream.read() >= 0) streamOffset++;
+			else return; // EOF
+		}
+		while (windowLength < count) {
+			final int r = stream.read(window, windowLength, count - windowLength);
+			if (r < 0) break;
+			windowLength += r;
+		}
+		streamOffset += windowLength;
+	}
+
+	/**
+	 * Closes the response with the whole resource, if any. As its remainder is
+	 * not consumed, its connection is not reused.
+	 */
+	private void closeStream() {
+		if (stream == null) return;
+		try {
+			stream.close();
+		}
+		catch (final IOException exc) {
+			// NB: The response is abandoned anyway.
+		}
+		stream = null;
+	}
+
+	/** Extracts the total length from a {@code Content-Range} header. */
+	private void parseTotalLength(final HttpURLConnection conn) {
+		if (length >= 0) return;
+		final String range = conn.getHeaderField("Content-Range");
+		if (range == null) return;
+		final int slash = range.lastIndexOf('/');
+		if (slash < 0 || range.endsWith("*")) return;
+		try {
+			length = Long.parseLong(range.substring(slash + 1).trim());
+		}
+		catch (final NumberFormatException exc) {
+			// NB: Leave the length unknown.
+		}
+	}
+
+	private HttpURLConnection connect(final String method) throws IOException {
+		final URL url = get().getURL();
+		final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestMethod(method);
+		conn.setConnectTimeout(timeout);
+		conn.setReadTimeout(timeout);
+		return conn;
+	}
+
+	private void drain(final InputStream in) throws IOException {
+		if (in == null) return;
+		try (final InputStream stream = in) {
+			final byte[] buf = new byte[1024];
+			while (stream.read(buf) >= 0) {
+				// NB: No action needed.
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) throw new IOException("Handle already closed");
+	}
+}
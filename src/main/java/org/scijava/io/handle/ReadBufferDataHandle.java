@@ -41,13 +41,22 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.scijava.cache.MemoryGovernor;
+import org.scijava.cache.MemorySensitive;
 import org.scijava.io.location.Location;
 
 /**
  * Read-only buffered {@link DataHandle}. It buffers the underlying handle into
  * a fixed number of pages, swapping them out when necessary.
+ * <p>
+ * Under memory pressure, as reported by the {@link MemoryGovernor}, only a
+ * fraction of the pages is used, and the buffers of the others are released
+ * on the next read.
+ * </p>
  */
-public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location> {
+public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location>
+	implements MemorySensitive
+{
 
 	private static final int DEFAULT_PAGE_SIZE = 10_000;
 	private static final int DEFAULT_NUM_PAGES = 10;
@@ -62,6 +71,12 @@ public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location> {
 	private byte[] currentPage;
 	private int currentPageID = -1;
 
+	/** The number of slots currently in use. */
+	private int usedSlots;
+
+	/** The number of slots to use as of the next read, or -1 if unchanged. */
+	private volatile int pendingSlots = -1;
+
 	/**
 	 * Creates a {@link ReadBufferDataHandle} wrapping the provided handle using the
 	 * default values for the size of the pages ({@value #DEFAULT_PAGE_SIZE} byte)
@@ -112,6 +127,16 @@ public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location> {
 
 		pageToSlot = new HashMap<>();
 		replacementStrategy = new LRUReplacementStrategy(numPages);
+		usedSlots = numPages;
+		MemoryGovernor.getInstance().register(this);
+	}
+
+	// -- MemorySensitive methods --
+
+	@Override
+	public void memoryBudgetChanged(final double fraction) {
+		// NB: Applied by the reading thread, as this handle is not thread-safe.
+		pendingSlots = Math.max(1, (int) Math.ceil(slotToPage.length * fraction));
 	}
 
 	/**
@@ -120,6 +145,7 @@ public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location> {
 	 */
 	private void ensureBuffered(final long globalOffset) throws IOException {
 		ensureOpen();
+		if (pendingSlots >= 0) resize();
 		final int pageID = (int) (globalOffset / pageSize);
 		if (pageID == currentPageID)
 			return;
@@ -171,6 +197,31 @@ public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location> {
 		return page;
 	}
 
+	/**
+	 * Changes the number of slots in use to the pending one, releasing the pages
+	 * of the slots no longer used.
+	 */
+	private void resize() {
+		final int slots = pendingSlots;
+		pendingSlots = -1;
+		if (slots < 0 || slots == usedSlots) return;
+		for (int slotID = slots; slotID < usedSlots; slotID++) {
+			final int pageID = slotToPage[slotID];
+			if (pageID >= 0) pageToSlot.remove(pageID);
+			if (pageID == currentPageID) {
+				currentPageID = -1;
+				currentPage = null;
+			}
+			slotToPage[slotID] = -1;
+			pages.set(slotID, null);
+			replacementStrategy.remove(slotID);
+		}
+		for (int slotID = usedSlots; slotID < slots; slotID++) {
+			replacementStrategy.add(slotID);
+		}
+		usedSlots = slots;
+	}
+
 	/**
 	 * Calculates the offset in the current page for the given global offset
 	 */
@@ -238,6 +289,7 @@ public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location> {
 
 	@Override
 	protected void cleanup() {
+		MemoryGovernor.getInstance().unregister(this);
 		pages.clear();
 		currentPage = null;
 	}
@@ -296,5 +348,25 @@ public class ReadBufferDataHandle extends AbstractHigherOrderHandle<Location> {
 		public int pickVictim(final int pageID) {
 			return queue.peek();
 		}
+
+		/**
+		 * Adds an empty slot, which is picked as victim before all others.
+		 *
+		 * @param slotID
+		 *            the id of the slot to add
+		 */
+		public void add(final int slotID) {
+			queue.addFirst(slotID);
+		}
+
+		/**
+		 * Removes a slot, which is not picked as victim anymore.
+		 *
+		 * @param slotID
+		 *            the id of the slot to remove
+		 */
+		public void remove(final int slotID) {
+			queue.remove(slotID);
+		}
 	}
 }
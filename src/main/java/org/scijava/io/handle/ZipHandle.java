@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.handle;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Date;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import org.scijava.cache.CacheService;
+import org.scijava.io.location.Location;
+import org.scijava.io.location.ZipLocation;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Read-only {@link DataHandle} for a {@link ZipLocation}.
+ * <p>
+ * The archive's central directory is indexed once and cached via the
+ * {@link CacheService} (see {@link ZipIndex}). Stored entries are read
+ * directly from the archive's own {@link DataHandle}, with true random access
+ * and without any copying or extraction. Deflated entries are inflated on the
+ * fly while streaming; seeking backwards restarts the inflation from the
+ * beginning of the entry.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+@Plugin(type = DataHandle.class)
+public class ZipHandle extends AbstractDataHandle<ZipLocation> {
+
+	@Parameter
+	private DataHandleService dataHandleService;
+
+	@Parameter(required = false)
+	private CacheService cacheService;
+
+	// -- Fields --
+
+	/** Handle on the archive containing the entry. */
+	private DataHandle<Location> archive;
+
+	/** Index of the archive's central directory. */
+	private ZipIndex index;
+
+	/** Current offset in the (uncompressed) entry data. */
+	private long offset;
+
+	/** Inflating stream over a deflated entry, or null if not yet opened. */
+	private InflaterInputStream inflaterStream;
+
+	/** The inflater backing the {@link #inflaterStream}. */
+	private Inflater inflater;
+
+	/** Position of the {@link #inflaterStream} in the uncompressed data. */
+	private long inflaterPos;
+
+	/** True iff the {@link #close()} has already been called. */
+	private boolean closed;
+
+	// -- DataHandle methods --
+
+	@Override
+	public boolean isReadable() {
+		return true;
+	}
+
+	@Override
+	public boolean isWritable() {
+		return false;
+	}
+
+	@Override
+	public boolean exists() throws IOException {
+		final DataHandle<Location> handle = archive();
+		return handle != null && handle.exists() && entry() != null;
+	}
+
+	@Override
+	public Date lastModified() throws IOException {
+		final ZipIndex.Entry entry = exists() ? entry() : null;
+		return entry == null ? null : entry.time();
+	}
+
+	@Override
+	public String checksum() throws IOException {
+		final ZipIndex.Entry entry = exists() ? entry() : null;
+		return entry == null ? null : "crc32:" + Long.toHexString(entry.crc());
+	}
+
+	@Override
+	public long offset() {
+		return offset;
+	}
+
+	@Override
+	public void seek(final long pos) throws IOException {
+		// NB: Deflated data is only (re)positioned upon the next read.
+		offset = pos;
+	}
+
+	@Override
+	public long length() throws IOException {
+		return exists() ? entry().size() : -1;
+	}
+
+	@Override
+	public void setLength(final long length) throws IOException {
+		throw DataHandles.readOnlyException();
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len)
+		throws IOException
+	{
+		if (len == 0) return 0;
+		final ZipIndex.Entry entry = requireEntry();
+		final long remain = entry.size() - offset;
+		if (remain <= 0) return -1;
+		final int n = (int) Math.min(len, remain);
+
+		final int r;
+		if (entry.method() == ZipIndex.STORED) {
+			archive.seek(entry.dataOffset(archive) + offset);
+			r = archive.read(b, off, n);
+		}
+		else r = inflate(entry, b, off, n);
+
+		if (r > 0) offset += r;
+		return r;
+	}
+
+	// -- DataInput methods --
+
+	@Override
+	public byte readByte() throws IOException {
+		final byte[] b = new byte[1];
+		if (read(b, 0, 1) <= 0) throw new EOFException();
+		return b[0];
+	}
+
+	// -- DataOutput methods --
+
+	@Override
+	public void write(final int b) throws IOException {
+		throw DataHandles.readOnlyException();
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len)
+		throws IOException
+	{
+		throw DataHandles.readOnlyException();
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		endInflater();
+		if (archive != null) archive.close();
+		archive = null;
+	}
+
+	// -- Typed methods --
+
+	@Override
+	public Class<ZipLocation> getType() {
+		return ZipLocation.class;
+	}
+
+	// -- Helper methods --
+
+	/** Gets the archive handle, opening it if needed. */
+	private DataHandle<Location> archive() throws IOException {
+		if (closed) throw new IOException("Handle already closed");
+		if (archive == null) archive = dataHandleService.create(get().getArchive());
+		return archive;
+	}
+
+	/** Gets the index entry for the location, or null if there is none. */
+	private ZipIndex.Entry entry() throws IOException {
+		if (index == null) index = ZipIndex.get(cacheService, get().getArchive(),
+			archive());
+		return index.entry(get().getEntryName());
+	}
+
+	private ZipIndex.Entry requireEntry() throws IOException {
+		if (archive() == null) {
+			throw new IOException("Unsupported archive: " + get().getArchive());
+		}
+		final ZipIndex.Entry entry = entry();
+		if (entry == null) throw new FileNotFoundException(get().toString());
+		if (entry.isEncrypted()) {
+			throw new ZipException("Encrypted entries are not supported: " + //
+				entry.name());
+		}
+		if (entry.method() != ZipIndex.STORED &&
+			entry.method() != ZipIndex.DEFLATED)
+		{
+			throw new ZipException("Unsupported compression method " + //
+				entry.method() + ": " + entry.name());
+		}
+		return entry;
+	}
+
+	/** Reads deflated data, positioning the inflating stream as needed. */
+	private int inflate(final ZipIndex.Entry entry, final byte[] b,
+		final int off, final int len) throws IOException
+	{
+		if (inflaterStream == null || inflaterPos > offset) {
+			// (re)start inflating from the beginning of the entry
+			endInflater();
+			archive.seek(entry.dataOffset(archive));
+			inflater = new Inflater(true);
+			inflaterStream = new InflaterInputStream(new DataHandleInputStream<>(
+				archive), inflater);
+			inflaterPos = 0;
+		}
+		while (inflaterPos < offset) {
+			final long skipped = inflaterStream.skip(offset - inflaterPos);
+			if (skipped <= 0) throw new EOFException();
+			inflaterPos += skipped;
+		}
+		final int r = inflaterStream.read(b, off, len);
+		if (r > 0) inflaterPos += r;
+		return r;
+	}
+
+	private void endInflater() {
+		// NB: Closing the stream would close the shared archive handle.
+		if (inflater != null) inflater.end();
+		inflater = null;
+		inflaterStream = null;
+	}
+}
@@ -0,0 +1,327 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.handle;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.ZipException;
+
+import org.scijava.cache.CacheRegion;
+import org.scijava.cache.CacheService;
+import org.scijava.io.location.Location;
+
+/**
+ * Index of the central directory of a ZIP archive.
+ * <p>
+ * Indices are cached per archive {@link URI} in the {@value #REGION} region of
+ * the context's {@link CacheService}, and revalidated against the archive's
+ * length and last modified timestamp, so that the central directory of a given
+ * archive is parsed only once, no matter how many of its entries are accessed.
+ * Without a {@link CacheService}, indices are not shared between handles.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+final class ZipIndex {
+
+	/** Name of the cache region holding the archive indices. */
+	static final String REGION = "zip-indices";
+
+	/** Maximum number of archive indices to keep cached, by default. */
+	private static final int MAX_CACHED = 64;
+
+	private static final int EOCD_SIG = 0x06054b50;
+	private static final int EOCD_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int ZIP64_EOCD_SIG = 0x06064b50;
+	private static final int CENTRAL_SIG = 0x02014b50;
+	private static final int LOCAL_SIG = 0x04034b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+
+	/** Compression method of stored (uncompressed) entries. */
+	static final int STORED = 0;
+
+	/** Compression method of deflated entries. */
+	static final int DEFLATED = 8;
+
+	private final long archiveLength;
+	private final Date archiveLastModified;
+	private final Map<String, Entry> entries;
+
+	private ZipIndex(final DataHandle<Location> archive) throws IOException {
+		archiveLength = archive.length();
+		archiveLastModified = archive.lastModified();
+		entries = readCentralDirectory(archive);
+	}
+
+	// -- ZipIndex methods --
+
+	/**
+	 * Gets the index of the given archive, parsing its central directory only if
+	 * no up-to-date index is cached yet.
+	 */
+	static ZipIndex get(final CacheService cacheService,
+		final Location location, final DataHandle<Location> archive)
+		throws IOException
+	{
+		final URI uri = location.getURI();
+		final CacheRegion cache = region(cacheService);
+		if (uri == null || cache == null) return new ZipIndex(archive);
+		final ZipIndex cached = (ZipIndex) cache.get(uri);
+		if (cached != null && cached.archiveLength == archive.length() && //
+			Objects.equals(cached.archiveLastModified, archive.lastModified()))
+		{
+			return cached;
+		}
+		final ZipIndex index = new ZipIndex(archive);
+		cache.put(uri, index);
+		return index;
+	}
+
+	/** Gets the entry with the given name, or null if there is none. */
+	Entry entry(final String name) {
+		return entries.get(name);
+	}
+
+	// -- Helper methods --
+
+	/** Gets the cache region of the indices, or null if there is none. */
+	private static CacheRegion region(final CacheService cacheService) {
+		if (cacheService == null) return null;
+		try {
+			// NB: Central directories can be large, so keep fewer of them than
+			// the default maximum, unless the region is configured otherwise.
+			return cacheService.region(REGION, r -> r.setMaximumSize(MAX_CACHED));
+		}
+		catch (final UnsupportedOperationException exc) {
+			return null;
+		}
+	}
+
+	private static Map<String, Entry> readCentralDirectory(
+		final DataHandle<Location> archive) throws IOException
+	{
+		final long length = archive.length();
+		if (length < EOCD_SIZE) throw new ZipException("Not a ZIP archive");
+
+		// find the end of central directory record, scanning past the comment
+		final int tailLength = (int) Math.min(length, EOCD_SIZE + 0xffff);
+		final byte[] tail = new byte[tailLength];
+		archive.seek(length - tailLength);
+		archive.readFully(tail);
+		int eocd = tailLength - EOCD_SIZE;
+		while (eocd >= 0 && int32(tail, eocd) != EOCD_SIG) eocd--;
+		if (eocd < 0) throw new ZipException("No end of central directory");
+
+		long count = uint16(tail, eocd + 10);
+		long size = uint32(tail, eocd + 12);
+		long offset = uint32(tail, eocd + 16);
+
+		if (count == 0xffff || size == 0xffffffffL || offset == 0xffffffffL) {
+			// ZIP64 archive; consult the ZIP64 end of central directory record
+			final long locator = length - tailLength + eocd - ZIP64_LOCATOR_SIZE;
+			final byte[] buf = new byte[56];
+			archive.seek(locator);
+			archive.readFully(buf, 0, ZIP64_LOCATOR_SIZE);
+			if (int32(buf, 0) != ZIP64_LOCATOR_SIG) {
+				throw new ZipException("Invalid ZIP64 locator");
+			}
+			archive.seek(int64(buf, 8));
+			archive.readFully(buf);
+			if (int32(buf, 0) != ZIP64_EOCD_SIG) {
+				throw new ZipException("Invalid ZIP64 end of central directory");
+			}
+			count = int64(buf, 32);
+			size = int64(buf, 40);
+			offset = int64(buf, 48);
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new ZipException("Central directory too large: " + size);
+		}
+
+		final byte[] cd = new byte[(int) size];
+		archive.seek(offset);
+		archive.readFully(cd);
+
+		final Map<String, Entry> map = new HashMap<>();
+		int pos = 0;
+		for (long i = 0; i < count; i++) {
+			if (int32(cd, pos) != CENTRAL_SIG) {
+				throw new ZipException("Invalid central directory entry");
+			}
+			final int flags = uint16(cd, pos + 8);
+			final int method = uint16(cd, pos + 10);
+			final int time = uint16(cd, pos + 12);
+			final int date = uint16(cd, pos + 14);
+			final long crc = uint32(cd, pos + 16);
+			long compressedSize = uint32(cd, pos + 20);
+			long entrySize = uint32(cd, pos + 24);
+			final int nameLength = uint16(cd, pos + 28);
+			final int extraLength = uint16(cd, pos + 30);
+			final int commentLength = uint16(cd, pos + 32);
+			long headerOffset = uint32(cd, pos + 42);
+			final String name = new String(cd, pos + 46, nameLength,
+				StandardCharsets.UTF_8);
+
+			// ZIP64 extended information, for fields which did not fit
+			int extra = pos + 46 + nameLength;
+			final int extraEnd = extra + extraLength;
+			while (extra + 4 <= extraEnd) {
+				final int id = uint16(cd, extra);
+				final int dataSize = uint16(cd, extra + 2);
+				int field = extra + 4;
+				if (id == 0x0001) {
+					if (entrySize == 0xffffffffL) {
+						entrySize = int64(cd, field);
+						field += 8;
+					}
+					if (compressedSize == 0xffffffffL) {
+						compressedSize = int64(cd, field);
+						field += 8;
+					}
+					if (headerOffset == 0xffffffffL) headerOffset = int64(cd, field);
+				}
+				extra += 4 + dataSize;
+			}
+
+			map.put(name, new Entry(name, flags, method, dosTime(date, time), crc,
+				compressedSize, entrySize, headerOffset));
+			pos = extraEnd + commentLength;
+		}
+		return map;
+	}
+
+	private static Date dosTime(final int date, final int time) {
+		return new GregorianCalendar(((date >> 9) & 0x7f) + 1980, //
+			((date >> 5) & 0x0f) - 1, date & 0x1f, (time >> 11) & 0x1f, //
+			(time >> 5) & 0x3f, (time << 1) & 0x3e).getTime();
+	}
+
+	private static int uint16(final byte[] b, final int off) {
+		return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+	}
+
+	private static int int32(final byte[] b, final int off) {
+		return uint16(b, off) | uint16(b, off + 2) << 16;
+	}
+
+	private static long uint32(final byte[] b, final int off) {
+		return int32(b, off) & 0xffffffffL;
+	}
+
+	private static long int64(final byte[] b, final int off) {
+		return uint32(b, off) | uint32(b, off + 4) << 32;
+	}
+
+	// -- Helper classes --
+
+	/** A single entry of the central directory. */
+	static final class Entry {
+
+		private final String name;
+		private final int flags;
+		private final int method;
+		private final Date time;
+		private final long crc;
+		private final long compressedSize;
+		private final long size;
+		private final long headerOffset;
+
+		/** Offset of the entry data; computed lazily from the local header. */
+		private volatile long dataOffset = -1;
+
+		private Entry(final String name, final int flags, final int method,
+			final Date time, final long crc, final long compressedSize,
+			final long size, final long headerOffset)
+		{
+			this.name = name;
+			this.flags = flags;
+			this.method = method;
+			this.time = time;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.headerOffset = headerOffset;
+		}
+
+		String name() {
+			return name;
+		}
+
+		boolean isEncrypted() {
+			return (flags & 0x1) != 0;
+		}
+
+		int method() {
+			return method;
+		}
+
+		Date time() {
+			return time;
+		}
+
+		long crc() {
+			return crc;
+		}
+
+		long compressedSize() {
+			return compressedSize;
+		}
+
+		long size() {
+			return size;
+		}
+
+		/** Gets the archive offset at which the entry's data begins. */
+		long dataOffset(final DataHandle<Location> archive) throws IOException {
+			if (dataOffset < 0) {
+				final byte[] header = new byte[LOCAL_HEADER_SIZE];
+				archive.seek(headerOffset);
+				archive.readFully(header);
+				if (int32(header, 0) != LOCAL_SIG) {
+					throw new ZipException("Invalid local header: " + name);
+				}
+				dataOffset = headerOffset + LOCAL_HEADER_SIZE + //
+					uint16(header, 26) + uint16(header, 28);
+			}
+			return dataOffset;
+		}
+	}
+}
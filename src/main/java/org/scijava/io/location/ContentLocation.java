@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link Location} of an immutable blob held by a {@link ContentStoreService},
+ * addressed by the digest of its contents.
+ * <p>
+ * All locations for identical contents share the same underlying buffer, and
+ * are equal to each other; comparing two such locations costs no more than
+ * comparing their digests.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ * @see ContentStoreService#store(byte[])
+ */
+public class ContentLocation extends AbstractLocation {
+
+	/** URI scheme of content-addressed locations. */
+	public static final String SCHEME = "cas";
+
+	private final String digest;
+
+	private final byte[] data;
+
+	private final URI uri;
+
+	/**
+	 * Creates a {@link ContentLocation}. Only called by
+	 * {@link DefaultContentStoreService}, which computes the digest of its own
+	 * copy of the data and never mutates it; other code obtains instances via
+	 * {@link ContentStoreService#store(byte[])}.
+	 *
+	 * @param digest the hexadecimal digest of the data
+	 * @param data the (shared, immutable) data
+	 */
+	ContentLocation(final String digest, final byte[] data) {
+		this.digest = digest;
+		this.data = data;
+		uri = URI.create(SCHEME + ":" + digest);
+	}
+
+	// -- ContentLocation methods --
+
+	/** Gets the hexadecimal digest identifying the contents. */
+	public String getDigest() {
+		return digest;
+	}
+
+	/** Gets the number of bytes of the contents. */
+	public int size() {
+		return data.length;
+	}
+
+	/**
+	 * Gets a new read-only view of the contents. The data is not copied; each
+	 * view has its own independent position.
+	 */
+	public ByteBuffer getBuffer() {
+		return ByteBuffer.wrap(data).asReadOnlyBuffer();
+	}
+
+	// -- Location methods --
+
+	@Override
+	public URI getURI() {
+		return uri;
+	}
+
+	@Override
+	public String getName() {
+		return digest;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public int hashCode() {
+		return digest.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof ContentLocation)) return false;
+		return digest.equals(((ContentLocation) obj).digest);
+	}
+
+	@Override
+	public String toString() {
+		return uri.toString();
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import java.io.IOException;
+
+import org.scijava.io.ByteBank;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.service.SciJavaService;
+
+/**
+ * A context-wide, content-addressed store of immutable in-memory blobs.
+ * <p>
+ * Blobs are keyed by a digest of their contents, so storing the same contents
+ * several times yields equal {@link ContentLocation}s sharing one buffer. Each
+ * store operation acquires one reference to the blob, which should be given
+ * back via {@link #release(ContentLocation)} when no longer needed; the store
+ * forgets a blob once its last reference is released.
+ * </p>
+ * <p>
+ * Note that a {@link ContentLocation} keeps its own data reachable, so it
+ * remains readable even after its blob has been released from the store.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+public interface ContentStoreService extends SciJavaService {
+
+	/**
+	 * Stores a copy of the given data, unless identical contents are already
+	 * stored, and acquires a reference to the blob.
+	 *
+	 * @param data the data to store
+	 * @return The location of the stored contents.
+	 */
+	default ContentLocation store(final byte[] data) {
+		return store(data, 0, data.length);
+	}
+
+	/**
+	 * Stores a copy of the given range of data, unless identical contents are
+	 * already stored, and acquires a reference to the blob.
+	 *
+	 * @param data the array holding the data to store
+	 * @param offset the offset of the first byte to store
+	 * @param length the number of bytes to store
+	 * @return The location of the stored contents.
+	 */
+	ContentLocation store(byte[] data, int offset, int length);
+
+	/**
+	 * Stores the contents of the given {@link ByteBank}.
+	 *
+	 * @see #store(byte[])
+	 */
+	default ContentLocation store(final ByteBank bytes) {
+		return store(bytes.toByteArray());
+	}
+
+	/**
+	 * Stores the remaining contents of the given {@link DataHandle}, reading
+	 * from its current offset to its end.
+	 *
+	 * @throws IOException if the handle cannot be read, or is too large.
+	 * @see #store(byte[])
+	 */
+	default ContentLocation store(final DataHandle<?> handle) throws IOException {
+		final long length = handle.length() - handle.offset();
+		if (length < 0 || length > Integer.MAX_VALUE) {
+			throw new IOException("Unsupported length: " + length);
+		}
+		final byte[] data = new byte[(int) length];
+		handle.readFully(data);
+		return store(data);
+	}
+
+	/**
+	 * Gets the location of the stored contents with the given digest, without
+	 * acquiring a reference.
+	 *
+	 * @return The location, or null if no such contents are stored.
+	 */
+	ContentLocation get(String digest);
+
+	/**
+	 * Acquires an additional reference to the given blob, e.g. when handing its
+	 * location to another independent consumer.
+	 *
+	 * @throws IllegalArgumentException if the blob is no longer stored.
+	 */
+	void retain(ContentLocation location);
+
+	/**
+	 * Releases one reference to the given blob, removing it from the store once
+	 * no references remain.
+	 *
+	 * @return True iff this call removed the blob from the store.
+	 */
+	boolean release(ContentLocation location);
+
+	/** Gets the number of references currently held on the given blob. */
+	int referenceCount(ContentLocation location);
+
+	/** Gets the number of distinct blobs currently stored. */
+	int count();
+
+	/** Gets the total size in bytes of all distinct blobs currently stored. */
+	long size();
+
+}
@@ -0,0 +1,155 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.service.AbstractService;
+import org.scijava.service.Service;
+import org.scijava.util.DigestUtils;
+
+/**
+ * Default implementation of {@link ContentStoreService}, keying blobs by their
+ * SHA-256 digest.
+ *
+ * @author Gabriel Einsdorf
+ */
+@Plugin(type = Service.class)
+public class DefaultContentStoreService extends AbstractService implements
+	ContentStoreService
+{
+
+	/** Stored blobs, by digest. */
+	private final Map<String, Blob> blobs = new HashMap<>();
+
+	/** Total size of all stored blobs. */
+	private long size;
+
+	// -- ContentStoreService methods --
+
+	@Override
+	public ContentLocation store(final byte[] data, final int offset,
+		final int length)
+	{
+		final byte[] copy = Arrays.copyOfRange(data, offset, offset + length);
+		final String digest = DigestUtils.hex(DigestUtils.sha256(copy));
+		synchronized (blobs) {
+			Blob blob = blobs.get(digest);
+			if (blob == null) {
+				blob = new Blob(new ContentLocation(digest, copy));
+				blobs.put(digest, blob);
+				size += length;
+			}
+			blob.references++;
+			return blob.location;
+		}
+	}
+
+	@Override
+	public ContentLocation get(final String digest) {
+		synchronized (blobs) {
+			final Blob blob = blobs.get(digest);
+			return blob == null ? null : blob.location;
+		}
+	}
+
+	@Override
+	public void retain(final ContentLocation location) {
+		synchronized (blobs) {
+			final Blob blob = blobs.get(location.getDigest());
+			if (blob == null) {
+				throw new IllegalArgumentException("Not stored: " + location);
+			}
+			blob.references++;
+		}
+	}
+
+	@Override
+	public boolean release(final ContentLocation location) {
+		synchronized (blobs) {
+			final Blob blob = blobs.get(location.getDigest());
+			if (blob == null || --blob.references > 0) return false;
+			blobs.remove(location.getDigest());
+			size -= blob.location.size();
+			return true;
+		}
+	}
+
+	@Override
+	public int referenceCount(final ContentLocation location) {
+		synchronized (blobs) {
+			final Blob blob = blobs.get(location.getDigest());
+			return blob == null ? 0 : blob.references;
+		}
+	}
+
+	@Override
+	public int count() {
+		synchronized (blobs) {
+			return blobs.size();
+		}
+	}
+
+	@Override
+	public long size() {
+		synchronized (blobs) {
+			return size;
+		}
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public void dispose() {
+		synchronized (blobs) {
+			blobs.clear();
+			size = 0;
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A stored blob, with its reference count. */
+	private static class Blob {
+
+		private final ContentLocation location;
+		private int references;
+
+		private Blob(final ContentLocation location) {
+			this.location = location;
+		}
+	}
+}
@@ -32,13 +32,19 @@
 
 package org.scijava.io.location;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.scijava.event.EventService;
+import org.scijava.log.LogService;
 import org.scijava.plugin.AbstractHandlerService;
+import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.Service;
+import org.scijava.thread.ThreadService;
 
 /**
  * Default {@link LocationService} implementation.
@@ -51,10 +57,50 @@ public class DefaultLocationService extends
 	LocationService
 {
 
+	@Parameter
+	private EventService eventService;
+
+	@Parameter
+	private ThreadService threadService;
+
+	@Parameter
+	private LogService log;
+
 	private final Map<String, LocationResolver> resolvers = new HashMap<>();
 
+	/** Watcher of file locations, created on first use. */
+	private LocationWatcher watcher;
+
 	@Override
 	public LocationResolver getResolver(final URI uri) {
 		return resolvers.computeIfAbsent(uri.getScheme(), u -> getHandler(uri));
 	}
+
+	@Override
+	public Closeable watch(final FileLocation location) throws IOException {
+		return watcher().watch(location);
+	}
+
+	// -- Disposable methods --
+
+	@Override
+	public synchronized void dispose() {
+		if (watcher == null) return;
+		try {
+			watcher.close();
+		}
+		catch (final IOException exc) {
+			log.warn("Error closing location watcher", exc);
+		}
+		watcher = null;
+	}
+
+	// -- Helper methods --
+
+	private synchronized LocationWatcher watcher() throws IOException {
+		if (watcher == null) {
+			watcher = new LocationWatcher(threadService, eventService, log);
+		}
+		return watcher;
+	}
 }
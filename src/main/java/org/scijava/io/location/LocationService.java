@@ -32,9 +32,12 @@
 
 package org.scijava.io.location;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import org.scijava.io.event.LocationsChangedEvent;
 import org.scijava.plugin.HandlerService;
 import org.scijava.service.SciJavaService;
 
@@ -84,6 +87,27 @@ public interface LocationService extends HandlerService<URI, LocationResolver>,
 	 */
 	LocationResolver getResolver(URI uri);
 
+	/**
+	 * Starts watching the given file or directory for changes. Changes are
+	 * published as {@link LocationsChangedEvent}s, batched per watched location,
+	 * so that callers can invalidate cached state instead of polling.
+	 * <p>
+	 * Watching a directory reports changes to its direct children only; watching
+	 * a file reports changes to that file. How quickly changes are reported
+	 * depends on the platform's file system notification support.
+	 * </p>
+	 *
+	 * @param location the file or directory to watch
+	 * @return A handle which stops watching the location when closed.
+	 * @throws IOException if the location cannot be watched, e.g. because it (or
+	 *           its parent directory) does not exist.
+	 * @throws UnsupportedOperationException if this service does not support
+	 *           watching locations.
+	 */
+	default Closeable watch(final FileLocation location) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
 	// -- PTService methods --
 
 	@Override
@@ -0,0 +1,280 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.scijava.event.EventService;
+import org.scijava.io.event.LocationsChangedEvent;
+import org.scijava.io.event.LocationsChangedEvent.Kind;
+import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Watches {@link FileLocation}s for changes using a single
+ * {@link WatchService}, publishing batched {@link LocationsChangedEvent}s.
+ *
+ * @author Gabriel Einsdorf
+ * @see LocationService#watch(FileLocation)
+ */
+class LocationWatcher implements Closeable {
+
+	/** Time in milliseconds during which changes are collected into a batch. */
+	static final long BATCH_WINDOW = 100;
+
+	private final EventService eventService;
+
+	private final LogService log;
+
+	private final WatchService watchService;
+
+	/** The thread processing the events, until the watcher is closed. */
+	private final Thread thread;
+
+	/** Active registrations, by the key of their watched directory. */
+	private final Map<WatchKey, List<Registration>> registrations =
+		new HashMap<>();
+
+	LocationWatcher(final ThreadService threadService,
+		final EventService eventService, final LogService log) throws IOException
+	{
+		this.eventService = eventService;
+		this.log = log;
+		watchService = FileSystems.getDefault().newWatchService();
+		// NB: Waiting for events indefinitely would permanently occupy one of
+		// the thread service's pooled threads, so the watcher has its own.
+		thread = threadService.newThread(this::processEvents);
+		thread.setName(thread.getName() + "-LocationWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// -- LocationWatcher methods --
+
+	/**
+	 * Starts watching the given file or directory.
+	 *
+	 * @return A handle which stops watching when closed.
+	 */
+	Closeable watch(final FileLocation location) throws IOException {
+		final File file = location.getFile().getAbsoluteFile();
+		final boolean directory = file.isDirectory();
+		final File dir = directory ? file : file.getParentFile();
+		if (dir == null || !dir.isDirectory()) {
+			throw new IOException("Cannot watch " + location +
+				": no such directory");
+		}
+		synchronized (registrations) {
+			// NB: Registering the same directory again yields the same key.
+			final WatchKey key = dir.toPath().register(watchService, ENTRY_CREATE,
+				ENTRY_DELETE, ENTRY_MODIFY);
+			final Registration reg = new Registration(key, location, directory
+				? null : file.getName());
+			registrations.computeIfAbsent(key, k -> new ArrayList<>()).add(reg);
+			return reg;
+		}
+	}
+
+	// -- Closeable methods --
+
+	@Override
+	public void close() throws IOException {
+		synchronized (registrations) {
+			registrations.clear();
+		}
+		watchService.close();
+		thread.interrupt();
+	}
+
+	// -- Helper methods --
+
+	/** Collects and publishes batches of changes, until closed. */
+	private void processEvents() {
+		try {
+			while (true) {
+				final Map<Registration, Map<Location, Kind>> batch = nextBatch();
+				for (final Map.Entry<Registration, Map<Location, Kind>> entry : batch
+					.entrySet())
+				{
+					if (entry.getValue().isEmpty()) continue;
+					final FileLocation location = entry.getKey().location;
+					try {
+						eventService.publish(new LocationsChangedEvent(location, entry
+							.getValue()));
+					}
+					catch (final RuntimeException exc) {
+						// NB: A failure must not stop the watching of other locations.
+						log.error("Cannot publish changes of " + location, exc);
+					}
+				}
+			}
+		}
+		catch (final ClosedWatchServiceException | InterruptedException exc) {
+			// NB: Watcher was closed; stop processing.
+		}
+	}
+
+	/** Waits for changes, then collects them for the batch window. */
+	private Map<Registration, Map<Location, Kind>> nextBatch()
+		throws InterruptedException
+	{
+		WatchKey key = watchService.take();
+		final Map<Registration, Map<Location, Kind>> batch = new LinkedHashMap<>();
+		final long deadline = System.currentTimeMillis() + BATCH_WINDOW;
+		while (key != null) {
+			try {
+				collect(key, batch);
+			}
+			catch (final ClosedWatchServiceException exc) {
+				throw exc;
+			}
+			catch (final RuntimeException exc) {
+				log.error("Cannot collect changes of " + key.watchable(), exc);
+			}
+			final long remaining = deadline - System.currentTimeMillis();
+			key = remaining > 0 ? //
+				watchService.poll(remaining, TimeUnit.MILLISECONDS) : null;
+		}
+		return batch;
+	}
+
+	/** Adds the pending events of the given key to the batch. */
+	private void collect(final WatchKey key,
+		final Map<Registration, Map<Location, Kind>> batch)
+	{
+		final List<Registration> regs;
+		synchronized (registrations) {
+			final List<Registration> list = registrations.get(key);
+			regs = list == null ? new ArrayList<>() : new ArrayList<>(list);
+		}
+		final Path dir = (Path) key.watchable();
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				for (final Registration reg : regs) {
+					merge(changes(batch, reg), reg.location, Kind.OVERFLOW);
+				}
+				continue;
+			}
+			final Path child = dir.resolve((Path) event.context());
+			final String name = child.getFileName().toString();
+			final Kind kind = event.kind() == ENTRY_CREATE ? Kind.CREATED : //
+				event.kind() == ENTRY_DELETE ? Kind.DELETED : Kind.MODIFIED;
+			for (final Registration reg : regs) {
+				if (reg.name != null && !reg.name.equals(name)) continue;
+				final Location location = reg.name != null ? reg.location
+					: new FileLocation(child.toFile());
+				merge(changes(batch, reg), location, kind);
+			}
+		}
+		if (!key.reset()) {
+			// NB: The directory is no longer accessible; drop its registrations.
+			synchronized (registrations) {
+				registrations.remove(key);
+			}
+		}
+	}
+
+	private static Map<Location, Kind> changes(
+		final Map<Registration, Map<Location, Kind>> batch, final Registration reg)
+	{
+		return batch.computeIfAbsent(reg, r -> new LinkedHashMap<>());
+	}
+
+	/** Coalesces a change into those already observed for a location. */
+	static void merge(final Map<Location, Kind> changes, final Location location,
+		final Kind kind)
+	{
+		final Kind prev = changes.get(location);
+		final Kind merged;
+		if (prev == null || prev == kind) merged = kind;
+		else if (prev == Kind.OVERFLOW || kind == Kind.OVERFLOW) {
+			merged = Kind.OVERFLOW;
+		}
+		else if (prev == Kind.CREATED) {
+			// NB: Created and deleted within one batch: nothing to report.
+			merged = kind == Kind.DELETED ? null : Kind.CREATED;
+		}
+		else if (kind == Kind.DELETED) merged = Kind.DELETED;
+		else merged = Kind.MODIFIED;
+
+		if (merged == null) changes.remove(location);
+		else changes.put(location, merged);
+	}
+
+	// -- Helper classes --
+
+	/** A watched location, and the name of the watched file (if any). */
+	private class Registration implements Closeable {
+
+		private final WatchKey key;
+		private final FileLocation location;
+		private final String name;
+
+		private Registration(final WatchKey key, final FileLocation location,
+			final String name)
+		{
+			this.key = key;
+			this.location = location;
+			this.name = name;
+		}
+
+		@Override
+		public void close() {
+			synchronized (registrations) {
+				final List<Registration> list = registrations.get(key);
+				if (list == null || !list.remove(this) || !list.isEmpty()) return;
+				registrations.remove(key);
+				key.cancel();
+			}
+		}
+	}
+}
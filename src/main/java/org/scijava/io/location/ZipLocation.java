@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * {@link Location} of a single entry inside a ZIP (or JAR) archive.
+ * <p>
+ * The archive itself may reside at any {@link Location} which supports random
+ * access. Expressed as a {@link URI}, such a location looks like
+ * {@code zip:file:/path/to/archive.zip!/path/in/archive}.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ * @see ZipLocationResolver
+ */
+public class ZipLocation extends AbstractLocation {
+
+	/** URI scheme of ZIP entry locations. */
+	public static final String SCHEME = "zip";
+
+	/** Separator between the archive and the entry name. */
+	public static final String SEPARATOR = "!/";
+
+	private final Location archive;
+
+	private final String entryName;
+
+	/**
+	 * Creates a {@link ZipLocation} for the given entry of the given archive.
+	 *
+	 * @param archive the location of the archive
+	 * @param entryName the name of the entry inside the archive, e.g.
+	 *          {@code path/to/file.txt}
+	 */
+	public ZipLocation(final Location archive, final String entryName) {
+		this.archive = archive;
+		this.entryName = entryName.startsWith("/") ? entryName.substring(1)
+			: entryName;
+	}
+
+	// -- ZipLocation methods --
+
+	/** Gets the location of the archive containing the entry. */
+	public Location getArchive() {
+		return archive;
+	}
+
+	/** Gets the name of the entry inside the archive. */
+	public String getEntryName() {
+		return entryName;
+	}
+
+	// -- Location methods --
+
+	@Override
+	public URI getURI() {
+		final URI archiveURI = archive.getURI();
+		if (archiveURI == null) return null;
+		try {
+			// NB: Only the entry name needs quoting; the archive URI already is.
+			final String rawEntry = new URI(null, null, "/" + entryName, null)
+				.getRawPath().substring(1);
+			return new URI(SCHEME + ":" + archiveURI + SEPARATOR + rawEntry);
+		}
+		catch (final URISyntaxException exc) {
+			return null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		final String name = entryName.endsWith("/") ? //
+			entryName.substring(0, entryName.length() - 1) : entryName;
+		return name.substring(name.lastIndexOf('/') + 1);
+	}
+
+	// -- Object methods --
+
+	@Override
+	public int hashCode() {
+		return 31 * archive.hashCode() + entryName.hashCode();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof ZipLocation)) return false;
+		final ZipLocation other = (ZipLocation) obj;
+		return archive.equals(other.archive) && entryName.equals(other.entryName);
+	}
+
+	@Override
+	public String toString() {
+		return SCHEME + ":" + archive + SEPARATOR + entryName;
+	}
+}
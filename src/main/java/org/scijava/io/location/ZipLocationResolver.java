@@ -0,0 +1,78 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Implementation of {@link LocationResolver} for {@link ZipLocation}.
+ * <p>
+ * Handles URIs of the form {@code zip:<archive-uri>!/<entry>}, as well as the
+ * {@code jar:} URIs used by the Java class loading machinery. The archive URI
+ * is itself resolved via the {@link LocationService}, so archives nested
+ * inside other archives are supported too.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+@Plugin(type = LocationResolver.class)
+public class ZipLocationResolver extends AbstractLocationResolver {
+
+	@Parameter
+	private LocationService locationService;
+
+	public ZipLocationResolver() {
+		super(ZipLocation.SCHEME, "jar");
+	}
+
+	@Override
+	public Location resolve(final URI uri) throws URISyntaxException {
+		final String rawPart = uri.getRawSchemeSpecificPart();
+		final int split = rawPart.lastIndexOf(ZipLocation.SEPARATOR);
+		if (split < 0) {
+			throw new URISyntaxException(uri.toString(), "No archive entry given");
+		}
+		final URI archiveURI = new URI(rawPart.substring(0, split));
+		final Location archive = locationService.resolve(archiveURI);
+		if (archive == null) {
+			throw new URISyntaxException(uri.toString(), "Unsupported archive");
+		}
+		final String rawEntry = rawPart.substring(split + 1);
+		final String entryName = new URI(rawEntry).getPath().substring(1);
+		return new ZipLocation(archive, entryName);
+	}
+}
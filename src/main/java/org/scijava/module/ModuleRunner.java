@@ -34,6 +34,8 @@ package org.scijava.module;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.scijava.AbstractContextual;
 import org.scijava.Cancelable;
@@ -51,6 +53,8 @@ import org.scijava.module.event.ModuleStartedEvent;
 import org.scijava.module.process.ModulePostprocessor;
 import org.scijava.module.process.ModulePreprocessor;
 import org.scijava.plugin.Parameter;
+import org.scijava.thread.TaskScope;
+import org.scijava.thread.ThreadService;
 
 /**
  * Helper class for executing a {@link Module}, including pre- and
@@ -60,6 +64,12 @@ import org.scijava.plugin.Parameter;
  * easier to invoke in a variety of ways, such as with the
  * {@link java.util.concurrent} package.
  * </p>
+ * <p>
+ * The module executes within a {@link TaskScope}, if a {@link ThreadService}
+ * is available. When the module is canceled, the work it forked into the
+ * scope is interrupted. As modules do not announce their cancelation, a
+ * {@link Cancelable} module is polled for it while it runs.
+ * </p>
  * 
  * @author Curtis Rueden
  */
@@ -67,6 +77,9 @@ public class ModuleRunner extends AbstractContextual implements
 	Callable<Module>, Runnable
 {
 
+	/** Milliseconds between checks whether the running module is canceled. */
+	private static final long CANCEL_POLL_INTERVAL = 100;
+
 	private final Module module;
 	private final List<? extends ModulePreprocessor> pre;
 	private final List<? extends ModulePostprocessor> post;
@@ -80,6 +93,9 @@ public class ModuleRunner extends AbstractContextual implements
 	@Parameter(required = false)
 	private LogService log;
 
+	@Parameter(required = false)
+	private ThreadService threadService;
+
 	public ModuleRunner(final Context context, final Module module,
 		final List<? extends ModulePreprocessor> pre,
 		final List<? extends ModulePostprocessor> post)
@@ -165,7 +181,7 @@ public class ModuleRunner extends AbstractContextual implements
 
 		// execute module
 		if (es != null) es.publish(new ModuleExecutingEvent(module));
-		module.run();
+		execute();
 		if (isCanceled()) {
 			// module execution was canceled by the module itself
 			cleanupAndBroadcastCancelation(title, getCancelReason());
@@ -183,6 +199,43 @@ public class ModuleRunner extends AbstractContextual implements
 
 	// -- Helper methods --
 
+	private void execute() {
+		if (threadService == null) {
+			module.run();
+			return;
+		}
+		try (final TaskScope scope = threadService.newScope()) {
+			final ScheduledFuture<?> watcher = watchCancelation(scope);
+			try {
+				module.run();
+			}
+			finally {
+				if (watcher != null) watcher.cancel(false);
+				// NB: The module may have canceled itself.
+				if (isCanceled()) scope.cancel(getCancelReason());
+			}
+		}
+	}
+
+	/**
+	 * Periodically checks whether the module is canceled while it runs, and if
+	 * so, cancels the given scope.
+	 *
+	 * @return The periodic check, or null if there is none.
+	 */
+	private ScheduledFuture<?> watchCancelation(final TaskScope scope) {
+		if (!(module instanceof Cancelable)) return null;
+		try {
+			return threadService.scheduleWithFixedDelay(() -> {
+				if (isCanceled()) scope.cancel(getCancelReason());
+			}, CANCEL_POLL_INTERVAL, CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+		catch (final UnsupportedOperationException exc) {
+			// NB: The module is then only checked after it has run.
+			return null;
+		}
+	}
+
 	private void cleanupAndBroadcastCancelation(final String title,
 		final String reason)
 	{
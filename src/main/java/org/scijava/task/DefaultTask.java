@@ -31,17 +31,23 @@
  */
 package org.scijava.task;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.scijava.event.EventService;
 import org.scijava.task.event.TaskEvent;
+import org.scijava.thread.TaskScope;
 import org.scijava.thread.ThreadService;
 
 /**
  * Default implementation of {@link Task}. It launches code via the linked
  * {@link ThreadService}, and reports status updates via the linked
- * {@link EventService}.
+ * {@link EventService}. The code runs within a {@link TaskScope}, such that
+ * canceling the task interrupts all work the code forks into its
+ * {@link TaskScope#current() current} scope.
  *
  * @author Curtis Rueden
  */
@@ -50,10 +56,11 @@ public class DefaultTask implements Task {
 	private final ThreadService threadService;
 	private final EventService eventService;
 
-	private Future<?> future;
+	private volatile Future<?> future;
+	private volatile TaskScope scope;
 
-	private boolean canceled;
-	private String cancelReason;
+	private volatile boolean canceled;
+	private volatile String cancelReason;
 
 	private String status;
 	private long step;
@@ -87,7 +94,7 @@ public class DefaultTask implements Task {
 
 	@Override
 	public void waitFor() throws InterruptedException, ExecutionException {
-		future().get();
+		awaitFuture().get();
 	}
 
 	@Override
@@ -137,8 +144,15 @@ public class DefaultTask implements Task {
 
 	@Override
 	public void cancel(final String reason) {
-		canceled = true;
+		// NB: Set the reason first, for threads polling isCanceled.
 		cancelReason = reason;
+		canceled = true;
+		final TaskScope s = scope;
+		if (s != null) s.cancel(reason);
+		synchronized (this) {
+			// NB: Release threads waiting for the task to be started.
+			notifyAll();
+		}
 	}
 
 	@Override
@@ -160,8 +174,11 @@ public class DefaultTask implements Task {
 
 	// -- Helper methods --
 
-	private Future<?> future() {
-		return future(null);
+	private synchronized Future<?> awaitFuture() throws InterruptedException {
+		while (future == null && !canceled)
+			wait();
+		if (future == null) throw new CancellationException(cancelReason);
+		return future;
 	}
 
 	private Future<?> future(final Runnable r) {
@@ -172,7 +189,26 @@ public class DefaultTask implements Task {
 	private synchronized void initFuture(final Runnable r) {
 		if (future != null) return;
 		if (r == null) throw new IllegalArgumentException("Must call run first");
-		future = threadService.run(r);
+		final Future<?> f = threadService.run(() -> runScoped(r));
+		if (f == null) {
+			// NB: The thread service is disposed, so the task can never run.
+			final CompletableFuture<?> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new RejectedExecutionException(
+				"Thread service is disposed"));
+			future = failed;
+		}
+		else future = f;
+		notifyAll();
+	}
+
+	private void runScoped(final Runnable r) {
+		// NB: The scope stays referenced, to interrupt lingering work on cancel.
+		try (final TaskScope s = threadService.newScope()) {
+			scope = s;
+			// NB: The task may have been canceled before the scope existed.
+			if (canceled) s.cancel(cancelReason);
+			r.run();
+		}
 	}
 
 	private void fireTaskEvent() {
@@ -32,6 +32,7 @@
 
 package org.scijava.task;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 
 import org.scijava.Cancelable;
@@ -52,11 +53,16 @@ public interface Task extends Cancelable, Named {
 	void run(Runnable r);
 
 	/**
-	 * Waits for the task to complete.
+	 * Waits for the task to complete. If {@link #run} has not been called yet,
+	 * e.g. because the task is still queued for execution, first waits for the
+	 * task to be started.
 	 *
-	 * @throws IllegalStateException if {@link #run} has not been called yet.
 	 * @throws InterruptedException if the task is interrupted.
-	 * @throws ExecutionException if the task throws an exception while running.
+	 * @throws ExecutionException if the task throws an exception while running,
+	 *           or cannot be run at all, e.g. because its thread service is
+	 *           disposed.
+	 * @throws CancellationException if the task is canceled before it is
+	 *           started.
 	 */
 	void waitFor() throws InterruptedException, ExecutionException;
 
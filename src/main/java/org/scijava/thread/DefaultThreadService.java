@@ -33,16 +33,33 @@
 package org.scijava.thread;
 
 import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.scijava.Context;
 import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -51,6 +68,46 @@ import org.scijava.service.Service;
 
 /**
  * Default service for managing active threads.
+ * <p>
+ * By default, {@link #run} calls are executed by a cached thread pool, which
+ * spawns as many threads as there are tasks running concurrently. If the
+ * {@value #MODE_PROPERTY} system property is set to {@code bounded}, a
+ * {@link ForkJoinPool} is used instead, whose parallelism is the number of
+ * available processors, or the value of the {@value #PARALLELISM_PROPERTY}
+ * system property. Tasks blocking on the result of other tasks submitted via
+ * {@link #run} let the pool compensate with additional threads, so that such
+ * tasks cannot starve the pool.
+ * </p>
+ * <p>
+ * If the {@value #MODE_PROPERTY} system property is set to {@code virtual},
+ * each task runs in a new virtual thread, which suits tasks mostly blocked on
+ * I/O. On JVMs without virtual threads (before Java 21), the cached thread
+ * pool is used instead.
+ * </p>
+ * <p>
+ * Each task submitted to this service carries a token identifying its parent
+ * thread and the context it belongs to, so that {@link #getParent} and
+ * {@link #getThreadContext} answer for the current thread in constant time.
+ * Tasks run by this service's threads belong to its context; tasks run on the
+ * dispatch thread belong to the context of the thread which submitted them.
+ * The token is kept in a thread-local state, which is registered once per
+ * thread, so that queries about other threads can find it too.
+ * </p>
+ * <p>
+ * Code {@link #queue(String, Callable) queued} per ID runs serially on the
+ * same executor as {@link #run} calls, without a dedicated thread per ID.
+ * </p>
+ * <p>
+ * In headless mode, {@link #invoke} and {@link #queue(Runnable)} calls are
+ * executed by a lightweight dispatch thread of this service, rather than the
+ * AWT Event Dispatch Thread, unless the {@value #DISPATCH_PROPERTY} system
+ * property is set to {@code awt}. Setting it to {@code headless} uses the
+ * lightweight dispatch thread even when not headless.
+ * </p>
+ * <p>
+ * {@link #schedule Scheduled} code is triggered by a single scheduler thread,
+ * which hands each execution off to the same executor as {@link #run} calls.
+ * </p>
  * 
  * @author Curtis Rueden
  */
@@ -59,35 +116,133 @@ public final class DefaultThreadService extends AbstractService implements
 	ThreadService
 {
 
+	/**
+	 * System property selecting the execution mode: cached, bounded or
+	 * virtual.
+	 */
+	public static final String MODE_PROPERTY = "scijava.thread.mode";
+
+	/** System property setting the parallelism of the bounded mode. */
+	public static final String PARALLELISM_PROPERTY =
+		"scijava.thread.parallelism";
+
+	/**
+	 * System property selecting the dispatch thread: auto, awt or headless.
+	 */
+	public static final String DISPATCH_PROPERTY = "scijava.thread.dispatch";
+
 	private static final String SCIJAVA_THREAD_PREFIX = "SciJava-";
 
-	private static WeakHashMap<Thread, Thread> parents =
-		new WeakHashMap<>();
+	/**
+	 * The states of the threads spawned by a thread service or which ran a task,
+	 * for queries about other threads than the current one. Each thread is
+	 * registered once, rather than per task.
+	 */
+	private static final Map<Thread, ThreadState> THREADS = Collections
+		.synchronizedMap(new WeakHashMap<>());
+
+	/** The state of the current thread. */
+	private static final ThreadLocal<ThreadState> STATE = ThreadLocal
+		.withInitial(() -> THREADS.computeIfAbsent(Thread.currentThread(),
+			t -> new ThreadState(null)));
 
 	@Parameter
 	private LogService log;
 
 	private ExecutorService executor;
 
-	/** Mapping from ID to single-thread {@link ExecutorService} queue. */
-	private Map<String, ExecutorService> queues;
+	/** The dispatch thread, or null if the AWT event queue is used. */
+	private volatile DispatchLoop dispatcher;
+
+	private volatile boolean dispatcherChosen;
+
+	/** Triggers the executions of scheduled code. */
+	private ScheduledThreadPoolExecutor scheduler;
+
+	/** The scheduled code which is not done yet. */
+	private final Set<Future<?>> scheduled = ConcurrentHashMap.newKeySet();
+
+	/** Serial queues of the code queued per ID. */
+	private final KeyedExecutor queues = new KeyedExecutor(this::executeShared);
 
-	private int nextThread = 0;
+	private final AtomicInteger nextThread = new AtomicInteger();
 
 	private boolean disposed;
 
+	private String threadPrefix;
+
+	private final AtomicLong queuedCount = new AtomicLong();
+	private final AtomicLong activeCount = new AtomicLong();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maximumLatency = new AtomicLong();
+
+	// -- DefaultThreadService methods --
+
+	/**
+	 * Creates a {@link ForkJoinPool} with the given parallelism, whose threads
+	 * belong to this service's context, for use with
+	 * {@link #setExecutorService}.
+	 */
+	public ForkJoinPool newBoundedExecutor(final int parallelism) {
+		return new ForkJoinPool(parallelism, pool -> {
+			final ForkJoinWorkerThread thread =
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName(nextThreadName());
+			return register(thread);
+		}, null, true);
+	}
+
+	/**
+	 * Creates an executor running each task in a new virtual thread, which
+	 * belongs to this service's context, for use with
+	 * {@link #setExecutorService}.
+	 *
+	 * @throws UnsupportedOperationException if the JVM does not support virtual
+	 *           threads.
+	 */
+	public ExecutorService newVirtualExecutor() {
+		final ThreadFactory factory = VirtualThreads.factory(
+			contextThreadPrefix() + "Virtual-");
+		return VirtualThreads.newExecutor(r -> register(factory.newThread(r)));
+	}
+
 	// -- ThreadService methods --
 
 	@Override
 	public <V> Future<V> run(final Callable<V> code) {
 		if (disposed) return null;
-		return executor().submit(wrap(code));
+		return execute(new MeteredTask<>(wrap(code, context())));
 	}
 
 	@Override
 	public Future<?> run(final Runnable code) {
 		if (disposed) return null;
-		return executor().submit(wrap(code));
+		return execute(new MeteredTask<>(Executors.callable(wrap(code,
+			context()))));
+	}
+
+	@Override
+	public <V> ScheduledFuture<V> schedule(final Callable<V> code,
+		final long delay, final TimeUnit unit)
+	{
+		return schedule(code, delay, 0, unit);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(final Runnable code,
+		final long initialDelay, final long period, final TimeUnit unit)
+	{
+		if (period <= 0) throw new IllegalArgumentException("Period: " + period);
+		return schedule(Executors.callable(code), initialDelay, period, unit);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable code,
+		final long initialDelay, final long delay, final TimeUnit unit)
+	{
+		if (delay <= 0) throw new IllegalArgumentException("Delay: " + delay);
+		return schedule(Executors.callable(code), initialDelay, -delay, unit);
 	}
 
 	@Override
@@ -100,59 +255,86 @@ public final class DefaultThreadService extends AbstractService implements
 		this.executor = executor;
 	}
 
+	@Override
+	public ExecutionStats getExecutionStats() {
+		final ExecutorService service = executor;
+		final int poolSize;
+		if (service instanceof ThreadPoolExecutor) {
+			poolSize = ((ThreadPoolExecutor) service).getPoolSize();
+		}
+		else if (service instanceof ForkJoinPool) {
+			poolSize = ((ForkJoinPool) service).getPoolSize();
+		}
+		else poolSize = service == null ? 0 : -1;
+		return new ExecutionStats(poolSize, queuedCount.get(), activeCount.get(),
+			completedCount.get(), totalLatency.get(), maximumLatency.get());
+	}
+
 	@Override
 	public boolean isDispatchThread() {
-		return EventQueue.isDispatchThread();
+		final DispatchLoop loop = dispatcher();
+		return loop == null ? EventQueue.isDispatchThread() : loop
+			.isDispatchThread();
 	}
 
 	@Override
 	public void invoke(final Runnable code) throws InterruptedException,
 		InvocationTargetException
 	{
-		if (isDispatchThread()) {
+		final DispatchLoop loop = dispatcher();
+		if (loop != null) {
+			loop.invoke(wrap(code, currentOwner()));
+		}
+		else if (EventQueue.isDispatchThread()) {
 			// just call the code
 			code.run();
 		}
 		else {
 			// invoke on the EDT
-			EventQueue.invokeAndWait(wrap(code));
+			EventQueue.invokeAndWait(wrap(code, currentOwner()));
 		}
 	}
 
 	@Override
 	public void queue(final Runnable code) {
-		EventQueue.invokeLater(wrap(code));
+		final DispatchLoop loop = dispatcher();
+		if (loop != null) loop.execute(wrap(code, currentOwner()));
+		else EventQueue.invokeLater(wrap(code, currentOwner()));
 	}
 
 	@Override
 	public Future<?> queue(final String id, final Runnable code) {
-		return executor(id).submit(wrap(code));
+		return queue(id, Executors.callable(code));
 	}
 
 	@Override
 	public <V> Future<V> queue(final String id, final Callable<V> code) {
-		return executor(id).submit(wrap(code));
+		if (disposed) return null;
+		final FutureTask<V> task = new FutureTask<>(wrap(code, context()));
+		queues.execute(id, task);
+		return task;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Parents are known for threads while they run a task submitted to a
+	 * thread service.
+	 * </p>
+	 */
 	@Override
 	public Thread getParent(final Thread thread) {
-		return parents.get(thread != null ? thread : Thread.currentThread());
+		final ThreadState state = state(thread);
+		final TaskToken token = state == null ? null : state.token;
+		return token == null ? null : token.parent;
 	}
 
 	@Override
 	public ThreadContext getThreadContext(final Thread thread) {
-		final String name = thread.getName();
-
-		// check for same context
-		if (name.startsWith(contextThreadPrefix())) return ThreadContext.SAME;
-
-		// check for different context
-		if (name.startsWith(SCIJAVA_THREAD_PREFIX)) return ThreadContext.OTHER;
-
-		// recursively check parent thread
-		final Thread parent = getParent(thread);
-		if (parent == thread || parent == null) return ThreadContext.NONE;
-		return getThreadContext(parent);
+		final ThreadState state = state(thread);
+		final Context owner = state == null ? null : state.owner();
+		if (owner == null) return ThreadContext.NONE;
+		return owner == context() ? ThreadContext.SAME : ThreadContext.OTHER;
 	}
 
 	// -- Disposable methods --
@@ -160,23 +342,24 @@ public final class DefaultThreadService extends AbstractService implements
 	@Override
 	public synchronized void dispose() {
 		disposed = true;
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+		for (final Future<?> future : new ArrayList<>(scheduled)) {
+			future.cancel(false);
+		}
 		if (executor != null) {
 			executor.shutdown();
 			executor = null;
 		}
-		if (queues != null) {
-			for (final ExecutorService queue : queues.values()) {
-				queue.shutdown();
-			}
-		}
 	}
 
 	// -- ThreadFactory methods --
 
 	@Override
 	public Thread newThread(final Runnable r) {
-		final String threadName = contextThreadPrefix() + nextThread++;
-		return new Thread(r, threadName);
+		return register(new Thread(r, nextThreadName()));
 	}
 
 	// -- Helper methods --
@@ -186,67 +369,309 @@ public final class DefaultThreadService extends AbstractService implements
 		return executor;
 	}
 
-	private synchronized ExecutorService executor(final String id) {
-		if (disposed) return null;
-		if (queues == null) queues = new HashMap<>();
-		if (!queues.containsKey(id)) {
-			final ThreadFactory factory = new ThreadFactory() {
-
-				@Override
-				public Thread newThread(final Runnable r) {
-					final String threadName = contextThreadPrefix() + id;
-					return new Thread(r, threadName);
-				}
+	/** Executes the given task on the shared executor, unless disposed. */
+	private void executeShared(final Runnable task) {
+		final ExecutorService service;
+		synchronized (this) {
+			if (disposed) throw new RejectedExecutionException("Disposed");
+			service = executor();
+		}
+		service.execute(task);
+	}
+
+	/** Gets the dispatch thread, or null if the AWT event queue is used. */
+	private DispatchLoop dispatcher() {
+		if (!dispatcherChosen) initDispatcher();
+		return dispatcher;
+	}
 
-			};
-			final ExecutorService queue = Executors.newSingleThreadExecutor(factory);
-			queues.put(id, queue);
+	private synchronized void initDispatcher() {
+		if (dispatcherChosen) return;
+		final String mode = System.getProperty(DISPATCH_PROPERTY, "auto");
+		final boolean headless;
+		if (mode.equalsIgnoreCase("headless")) headless = true;
+		else if (mode.equalsIgnoreCase("awt")) headless = false;
+		else {
+			if (!mode.equalsIgnoreCase("auto")) {
+				log.warn("Unknown " + DISPATCH_PROPERTY + ": " + mode);
+			}
+			headless = GraphicsEnvironment.isHeadless();
+		}
+		if (headless) {
+			final String name = contextThreadPrefix() + "Dispatch";
+			dispatcher = new DispatchLoop(r -> register(new Thread(r, name)),
+				t -> log.error("Exception in dispatch thread", t));
 		}
-		return queues.get(id);
+		dispatcherChosen = true;
+	}
+
+	/**
+	 * Schedules the given code with the given period: positive for a fixed
+	 * rate, negative for a fixed delay, zero for a single execution.
+	 */
+	private <V> ScheduledFuture<V> schedule(final Callable<V> code,
+		final long delay, final long period, final TimeUnit unit)
+	{
+		final ScheduledTask<V> task;
+		synchronized (this) {
+			if (disposed) return null;
+			if (scheduler == null) initScheduler();
+			task = new ScheduledTask<>(wrap(code, context()), delay, period, unit,
+				scheduler, r -> {
+					if (disposed) throw new RejectedExecutionException("Disposed");
+					execute(new MeteredTask<>(Executors.callable(r)));
+				}, scheduled);
+		}
+		task.start();
+		return task;
+	}
+
+	private void initScheduler() {
+		scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			final Thread t = new Thread(r, contextThreadPrefix() + "Scheduler");
+			t.setDaemon(true);
+			return register(t);
+		});
+		scheduler.setRemoveOnCancelPolicy(true);
 	}
 
 	private synchronized void initExecutor() {
 		if (executor != null) return;
+		final String mode = System.getProperty(MODE_PROPERTY, "cached");
+		if (mode.equalsIgnoreCase("bounded")) {
+			executor = newBoundedExecutor(parallelism());
+			return;
+		}
+		if (mode.equalsIgnoreCase("virtual")) {
+			try {
+				executor = newVirtualExecutor();
+				return;
+			}
+			catch (final UnsupportedOperationException exc) {
+				log.warn("Virtual threads unavailable; using a cached thread pool");
+			}
+		}
+		else if (!mode.equalsIgnoreCase("cached")) {
+			log.warn("Unknown " + MODE_PROPERTY + ": " + mode);
+		}
 		executor = Executors.newCachedThreadPool(this);
 	}
 
-	private Runnable wrap(final Runnable r) {
-		final Thread parent = Thread.currentThread();
-		return new Runnable() {
-			@Override
-			public void run() {
-				final Thread thread = Thread.currentThread();
-				try {
-					if (parent != thread) parents.put(thread, parent);
-					r.run();
-				}
-				finally {
-					if (parent != thread) parents.remove(thread);
-				}
+	private int parallelism() {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		final String value = System.getProperty(PARALLELISM_PROPERTY);
+		if (value == null) return processors;
+		try {
+			final int parallelism = Integer.parseInt(value.trim());
+			if (parallelism > 0) return parallelism;
+		}
+		catch (final NumberFormatException exc) {
+			// NB: Fall through to the warning.
+		}
+		log.warn("Invalid " + PARALLELISM_PROPERTY + ": " + value);
+		return processors;
+	}
+
+	private <V> Future<V> execute(final MeteredTask<V> task) {
+		queuedCount.incrementAndGet();
+		try {
+			executor().execute(task);
+		}
+		catch (final RejectedExecutionException exc) {
+			queuedCount.decrementAndGet();
+			throw exc;
+		}
+		return task;
+	}
+
+	/** Counts a started task as completed, unless already done. */
+	private void finish(final AtomicBoolean finished) {
+		if (!finished.compareAndSet(false, true)) return;
+		activeCount.decrementAndGet();
+		completedCount.incrementAndGet();
+	}
+
+	private String nextThreadName() {
+		return contextThreadPrefix() + nextThread.getAndIncrement();
+	}
+
+	/** Registers the given new thread as belonging to this service's context. */
+	private <T extends Thread> T register(final T thread) {
+		THREADS.put(thread, new ThreadState(context()));
+		return thread;
+	}
+
+	/**
+	 * Gets the owner of tasks submitted by the current thread: the context of
+	 * its own task, or else of the thread service which spawned it.
+	 */
+	private static Context currentOwner() {
+		return STATE.get().owner();
+	}
+
+	private Runnable wrap(final Runnable r, final Context owner) {
+		final TaskToken token = new TaskToken(Thread.currentThread(), owner);
+		return () -> {
+			if (token.parent == Thread.currentThread()) {
+				r.run();
+				return;
+			}
+			final ThreadState state = STATE.get();
+			final TaskToken previous = state.token;
+			state.token = token;
+			try {
+				r.run();
+			}
+			finally {
+				state.token = previous;
 			}
 		};
 	}
 
-	private <V> Callable<V> wrap(final Callable<V> c) {
-		final Thread parent = Thread.currentThread();
-		return new Callable<V>() {
-			@Override
-			public V call() throws Exception {
-				final Thread thread = Thread.currentThread();
-				try {
-					if (parent != thread) parents.put(thread, parent);
-					return c.call();
-				}
-				finally {
-					if (parent != thread) parents.remove(thread);
-				}
+	private <V> Callable<V> wrap(final Callable<V> c, final Context owner) {
+		final TaskToken token = new TaskToken(Thread.currentThread(), owner);
+		return () -> {
+			if (token.parent == Thread.currentThread()) return c.call();
+			final ThreadState state = STATE.get();
+			final TaskToken previous = state.token;
+			state.token = token;
+			try {
+				return c.call();
+			}
+			finally {
+				state.token = previous;
 			}
 		};
 	}
 
+	/** Gets the state of the given thread, or null if it is unknown. */
+	private static ThreadState state(final Thread thread) {
+		if (thread == null || thread == Thread.currentThread()) return STATE.get();
+		return THREADS.get(thread);
+	}
+
 	private String contextThreadPrefix() {
-		final String contextHash = Integer.toHexString(context().hashCode());
-		return SCIJAVA_THREAD_PREFIX + contextHash + "-Thread-";
+		String prefix = threadPrefix;
+		if (prefix == null) {
+			final String contextHash = Integer.toHexString(context().hashCode());
+			prefix = threadPrefix = SCIJAVA_THREAD_PREFIX + contextHash + "-Thread-";
+		}
+		return prefix;
+	}
+
+	// -- Helper classes --
+
+	/** Identifies the parent thread and owning context of a task. */
+	private static final class TaskToken {
+
+		private final Thread parent;
+
+		/** The owning context, or null. */
+		private final Context owner;
+
+		private TaskToken(final Thread parent, final Context owner) {
+			this.parent = parent;
+			this.owner = owner;
+		}
+	}
+
+	/** The task running in a thread, and the context which spawned it. */
+	private static final class ThreadState {
+
+		/** The context of the thread service which spawned the thread, or null. */
+		private final Context context;
+
+		/** The token of the task running in the thread, if any. */
+		private volatile TaskToken token;
+
+		private ThreadState(final Context context) {
+			this.context = context;
+		}
+
+		/** Gets the owner of the code running in the thread. */
+		private Context owner() {
+			final TaskToken t = token;
+			return t == null ? context : t.owner;
+		}
+	}
+
+	/**
+	 * A task recording its latency and state in the statistics of this service.
+	 * Blocking on its result from a {@link ForkJoinPool} thread lets the pool
+	 * compensate with another thread.
+	 */
+	private class MeteredTask<V> extends FutureTask<V> {
+
+		private final long submitted = System.nanoTime();
+
+		/** Whether the task was started or canceled, i.e. left the queue. */
+		private final AtomicBoolean dequeued = new AtomicBoolean();
+
+		/** Whether the started task was counted as completed. */
+		private final AtomicBoolean finished;
+
+		private MeteredTask(final Callable<V> callable) {
+			this(callable, new AtomicBoolean());
+		}
+
+		private MeteredTask(final Callable<V> callable,
+			final AtomicBoolean finished)
+		{
+			// NB: Count the task as completed before its result is available.
+			super(() -> {
+				try {
+					return callable.call();
+				}
+				finally {
+					finish(finished);
+				}
+			});
+			this.finished = finished;
+		}
+
+		@Override
+		public void run() {
+			if (!dequeued.compareAndSet(false, true)) return;
+			final long latency = System.nanoTime() - submitted;
+			queuedCount.decrementAndGet();
+			activeCount.incrementAndGet();
+			totalLatency.addAndGet(latency);
+			maximumLatency.accumulateAndGet(latency, Math::max);
+			super.run();
+			// NB: The task may have been canceled before its code ran.
+			finish(finished);
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			if (dequeued.compareAndSet(false, true)) queuedCount.decrementAndGet();
+			return super.cancel(mayInterruptIfRunning);
+		}
+
+		@Override
+		public V get() throws InterruptedException, ExecutionException {
+			if (!isDone() && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+					@Override
+					public boolean block() throws InterruptedException {
+						try {
+							MeteredTask.super.get();
+						}
+						catch (final ExecutionException | RuntimeException exc) {
+							// NB: Rethrown by the get call below.
+						}
+						return true;
+					}
+
+					@Override
+					public boolean isReleasable() {
+						return isDone();
+					}
+				});
+			}
+			return super.get();
+		}
 	}
 
 }
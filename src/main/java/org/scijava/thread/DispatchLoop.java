@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A lightweight dispatch thread, executing queued code one piece at a time in
+ * submission order, without the AWT event queue.
+ * <p>
+ * Submitting threads append to a lock-free queue, and only wake the dispatch
+ * thread when it is idle. The dispatch thread is a daemon thread, started on
+ * demand, which ends after being idle for a while, such that an unused loop
+ * holds no thread.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+final class DispatchLoop implements Runnable {
+
+	/** How long the dispatch thread waits for more code before it ends. */
+	private static final long KEEP_ALIVE = TimeUnit.SECONDS.toNanos(1);
+
+	private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+	private final ThreadFactory factory;
+	private final Consumer<Throwable> errorHandler;
+
+	private volatile Thread thread;
+	private volatile boolean idle;
+
+	/**
+	 * @param name The name of the dispatch thread.
+	 * @param errorHandler Handler of exceptions thrown by queued code.
+	 */
+	DispatchLoop(final String name, final Consumer<Throwable> errorHandler) {
+		this(r -> new Thread(r, name), errorHandler);
+	}
+
+	/**
+	 * @param factory Factory of the dispatch thread.
+	 * @param errorHandler Handler of exceptions thrown by queued code.
+	 */
+	DispatchLoop(final ThreadFactory factory,
+		final Consumer<Throwable> errorHandler)
+	{
+		this.factory = factory;
+		this.errorHandler = errorHandler;
+	}
+
+	/** Gets whether the current thread is the dispatch thread. */
+	boolean isDispatchThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/** Queues the given code for execution in the dispatch thread. */
+	void execute(final Runnable code) {
+		queue.add(code);
+		final Thread t = thread;
+		if (t == null) start();
+		else if (idle) LockSupport.unpark(t);
+	}
+
+	/**
+	 * Executes the given code in the dispatch thread, blocking until it
+	 * finished. Called from the dispatch thread, the code is executed directly.
+	 *
+	 * @throws InvocationTargetException if the code threw an exception.
+	 * @throws InterruptedException if the current thread was interrupted while
+	 *           waiting.
+	 */
+	void invoke(final Runnable code) throws InterruptedException,
+		InvocationTargetException
+	{
+		if (isDispatchThread()) {
+			code.run();
+			return;
+		}
+		final FutureTask<Void> task = new FutureTask<>(code, null);
+		execute(task);
+		try {
+			task.get();
+		}
+		catch (final ExecutionException exc) {
+			throw new InvocationTargetException(exc.getCause());
+		}
+	}
+
+	// -- Runnable methods --
+
+	@Override
+	public void run() {
+		while (true) {
+			final Runnable code = queue.poll();
+			if (code == null) {
+				// NB: Recheck the queue after announcing idleness, so that no
+				// wakeup is lost.
+				idle = true;
+				if (queue.isEmpty()) LockSupport.parkNanos(this, KEEP_ALIVE);
+				idle = false;
+				if (queue.isEmpty() && retire()) return;
+				continue;
+			}
+			try {
+				code.run();
+			}
+			catch (final Throwable t) {
+				errorHandler.accept(t);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private synchronized void start() {
+		if (thread != null) return;
+		final Thread t = factory.newThread(this);
+		t.setDaemon(true);
+		thread = t;
+		t.start();
+	}
+
+	/** Ends the dispatch thread, unless code was queued meanwhile. */
+	private synchronized boolean retire() {
+		final Thread t = thread;
+		thread = null;
+		// NB: Submitters which still saw the thread queued their code before.
+		if (queue.isEmpty()) return true;
+		thread = t;
+		return false;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+/**
+ * Immutable snapshot of the statistics of the tasks run by a
+ * {@link ThreadService}.
+ * <p>
+ * The latency of a task is the time it waited for a thread, from its
+ * submission until it started running, in nanoseconds.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ * @see ThreadService#getExecutionStats()
+ */
+public final class ExecutionStats {
+
+	private final int poolSize;
+	private final long queuedCount;
+	private final long activeCount;
+	private final long completedCount;
+	private final long totalLatency;
+	private final long maximumLatency;
+
+	public ExecutionStats(final int poolSize, final long queuedCount,
+		final long activeCount, final long completedCount,
+		final long totalLatency, final long maximumLatency)
+	{
+		this.poolSize = poolSize;
+		this.queuedCount = queuedCount;
+		this.activeCount = activeCount;
+		this.completedCount = completedCount;
+		this.totalLatency = totalLatency;
+		this.maximumLatency = maximumLatency;
+	}
+
+	// -- ExecutionStats methods --
+
+	/** Gets the number of threads of the executor, or -1 if unknown. */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/** Gets the number of tasks waiting for a thread. */
+	public long getQueuedCount() {
+		return queuedCount;
+	}
+
+	/** Gets the number of tasks currently running. */
+	public long getActiveCount() {
+		return activeCount;
+	}
+
+	/** Gets the number of tasks which finished running, successfully or not. */
+	public long getCompletedCount() {
+		return completedCount;
+	}
+
+	/** Gets the total latency of all tasks which started running. */
+	public long getTotalLatency() {
+		return totalLatency;
+	}
+
+	/** Gets the highest latency of all tasks which started running. */
+	public long getMaximumLatency() {
+		return maximumLatency;
+	}
+
+	/** Gets the average latency of all tasks which started running. */
+	public double getAverageLatency() {
+		final long started = activeCount + completedCount;
+		return started == 0 ? 0 : (double) totalLatency / started;
+	}
+
+	// -- Object methods --
+
+	@Override
+	public String toString() {
+		return "poolSize = " + poolSize + ", queued = " + queuedCount +
+			", active = " + activeCount + ", completed = " + completedCount +
+			", averageLatency = " + getAverageLatency() + ", maximumLatency = " +
+			maximumLatency;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executes tasks serially per key, on a shared {@link Executor}.
+ * <p>
+ * Each key with pending tasks has a lightweight queue, which is drained by
+ * one task of the shared executor at a time. Tasks of the same key thus run
+ * one after another, in the order they were submitted, while tasks of
+ * different keys may run concurrently. A queue drains a limited batch of
+ * tasks before yielding to other keys, and is discarded as soon as it is
+ * empty, so that idle keys use no resources.
+ * </p>
+ * <p>
+ * If the shared executor rejects a queue, e.g. because it was shut down, the
+ * queue is drained by the thread submitting to it.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+final class KeyedExecutor {
+
+	/** Maximum number of tasks a queue runs before yielding to other keys. */
+	private static final int BATCH_SIZE = 16;
+
+	private final Executor executor;
+
+	private final ConcurrentMap<Object, SerialQueue> queues =
+		new ConcurrentHashMap<>();
+
+	KeyedExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+
+	/** Executes the given task after all tasks submitted for the same key. */
+	void execute(final Object key, final Runnable task) {
+		while (!queues.computeIfAbsent(key, SerialQueue::new).offer(task)) {
+			// NB: The queue was discarded meanwhile; retry with a new one.
+		}
+	}
+
+	/** Gets the number of keys with pending or running tasks. */
+	int size() {
+		return queues.size();
+	}
+
+	// -- Helper classes --
+
+	/** The pending tasks of one key. */
+	private final class SerialQueue implements Runnable {
+
+		private final Object key;
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+		/** Whether the queue is scheduled on, or running in, the executor. */
+		private boolean scheduled;
+
+		/** Whether the queue was discarded, accepting no more tasks. */
+		private boolean discarded;
+
+		private SerialQueue(final Object key) {
+			this.key = key;
+		}
+
+		private boolean offer(final Runnable task) {
+			synchronized (this) {
+				if (discarded) return false;
+				tasks.add(task);
+				if (scheduled) return true;
+				scheduled = true;
+			}
+			if (!submit()) run();
+			return true;
+		}
+
+		/** Submits this queue to the executor, unless it is rejected. */
+		private boolean submit() {
+			try {
+				executor.execute(this);
+				return true;
+			}
+			catch (final RejectedExecutionException exc) {
+				return false;
+			}
+		}
+
+		@Override
+		public void run() {
+			// NB: Drain inline for as long as the executor rejects the queue.
+			while (drainBatch()) {
+				if (submit()) return;
+			}
+		}
+
+		/**
+		 * Runs a batch of tasks.
+		 *
+		 * @return True iff tasks remain, false if the queue was discarded.
+		 */
+		private boolean drainBatch() {
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				final Runnable task;
+				synchronized (this) {
+					task = tasks.poll();
+					if (task == null) {
+						discarded = true;
+						queues.remove(key, this);
+						return false;
+					}
+				}
+				try {
+					task.run();
+				}
+				catch (final RuntimeException | Error exc) {
+					// NB: Keep draining the remaining tasks.
+					if (!submit()) run();
+					throw exc;
+				}
+			}
+			return true;
+		}
+	}
+}
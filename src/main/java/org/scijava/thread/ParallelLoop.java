@@ -0,0 +1,187 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.scijava.task.Task;
+
+/**
+ * Runs a body over a range of indices in parallel, split into chunks.
+ * <p>
+ * The range is split into a few chunks per thread, which the calling thread
+ * and tasks of the {@link ThreadService} claim one after another, so that
+ * threads finishing early take over the remaining work. The loop stops
+ * claiming chunks as soon as a chunk fails, or the given {@link Task} is
+ * canceled; the task's progress is updated after each chunk.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+final class ParallelLoop {
+
+	/** Number of chunks per thread, for balancing uneven workloads. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final ThreadService threadService;
+	private final long start;
+	private final long end;
+	private final Task task;
+
+	private final int parallelism;
+	private final long chunkSize;
+	private final int chunkCount;
+
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private final AtomicLong done = new AtomicLong();
+
+	private volatile boolean stopped;
+	private Throwable failure;
+
+	ParallelLoop(final ThreadService threadService, final long start,
+		final long end, final Task task)
+	{
+		if (end < start) {
+			throw new IllegalArgumentException("Invalid range: " + start + ".." +
+				end);
+		}
+		this.threadService = threadService;
+		this.start = start;
+		this.end = end;
+		this.task = task;
+		parallelism = parallelism(threadService);
+		final long length = end - start;
+		final long chunks = (long) parallelism * CHUNKS_PER_THREAD;
+		chunkSize = Math.max(1, (length + chunks - 1) / chunks);
+		chunkCount = (int) ((length + chunkSize - 1) / chunkSize);
+	}
+
+	/** Gets the number of chunks the range is split into. */
+	int chunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * Runs the given body for each chunk, returning when all chunks are done.
+	 *
+	 * @throws ExecutionException if the body throws an exception.
+	 * @throws CancellationException if the task was canceled.
+	 * @throws InterruptedException if the calling thread was interrupted while
+	 *           waiting for other threads to finish their chunks.
+	 */
+	void run(final ChunkBody body) throws InterruptedException,
+		ExecutionException
+	{
+		if (task != null) task.setProgressMaximum(end - start);
+		final List<Future<?>> workers = new ArrayList<>();
+		final int workerCount = Math.min(parallelism, chunkCount);
+		for (int i = 1; i < workerCount; i++) {
+			final Future<?> worker = threadService.run(() -> work(body));
+			// NB: A disposed service runs no workers.
+			if (worker != null) workers.add(worker);
+		}
+		work(body);
+		try {
+			for (final Future<?> worker : workers) {
+				worker.get();
+			}
+		}
+		catch (final InterruptedException exc) {
+			stopped = true;
+			throw exc;
+		}
+		synchronized (this) {
+			if (failure != null) throw new ExecutionException(failure);
+		}
+		if (isCanceled()) throw new CancellationException(task.getCancelReason());
+	}
+
+	// -- Helper methods --
+
+	/** Runs chunks until all are claimed, or the loop was stopped. */
+	private void work(final ChunkBody body) {
+		while (!stopped && !isCanceled()) {
+			final int chunk = nextChunk.getAndIncrement();
+			if (chunk >= chunkCount) return;
+			final long from = start + chunk * chunkSize;
+			final long to = Math.min(end, from + chunkSize);
+			try {
+				body.run(chunk, from, to);
+			}
+			catch (final Throwable t) {
+				synchronized (this) {
+					if (failure == null) failure = t;
+				}
+				stopped = true;
+				return;
+			}
+			if (task != null) task.setProgressValue(done.addAndGet(to - from));
+		}
+	}
+
+	private boolean isCanceled() {
+		return task != null && task.isCanceled();
+	}
+
+	private static int parallelism(final ThreadService threadService) {
+		final ExecutorService executor = threadService.getExecutorService();
+		if (executor instanceof ForkJoinPool) {
+			return ((ForkJoinPool) executor).getParallelism();
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	// -- Helper classes --
+
+	/** The work of a loop, performed per chunk. */
+	@FunctionalInterface
+	interface ChunkBody {
+
+		/**
+		 * Processes the given chunk.
+		 *
+		 * @param chunk the index of the chunk
+		 * @param from the first index of the chunk, inclusive
+		 * @param to the last index of the chunk, exclusive
+		 */
+		void run(int chunk, long from, long to) throws Exception;
+	}
+}
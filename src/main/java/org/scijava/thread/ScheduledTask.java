@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Code scheduled for delayed or periodic execution. A scheduler only triggers
+ * each execution, handing the code off to an executor, so that the
+ * scheduler's thread never runs the code itself.
+ * <p>
+ * Periodic executions never overlap: the next execution is triggered once the
+ * previous one finished. An execution which throws an exception suppresses
+ * the subsequent ones.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+final class ScheduledTask<V> extends FutureTask<V> implements
+	ScheduledFuture<V>
+{
+
+	private final ScheduledExecutorService scheduler;
+	private final Executor executor;
+
+	/** The pending scheduled code, which this task belongs to until done. */
+	private final Collection<Future<?>> pending;
+
+	/**
+	 * Period in nanoseconds: positive for a fixed rate, negative for a fixed
+	 * delay, zero for a single execution.
+	 */
+	private final long period;
+
+	/** Time of the next execution, in {@link System#nanoTime()} terms. */
+	private volatile long time;
+
+	private volatile Future<?> trigger;
+
+	ScheduledTask(final Callable<V> code, final long delay, final long period,
+		final TimeUnit unit, final ScheduledExecutorService scheduler,
+		final Executor executor, final Collection<Future<?>> pending)
+	{
+		super(code);
+		this.scheduler = scheduler;
+		this.executor = executor;
+		this.pending = pending;
+		this.period = unit.toNanos(period);
+		time = System.nanoTime() + unit.toNanos(Math.max(0, delay));
+	}
+
+	/** Schedules the first execution. */
+	void start() {
+		pending.add(this);
+		arm();
+	}
+
+	// -- FutureTask methods --
+
+	@Override
+	protected void done() {
+		pending.remove(this);
+	}
+
+	// -- Future methods --
+
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		final boolean canceled = super.cancel(mayInterruptIfRunning);
+		final Future<?> t = trigger;
+		if (t != null) t.cancel(false);
+		return canceled;
+	}
+
+	// -- Delayed methods --
+
+	@Override
+	public long getDelay(final TimeUnit unit) {
+		return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public int compareTo(final Delayed o) {
+		if (o == this) return 0;
+		return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(
+			TimeUnit.NANOSECONDS));
+	}
+
+	// -- Helper methods --
+
+	private void arm() {
+		if (isDone()) return;
+		try {
+			trigger = scheduler.schedule(this::fire, time - System.nanoTime(),
+				TimeUnit.NANOSECONDS);
+		}
+		catch (final RejectedExecutionException exc) {
+			// NB: The scheduler was shut down.
+			cancel(false);
+		}
+	}
+
+	private void fire() {
+		try {
+			executor.execute(this::execute);
+		}
+		catch (final RejectedExecutionException exc) {
+			cancel(false);
+		}
+	}
+
+	private void execute() {
+		if (period == 0) {
+			run();
+			return;
+		}
+		if (!runAndReset()) return; // failed or canceled
+		time = period > 0 ? time + period : System.nanoTime() - period;
+		arm();
+	}
+}
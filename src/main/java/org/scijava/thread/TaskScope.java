@@ -0,0 +1,307 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.scijava.Cancelable;
+
+/**
+ * A scope of concurrent work which is joined and canceled together.
+ * <p>
+ * A scope is opened via {@link ThreadService#newScope()}, becoming the
+ * {@link #current() current} scope of the opening thread until it is
+ * {@link #close() closed}, which must happen in the same thread, typically
+ * via try-with-resources. Code {@link #fork forked} into the scope runs with
+ * the scope as its current scope; {@link #join()} waits for all forked code.
+ * If forked code throws an exception, the scope is canceled.
+ * </p>
+ * <p>
+ * Canceling a scope interrupts all unfinished code forked into it or
+ * {@link #register registered} with it, and cancels all scopes opened while
+ * it is current. Code {@link ThreadService#run run} by the
+ * {@link ThreadService} while the scope is current is not part of the scope,
+ * such that shared infrastructure started from within a scope outlives it.
+ * Closing a scope interrupts the forked code which has not finished yet.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+public final class TaskScope implements AutoCloseable, Cancelable {
+
+	private static final ThreadLocal<TaskScope> CURRENT = new ThreadLocal<>();
+
+	/** Number of registered futures above which completed ones are pruned. */
+	private static final int PRUNE_THRESHOLD = 64;
+
+	private final ThreadService threadService;
+	private final Thread owner = Thread.currentThread();
+	private final TaskScope parent;
+
+	private final List<Child<?>> forked = new ArrayList<>();
+	private final List<Future<?>> registered = new ArrayList<>();
+	private final List<TaskScope> scopes = new ArrayList<>();
+
+	private volatile boolean canceled;
+	private volatile String cancelReason;
+	private Throwable failure;
+	private boolean closed;
+
+	TaskScope(final ThreadService threadService) {
+		this.threadService = threadService;
+		parent = CURRENT.get();
+		CURRENT.set(this);
+		if (parent != null) parent.add(this);
+	}
+
+	/**
+	 * Gets the scope of the current thread: the innermost scope it opened, or
+	 * else the scope its code was forked into; or null if there is none.
+	 */
+	public static TaskScope current() {
+		return CURRENT.get();
+	}
+
+	// -- TaskScope methods --
+
+	/**
+	 * Executes the given code asynchronously as part of this scope.
+	 *
+	 * @return A {@link Future} of the code's result, which is already canceled
+	 *         if the scope is.
+	 * @throws IllegalStateException if the scope is closed.
+	 * @throws RejectedExecutionException if the {@link ThreadService} cannot
+	 *           run the code, e.g. because it was disposed.
+	 */
+	public <V> Future<V> fork(final Callable<V> code) {
+		synchronized (this) {
+			if (closed) throw new IllegalStateException("Scope is closed");
+		}
+		if (canceled) {
+			final FutureTask<V> task = new FutureTask<>(code);
+			task.cancel(false);
+			return task;
+		}
+		final Child<V> child = new Child<>();
+		child.future = threadService.run(() -> child.call(code));
+		if (child.future == null) {
+			throw new RejectedExecutionException("Thread service is disposed");
+		}
+		synchronized (this) {
+			forked.add(child);
+		}
+		if (canceled) child.cancel();
+		return child.future;
+	}
+
+	/**
+	 * Executes the given code asynchronously as part of this scope.
+	 *
+	 * @see #fork(Callable)
+	 */
+	public Future<?> fork(final Runnable code) {
+		return fork(Executors.callable(code));
+	}
+
+	/**
+	 * Waits for all code forked into this scope to finish.
+	 *
+	 * @throws ExecutionException if forked code threw an exception.
+	 * @throws CancellationException if the scope was canceled.
+	 * @throws InterruptedException if the current thread was interrupted while
+	 *           waiting.
+	 */
+	public void join() throws InterruptedException, ExecutionException {
+		// NB: Forked code may fork more code meanwhile.
+		for (int i = 0;; i++) {
+			final Child<?> child;
+			synchronized (this) {
+				if (i >= forked.size()) break;
+				child = forked.get(i);
+			}
+			try {
+				child.future.get();
+			}
+			catch (final ExecutionException | CancellationException exc) {
+				// NB: Reported below.
+			}
+		}
+		synchronized (this) {
+			if (failure != null) throw new ExecutionException(failure);
+		}
+		if (canceled) throw new CancellationException(cancelReason);
+	}
+
+	/**
+	 * Closes this scope, interrupting any forked code which has not finished
+	 * yet, and restores the previously current scope.
+	 *
+	 * @throws IllegalStateException if called from another thread than the one
+	 *           which opened the scope.
+	 */
+	@Override
+	public void close() {
+		if (Thread.currentThread() != owner) {
+			throw new IllegalStateException("Scope must be closed by its owner");
+		}
+		final List<Child<?>> children;
+		synchronized (this) {
+			if (closed) return;
+			closed = true;
+			children = new ArrayList<>(forked);
+		}
+		for (final Child<?> child : children) {
+			child.cancel();
+		}
+		if (CURRENT.get() == this) {
+			if (parent == null) CURRENT.remove();
+			else CURRENT.set(parent);
+		}
+		if (parent != null) parent.remove(this);
+	}
+
+	// -- Cancelable methods --
+
+	@Override
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	@Override
+	public void cancel(final String reason) {
+		final List<Child<?>> children;
+		final List<Future<?>> futures;
+		final List<TaskScope> nested;
+		synchronized (this) {
+			if (canceled) return;
+			cancelReason = reason;
+			canceled = true;
+			children = new ArrayList<>(forked);
+			futures = new ArrayList<>(registered);
+			nested = new ArrayList<>(scopes);
+		}
+		for (final Child<?> child : children) {
+			child.cancel();
+		}
+		for (final Future<?> future : futures) {
+			future.cancel(true);
+		}
+		for (final TaskScope scope : nested) {
+			scope.cancel(reason);
+		}
+	}
+
+	@Override
+	public String getCancelReason() {
+		return cancelReason;
+	}
+
+	/**
+	 * Registers asynchronous code run otherwise, e.g. via
+	 * {@link ThreadService#run}, to be interrupted when this scope is canceled.
+	 * Registered code is neither joined nor interrupted by {@link #close()}.
+	 */
+	public void register(final Future<?> future) {
+		synchronized (this) {
+			if (registered.size() >= PRUNE_THRESHOLD) {
+				registered.removeIf(Future::isDone);
+			}
+			registered.add(future);
+		}
+		if (canceled) future.cancel(true);
+	}
+
+	// -- Helper methods --
+
+	private void add(final TaskScope scope) {
+		synchronized (this) {
+			scopes.add(scope);
+		}
+		if (canceled) scope.cancel(cancelReason);
+	}
+
+	private synchronized void remove(final TaskScope scope) {
+		scopes.remove(scope);
+	}
+
+	private void fail(final Throwable t) {
+		synchronized (this) {
+			if (canceled || failure != null) return;
+			failure = t;
+		}
+		cancel("Forked code failed: " + t);
+	}
+
+	// -- Helper classes --
+
+	/** Code forked into the scope. */
+	private final class Child<V> {
+
+		private volatile Future<V> future;
+		private volatile Thread thread;
+
+		private V call(final Callable<V> code) throws Exception {
+			thread = Thread.currentThread();
+			final TaskScope previous = CURRENT.get();
+			CURRENT.set(TaskScope.this);
+			try {
+				return code.call();
+			}
+			catch (final Exception | Error exc) {
+				fail(exc);
+				throw exc;
+			}
+			finally {
+				if (previous == null) CURRENT.remove();
+				else CURRENT.set(previous);
+				thread = null;
+			}
+		}
+
+		/** Interrupts the code, unless it is running in the current thread. */
+		private void cancel() {
+			final Future<V> f = future;
+			if (f == null || f.isDone()) return;
+			if (thread == Thread.currentThread()) return;
+			f.cancel(true);
+		}
+	}
+}
@@ -33,13 +33,27 @@
 package org.scijava.thread;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 import org.scijava.Context;
 import org.scijava.service.SciJavaService;
+import org.scijava.task.Task;
 
 /**
  * Interface for the thread handling service.
@@ -111,6 +125,244 @@ public interface ThreadService extends SciJavaService, ThreadFactory {
 	 */
 	void setExecutorService(ExecutorService executor);
 
+	/**
+	 * Gets statistics of the tasks executed via {@link #run}, such as how many
+	 * are waiting for a thread, and how long they waited.
+	 *
+	 * @return A snapshot of the statistics.
+	 * @throws UnsupportedOperationException if this {@link ThreadService} does
+	 *           not record statistics.
+	 */
+	default ExecutionStats getExecutionStats() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Asynchronously executes the given code after the given delay, in a new
+	 * thread as if by {@link #run}. The delay is tracked by a scheduler shared
+	 * by all scheduled code, which does not occupy a thread of its own per
+	 * scheduled code.
+	 *
+	 * @param code The code to execute.
+	 * @param delay How long to wait before executing the code.
+	 * @param unit The time unit of the delay.
+	 * @return A {@link ScheduledFuture} of the code's result, or null if the
+	 *         service is disposed.
+	 * @throws UnsupportedOperationException if this {@link ThreadService} does
+	 *           not support scheduling.
+	 */
+	default <V> ScheduledFuture<V> schedule(final Callable<V> code,
+		final long delay, final TimeUnit unit)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Asynchronously executes the given code after the given delay.
+	 *
+	 * @see #schedule(Callable, long, TimeUnit)
+	 */
+	default ScheduledFuture<?> schedule(final Runnable code, final long delay,
+		final TimeUnit unit)
+	{
+		return schedule(Executors.callable(code), delay, unit);
+	}
+
+	/**
+	 * Periodically executes the given code, first after the given initial delay,
+	 * then once per period, in a new thread as if by {@link #run}. Executions
+	 * never overlap: if an execution takes longer than the period, the next one
+	 * starts late. If an execution throws an exception, subsequent executions
+	 * are suppressed.
+	 *
+	 * @param code The code to execute.
+	 * @param initialDelay How long to wait before the first execution.
+	 * @param period The time between the starts of successive executions.
+	 * @param unit The time unit of the initial delay and period.
+	 * @return A {@link ScheduledFuture} which can be used to cancel further
+	 *         executions, or null if the service is disposed.
+	 * @throws IllegalArgumentException if the period is not positive.
+	 * @throws UnsupportedOperationException if this {@link ThreadService} does
+	 *           not support scheduling.
+	 */
+	default ScheduledFuture<?> scheduleAtFixedRate(final Runnable code,
+		final long initialDelay, final long period, final TimeUnit unit)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Periodically executes the given code, first after the given initial delay,
+	 * then after the given delay between the end of an execution and the start
+	 * of the next one, in a new thread as if by {@link #run}. If an execution
+	 * throws an exception, subsequent executions are suppressed.
+	 *
+	 * @param code The code to execute.
+	 * @param initialDelay How long to wait before the first execution.
+	 * @param delay The time between the end of an execution and the start of
+	 *          the next one.
+	 * @param unit The time unit of the initial delay and delay.
+	 * @return A {@link ScheduledFuture} which can be used to cancel further
+	 *         executions, or null if the service is disposed.
+	 * @throws IllegalArgumentException if the delay is not positive.
+	 * @throws UnsupportedOperationException if this {@link ThreadService} does
+	 *           not support scheduling.
+	 */
+	default ScheduledFuture<?> scheduleWithFixedDelay(final Runnable code,
+		final long initialDelay, final long delay, final TimeUnit unit)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Opens a new {@link TaskScope}, which becomes the current scope of the
+	 * calling thread until it is closed. Only code {@link TaskScope#fork forked}
+	 * into the scope, or explicitly {@link TaskScope#register registered} with
+	 * it, is canceled along with the scope; code {@link #run run} while the
+	 * scope is current is not.
+	 *
+	 * @return The opened scope, to be closed by the calling thread.
+	 */
+	default TaskScope newScope() {
+		return new TaskScope(this);
+	}
+
+	/**
+	 * Executes the given body for each index of the given range in parallel,
+	 * blocking until all indices are processed.
+	 *
+	 * @see #parallelFor(long, long, LongConsumer, Task)
+	 */
+	default void parallelFor(final long start, final long end,
+		final LongConsumer body) throws InterruptedException, ExecutionException
+	{
+		parallelFor(start, end, body, null);
+	}
+
+	/**
+	 * Executes the given body for each index of the given range in parallel,
+	 * blocking until all indices are processed.
+	 * <p>
+	 * The range is split into chunks automatically, which the calling thread
+	 * and code {@link #run run} by this service process as they become free.
+	 * Progress is reported to the given task after each chunk. No further
+	 * chunks are started once the task is canceled, or the body throws an
+	 * exception.
+	 * </p>
+	 *
+	 * @param start The first index, inclusive.
+	 * @param end The last index, exclusive.
+	 * @param body The code to execute for each index.
+	 * @param task The task to report progress to, and whose cancelation stops
+	 *          the loop; or null.
+	 * @throws ExecutionException if the body threw an exception.
+	 * @throws CancellationException if the task was canceled.
+	 * @throws InterruptedException if the calling thread was interrupted while
+	 *           waiting for other threads.
+	 */
+	default void parallelFor(final long start, final long end,
+		final LongConsumer body, final Task task) throws InterruptedException,
+		ExecutionException
+	{
+		new ParallelLoop(this, start, end, task).run((chunk, from, to) -> {
+			for (long i = from; i < to; i++) {
+				body.accept(i);
+			}
+		});
+	}
+
+	/**
+	 * Applies the given function to each item of the given collection in
+	 * parallel.
+	 *
+	 * @see #parallelMap(Collection, Function, Task)
+	 */
+	default <T, R> List<R> parallelMap(final Collection<? extends T> items,
+		final Function<? super T, ? extends R> fn) throws InterruptedException,
+		ExecutionException
+	{
+		return parallelMap(items, fn, null);
+	}
+
+	/**
+	 * Applies the given function to each item of the given collection in
+	 * parallel, as by {@link #parallelFor(long, long, LongConsumer, Task)}.
+	 *
+	 * @param items The items to process.
+	 * @param fn The function to apply to each item.
+	 * @param task The task to report progress to, and whose cancelation stops
+	 *          the computation; or null.
+	 * @return The results, in the iteration order of the items.
+	 * @throws ExecutionException if the function threw an exception.
+	 * @throws CancellationException if the task was canceled.
+	 * @throws InterruptedException if the calling thread was interrupted while
+	 *           waiting for other threads.
+	 */
+	default <T, R> List<R> parallelMap(final Collection<? extends T> items,
+		final Function<? super T, ? extends R> fn, final Task task)
+		throws InterruptedException, ExecutionException
+	{
+		final List<? extends T> list = items instanceof RandomAccess &&
+			items instanceof List ? (List<? extends T>) items : new ArrayList<>(
+				items);
+		final Object[] results = new Object[list.size()];
+		parallelFor(0, results.length, i -> results[(int) i] = fn.apply(list.get(
+			(int) i)), task);
+		@SuppressWarnings("unchecked")
+		final List<R> resultList = (List<R>) Arrays.asList(results);
+		return resultList;
+	}
+
+	/**
+	 * Reduces the given range in parallel.
+	 *
+	 * @see #parallelReduce(long, long, Object, RangeFunction, BinaryOperator,
+	 *      Task)
+	 */
+	default <R> R parallelReduce(final long start, final long end,
+		final R identity, final RangeFunction<? extends R> chunk,
+		final BinaryOperator<R> combiner) throws InterruptedException,
+		ExecutionException
+	{
+		return parallelReduce(start, end, identity, chunk, combiner, null);
+	}
+
+	/**
+	 * Reduces the given range in parallel: the range is split into chunks as by
+	 * {@link #parallelFor(long, long, LongConsumer, Task)}, a result is
+	 * computed for each chunk, and the results are combined in the order of
+	 * their chunks, starting with the identity.
+	 *
+	 * @param start The first index, inclusive.
+	 * @param end The last index, exclusive.
+	 * @param identity The result of an empty range.
+	 * @param chunk The function computing the result of a chunk.
+	 * @param combiner The function combining two results.
+	 * @param task The task to report progress to, and whose cancelation stops
+	 *          the computation; or null.
+	 * @return The combined result of all chunks.
+	 * @throws ExecutionException if a function threw an exception.
+	 * @throws CancellationException if the task was canceled.
+	 * @throws InterruptedException if the calling thread was interrupted while
+	 *           waiting for other threads.
+	 */
+	default <R> R parallelReduce(final long start, final long end,
+		final R identity, final RangeFunction<? extends R> chunk,
+		final BinaryOperator<R> combiner, final Task task)
+		throws InterruptedException, ExecutionException
+	{
+		final ParallelLoop loop = new ParallelLoop(this, start, end, task);
+		final Object[] results = new Object[loop.chunkCount()];
+		loop.run((index, from, to) -> results[index] = chunk.apply(from, to));
+		R result = identity;
+		for (final Object r : results) {
+			@SuppressWarnings("unchecked")
+			final R typed = (R) r;
+			result = combiner.apply(result, typed);
+		}
+		return result;
+	}
+
 	/**
 	 * Gets whether the current thread is a dispatch thread for use with
 	 * {@link #invoke(Runnable)} and {@link #queue(Runnable)}.
@@ -155,10 +407,11 @@ public interface ThreadService extends SciJavaService, ThreadFactory {
 	void queue(Runnable code);
 
 	/**
-	 * Queues the given code for later execution in a dispatch thread associated
-	 * with the specified ID, returning immediately.
+	 * Queues the given code for later execution after all code previously
+	 * queued with the specified ID, returning immediately. Code queued with
+	 * different IDs may execute concurrently.
 	 *
-	 * @param id The ID designating which dispatch thread will execute the code.
+	 * @param id The ID designating the queue in which to execute the code.
 	 * @param code The code to execute.
 	 * @return A {@link Future} whose {@link Future#get()} method blocks until the
 	 *         queued code has completed executing and returns {@code null}.
@@ -167,10 +420,11 @@ public interface ThreadService extends SciJavaService, ThreadFactory {
 	Future<?> queue(String id, Runnable code);
 
 	/**
-	 * Queues the given code for later execution in a dispatch thread associated
-	 * with the specified ID, returning immediately.
+	 * Queues the given code for later execution after all code previously
+	 * queued with the specified ID, returning immediately. Code queued with
+	 * different IDs may execute concurrently.
 	 *
-	 * @param id The ID designating which dispatch thread will execute the code.
+	 * @param id The ID designating the queue in which to execute the code.
 	 * @param code The code to execute.
 	 * @return A {@link Future} whose {@link Future#get()} method blocks until the
 	 *         queued code has completed executing and returns the result of the
@@ -182,7 +436,8 @@ public interface ThreadService extends SciJavaService, ThreadFactory {
 	/**
 	 * Returns the thread that called the specified thread.
 	 * <p>
-	 * This works only on threads which the thread service knows about, of course.
+	 * This works only on threads which the thread service knows about, of course:
+	 * threads while they run a task submitted to a thread service.
 	 * </p>
 	 *
 	 * @param thread the managed thread, null refers to the current thread
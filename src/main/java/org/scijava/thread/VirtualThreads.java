@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utility methods for working with virtual threads, where the JVM supports
+ * them.
+ * <p>
+ * As this library targets Java 8, the virtual thread API (Java 21 and later)
+ * is accessed via reflection.
+ * </p>
+ *
+ * @author Gabriel Einsdorf
+ */
+final class VirtualThreads {
+
+	private VirtualThreads() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Creates a factory of virtual threads named with the given prefix, followed
+	 * by a counter.
+	 *
+	 * @throws UnsupportedOperationException if the JVM does not support virtual
+	 *           threads.
+	 */
+	static ThreadFactory factory(final String namePrefix) {
+		try {
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class)
+				.invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		}
+		catch (final ClassNotFoundException | NoSuchMethodException
+				| IllegalAccessException exc)
+		{
+			throw new UnsupportedOperationException("Virtual threads unavailable",
+				exc);
+		}
+		catch (final InvocationTargetException exc) {
+			// NB: Thrown by Java 19 and 20 unless preview features are enabled.
+			throw new UnsupportedOperationException("Virtual threads unavailable",
+				exc.getCause());
+		}
+	}
+
+	/**
+	 * Creates an executor starting a new thread from the given factory of
+	 * virtual threads for each task.
+	 *
+	 * @throws UnsupportedOperationException if the JVM does not support virtual
+	 *           threads.
+	 */
+	static ExecutorService newExecutor(final ThreadFactory factory) {
+		try {
+			final Method method = Executors.class.getMethod(
+				"newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) method.invoke(null, factory);
+		}
+		catch (final NoSuchMethodException | IllegalAccessException
+				| InvocationTargetException exc)
+		{
+			throw new UnsupportedOperationException("Virtual threads unavailable",
+				exc);
+		}
+	}
+}
@@ -133,6 +133,11 @@ public final class DigestUtils {
 		return digest("SHA-1", bytes);
 	}
 
+	/** Gets the given byte array's SHA-256 checksum, or null if unavailable. */
+	public static byte[] sha256(final byte[] bytes) {
+		return digest("SHA-256", bytes);
+	}
+
 	/** Gets the given byte array's MD5 checksum, or null if unavailable. */
 	public static byte[] md5(final byte[] bytes) {
 		return digest("MD5", bytes);
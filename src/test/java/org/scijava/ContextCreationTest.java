@@ -100,6 +100,7 @@ public class ContextCreationTest {
 				org.scijava.io.DefaultIOService.class,
 				org.scijava.io.DefaultRecentFileService.class,
 				org.scijava.io.handle.DefaultDataHandleService.class,
+				org.scijava.io.location.DefaultContentStoreService.class,
 				org.scijava.io.location.DefaultLocationService.class,
 				org.scijava.io.nio.DefaultNIOService.class,
 				org.scijava.main.DefaultMainService.class,
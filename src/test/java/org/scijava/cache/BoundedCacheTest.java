@@ -0,0 +1,412 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link BoundedCache}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class BoundedCacheTest {
+
+	@Test
+	public void testBasics() {
+		final BoundedCache<String, Integer> cache = new BoundedCache<>(10);
+		assertNull(cache.get("a"));
+		cache.put("a", 1);
+		cache.put("b", 2);
+		assertEquals(1, (int) cache.get("a"));
+		cache.put("a", 3);
+		assertEquals(3, (int) cache.get("a"));
+		assertEquals(2, cache.size());
+		assertEquals(2, (int) cache.remove("b"));
+		assertNull(cache.get("b"));
+		cache.put("a", null);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testMaximumSize() {
+		final BoundedCache<Integer, Integer> cache = new BoundedCache<>(100);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(i, i);
+			assertTrue(cache.size() <= 100);
+		}
+		assertEquals(100, cache.size());
+		cache.setMaximumWeight(10);
+		assertEquals(10, cache.size());
+	}
+
+	@Test
+	public void testScanResistance() {
+		final BoundedCache<Integer, Integer> cache = new BoundedCache<>(100);
+		// a working set of frequently used entries...
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 50; i++) {
+				if (cache.get(i) == null) cache.put(i, i);
+			}
+		}
+		// ...survives a scan over many entries which are used only once
+		for (int i = 1000; i < 1500; i++) {
+			if (cache.get(i) == null) cache.put(i, i);
+		}
+		int hits = 0;
+		for (int i = 0; i < 50; i++) {
+			if (cache.get(i) != null) hits++;
+		}
+		assertEquals(50, hits);
+	}
+
+	@Test
+	public void testWeigher() {
+		final BoundedCache<String, byte[]> cache = new BoundedCache<>(1000, (key,
+			value) -> value.length);
+		cache.put("a", new byte[400]);
+		cache.put("b", new byte[400]);
+		assertEquals(800, cache.weight());
+		cache.put("c", new byte[400]);
+		assertTrue(cache.weight() <= 1000);
+		assertEquals(2, cache.size());
+
+		// entries heavier than the whole cache are not cached
+		cache.put("d", new byte[2000]);
+		assertNull(cache.get("d"));
+
+		// reweighing evicts entries which no longer fit
+		cache.setMaximumWeight(1, null);
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.weight());
+	}
+
+	@Test
+	public void testExpireAfterWrite() {
+		final AtomicLong time = new AtomicLong();
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		cache.setTicker(time::get);
+		cache.setExpireAfterWrite(10, TimeUnit.NANOSECONDS);
+		cache.put("a", "1");
+		time.set(5);
+		cache.put("b", "2");
+		assertEquals("1", cache.get("a"));
+		time.set(10);
+		assertNull(cache.get("a"));
+		assertEquals("2", cache.get("b"));
+		time.set(15);
+		cache.cleanUp();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpireAfterAccess() {
+		final AtomicLong time = new AtomicLong();
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		cache.setTicker(time::get);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.setExpireAfterAccess(10, TimeUnit.NANOSECONDS);
+		time.set(8);
+		assertEquals("1", cache.get("a"));
+		time.set(16);
+		assertEquals("1", cache.get("a"));
+		cache.cleanUp();
+		assertNull(cache.get("b"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testLoader() throws ExecutionException {
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		final AtomicInteger loads = new AtomicInteger();
+		assertEquals("A", cache.get("a", () -> {
+			loads.incrementAndGet();
+			return "A";
+		}));
+		assertEquals("A", cache.get("a", () -> {
+			loads.incrementAndGet();
+			return "B";
+		}));
+		assertEquals(1, loads.get());
+
+		assertNull(cache.get("n", () -> null));
+		assertEquals(1, cache.size());
+
+		final Exception failure = new Exception("Oops");
+		try {
+			cache.get("f", () -> {
+				throw failure;
+			});
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertSame(failure, exc.getCause());
+		}
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<String> loader = () -> {
+			loads.incrementAndGet();
+			release.await(10, TimeUnit.SECONDS);
+			return "value";
+		};
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				results.add(pool.submit(() -> cache.get("key", loader)));
+			}
+			final List<CompletableFuture<String>> asyncResults = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				asyncResults.add(cache.getAsync("key", loader));
+			}
+			Thread.sleep(50);
+			release.countDown();
+			for (final Future<String> result : results) {
+				assertEquals("value", result.get());
+			}
+			for (final CompletableFuture<String> result : asyncResults) {
+				assertEquals("value", result.get());
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testGetAsyncFailure() throws InterruptedException {
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		final IllegalStateException failure = new IllegalStateException("Oops");
+		final CompletableFuture<String> result = cache.getAsync("key", () -> {
+			throw failure;
+		});
+		try {
+			result.get();
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertSame(failure, exc.getCause());
+		}
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testGetAsyncRejected() throws ExecutionException {
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		cache.setExecutor(r -> {
+			throw new RejectedExecutionException("Full");
+		});
+		final CompletableFuture<String> result = cache.getAsync("key", () -> "a");
+		assertTrue(result.isCompletedExceptionally());
+
+		// NB: A later load must not wait for the rejected one.
+		assertEquals("b", cache.get("key", () -> "b"));
+	}
+
+	@Test
+	public void testGetAsyncCanceled() throws ExecutionException {
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		final List<Runnable> loads = new ArrayList<>();
+		cache.setExecutor(loads::add);
+		final CompletableFuture<String> result = cache.getAsync("key", () -> "a");
+		assertEquals(1, loads.size());
+		((Future<?>) loads.get(0)).cancel(false);
+		assertTrue(result.isCompletedExceptionally());
+		assertEquals("b", cache.get("key", () -> "b"));
+	}
+
+	@Test
+	public void testRecursiveLoad() throws InterruptedException {
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		try {
+			cache.get("key", () -> cache.get("key", () -> "inner"));
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof IllegalStateException);
+		}
+		final CompletableFuture<String> result = cache.getAsync("key",
+			() -> cache.getAsync("key", () -> "inner").get());
+		try {
+			result.get(10, TimeUnit.SECONDS);
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof IllegalStateException);
+		}
+		catch (final TimeoutException exc) {
+			fail("Recursive load blocked");
+		}
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLockFreeReads() throws Exception {
+		final BoundedCache<String, String> cache = new BoundedCache<>(10);
+		cache.put("key", "value");
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// NB: Hits are served while another thread holds the lock.
+			synchronized (cache) {
+				final Future<String> hit = executor.submit(() -> cache.get("key"));
+				assertEquals("value", hit.get(10, TimeUnit.SECONDS));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("value", cache.get("key"));
+		}
+		assertEquals(1001, cache.stats().getHitCount());
+	}
+
+	@Test
+	public void testRefreshAfterWrite() throws ExecutionException {
+		final AtomicLong time = new AtomicLong();
+		final BoundedCache<String, Integer> cache = new BoundedCache<>(10);
+		final List<Runnable> refreshes = new ArrayList<>();
+		cache.setTicker(time::get);
+		cache.setExecutor(refreshes::add);
+		cache.setRefreshAfterWrite(10, TimeUnit.NANOSECONDS);
+		final AtomicInteger version = new AtomicInteger();
+		final Callable<Integer> loader = version::incrementAndGet;
+
+		assertEquals(1, (int) cache.get("key", loader));
+		time.set(10);
+		// NB: The current value is served while the refresh is pending.
+		assertEquals(1, (int) cache.get("key", loader));
+		assertEquals(1, (int) cache.get("key", loader));
+		assertEquals(1, refreshes.size());
+		refreshes.get(0).run();
+		assertEquals(2, (int) cache.get("key"));
+	}
+
+	@Test
+	public void testConcurrency() throws InterruptedException {
+		final BoundedCache<Integer, Integer> cache = new BoundedCache<>(64);
+		final List<Thread> threads = new ArrayList<>();
+		final AtomicInteger errors = new AtomicInteger();
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					final int key = (i * 31 + seed) % 500;
+					try {
+						final int value = cache.get(key, () -> key * 2);
+						if (value != key * 2 || cache.size() > 64) errors.incrementAndGet();
+					}
+					catch (final ExecutionException exc) {
+						errors.incrementAndGet();
+					}
+				}
+			}));
+		}
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, errors.get());
+		assertEquals(64, cache.size());
+	}
+
+	@Test
+	public void testStats() throws ExecutionException {
+		final AtomicLong time = new AtomicLong();
+		final BoundedCache<Integer, String> cache = new BoundedCache<>(2);
+		cache.setTicker(time::get);
+		cache.get(1);
+		cache.get(1, () -> {
+			time.addAndGet(5);
+			return "one";
+		});
+		cache.get(1);
+		try {
+			cache.get(2, () -> {
+				time.addAndGet(3);
+				throw new IllegalStateException();
+			});
+			fail();
+		}
+		catch (final ExecutionException exc) {
+			// NB: Expected.
+		}
+		for (int i = 3; i < 10; i++) {
+			cache.put(i, "other");
+		}
+
+		final CacheStats stats = cache.stats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(3, stats.getMissCount());
+		assertEquals(0.25, stats.getHitRate(), 0);
+		assertEquals(1, stats.getLoadSuccessCount());
+		assertEquals(1, stats.getLoadFailureCount());
+		assertEquals(8, stats.getTotalLoadTime());
+		assertEquals(4, stats.getAverageLoadPenalty(), 0);
+		assertEquals(cache.size() + stats.getEvictionCount(), 8);
+
+		cache.get(1);
+		final CacheStats recent = cache.stats().minus(stats);
+		assertEquals(1, recent.getRequestCount());
+		assertEquals(0, recent.getLoadSuccessCount());
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.cache.event.CacheStatsEvent;
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
+
+/**
+ * Tests {@link CacheService}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class CacheServiceTest {
+
+	private CacheService cacheService;
+
+	@Before
+	public void setUp() {
+		final Context context = new Context(CacheService.class);
+		cacheService = context.service(CacheService.class);
+	}
+
+	@After
+	public void tearDown() {
+		cacheService.context().dispose();
+	}
+
+	@Test
+	public void testLoader() throws ExecutionException {
+		final AtomicInteger loads = new AtomicInteger();
+		for (int i = 0; i < 3; i++) {
+			final String value = cacheService.get("key", () -> {
+				loads.incrementAndGet();
+				return "value";
+			});
+			assertEquals("value", value);
+		}
+		assertEquals(1, loads.get());
+		assertEquals("value", cacheService.get("key"));
+	}
+
+	@Test
+	public void testGetAsync() throws InterruptedException, ExecutionException {
+		final AtomicInteger loads = new AtomicInteger();
+		final CompletableFuture<String> first = cacheService.getAsync("key",
+			() -> {
+				loads.incrementAndGet();
+				return "value";
+			});
+		assertEquals("value", first.get());
+		assertEquals("value", cacheService.getAsync("key", () -> "other").get());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testBounded() {
+		final DefaultCacheService service = (DefaultCacheService) cacheService;
+		service.setMaximumSize(10);
+		for (int i = 0; i < 100; i++) {
+			cacheService.put(i, new Object());
+		}
+		assertTrue(service.size() <= 10);
+	}
+
+	@Test
+	public void testMemoryBudget() {
+		final DefaultCacheService service = (DefaultCacheService) cacheService;
+		service.setMaximumSize(100);
+		for (int i = 0; i < 100; i++) {
+			cacheService.put(i, new Object());
+		}
+		service.memoryBudgetChanged(0.1);
+		assertTrue(service.size() <= 10);
+		assertEquals(100, service.getMaximumWeight());
+
+		service.memoryBudgetChanged(1);
+		for (int i = 0; i < 100; i++) {
+			cacheService.put(i, new Object());
+		}
+		assertTrue(service.size() > 10);
+	}
+
+	@Test
+	public void testRegionInitializer() {
+		final int[] calls = new int[1];
+		final CacheRegion region = cacheService.region("initialized", r -> {
+			calls[0]++;
+			r.setMaximumSize(7);
+		});
+		assertEquals(7, region.getMaximumWeight());
+
+		// the initializer only runs upon creation
+		region.setMaximumSize(9);
+		assertSame(region, cacheService.region("initialized", r -> {
+			calls[0]++;
+			r.setMaximumSize(7);
+		}));
+		assertEquals(9, region.getMaximumWeight());
+		assertEquals(1, calls[0]);
+	}
+
+	@Test
+	public void testRegions() throws ExecutionException {
+		final CacheRegion thumbnails = cacheService.region("thumbnails");
+		assertSame(thumbnails, cacheService.region("thumbnails"));
+		assertEquals("thumbnails", thumbnails.getName());
+
+		// regions are independent of each other
+		thumbnails.setMaximumSize(5);
+		cacheService.put("key", "default");
+		thumbnails.put("key", "thumbnail");
+		assertEquals("default", cacheService.get("key"));
+		assertEquals("thumbnail", thumbnails.get("key"));
+		for (int i = 0; i < 100; i++) {
+			thumbnails.put(i, new Object());
+		}
+		assertTrue(thumbnails.size() <= 5);
+		assertEquals("default", cacheService.get("key"));
+
+		thumbnails.get("missing", () -> "loaded");
+		final Map<String, CacheStats> stats = cacheService.stats();
+		assertEquals(2, stats.get(CacheRegion.DEFAULT_NAME).getHitCount());
+		assertEquals(1, stats.get("thumbnails").getMissCount());
+		assertEquals(1, stats.get("thumbnails").getLoadSuccessCount());
+		assertTrue(stats.get("thumbnails").getEvictionCount() > 0);
+	}
+
+	@Test
+	public void testStatsEvents() throws InterruptedException {
+		final Context context = new Context(CacheService.class,
+			EventService.class);
+		try {
+			final BlockingQueue<CacheStatsEvent> events =
+				new LinkedBlockingQueue<>();
+			final Object subscriber = new Object() {
+
+				@EventHandler
+				private void onEvent(final CacheStatsEvent event) {
+					events.add(event);
+				}
+			};
+			context.service(EventService.class).subscribe(subscriber);
+
+			final DefaultCacheService service = context.service(
+				DefaultCacheService.class);
+			service.setStatsInterval(10, TimeUnit.MILLISECONDS);
+			final CacheRegion region = service.region("region");
+			region.get("key");
+
+			CacheStatsEvent event;
+			do {
+				event = events.poll(10, TimeUnit.SECONDS);
+			}
+			while (event != null && !event.getRegion().equals("region"));
+			assertNotNull(event);
+			assertEquals(1, event.getStats().getMissCount());
+			assertEquals(1, event.getRecentStats().getMissCount());
+		}
+		finally {
+			context.dispose();
+		}
+	}
+}
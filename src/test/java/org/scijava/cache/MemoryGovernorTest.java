@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link MemoryGovernor}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class MemoryGovernorTest {
+
+	@Test
+	public void testReduceAndRelieve() {
+		final MemoryGovernor governor = new MemoryGovernor();
+		final List<Double> fractions = new ArrayList<>();
+		final MemorySensitive consumer = fractions::add;
+		governor.register(consumer);
+		assertTrue(fractions.isEmpty());
+
+		governor.reduce();
+		governor.reduce();
+		assertEquals(0.25, governor.getBudgetFraction(), 0);
+		for (int i = 0; i < 10; i++) {
+			governor.reduce();
+		}
+		assertEquals(MemoryGovernor.MINIMUM_FRACTION, governor.getBudgetFraction(),
+			0);
+
+		for (int i = 0; i < 10; i++) {
+			governor.relieve();
+		}
+		assertEquals(1, governor.getBudgetFraction(), 0);
+		assertEquals(1, fractions.get(fractions.size() - 1), 0);
+		// NB: Unchanged fractions are not reported.
+		assertEquals(2 + 2 + 4, fractions.size());
+
+		governor.unregister(consumer);
+		governor.reduce();
+		assertEquals(8, fractions.size());
+	}
+
+	@Test
+	public void testRegisterUnderPressure() {
+		final MemoryGovernor governor = new MemoryGovernor();
+		governor.reduce();
+		final List<Double> fractions = new ArrayList<>();
+		governor.register(fractions::add);
+		assertEquals(1, fractions.size());
+		assertEquals(0.5, fractions.get(0), 0);
+	}
+
+	@Test
+	public void testWeakConsumers() throws InterruptedException {
+		final MemoryGovernor governor = new MemoryGovernor();
+		// NB: Non-capturing lambdas are never collected.
+		governor.register(new MemorySensitive() {
+
+			@Override
+			public void memoryBudgetChanged(final double fraction) {}
+		});
+		for (int i = 0; i < 10 && !governor.consumers().isEmpty(); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertTrue(governor.consumers().isEmpty());
+	}
+
+	@Test
+	public void testIsRelieved() {
+		assertTrue(MemoryGovernor.isRelieved(10, 100));
+		assertFalse(MemoryGovernor.isRelieved(60, 100));
+		assertTrue(MemoryGovernor.isRelieved(60, -1));
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.test.TestUtils;
+import org.scijava.util.FileUtils;
+
+/**
+ * Tests {@link SegmentStore}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class SegmentStoreTest {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = TestUtils.createTemporaryDirectory("SegmentStoreTest", getClass());
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteRecursively(dir);
+	}
+
+	@Test
+	public void testPutGetRemove() throws IOException {
+		try (final SegmentStore store = new SegmentStore(dir, 1 << 20, 1024)) {
+			assertNull(store.get(bytes("a")));
+			store.put(bytes("a"), bytes("1"));
+			store.put(bytes("b"), bytes("2"));
+			store.put(bytes("a"), bytes("3"));
+			assertArrayEquals(bytes("3"), store.get(bytes("a")));
+			assertArrayEquals(bytes("2"), store.get(bytes("b")));
+			assertTrue(store.remove(bytes("b")));
+			assertFalse(store.remove(bytes("b")));
+			assertNull(store.get(bytes("b")));
+			assertEquals(1, store.count());
+		}
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		try (final SegmentStore store = new SegmentStore(dir, 1 << 20, 100)) {
+			for (int i = 0; i < 20; i++) {
+				store.put(bytes("key" + i), bytes("value" + i));
+			}
+			store.remove(bytes("key3"));
+			store.put(bytes("key4"), bytes("new"));
+			assertTrue(store.segmentCount() > 1);
+
+			// the directory is locked while the store is open
+			try {
+				new SegmentStore(dir, 1 << 20, 100).close();
+				fail("Expected IOException");
+			}
+			catch (final IOException exc) {
+				// NB: Expected.
+			}
+		}
+		try (final SegmentStore store = new SegmentStore(dir, 1 << 20, 100)) {
+			assertEquals(19, store.count());
+			assertNull(store.get(bytes("key3")));
+			assertArrayEquals(bytes("new"), store.get(bytes("key4")));
+			assertArrayEquals(bytes("value19"), store.get(bytes("key19")));
+		}
+	}
+
+	@Test
+	public void testDamagedTail() throws IOException {
+		try (final SegmentStore store = new SegmentStore(dir, 1 << 20, 1024)) {
+			store.put(bytes("a"), bytes("1"));
+		}
+		// simulate a crash in the middle of writing a record
+		final File segment = dir.listFiles((d, name) -> name.endsWith(".seg"))[0];
+		try (final FileOutputStream out = new FileOutputStream(segment, true)) {
+			out.write(new byte[] { 1, 0, 0, 0, 1, 0, 0, 0, 9, 'b' });
+		}
+		final long damagedLength = segment.length();
+		try (final SegmentStore store = new SegmentStore(dir, 1 << 20, 1024)) {
+			assertEquals(1, store.count());
+			assertArrayEquals(bytes("1"), store.get(bytes("a")));
+			assertTrue(segment.length() < damagedLength);
+			store.put(bytes("c"), bytes("2"));
+		}
+		try (final SegmentStore store = new SegmentStore(dir, 1 << 20, 1024)) {
+			assertArrayEquals(bytes("2"), store.get(bytes("c")));
+		}
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		try (final SegmentStore store = new SegmentStore(dir, 1 << 20, 256)) {
+			for (int i = 0; i < 100; i++) {
+				store.put(bytes("key"), bytes("value" + i));
+			}
+			assertEquals(1, store.count());
+			// NB: Obsolete records were discarded along the way.
+			assertTrue(store.segmentCount() <= 3);
+			assertArrayEquals(bytes("value99"), store.get(bytes("key")));
+		}
+	}
+
+	@Test
+	public void testMaximumSize() throws IOException {
+		try (final SegmentStore store = new SegmentStore(dir, 1000, 100)) {
+			for (int i = 0; i < 100; i++) {
+				store.put(bytes("key" + i), new byte[40]);
+			}
+			assertTrue(store.size() <= 1000);
+			// the oldest entries were dropped first
+			assertNull(store.get(bytes("key0")));
+			assertArrayEquals(new byte[40], store.get(bytes("key99")));
+		}
+	}
+
+	// -- Helper methods --
+
+	private static byte[] bytes(final String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+}
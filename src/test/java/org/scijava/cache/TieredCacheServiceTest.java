@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.test.TestUtils;
+import org.scijava.util.FileUtils;
+
+/**
+ * Tests {@link TieredCacheService}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class TieredCacheServiceTest {
+
+	private File dir;
+	private Context context;
+	private TieredCacheService cacheService;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = TestUtils.createTemporaryDirectory("TieredCacheServiceTest",
+			getClass());
+		cacheService = createService();
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+		FileUtils.deleteRecursively(dir);
+	}
+
+	@Test
+	public void testDemoteAndPromote() {
+		cacheService.setMaximumMemorySize(4);
+		for (int i = 0; i < 20; i++) {
+			cacheService.put("key" + i, "value" + i);
+		}
+		assertEquals(4, cacheService.memorySize());
+		assertEquals(16, cacheService.diskSize());
+
+		// all entries are still available, from either tier
+		for (int i = 0; i < 20; i++) {
+			assertEquals("value" + i, cacheService.get("key" + i));
+		}
+		assertEquals(20, cacheService.memorySize() + cacheService.diskSize());
+	}
+
+	@Test
+	public void testPersistence() throws ExecutionException {
+		cacheService.setMaximumMemorySize(2);
+		for (int i = 0; i < 5; i++) {
+			cacheService.put(i, "value" + i);
+		}
+		cacheService.put(2, "replaced");
+		context.dispose();
+
+		cacheService = createService();
+		assertEquals("value0", cacheService.get(0));
+		assertEquals("replaced", cacheService.get(2));
+		assertEquals("value4", cacheService.get(4, () -> "loaded"));
+		assertEquals("loaded", cacheService.get(5, () -> "loaded"));
+		assertNull(cacheService.get(6));
+		assertTrue(cacheService.diskSize() <= 2);
+	}
+
+	@Test
+	public void testNonCanonicalKeys() {
+		final HashSet<String> key = new HashSet<>(Arrays.asList("a", "b", "c"));
+		cacheService.setMaximumMemorySize(1);
+		cacheService.put(key, "value");
+		cacheService.put("other", "other");
+		assertEquals(1, cacheService.diskSize());
+
+		// an equal key with a different serialized form finds the entry on disk
+		final HashSet<String> equalKey = new HashSet<>(1024);
+		equalKey.addAll(Arrays.asList("c", "b", "a"));
+		assertEquals("value", cacheService.get(equalKey));
+
+		// a different key with the same hash code does not
+		final Set<String> aa = Collections.singleton("Aa");
+		final Set<String> bb = new HashSet<>(Collections.singleton("BB"));
+		assertEquals(aa.hashCode(), bb.hashCode());
+		cacheService.put(new HashSet<>(aa), "Aa");
+		cacheService.put("other", "other");
+		assertNull(cacheService.get(bb));
+		assertEquals("Aa", cacheService.get(new HashSet<>(aa)));
+	}
+
+	@Test
+	public void testRemovePendingDemotions() {
+		cacheService.setMaximumMemorySize(4);
+		for (int i = 0; i < 4; i++) {
+			cacheService.put("key" + i, "value" + i);
+		}
+		// NB: The shrunk entries are demoted to disk in the background.
+		cacheService.memoryBudgetChanged(0.25);
+		for (int i = 0; i < 4; i++) {
+			cacheService.remove("key" + i);
+		}
+		for (int i = 0; i < 4; i++) {
+			assertNull(cacheService.get("key" + i));
+		}
+		assertEquals(0, cacheService.diskSize());
+	}
+
+	@Test
+	public void testOptIn() {
+		final Context other = new Context(CacheService.class);
+		try {
+			assertNull(other.getService(TieredCacheService.class));
+			assertSame(cacheService, context.service(CacheService.class));
+		}
+		finally {
+			other.dispose();
+		}
+	}
+
+	// -- Helper methods --
+
+	private TieredCacheService createService() {
+		context = new Context(TieredCacheService.class);
+		final TieredCacheService service = context.service(
+			TieredCacheService.class);
+		service.setDirectory(dir);
+		return service;
+	}
+
+}
@@ -35,10 +35,13 @@ package org.scijava.command;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.scijava.Cancelable;
@@ -48,12 +51,15 @@ import org.scijava.ItemIO;
 import org.scijava.Priority;
 import org.scijava.log.LogService;
 import org.scijava.module.Module;
+import org.scijava.module.ModuleException;
 import org.scijava.module.ModuleItem;
 import org.scijava.module.process.AbstractPreprocessorPlugin;
 import org.scijava.module.process.PreprocessorPlugin;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.Service;
+import org.scijava.thread.TaskScope;
+import org.scijava.thread.ThreadService;
 
 /** Regression tests for {@link CommandModule}. */
 public class CommandModuleTest {
@@ -145,6 +151,45 @@ public class CommandModuleTest {
 		assertEquals(7, plainModule.getOutput("output"));
 	}
 
+	@Test
+	public void testCancelInterruptsSpawnedWork() throws InterruptedException,
+		ExecutionException
+	{
+		final Context context = new Context(CommandService.class);
+		final CommandService commandService = context.service(CommandService.class);
+
+		final CommandModule module = //
+			commandService.run(SpawningCommand.class, false).get();
+		assertTrue(module.isCanceled());
+		final SpawningCommand command = //
+			(SpawningCommand) module.getDelegateObject();
+		assertTrue(command.interrupted.await(5, TimeUnit.SECONDS));
+		context.dispose();
+	}
+
+	@Test
+	public void testCancelKeepsCallerScope() throws ModuleException {
+		final Context context = new Context(CommandService.class);
+		final CommandService commandService = context.service(CommandService.class);
+		final ThreadService threadService = context.service(ThreadService.class);
+
+		final CommandModule module = new CommandModule(commandService.getCommand(
+			ScopedCommand.class));
+		module.setContext(context);
+		try (final TaskScope outer = threadService.newScope()) {
+			module.run();
+			final ScopedCommand command = (ScopedCommand) module.getDelegateObject();
+			assertNotSame(outer, command.scope);
+			assertTrue(command.scope.isCanceled());
+			assertFalse(outer.isCanceled());
+
+			// canceling the finished module does not reach the caller's scope
+			module.cancel("Too late");
+			assertFalse(outer.isCanceled());
+		}
+		context.dispose();
+	}
+
 	// -- Helper classes --
 
 	/** A command which implements {@link Cancelable}. */
@@ -181,6 +226,50 @@ public class CommandModuleTest {
 		}
 	}
 
+	/** A command which spawns work, then cancels itself. */
+	@Plugin(type = Command.class)
+	public static class SpawningCommand extends ContextCommand {
+
+		@Parameter
+		private ThreadService threadService;
+
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch interrupted = new CountDownLatch(1);
+
+		@Override
+		public void run() {
+			TaskScope.current().register(threadService.run(() -> {
+				started.countDown();
+				try {
+					new CountDownLatch(1).await();
+				}
+				catch (final InterruptedException exc) {
+					interrupted.countDown();
+				}
+			}));
+			try {
+				started.await();
+			}
+			catch (final InterruptedException exc) {
+				// NB: No action needed.
+			}
+			cancel("Changed my mind");
+		}
+	}
+
+	/** A command which records its scope, then cancels itself. */
+	@Plugin(type = Command.class)
+	public static class ScopedCommand extends ContextCommand {
+
+		private TaskScope scope;
+
+		@Override
+		public void run() {
+			scope = TaskScope.current();
+			cancel("Done");
+		}
+	}
+
 	@Plugin(type = PreprocessorPlugin.class)
 	public static class CommandCanceler extends AbstractPreprocessorPlugin {
 
@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.io.location.URILocation;
+import org.scijava.test.TestUtils;
+import org.scijava.util.FileUtils;
+
+/**
+ * Tests {@link DiskLocationCache}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class DiskLocationCacheTest {
+
+	private File cacheDir;
+	private DiskLocationCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		cacheDir = TestUtils.createTemporaryDirectory("DiskLocationCacheTest",
+			getClass());
+		cache = createCache();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteRecursively(cacheDir);
+	}
+
+	@Test
+	public void testNaming() throws Exception {
+		final File a = cachedFile(source("a"));
+		final File b = cachedFile(source("b"));
+		assertNotEquals(a, b);
+		assertEquals(cachedFile(source("a")), a);
+		// NB: Entries are named by a 64 digit hash, in a 2 digit subdirectory.
+		assertEquals(64 + ".data".length(), a.getName().length());
+		assertEquals(a.getName().substring(0, 2), a.getParentFile().getName());
+	}
+
+	@Test
+	public void testAtomicCommit() throws Exception {
+		final Location src = source("atomic");
+		final FileLocation staged = (FileLocation) cache.stagingLocation(src);
+		FileUtils.writeFile(staged.getFile(), new byte[100]);
+		assertFalse(cachedFile(src).exists());
+
+		cache.commit(src, staged);
+		assertFalse(staged.getFile().exists());
+		assertEquals(100, cachedFile(src).length());
+		assertEquals(100, cache.size());
+
+		// aborted data is discarded, leaving the cached data alone
+		final FileLocation aborted = (FileLocation) cache.stagingLocation(src);
+		FileUtils.writeFile(aborted.getFile(), new byte[10]);
+		cache.abort(src, aborted);
+		assertFalse(aborted.getFile().exists());
+		assertEquals(100, cachedFile(src).length());
+	}
+
+	@Test
+	public void testStagingLock() throws Exception {
+		final Location src = source("locked");
+		final DiskLocationCache other = createCache();
+		final FileLocation staged = (FileLocation) cache.stagingLocation(src);
+
+		// another cache must wait until the staging file is committed
+		final CompletableFuture<Location> waiting = CompletableFuture.supplyAsync(
+			() -> {
+				try {
+					return other.stagingLocation(src);
+				}
+				catch (final IOException exc) {
+					throw new UncheckedIOException(exc);
+				}
+			});
+		FileUtils.writeFile(staged.getFile(), new byte[100]);
+		Thread.sleep(100);
+		assertFalse(waiting.isDone());
+		cache.commit(src, staged);
+		final Location next = waiting.get(10, TimeUnit.SECONDS);
+		assertEquals(staged, next);
+		assertFalse(staged.getFile().exists());
+
+		// released staging files can be used again, e.g. to resume
+		other.release(src, next);
+		cache.release(src, cache.stagingLocation(src));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		cache.setMaximumSize(250);
+		final Location a = source("a"), b = source("b"), c = source("c");
+		store(a, 100);
+		store(b, 100);
+		Thread.sleep(5);
+		cache.touch(a);
+
+		// b is now the least recently used entry, and must make room for c
+		store(c, 100);
+		assertTrue(cachedFile(a).exists());
+		assertFalse(cachedFile(b).exists());
+		assertTrue(cachedFile(c).exists());
+		assertEquals(200, cache.size());
+	}
+
+	@Test
+	public void testCoalescedTouches() throws Exception {
+		final Location a = source("a");
+		store(a, 100);
+		final File journal = new File(cacheDir, "index");
+		final long length = journal.length();
+
+		// accesses shortly after a write are collected, not journaled one by one
+		for (int i = 0; i < 10; i++) {
+			cache.touch(a);
+		}
+		assertEquals(length, journal.length());
+
+		// collected accesses are journaled along with the next other operation
+		store(source("b"), 100);
+		assertTrue(journal.length() > length);
+	}
+
+	@Test
+	public void testLegacyEntries() throws Exception {
+		final Location a = source("a"), b = source("b");
+		final File legacyA = legacyFile(a), legacyB = legacyFile(b);
+		FileUtils.writeFile(legacyA, new byte[100]);
+		FileUtils.writeFile(legacyB, new byte[100]);
+		legacyB.setLastModified(legacyA.lastModified() - 10000);
+
+		// legacy entries count toward the maximum size
+		assertEquals(200, cache.size());
+
+		// legacy entries are moved to their current name on access
+		assertNull(cache.loadMetadata(a));
+		assertFalse(legacyA.exists());
+		assertEquals(100, cachedFile(a).length());
+		assertEquals(200, cache.size());
+
+		// legacy entries are evicted like any other
+		cache.setMaximumSize(250);
+		store(source("c"), 100);
+		assertFalse(legacyB.exists());
+		assertTrue(cachedFile(a).exists());
+		assertEquals(200, cache.size());
+	}
+
+	@Test
+	public void testSharedIndex() throws Exception {
+		store(source("a"), 100);
+		final DiskLocationCache other = createCache();
+		assertEquals(100, other.size());
+		store(other, source("b"), 50);
+		assertEquals(150, cache.size());
+	}
+
+	@Test
+	public void testMetadata() throws Exception {
+		final Location src = source("meta");
+		assertNull(cache.loadMetadata(src));
+
+		// legacy checksums are still understood
+		cache.saveChecksum(src, "\"v1\"");
+		assertEquals("\"v1\"", cache.loadMetadata(src).getChecksum());
+
+		final Date date = new Date(1234567890000L);
+		cache.saveMetadata(src, new CacheMetadata(42, date, "\"v2\"", 99));
+		final CacheMetadata metadata = createCache().loadMetadata(src);
+		assertEquals(42, metadata.getLength());
+		assertEquals(date, metadata.getLastModified());
+		assertEquals("\"v2\"", metadata.getChecksum());
+		assertEquals(99, metadata.getValidated());
+		assertEquals("\"v2\"", cache.loadChecksum(src));
+
+		// saving a checksum updates the metadata
+		cache.saveChecksum(src, "\"v3\"");
+		assertEquals(42, cache.loadMetadata(src).getLength());
+		assertEquals("\"v3\"", cache.loadMetadata(src).getChecksum());
+
+		assertTrue(metadata.matches(new CacheMetadata(42, date, null, 0)));
+		assertTrue(metadata.matches(new CacheMetadata(-1, null, "\"v2\"", 0)));
+		assertFalse(metadata.matches(new CacheMetadata(43, date, "\"v2\"", 0)));
+		assertFalse(metadata.matches(new CacheMetadata(42, new Date(), "\"v2\"",
+			0)));
+		assertFalse(metadata.matches(new CacheMetadata(42, date, "\"v3\"", 0)));
+	}
+
+	// -- Helper methods --
+
+	private DiskLocationCache createCache() {
+		final DiskLocationCache c = new DiskLocationCache();
+		c.setBaseDirectory(cacheDir);
+		return c;
+	}
+
+	private Location source(final String name) throws Exception {
+		return new URILocation("http://example.com/" + name);
+	}
+
+	private File cachedFile(final Location src) {
+		return ((FileLocation) cache.cachedLocation(src)).getFile();
+	}
+
+	/** Gets the data file of the given source as named by earlier versions. */
+	private File legacyFile(final Location src) {
+		return new File(cacheDir, Integer.toHexString(src.hashCode()) + ".data");
+	}
+
+	private void store(final Location src, final int size) throws IOException {
+		store(cache, src, size);
+	}
+
+	private static void store(final DiskLocationCache c, final Location src,
+		final int size) throws IOException
+	{
+		final FileLocation staged = (FileLocation) c.stagingLocation(src);
+		FileUtils.writeFile(staged.getFile(), new byte[size]);
+		c.commit(src, staged);
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.Priority;
+import org.scijava.io.location.Location;
+import org.scijava.io.location.URILocation;
+import org.scijava.task.Task;
+import org.scijava.task.TaskService;
+
+/**
+ * Tests {@link DownloadScheduler}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class DownloadSchedulerTest {
+
+	private Context context;
+	private TaskService taskService;
+	private DownloadScheduler scheduler;
+
+	/** Copies performed for coalesced requests, as "from -> to". */
+	private final List<String> copies = Collections.synchronizedList(
+		new ArrayList<>());
+
+	/** Released to let the running bodies complete. */
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		context = new Context(TaskService.class);
+		taskService = context.service(TaskService.class);
+		scheduler = new DownloadScheduler((from, to, task) -> copies.add(from
+			.getURI() + " -> " + to.getURI()));
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		context.dispose();
+	}
+
+	@Test
+	public void testLimits() throws Exception {
+		scheduler.setMaxDownloads(3);
+		scheduler.setMaxDownloadsPerHost(2);
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger activeA = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final AtomicInteger maxActiveA = new AtomicInteger();
+		final List<Task> tasks = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			final boolean hostA = i % 2 == 0;
+			tasks.add(submit((hostA ? "http://a/" : "http://b/") + i,
+				Priority.NORMAL, () -> {
+					final int n = active.incrementAndGet();
+					maxActive.accumulateAndGet(n, Math::max);
+					if (hostA) maxActiveA.accumulateAndGet(activeA.incrementAndGet(),
+						Math::max);
+					sleep(20);
+					if (hostA) activeA.decrementAndGet();
+					active.decrementAndGet();
+				}));
+		}
+		for (final Task task : tasks) {
+			task.waitFor();
+		}
+		assertEquals(3, maxActive.get());
+		assertEquals(2, maxActiveA.get());
+	}
+
+	@Test
+	public void testPriority() throws Exception {
+		scheduler.setMaxDownloads(1);
+		final List<String> order = Collections.synchronizedList(new ArrayList<>());
+		final Task blocker = submit("http://a/blocker", Priority.NORMAL,
+			this::awaitRelease);
+		final Task low = submit("http://a/low", Priority.LOW, () -> order.add(
+			"low"));
+		final Task normal = submit("http://a/normal", Priority.NORMAL, () -> order
+			.add("normal"));
+		final Task high = submit("http://a/high", Priority.HIGH, () -> order.add(
+			"high"));
+		release.countDown();
+		for (final Task task : new Task[] { blocker, low, normal, high }) {
+			task.waitFor();
+		}
+		assertEquals("[high, normal, low]", order.toString());
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		final AtomicInteger runs = new AtomicInteger();
+		final Task leader = submit("http://a/data", "mem:0", Priority.NORMAL,
+			() -> {
+				runs.incrementAndGet();
+				awaitRelease();
+			});
+		final Task follower1 = submit("http://a/data", "mem:1", Priority.NORMAL,
+			runs::incrementAndGet);
+		final Task follower2 = submit("http://a/data", "mem:2", Priority.NORMAL,
+			runs::incrementAndGet);
+		release.countDown();
+		leader.waitFor();
+		follower1.waitFor();
+		follower2.waitFor();
+
+		assertEquals(1, runs.get());
+		Collections.sort(copies);
+		assertEquals("[mem:0 -> mem:1, mem:0 -> mem:2]", copies.toString());
+	}
+
+	@Test
+	public void testSharedFailure() throws Exception {
+		final IllegalStateException failure = new IllegalStateException("Oops");
+		final Task leader = submit("http://a/data", "mem:0", Priority.NORMAL,
+			() -> {
+				awaitRelease();
+				throw failure;
+			});
+		final Task follower = submit("http://a/data", "mem:1", Priority.NORMAL,
+			() -> {});
+		release.countDown();
+		for (final Task task : new Task[] { leader, follower }) {
+			try {
+				task.waitFor();
+				fail("Expected ExecutionException");
+			}
+			catch (final ExecutionException exc) {
+				assertSame(failure, exc.getCause());
+			}
+		}
+		assertTrue(copies.isEmpty());
+	}
+
+	@Test
+	public void testCanceledLeader() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicInteger runs = new AtomicInteger();
+		final Task leader = submit("http://a/data", "mem:0", Priority.NORMAL,
+			() -> {
+				started.countDown();
+				awaitRelease();
+			});
+		final Task follower = submit("http://a/data", "mem:1", Priority.NORMAL,
+			runs::incrementAndGet);
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		leader.cancel("Not needed anymore");
+		release.countDown();
+		leader.waitFor();
+		follower.waitFor();
+
+		// NB: The follower was downloaded on its own instead.
+		assertEquals(1, runs.get());
+		assertTrue(copies.isEmpty());
+	}
+
+	// -- Helper methods --
+
+	private Task submit(final String source, final double priority,
+		final Runnable body) throws URISyntaxException, IOException
+	{
+		return submit(source, "mem:" + source.hashCode(), priority, body);
+	}
+
+	private Task submit(final String source, final String destination,
+		final double priority, final Runnable body) throws URISyntaxException
+	{
+		final Task task = taskService.createTask(source);
+		final Location dest = new URILocation(destination);
+		scheduler.submit(new URILocation(source), dest, dest, priority, task,
+			body);
+		return task;
+	}
+
+	private void awaitRelease() {
+		try {
+			release.await(10, TimeUnit.SECONDS);
+		}
+		catch (final InterruptedException exc) {
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	private static void sleep(final long ms) {
+		try {
+			Thread.sleep(ms);
+		}
+		catch (final InterruptedException exc) {
+			throw new IllegalStateException(exc);
+		}
+	}
+}
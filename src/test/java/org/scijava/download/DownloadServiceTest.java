@@ -36,9 +36,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.concurrent.ExecutionException;
 
 import org.junit.After;
@@ -161,8 +163,152 @@ public class DownloadServiceTest {
 		}
 	}
 
+	@Test
+	public void testSegmentedDownload() throws IOException, InterruptedException,
+		ExecutionException
+	{
+		final byte[] data = randomBytes(0xfeedface);
+		final DefaultDownloadService service = //
+			(DefaultDownloadService) downloadService;
+		service.setMinimumSegmentSize(data.length / 8);
+		assertEquals(4, service.getSegmentCount());
+
+		final File outFile = File.createTempFile(getClass().getName(),
+			"testSegmentedDownloadOut");
+		try (final RangeServer server = new RangeServer(data)) {
+			final Download download = downloadService.download(server.location(),
+				new FileLocation(outFile));
+			download.task().waitFor();
+
+			assertArrayEquals(data, FileUtils.readFile(outFile));
+			assertEquals(data.length, download.task().getProgressValue());
+			// NB: Each of the segments opened its own handle to the source.
+			assertEquals(1 + 4, server.heads());
+		}
+		finally {
+			outFile.delete();
+		}
+	}
+
+	@Test
+	public void testRetryResumes() throws IOException, InterruptedException,
+		ExecutionException
+	{
+		final byte[] data = randomBytes(0xdeadbeef);
+		final DefaultDownloadService service = //
+			(DefaultDownloadService) downloadService;
+		service.setSegmentCount(1);
+		service.setRetryDelay(0);
+
+		final BytesLocation dest = new BytesLocation(data.length);
+		try (final RangeServer server = new RangeServer(data)) {
+			server.failAt(data.length / 2);
+			final Download download = downloadService.download(server.location(),
+				dest);
+			download.task().waitFor();
+
+			assertBytesEqual(data, dest.getByteBank());
+			// NB: The retry resumed from the last completed block, so less than
+			// one block beyond the data was fetched twice.
+			assertTrue(server.served() < data.length +
+				DefaultDownloadService.DEFAULT_MINIMUM_SEGMENT_SIZE);
+		}
+	}
+
+	@Test
+	public void testResumePersisted() throws IOException, InterruptedException {
+		final byte[] data = randomBytes(0xbeefcafe);
+		final DefaultDownloadService service = //
+			(DefaultDownloadService) downloadService;
+		service.setMaxAttempts(1);
+
+		final File outFile = File.createTempFile(getClass().getName(),
+			"testResumePersistedOut");
+		final File sidecar = new File(outFile.getPath() + ".download");
+		try (final RangeServer server = new RangeServer(data)) {
+			// The first download fails halfway, leaving its state behind.
+			server.failAt(data.length / 2);
+			final Download failed = downloadService.download(server.location(),
+				new FileLocation(outFile));
+			try {
+				failed.task().waitFor();
+				fail("Expected ExecutionException");
+			}
+			catch (final ExecutionException exc) {
+				assertTrue(exc.getCause() instanceof UncheckedIOException);
+			}
+			assertTrue(sidecar.exists());
+			final long servedBefore = server.served();
+
+			// The next download of the same source resumes where it stopped.
+			final Download download = downloadService.download(server.location(),
+				new FileLocation(outFile));
+			try {
+				download.task().waitFor();
+			}
+			catch (final ExecutionException exc) {
+				throw new IOException(exc);
+			}
+			assertArrayEquals(data, FileUtils.readFile(outFile));
+			assertFalse(sidecar.exists());
+			assertTrue(server.served() - servedBefore < data.length / 2 +
+				DefaultDownloadService.DEFAULT_MINIMUM_SEGMENT_SIZE);
+		}
+		finally {
+			outFile.delete();
+			sidecar.delete();
+		}
+	}
+
+	@Test
+	public void testCacheTrustPeriod() throws IOException, InterruptedException,
+		ExecutionException
+	{
+		final byte[] data = randomBytes(0xfacefeed);
+		final DefaultDownloadService service = //
+			(DefaultDownloadService) downloadService;
+		service.setSegmentCount(1);
+
+		final File cacheDir = TestUtils.createTemporaryDirectory(
+			"testCacheTrustPeriodBase", getClass());
+		final DiskLocationCache cache = new DiskLocationCache();
+		cache.setBaseDirectory(cacheDir);
+		try (final RangeServer server = new RangeServer(data)) {
+			final Location src = server.location();
+			download(src, cache, data);
+			final int gets = server.gets();
+			assertTrue(gets > 0);
+			assertEquals(data.length, cache.loadMetadata(src).getLength());
+			assertEquals("\"v1\"", cache.loadMetadata(src).getChecksum());
+
+			// Without a trust period, the source is revalidated, but not refetched.
+			int heads = server.heads();
+			download(src, cache, data);
+			assertEquals(heads + 1, server.heads());
+			assertEquals(gets, server.gets());
+
+			// Within the trust period, the source is not accessed at all.
+			service.setCacheTrustPeriod(60_000);
+			heads = server.heads();
+			download(src, cache, data);
+			assertEquals(heads, server.heads());
+			assertEquals(gets, server.gets());
+		}
+		finally {
+			FileUtils.deleteRecursively(cacheDir);
+		}
+	}
+
 	// -- Helper methods --
 
+	private void download(final Location src, final LocationCache cache,
+		final byte[] data) throws InterruptedException, ExecutionException
+	{
+		final BytesLocation dest = new BytesLocation(data.length);
+		downloadService.download(src, dest, cache).task().waitFor();
+		assertBytesEqual(data, dest.getByteBank());
+	}
+
 	private byte[] randomBytes(final long seed) {
 		final MersenneTwisterFast r = new MersenneTwisterFast(seed);
 		final byte[] data = new byte[2938740];
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.download;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.scijava.io.location.Location;
+import org.scijava.io.location.URLLocation;
+
+/**
+ * Minimal HTTP server for download tests, serving a byte array at
+ * {@code /data} and honoring single-range requests.
+ *
+ * @author Gabriel Einsdorf
+ */
+class RangeServer implements AutoCloseable {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+	private final HttpServer server;
+	private final byte[] data;
+	private final AtomicInteger gets = new AtomicInteger();
+	private final AtomicInteger heads = new AtomicInteger();
+	private final AtomicLong served = new AtomicLong();
+	private final AtomicLong failAt = new AtomicLong(-1);
+	private final Set<Long> rangeStarts = ConcurrentHashMap.newKeySet();
+
+	RangeServer(final byte[] data) throws IOException {
+		this.data = data;
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/data", this::serve);
+		server.start();
+	}
+
+	/** Gets the location of the served data. */
+	Location location() throws IOException {
+		final int port = server.getAddress().getPort();
+		return new URLLocation(new URL("http://localhost:" + port + "/data"));
+	}
+
+	/** Gets the number of {@code GET} requests served so far. */
+	int gets() {
+		return gets.get();
+	}
+
+	/** Gets the number of {@code HEAD} requests served so far. */
+	int heads() {
+		return heads.get();
+	}
+
+	/** Gets the number of data bytes served so far. */
+	long served() {
+		return served.get();
+	}
+
+	/**
+	 * Makes the next response which covers the given offset break off the
+	 * connection just before that offset.
+	 */
+	void failAt(final long offset) {
+		failAt.set(offset);
+	}
+
+	/** Gets the start offsets of all range requests served so far. */
+	Set<Long> rangeStarts() {
+		return rangeStarts;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	// -- Helper methods --
+
+	private void serve(final HttpExchange exchange) throws IOException {
+		exchange.getResponseHeaders().add("ETag", "\"v1\"");
+		exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			heads.incrementAndGet();
+			exchange.getResponseHeaders().add("Content-Length", "" + data.length);
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		gets.incrementAndGet();
+		int first = 0, last = data.length - 1;
+		int code = 200;
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		if (range != null) {
+			final Matcher m = RANGE.matcher(range);
+			if (m.matches()) {
+				first = Integer.parseInt(m.group(1));
+				rangeStarts.add((long) first);
+				if (!m.group(2).isEmpty()) {
+					last = Math.min(last, Integer.parseInt(m.group(2)));
+				}
+				if (first >= data.length) {
+					exchange.sendResponseHeaders(416, -1);
+					exchange.close();
+					return;
+				}
+				code = 206;
+				exchange.getResponseHeaders().add("Content-Range", //
+					"bytes " + first + "-" + last + "/" + data.length);
+			}
+		}
+		final int count = last - first + 1;
+		exchange.sendResponseHeaders(code, count);
+		final long fail = failAt.get();
+		if (fail >= first && fail <= last && failAt.compareAndSet(fail, -1)) {
+			// Send only part of the promised data, then drop the connection.
+			final OutputStream out = exchange.getResponseBody();
+			out.write(data, first, (int) (fail - first));
+			out.flush();
+			served.addAndGet(fail - first);
+			exchange.close();
+			return;
+		}
+		try (final OutputStream out = exchange.getResponseBody()) {
+			out.write(data, first, count);
+		}
+		served.addAndGet(count);
+	}
+}
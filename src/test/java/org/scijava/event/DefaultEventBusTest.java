@@ -0,0 +1,174 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.log.LogLevel;
+import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Tests {@link DefaultEventBus}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class DefaultEventBusTest {
+
+	private Context context;
+	private DefaultEventBus bus;
+
+	@Before
+	public void setUp() {
+		context = new Context(ThreadService.class, LogService.class);
+		bus = new DefaultEventBus(context.service(ThreadService.class), context
+			.service(LogService.class));
+		bus.setSynchronous(true);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testHierarchy() {
+		final Recorder<SciJavaEvent> all = new Recorder<>(SciJavaEvent.class);
+		final Recorder<BaseEvent> base = new Recorder<>(BaseEvent.class);
+		final Recorder<SubEvent> sub = new Recorder<>(SubEvent.class);
+		bus.subscribe(SciJavaEvent.class, all);
+		bus.subscribe(BaseEvent.class, base);
+		bus.subscribe(SubEvent.class, sub);
+
+		final BaseEvent baseEvent = new BaseEvent();
+		final SubEvent subEvent = new SubEvent();
+		bus.publishNow(baseEvent);
+		bus.publishNow(subEvent);
+		assertEquals(Arrays.asList(baseEvent, subEvent), all.events);
+		assertEquals(Arrays.asList(baseEvent, subEvent), base.events);
+		assertEquals(Collections.singletonList(subEvent), sub.events);
+		assertEquals(3, bus.getSubscribers(SubEvent.class).size());
+		assertEquals(2, bus.getSubscribers(BaseEvent.class).size());
+	}
+
+	@Test
+	public void testSubscribeAfterPublish() {
+		final Recorder<BaseEvent> base = new Recorder<>(BaseEvent.class);
+		bus.publishNow(new SubEvent());
+		assertTrue(bus.getSubscribers(SubEvent.class).isEmpty());
+
+		// NB: The dispatch table of the published class is rebuilt.
+		assertTrue(bus.subscribe(BaseEvent.class, base));
+		assertFalse(bus.subscribe(BaseEvent.class, base));
+		final SubEvent event = new SubEvent();
+		bus.publishNow(event);
+		assertEquals(Collections.singletonList(event), base.events);
+
+		assertTrue(bus.unsubscribe(BaseEvent.class, base));
+		assertFalse(bus.unsubscribe(BaseEvent.class, base));
+		bus.publishNow(new SubEvent());
+		assertEquals(1, base.events.size());
+		assertTrue(bus.getSubscribers(SubEvent.class).isEmpty());
+	}
+
+	@Test
+	public void testFailingSubscriber() {
+		final Recorder<BaseEvent> failing = new Recorder<BaseEvent>(
+			BaseEvent.class)
+		{
+
+			@Override
+			public void onEvent(final BaseEvent event) {
+				throw new IllegalStateException("Expected");
+			}
+		};
+		final Recorder<BaseEvent> base = new Recorder<>(BaseEvent.class);
+		bus.subscribe(BaseEvent.class, failing);
+		bus.subscribe(BaseEvent.class, base);
+		context.service(LogService.class).setLevel(LogLevel.NONE);
+		bus.publishNow(new BaseEvent());
+		assertEquals(1, base.events.size());
+	}
+
+	@Test
+	public void testClear() {
+		final Recorder<BaseEvent> base = new Recorder<>(BaseEvent.class);
+		bus.subscribe(BaseEvent.class, base);
+		bus.clearAllSubscribers();
+		bus.publishNow(new BaseEvent());
+		assertTrue(base.events.isEmpty());
+	}
+
+	// -- Helper classes --
+
+	public static class BaseEvent extends SciJavaEvent {
+		// NB: No implementation needed.
+	}
+
+	public static class SubEvent extends BaseEvent {
+		// NB: No implementation needed.
+	}
+
+	private static class Recorder<E extends SciJavaEvent> implements
+		EventSubscriber<E>
+	{
+
+		private final Class<E> c;
+		private final List<E> events = new ArrayList<>();
+
+		private Recorder(final Class<E> c) {
+			this.c = c;
+		}
+
+		@Override
+		public void onEvent(final E event) {
+			events.add(event);
+		}
+
+		@Override
+		public Class<E> getEventClass() {
+			return c;
+		}
+	}
+}
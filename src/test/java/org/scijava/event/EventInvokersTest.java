@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link EventInvokers}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class EventInvokersTest {
+
+	@Test
+	public void testPublicHandler() throws Throwable {
+		final Handlers handlers = new Handlers();
+		final TestEvent event = new TestEvent();
+		invoker("onPublic").invoke(handlers, event);
+		assertSame(event, handlers.received);
+	}
+
+	@Test
+	public void testPrivateHandler() throws Throwable {
+		final Handlers handlers = new Handlers();
+		final TestEvent event = new TestEvent();
+		invoker("onPrivate").invoke(handlers, event);
+		assertSame(event, handlers.received);
+	}
+
+	@Test
+	public void testStaticHandler() throws Throwable {
+		final TestEvent event = new TestEvent();
+		invoker("onStatic").invoke(null, event);
+		assertSame(event, Handlers.staticReceived);
+	}
+
+	@Test
+	public void testReturningHandler() throws Throwable {
+		final Handlers handlers = new Handlers();
+		final TestEvent event = new TestEvent();
+		invoker("onReturning").invoke(handlers, event);
+		assertSame(event, handlers.received);
+	}
+
+	@Test
+	public void testException() throws Throwable {
+		try {
+			invoker("onFailing").invoke(new Handlers(), new TestEvent());
+			fail("Expected IllegalStateException");
+		}
+		catch (final IllegalStateException exc) {
+			assertEquals("Failed", exc.getMessage());
+		}
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		assertSame(invoker("onPublic"), invoker("onPublic"));
+	}
+
+	@Test
+	public void testClassUnloading() throws Throwable {
+		final WeakReference<ClassLoader> ref = invokeCopy();
+		for (int i = 0; i < 100 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(ref.get());
+	}
+
+	// -- Helper methods --
+
+	private EventInvoker invoker(final String name) throws Exception {
+		final Method m = Handlers.class.getDeclaredMethod(name, TestEvent.class);
+		m.setAccessible(true);
+		return EventInvokers.get(m);
+	}
+
+	/**
+	 * Invokes a handler of a copy of these classes, in a class loader which
+	 * nothing else references.
+	 */
+	private static WeakReference<ClassLoader> invokeCopy() throws Throwable {
+		final ClassLoader parent = EventInvokersTest.class.getClassLoader();
+		final URL classes = Handlers.class.getProtectionDomain().getCodeSource()
+			.getLocation();
+		try (final URLClassLoader loader = new URLClassLoader(new URL[] {
+			classes }, parent.getParent())
+		{
+
+			@Override
+			protected Class<?> loadClass(final String name, final boolean resolve)
+				throws ClassNotFoundException
+			{
+				if (!name.startsWith(EventInvokersTest.class.getName())) {
+					return parent.loadClass(name);
+				}
+				return super.loadClass(name, resolve);
+			}
+		})
+		{
+			final Class<?> c = loader.loadClass(Handlers.class.getName());
+			final Class<?> e = loader.loadClass(TestEvent.class.getName());
+			assertNotSame(Handlers.class, c);
+			EventInvokers.get(c.getDeclaredMethod("onPublic", e)).invoke(c
+				.newInstance(), e.newInstance());
+			return new WeakReference<>(loader);
+		}
+	}
+
+	// -- Helper classes --
+
+	public static class TestEvent extends SciJavaEvent {
+		// NB: No implementation needed.
+	}
+
+	public static class Handlers {
+
+		private Object received;
+		private static Object staticReceived;
+
+		@EventHandler
+		public void onPublic(final TestEvent event) {
+			received = event;
+		}
+
+		@EventHandler
+		private void onPrivate(final TestEvent event) {
+			received = event;
+		}
+
+		@EventHandler
+		public static void onStatic(final TestEvent event) {
+			staticReceived = event;
+		}
+
+		@EventHandler
+		public boolean onReturning(final TestEvent event) {
+			received = event;
+			return true;
+		}
+
+		@EventHandler
+		public void onFailing(@SuppressWarnings("unused") final TestEvent event) {
+			throw new IllegalStateException("Failed");
+		}
+	}
+}
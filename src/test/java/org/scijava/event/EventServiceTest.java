@@ -33,16 +33,21 @@
 package org.scijava.event;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.ref.WeakReference;
+import java.util.List;
 
 import org.junit.Test;
 import org.scijava.Context;
 import org.scijava.service.AbstractService;
 import org.scijava.service.event.ServicesLoadedEvent;
+import org.scijava.thread.ThreadService;
 
 /**
  * Verifies that the SciJava event service works as expected.
@@ -77,6 +82,51 @@ public class EventServiceTest {
 		gc();
 		eventService.publish(new MyEvent());
 		assertEquals(1, counter);
+		assertTrue(eventService.getSubscribers(MyEvent.class).isEmpty());
+	}
+
+	/** Tests that collected handlers are purged when subscriptions change. */
+	@Test
+	public void testPurgeOnSubscribe() {
+		final Context context = new Context(EventService.class);
+		try {
+			final EventService eventService = context.getService(
+				EventService.class);
+			MyEventHandler handler = new MyEventHandler();
+			eventService.subscribe(handler);
+			assertEquals(1, eventService.getSubscribers(MyEvent.class).size());
+
+			handler = null;
+			gc();
+			final MyEventHandler other = new MyEventHandler();
+			eventService.subscribe(other);
+			assertEquals(1, eventService.getSubscribers(MyEvent.class).size());
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
+	/** Tests that subscribing a handler again has no effect. */
+	@Test
+	public void testSubscribeTwice() {
+		final Context context = new Context(EventService.class);
+		try {
+			final EventService eventService = context.getService(
+				EventService.class);
+			final MyEventHandler handler = new MyEventHandler();
+			final List<EventSubscriber<?>> first = eventService.subscribe(handler);
+			final List<EventSubscriber<?>> second = eventService.subscribe(handler);
+			assertEquals(first, second);
+			assertEquals(first.hashCode(), second.hashCode());
+			assertEquals(1, eventService.getSubscribers(MyEvent.class).size());
+
+			eventService.unsubscribe(second);
+			assertTrue(eventService.getSubscribers(MyEvent.class).isEmpty());
+		}
+		finally {
+			context.dispose();
+		}
 	}
 
 	/**
@@ -97,6 +147,37 @@ public class EventServiceTest {
 		assertTrue(snaeService.isContextCreated());
 	}
 
+	/** Tests delivery on the publishing thread in synchronous mode. */
+	@Test
+	public void testSynchronousDispatch() {
+		final Context context = new Context(EventService.class);
+		try {
+			final DefaultEventService eventService = //
+				(DefaultEventService) context.getService(EventService.class);
+			final ThreadService threadService = //
+				context.getService(ThreadService.class);
+			final ThreadRecorder recorder = new ThreadRecorder(threadService);
+			eventService.subscribe(recorder);
+
+			// by default, all handlers are called on the dispatch thread
+			assertFalse(eventService.isSynchronous());
+			eventService.publish(new MyEvent());
+			assertNotSame(Thread.currentThread(), recorder.thread);
+			assertTrue(recorder.dispatch);
+			assertTrue(recorder.uiDispatch);
+
+			// synchronously, only handlers requesting it are marshalled
+			eventService.setSynchronous(true);
+			eventService.publish(new MyEvent());
+			assertSame(Thread.currentThread(), recorder.thread);
+			assertFalse(recorder.dispatch);
+			assertTrue(recorder.uiDispatch);
+		}
+		finally {
+			context.dispose();
+		}
+	}
+
 	private static void gc() {
 		System.gc();
 		// for some reason, some systems need extra encouragement to collect their garbage
@@ -118,6 +199,30 @@ public class EventServiceTest {
 		}
 	}
 
+	public static class ThreadRecorder {
+
+		private final ThreadService threadService;
+
+		private Thread thread;
+		private boolean dispatch;
+		private boolean uiDispatch;
+
+		public ThreadRecorder(final ThreadService threadService) {
+			this.threadService = threadService;
+		}
+
+		@EventHandler
+		public void onEvent(@SuppressWarnings("unused") final MyEvent e) {
+			thread = Thread.currentThread();
+			dispatch = threadService.isDispatchThread();
+		}
+
+		@EventHandler(dispatchThread = true)
+		public void onUIEvent(@SuppressWarnings("unused") final MyEvent e) {
+			uiDispatch = threadService.isDispatchThread();
+		}
+	}
+
 	public static class ServiceNeedingAnEventService extends AbstractService {
 
 		private boolean contextCreated;
@@ -0,0 +1,237 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.handle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.location.Location;
+import org.scijava.io.location.URLLocation;
+
+/**
+ * Tests {@link HTTPHandle}, against a local {@link HttpServer}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class HTTPHandleTest extends DataHandleTest {
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+	private HttpServer server;
+
+	private final AtomicInteger gets = new AtomicInteger();
+
+	@After
+	public void tearDown() {
+		if (server != null) server.stop(0);
+	}
+
+	@Override
+	public Class<? extends DataHandle<?>> getExpectedHandleType() {
+		return HTTPHandle.class;
+	}
+
+	@Override
+	public Location createLocation() throws IOException {
+		return location("/data");
+	}
+
+	@Test
+	public void testMetadata() throws IOException {
+		final Context ctx = new Context(DataHandleService.class);
+		final DataHandleService dhs = ctx.service(DataHandleService.class);
+		try (final DataHandle<Location> handle = dhs.create(createLocation())) {
+			assertTrue(handle.exists());
+			assertEquals(BYTES.length, handle.length());
+			assertEquals("\"v1\"", handle.checksum());
+			assertNotNull(handle.lastModified());
+		}
+		try (final DataHandle<Location> handle = dhs.create(location("/missing"))) {
+			assertFalse(handle.exists());
+			assertEquals(-1, handle.length());
+		}
+		ctx.dispose();
+	}
+
+	@Test
+	public void testReadAhead() throws IOException {
+		final Context ctx = new Context(DataHandleService.class);
+		final DataHandleService dhs = ctx.service(DataHandleService.class);
+		try (final DataHandle<Location> handle = dhs.create(createLocation())) {
+			((HTTPHandle) (DataHandle<?>) handle).setReadAhead(16);
+			for (int i = 0; i < BYTES.length; i++) {
+				assertEquals(msg(i), BYTES[i], handle.readByte());
+			}
+			// NB: One range request per 16-byte window.
+			assertEquals((BYTES.length + 15) / 16, gets.get());
+
+			// seeking back within the last window needs no new request
+			handle.seek(BYTES.length - 2);
+			assertEquals(BYTES[BYTES.length - 2], handle.readByte());
+			assertEquals((BYTES.length + 15) / 16, gets.get());
+		}
+		ctx.dispose();
+	}
+
+	@Test
+	public void testRangesIgnored() throws IOException {
+		final Context ctx = new Context(DataHandleService.class);
+		final DataHandleService dhs = ctx.service(DataHandleService.class);
+		try (final DataHandle<Location> handle = dhs.create(location("/whole"))) {
+			((HTTPHandle) (DataHandle<?>) handle).setReadAhead(16);
+			for (int i = 0; i < BYTES.length; i++) {
+				assertEquals(msg(i), BYTES[i], handle.readByte());
+			}
+			// NB: All windows are read from the same response.
+			assertEquals(1, gets.get());
+			assertFalse(handle.supportsRangedAccess());
+
+			// seeking forward skips ahead within the response
+			handle.seek(0);
+			assertEquals(BYTES[0], handle.readByte());
+			assertEquals(2, gets.get());
+			handle.seek(BYTES.length - 1);
+			assertEquals(BYTES[BYTES.length - 1], handle.readByte());
+			assertEquals(2, gets.get());
+		}
+		ctx.dispose();
+	}
+
+	// -- Internal methods --
+
+	@Override
+	protected <L extends Location> void checkWrites(final DataHandle<L> handle)
+		throws IOException
+	{
+		assertFalse(handle.isWritable());
+		try {
+			handle.write(0);
+			fail("Expected IOException");
+		}
+		catch (final IOException exc) {
+			// NB: Expected.
+		}
+	}
+
+	// -- Helper methods --
+
+	private Location location(final String path) throws IOException {
+		if (server == null) startServer();
+		final int port = server.getAddress().getPort();
+		return new URLLocation(new URL("http://localhost:" + port + path));
+	}
+
+	private void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/data", this::serve);
+		server.createContext("/whole", this::serveWhole);
+		server.start();
+	}
+
+	/** Serves {@link #BYTES}, honoring single-range requests. */
+	private void serve(final HttpExchange exchange) throws IOException {
+		if (!"/data".equals(exchange.getRequestURI().getPath())) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		exchange.getResponseHeaders().add("ETag", "\"v1\"");
+		exchange.getResponseHeaders().add("Last-Modified",
+			"Wed, 21 Oct 2015 07:28:00 GMT");
+		exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().add("Content-Length", "" + BYTES.length);
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		gets.incrementAndGet();
+		int first = 0, last = BYTES.length - 1;
+		int code = 200;
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		if (range != null) {
+			final Matcher m = RANGE.matcher(range);
+			if (m.matches()) {
+				first = Integer.parseInt(m.group(1));
+				if (!m.group(2).isEmpty()) {
+					last = Math.min(last, Integer.parseInt(m.group(2)));
+				}
+				if (first >= BYTES.length) {
+					exchange.sendResponseHeaders(416, -1);
+					exchange.close();
+					return;
+				}
+				code = 206;
+				exchange.getResponseHeaders().add("Content-Range", //
+					"bytes " + first + "-" + last + "/" + BYTES.length);
+			}
+		}
+		final int count = last - first + 1;
+		exchange.sendResponseHeaders(code, count);
+		try (final OutputStream out = exchange.getResponseBody()) {
+			out.write(BYTES, first, count);
+		}
+	}
+
+	/** Serves all of {@link #BYTES} for every request, ignoring ranges. */
+	private void serveWhole(final HttpExchange exchange) throws IOException {
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().add("Content-Length", "" + BYTES.length);
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+		gets.incrementAndGet();
+		exchange.sendResponseHeaders(200, BYTES.length);
+		try (final OutputStream out = exchange.getResponseBody()) {
+			out.write(BYTES);
+		}
+	}
+}
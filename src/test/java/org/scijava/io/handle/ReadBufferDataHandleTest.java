@@ -123,6 +123,30 @@ public class ReadBufferDataHandleTest extends DataHandleTest {
 		}
 	}
 
+	@Test
+	public void testMemoryBudget() throws Exception {
+		final int size = 1_000;
+		final byte[] bytes = new byte[size];
+		new Random(42).nextBytes(bytes);
+
+		final Location loc = new BytesLocation(bytes);
+		try (final DataHandle<Location> handle = //
+			dataHandleService.create(loc);
+				ReadBufferDataHandle bufferedHandle = //
+					new ReadBufferDataHandle(handle, 10, 8))
+		{
+			final byte[] actual = new byte[size];
+			final double[] fractions = { 1, 0.1, 0.5, 1 };
+			for (int i = 0; i < size; i += 25) {
+				// change the number of pages while reading
+				bufferedHandle.memoryBudgetChanged(fractions[i / 25 % 4]);
+				bufferedHandle.seek(size - i - 25);
+				bufferedHandle.read(actual, size - i - 25, 25);
+			}
+			assertArrayEquals(bytes, actual);
+		}
+	}
+
 	@Before
 	public void setup() {
 		context = new Context(DataHandleService.class);
@@ -0,0 +1,202 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.handle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.cache.CacheRegion;
+import org.scijava.cache.CacheService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+import org.scijava.io.location.LocationService;
+import org.scijava.io.location.ZipLocation;
+
+/**
+ * Tests {@link ZipHandle}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class ZipHandleTest extends DataHandleTest {
+
+	@Override
+	public Class<? extends DataHandle<?>> getExpectedHandleType() {
+		return ZipHandle.class;
+	}
+
+	@Override
+	public Location createLocation() throws IOException {
+		return new ZipLocation(new FileLocation(createArchive()), "stored.bin");
+	}
+
+	@Test
+	public void testDeflated() throws IOException {
+		final Context ctx = new Context(DataHandleService.class);
+		final DataHandleService dhs = ctx.service(DataHandleService.class);
+		final Location loc = new ZipLocation(new FileLocation(createArchive()),
+			"dir/deflated.bin");
+		try (final DataHandle<Location> handle = dhs.create(loc)) {
+			assertEquals(ZipHandle.class, handle.getClass());
+			checkReads(handle);
+		}
+		ctx.dispose();
+	}
+
+	@Test
+	public void testMissingEntry() throws IOException {
+		final Context ctx = new Context(DataHandleService.class);
+		final DataHandleService dhs = ctx.service(DataHandleService.class);
+		final Location loc = new ZipLocation(new FileLocation(createArchive()),
+			"no-such-entry");
+		try (final DataHandle<Location> handle = dhs.create(loc)) {
+			assertFalse(handle.exists());
+			assertEquals(-1, handle.length());
+		}
+		ctx.dispose();
+	}
+
+	@Test
+	public void testCachedIndex() throws IOException {
+		final Context ctx = new Context(DataHandleService.class,
+			CacheService.class);
+		final DataHandleService dhs = ctx.service(DataHandleService.class);
+		final CacheRegion region = ctx.service(CacheService.class).region(
+			ZipIndex.REGION);
+		final File archive = createArchive();
+		for (final String name : new String[] { "stored.bin",
+			"dir/deflated.bin" })
+		{
+			try (final DataHandle<Location> handle = dhs.create(new ZipLocation(
+				new FileLocation(archive), name)))
+			{
+				assertTrue(handle.exists());
+			}
+		}
+		// NB: The central directory is parsed once, and shared by both handles.
+		assertEquals(1, region.size());
+		assertTrue(region.stats().getHitCount() > 0);
+
+		// the region is configured upon creation only
+		region.setMaximumSize(CacheRegion.DEFAULT_MAXIMUM_SIZE);
+		try (final DataHandle<Location> handle = dhs.create(new ZipLocation(
+			new FileLocation(archive), "stored.bin")))
+		{
+			assertTrue(handle.exists());
+		}
+		assertEquals(CacheRegion.DEFAULT_MAXIMUM_SIZE, region.getMaximumWeight());
+
+		// the index is disposed along with its context
+		ctx.dispose();
+		assertEquals(0, region.size());
+	}
+
+	@Test
+	public void testResolve() throws IOException, URISyntaxException {
+		final Context ctx = new Context(LocationService.class);
+		final LocationService locationService = ctx.service(
+			LocationService.class);
+		final File archive = createArchive();
+		final ZipLocation expected = new ZipLocation(new FileLocation(archive),
+			"dir/deflated.bin");
+
+		final URI uri = expected.getURI();
+		assertEquals("zip", uri.getScheme());
+		final Location resolved = locationService.resolve(uri);
+		assertEquals(expected, resolved);
+		assertEquals("deflated.bin", resolved.getName());
+
+		final Location jar = locationService.resolve("jar:" + archive.toURI() +
+			"!/dir/deflated.bin");
+		assertEquals(expected, jar);
+		ctx.dispose();
+	}
+
+	// -- Internal methods --
+
+	@Override
+	protected <L extends Location> void checkWrites(final DataHandle<L> handle)
+		throws IOException
+	{
+		assertFalse(handle.isWritable());
+		try {
+			handle.write(0);
+			fail("Expected IOException");
+		}
+		catch (final IOException exc) {
+			// NB: Expected.
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Creates an archive holding {@link #BYTES} both as stored and as deflated
+	 * entry.
+	 */
+	private File createArchive() throws IOException {
+		final File file = File.createTempFile("ZipHandleTest", ".zip");
+		file.deleteOnExit();
+		try (final ZipOutputStream out = new ZipOutputStream(
+			new FileOutputStream(file)))
+		{
+			final CRC32 crc = new CRC32();
+			crc.update(BYTES);
+			final ZipEntry stored = new ZipEntry("stored.bin");
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(BYTES.length);
+			stored.setCrc(crc.getValue());
+			out.putNextEntry(stored);
+			out.write(BYTES);
+			out.closeEntry();
+
+			out.putNextEntry(new ZipEntry("dir/deflated.bin"));
+			out.write(BYTES);
+			out.closeEntry();
+		}
+		assertTrue(file.length() > 0);
+		return file;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+
+/**
+ * Tests {@link ContentStoreService}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class ContentStoreServiceTest {
+
+	private Context context;
+	private ContentStoreService store;
+
+	@Before
+	public void setUp() {
+		context = new Context(ContentStoreService.class, DataHandleService.class);
+		store = context.service(ContentStoreService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testDeduplication() {
+		final byte[] data = { 1, 2, 3, 4, 5 };
+		final ContentLocation a = store.store(data);
+		final ContentLocation b = store.store(data.clone());
+		final ContentLocation c = store.store(new byte[] { 5, 4, 3, 2, 1 });
+
+		assertEquals(a, b);
+		assertEquals(a.getURI(), b.getURI());
+		assertNotEquals(a, c);
+		assertSame(a, store.get(a.getDigest()));
+		assertEquals(2, store.count());
+		assertEquals(10, store.size());
+		assertEquals(2, store.referenceCount(a));
+
+		// the stored data is a copy, unaffected by later changes
+		data[0] = 42;
+		assertEquals(1, a.getBuffer().get(0));
+	}
+
+	@Test
+	public void testRelease() {
+		final ContentLocation loc = store.store(new byte[] { 1, 2, 3 });
+		store.retain(loc);
+		assertEquals(2, store.referenceCount(loc));
+		assertFalse(store.release(loc));
+		assertTrue(store.release(loc));
+		assertNull(store.get(loc.getDigest()));
+		assertEquals(0, store.count());
+		assertEquals(0, store.size());
+
+		// the location itself remains readable
+		assertEquals(3, loc.getBuffer().remaining());
+	}
+
+	@Test
+	public void testStoreHandle() throws IOException {
+		final DataHandleService dataHandleService = context.service(
+			DataHandleService.class);
+		final byte[] data = { 9, 8, 7, 6 };
+		final ContentLocation loc;
+		try (final DataHandle<Location> in = dataHandleService.create(
+			new BytesLocation(data)))
+		{
+			loc = store.store(in);
+		}
+		assertEquals(store.store(data), loc);
+		try (final DataHandle<Location> handle = dataHandleService.create(loc)) {
+			final byte[] result = new byte[data.length];
+			handle.readFully(result);
+			assertArrayEquals(data, result);
+			assertEquals(loc.getDigest(), handle.checksum());
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.io.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.AbstractContextual;
+import org.scijava.Context;
+import org.scijava.event.DefaultEventService;
+import org.scijava.event.EventHandler;
+import org.scijava.event.EventService;
+import org.scijava.event.SciJavaEvent;
+import org.scijava.io.event.LocationsChangedEvent;
+import org.scijava.io.event.LocationsChangedEvent.Kind;
+import org.scijava.log.LogLevel;
+import org.scijava.log.LogService;
+import org.scijava.thread.ThreadService;
+import org.scijava.util.FileUtils;
+
+/**
+ * Tests {@link LocationService#watch(FileLocation)}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class LocationWatcherTest {
+
+	private Context context;
+	private LocationService locationService;
+	private File dir;
+	private final BlockingQueue<LocationsChangedEvent> queue =
+		new LinkedBlockingQueue<>();
+
+	/** Needs to be a field, as subscribers are only weakly referenced. */
+	private Listener listener;
+
+	private class Listener extends AbstractContextual {
+
+		@EventHandler
+		private void onEvent(final LocationsChangedEvent e) {
+			queue.add(e);
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		context = new Context(LocationService.class);
+		locationService = context.service(LocationService.class);
+		listener = new Listener();
+		listener.setContext(context);
+		dir = Files.createTempDirectory("LocationWatcherTest").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+		FileUtils.deleteRecursively(dir);
+	}
+
+	@Test
+	public void testWatchDirectory() throws IOException, InterruptedException {
+		final FileLocation watched = new FileLocation(dir);
+		try (final Closeable watch = locationService.watch(watched)) {
+			final File file = new File(dir, "a.txt");
+			write(file);
+
+			final LocationsChangedEvent event = queue.poll(10, TimeUnit.SECONDS);
+			assertNotNull(event);
+			assertEquals(watched, event.getWatched());
+			assertTrue(event.getChanges().containsKey(new FileLocation(file)));
+		}
+	}
+
+	@Test
+	public void testWatchFile() throws IOException, InterruptedException {
+		final File file = new File(dir, "watched.txt");
+		final File other = new File(dir, "other.txt");
+		write(file);
+		final FileLocation watched = new FileLocation(file);
+		try (final Closeable watch = locationService.watch(watched)) {
+			write(other);
+			file.delete();
+
+			LocationsChangedEvent event;
+			do {
+				event = queue.poll(10, TimeUnit.SECONDS);
+				assertNotNull(event);
+				assertEquals(watched, event.getWatched());
+				// NB: Changes to siblings of the watched file are filtered out.
+				assertEquals(1, event.getChanges().size());
+			}
+			while (event.getChanges().get(watched) != Kind.DELETED);
+		}
+	}
+
+	@Test
+	public void testClose() throws IOException, InterruptedException {
+		final Closeable watch = locationService.watch(new FileLocation(dir));
+		watch.close();
+		write(new File(dir, "b.txt"));
+		assertNull(queue.poll(LocationWatcher.BATCH_WINDOW * 5,
+			TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testDispose() throws IOException, InterruptedException {
+		locationService.watch(new FileLocation(dir));
+		Thread watcher = null;
+		for (final Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().endsWith("-LocationWatcher") && t.getName().startsWith(
+				"SciJava-" + Integer.toHexString(context.hashCode())))
+			{
+				watcher = t;
+			}
+		}
+		assertNotNull(watcher);
+		assertTrue(watcher.isDaemon());
+		locationService.dispose();
+		watcher.join(10000);
+		assertFalse(watcher.isAlive());
+	}
+
+	@Test
+	public void testPublishFailure() throws IOException, InterruptedException {
+		final AtomicInteger publishes = new AtomicInteger();
+		final EventService failing = new DefaultEventService() {
+
+			@Override
+			public <E extends SciJavaEvent> void publish(final E e) {
+				if (publishes.getAndIncrement() == 0) {
+					throw new IllegalStateException("Expected");
+				}
+				queue.add((LocationsChangedEvent) e);
+			}
+		};
+		final LogService log = context.service(LogService.class);
+		log.setLevel(LogLevel.NONE);
+		try (final LocationWatcher watcher = new LocationWatcher(context.service(
+			ThreadService.class), failing, log))
+		{
+			watcher.watch(new FileLocation(dir));
+			write(new File(dir, "a.txt"));
+			while (publishes.get() == 0) {
+				Thread.sleep(10);
+			}
+			// NB: The watcher keeps watching after a failed publication.
+			write(new File(dir, "b.txt"));
+			assertNotNull(queue.poll(10, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testMerge() {
+		final Location loc = new FileLocation(new File(dir, "c.txt"));
+		final Map<Location, Kind> changes = new LinkedHashMap<>();
+		LocationWatcher.merge(changes, loc, Kind.CREATED);
+		LocationWatcher.merge(changes, loc, Kind.MODIFIED);
+		assertEquals(Kind.CREATED, changes.get(loc));
+		LocationWatcher.merge(changes, loc, Kind.DELETED);
+		assertTrue(changes.isEmpty());
+
+		LocationWatcher.merge(changes, loc, Kind.DELETED);
+		LocationWatcher.merge(changes, loc, Kind.CREATED);
+		assertEquals(Kind.MODIFIED, changes.get(loc));
+		LocationWatcher.merge(changes, loc, Kind.DELETED);
+		assertEquals(Kind.DELETED, changes.get(loc));
+		LocationWatcher.merge(changes, loc, Kind.OVERFLOW);
+		LocationWatcher.merge(changes, loc, Kind.CREATED);
+		assertEquals(Kind.OVERFLOW, changes.get(loc));
+	}
+
+	// -- Helper methods --
+
+	private static void write(final File file) throws IOException {
+		try (final FileOutputStream out = new FileOutputStream(file)) {
+			out.write(new byte[] { 1, 2, 3 });
+		}
+	}
+}
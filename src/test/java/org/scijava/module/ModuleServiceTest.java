@@ -35,16 +35,23 @@ package org.scijava.module;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.scijava.Cancelable;
 import org.scijava.Context;
+import org.scijava.thread.TaskScope;
 
 /**
  * Tests {@link ModuleService}.
@@ -134,6 +141,18 @@ public class ModuleServiceTest {
 		assertEquals(expectedResult(), m2.getOutput("result"));
 	}
 
+	/** Tests that canceling a running module interrupts its forked work. */
+	@Test
+	public void testCancelRunningModule() throws Exception {
+		final ForkingModule module = new ForkingModule();
+		final Future<Module> future = moduleService.run(module, false);
+		assertTrue(module.started.await(5, TimeUnit.SECONDS));
+		module.cancel("Stop");
+		// NB: The module only returns once its forked work is interrupted.
+		assertSame(module, future.get(5, TimeUnit.SECONDS));
+		assertTrue(module.interrupted);
+	}
+
 	@Test
 	public void testGetSingleInput() throws ModuleException {
 		final ModuleInfo info = new FooModuleInfo();
@@ -220,6 +239,73 @@ public class ModuleServiceTest {
 
 	}
 
+	/** A {@link Cancelable} module which waits for its forked work. */
+	public static class ForkingModule extends AbstractModule implements
+		Cancelable
+	{
+
+		private final CountDownLatch started = new CountDownLatch(1);
+		private volatile boolean interrupted;
+		private volatile String cancelReason;
+
+		@Override
+		public ModuleInfo getInfo() {
+			return new AbstractModuleInfo() {
+
+				@Override
+				public String getDelegateClassName() {
+					return ForkingModule.class.getName();
+				}
+
+				@Override
+				public Class<?> loadDelegateClass() {
+					return ForkingModule.class;
+				}
+
+				@Override
+				public Module createModule() {
+					return new ForkingModule();
+				}
+			};
+		}
+
+		@Override
+		public void run() {
+			final Future<?> child = TaskScope.current().fork(() -> {
+				started.countDown();
+				try {
+					new CountDownLatch(1).await();
+				}
+				catch (final InterruptedException exc) {
+					interrupted = true;
+				}
+			});
+			try {
+				child.get();
+			}
+			catch (final InterruptedException | ExecutionException
+					| CancellationException exc)
+			{
+				// NB: No action needed.
+			}
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return cancelReason != null;
+		}
+
+		@Override
+		public void cancel(final String reason) {
+			cancelReason = reason == null ? "" : reason;
+		}
+
+		@Override
+		public String getCancelReason() {
+			return cancelReason;
+		}
+	}
+
 	/** {@link ModuleInfo} implementation for the {@link FooModule}. */
 	public static class FooModuleInfo extends AbstractModuleInfo {
 
@@ -32,13 +32,22 @@
 package org.scijava.task;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.scijava.Context;
+import org.scijava.thread.TaskScope;
 
 /**
  * Tests {@link TaskService}.
@@ -73,4 +82,76 @@ public class TaskServiceTest {
 		task.waitFor();
 		assertEquals(100, result[0]);
 	}
+
+	@Test
+	public void testCancelBeforeRun() throws Exception {
+		final Task task = taskService.createTask("queued");
+		final CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+			try {
+				task.waitFor();
+			}
+			catch (final InterruptedException | ExecutionException exc) {
+				throw new IllegalStateException(exc);
+			}
+		});
+		Thread.sleep(50);
+		assertFalse(waiting.isDone());
+		task.cancel("Never mind");
+		try {
+			waiting.get(5, TimeUnit.SECONDS);
+			fail("Expected CancellationException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof CancellationException);
+		}
+	}
+
+	@Test
+	public void testRunAfterDispose() throws InterruptedException {
+		final Task task = taskService.createTask("late");
+		taskService.context().dispose();
+		task.run(() -> {});
+		try {
+			task.waitFor();
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof RejectedExecutionException);
+		}
+		assertTrue(task.isDone());
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final Task task = taskService.createTask("spawner");
+		task.run(() -> {
+			final TaskScope scope = TaskScope.current();
+			scope.fork(() -> {
+				started.countDown();
+				try {
+					new CountDownLatch(1).await();
+				}
+				catch (final InterruptedException exc) {
+					interrupted.countDown();
+				}
+			});
+			try {
+				scope.join();
+			}
+			catch (final InterruptedException | ExecutionException exc) {
+				throw new IllegalStateException(exc);
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		task.cancel("Stop");
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		try {
+			task.waitFor();
+		}
+		catch (final ExecutionException exc) {
+			// NB: The joined scope reports the cancelation.
+		}
+	}
 }
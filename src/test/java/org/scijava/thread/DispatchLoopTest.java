@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link DispatchLoop}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class DispatchLoopTest {
+
+	@Test
+	public void testOrder() throws Exception {
+		final DispatchLoop loop = new DispatchLoop("Dispatch", t -> fail());
+		final List<Integer> results = Collections.synchronizedList(
+			new ArrayList<>());
+		final List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			final int offset = i * 1000;
+			final Thread t = new Thread(() -> {
+				for (int j = 0; j < 1000; j++) {
+					final int value = offset + j;
+					loop.execute(() -> {
+						assertTrue(loop.isDispatchThread());
+						results.add(value);
+					});
+				}
+			});
+			threads.add(t);
+			t.start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+		loop.invoke(() -> {});
+		assertEquals(4000, results.size());
+		// NB: Code queued by each thread runs in the order it was queued.
+		final int[] last = { -1, -1, -1, -1 };
+		for (final int value : results) {
+			assertTrue(value > last[value / 1000]);
+			last[value / 1000] = value;
+		}
+	}
+
+	@Test
+	public void testInvoke() throws Exception {
+		final DispatchLoop loop = new DispatchLoop("Dispatch", t -> fail());
+		assertFalse(loop.isDispatchThread());
+		final Thread[] threads = new Thread[2];
+		loop.invoke(() -> {
+			threads[0] = Thread.currentThread();
+			try {
+				// NB: Nested invocations run directly.
+				loop.invoke(() -> threads[1] = Thread.currentThread());
+			}
+			catch (final Exception exc) {
+				throw new IllegalStateException(exc);
+			}
+		});
+		assertNotSame(Thread.currentThread(), threads[0]);
+		assertSame(threads[0], threads[1]);
+		assertEquals("Dispatch", threads[0].getName());
+		assertTrue(threads[0].isDaemon());
+
+		final IllegalStateException failure = new IllegalStateException();
+		try {
+			loop.invoke(() -> {
+				throw failure;
+			});
+			fail("Expected InvocationTargetException");
+		}
+		catch (final InvocationTargetException exc) {
+			assertSame(failure, exc.getCause());
+		}
+	}
+
+	@Test
+	public void testErrorHandler() throws Exception {
+		final List<Throwable> errors = new ArrayList<>();
+		final DispatchLoop loop = new DispatchLoop("Dispatch", errors::add);
+		final IllegalStateException failure = new IllegalStateException();
+		loop.execute(() -> {
+			throw failure;
+		});
+		final CountDownLatch done = new CountDownLatch(1);
+		loop.execute(done::countDown);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(Collections.singletonList(failure), errors);
+	}
+
+	@Test
+	public void testRetire() throws Exception {
+		final DispatchLoop loop = new DispatchLoop("Dispatch", t -> fail());
+		final Thread[] thread = new Thread[1];
+		loop.invoke(() -> thread[0] = Thread.currentThread());
+		thread[0].join(10000);
+		assertFalse(thread[0].isAlive());
+
+		// NB: The loop starts a new thread on demand.
+		final boolean[] result = new boolean[1];
+		loop.invoke(() -> result[0] = loop.isDispatchThread());
+		assertTrue(result[0]);
+	}
+}
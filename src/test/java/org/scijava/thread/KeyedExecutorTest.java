@@ -0,0 +1,151 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link KeyedExecutor}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class KeyedExecutorTest {
+
+	private ExecutorService pool;
+
+	@Before
+	public void setUp() {
+		pool = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void testOrderPerKey() throws InterruptedException {
+		final KeyedExecutor executor = new KeyedExecutor(pool);
+		final Map<Integer, List<Integer>> results = new HashMap<>();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1000);
+		for (int key = 0; key < 10; key++) {
+			results.put(key, Collections.synchronizedList(new ArrayList<>()));
+		}
+		for (int i = 0; i < 100; i++) {
+			for (int key = 0; key < 10; key++) {
+				final List<Integer> list = results.get(key);
+				final int value = i;
+				executor.execute(key, () -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					list.add(value);
+					running.decrementAndGet();
+					done.countDown();
+				});
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (final List<Integer> list : results.values()) {
+			for (int i = 0; i < 100; i++) {
+				assertEquals(i, list.get(i).intValue());
+			}
+		}
+		assertTrue(maxRunning.get() <= 4);
+		awaitIdle(executor);
+	}
+
+	@Test
+	public void testSerialPerKey() throws InterruptedException {
+		final KeyedExecutor executor = new KeyedExecutor(pool);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(50);
+		for (int i = 0; i < 50; i++) {
+			executor.execute("key", () -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(1);
+				}
+				catch (final InterruptedException exc) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+				done.countDown();
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertEquals(1, maxRunning.get());
+		awaitIdle(executor);
+	}
+
+	@Test
+	public void testRejected() {
+		final KeyedExecutor executor = new KeyedExecutor(task -> {
+			throw new RejectedExecutionException();
+		});
+		final List<Integer> results = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			final int value = i;
+			executor.execute("key", () -> results.add(value));
+		}
+		assertEquals(100, results.size());
+		assertEquals(0, executor.size());
+	}
+
+	private void awaitIdle(final KeyedExecutor executor)
+		throws InterruptedException
+	{
+		for (int i = 0; i < 1000 && executor.size() > 0; i++) {
+			Thread.sleep(1);
+		}
+		assertEquals(0, executor.size());
+	}
+}
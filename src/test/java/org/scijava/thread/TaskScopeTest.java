@@ -0,0 +1,210 @@
+/*
+ * #%L
+ * SciJava Common shared library for SciJava software.
+ * %%
+ * Copyright (C) 2009 - 2017 Board of Regents of the University of
+ * Wisconsin-Madison, Broad Institute of MIT and Harvard, Max Planck
+ * Institute of Molecular Cell Biology and Genetics, University of
+ * Konstanz, and KNIME GmbH.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package org.scijava.thread;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link TaskScope}.
+ *
+ * @author Gabriel Einsdorf
+ */
+public class TaskScopeTest {
+
+	private Context context;
+	private ThreadService threadService;
+
+	@Before
+	public void setUp() {
+		context = new Context(ThreadService.class);
+		threadService = context.service(ThreadService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testForkJoin() throws Exception {
+		try (final TaskScope scope = threadService.newScope()) {
+			assertSame(scope, TaskScope.current());
+			final Future<Integer> a = scope.fork(() -> 6);
+			final Future<TaskScope> b = scope.fork(TaskScope::current);
+			scope.join();
+			assertEquals(6, a.get().intValue());
+			assertSame(scope, b.get());
+		}
+		assertNull(TaskScope.current());
+	}
+
+	@Test
+	public void testFailureCancelsSiblings() throws Exception {
+		final Blocker blocker = new Blocker();
+		try (final TaskScope scope = threadService.newScope()) {
+			final Future<?> sibling = scope.fork(blocker);
+			blocker.awaitStart();
+			scope.fork(() -> {
+				throw new IllegalStateException("Failed");
+			});
+			try {
+				scope.join();
+				fail("Expected ExecutionException");
+			}
+			catch (final ExecutionException exc) {
+				assertTrue(exc.getCause() instanceof IllegalStateException);
+			}
+			assertTrue(scope.isCanceled());
+			assertTrue(sibling.isCancelled());
+			blocker.awaitInterrupt();
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		final Blocker forked = new Blocker();
+		final Blocker run = new Blocker();
+		final Blocker nested = new Blocker();
+		try (final TaskScope scope = threadService.newScope()) {
+			scope.fork(forked);
+			scope.register(threadService.run(run));
+			scope.fork(() -> {
+				try (final TaskScope inner = threadService.newScope()) {
+					inner.fork(nested);
+					inner.join();
+				}
+				return null;
+			});
+			forked.awaitStart();
+			run.awaitStart();
+			nested.awaitStart();
+
+			scope.cancel("Stop");
+			forked.awaitInterrupt();
+			run.awaitInterrupt();
+			nested.awaitInterrupt();
+			try {
+				scope.join();
+				fail("Expected CancellationException");
+			}
+			catch (final CancellationException exc) {
+				assertEquals("Stop", exc.getMessage());
+			}
+			assertTrue(scope.fork(() -> 1).isCancelled());
+		}
+	}
+
+	@Test
+	public void testUnscopedRun() throws Exception {
+		final Blocker blocker = new Blocker();
+		final Future<?> run;
+		try (final TaskScope scope = threadService.newScope()) {
+			run = threadService.run(blocker);
+			blocker.awaitStart();
+			scope.cancel("Stop");
+		}
+		// NB: Code not forked into nor registered with the scope outlives it.
+		assertFalse(run.isDone());
+		run.cancel(true);
+		blocker.awaitInterrupt();
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		final Blocker blocker = new Blocker();
+		final Blocker detached = new Blocker();
+		final Future<?> run;
+		try (final TaskScope scope = threadService.newScope()) {
+			scope.fork(blocker);
+			run = threadService.run(detached);
+			blocker.awaitStart();
+			detached.awaitStart();
+		}
+		blocker.awaitInterrupt();
+		// code run via the thread service outlives the closed scope
+		assertFalse(run.isDone());
+		run.cancel(true);
+		detached.awaitInterrupt();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testForkAfterClose() {
+		final TaskScope scope = threadService.newScope();
+		scope.close();
+		scope.fork(() -> 1);
+	}
+
+	// -- Helper classes --
+
+	/** Code which blocks until interrupted. */
+	private static class Blocker implements Runnable {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch interrupted = new CountDownLatch(1);
+
+		@Override
+		public void run() {
+			started.countDown();
+			try {
+				new CountDownLatch(1).await();
+			}
+			catch (final InterruptedException exc) {
+				interrupted.countDown();
+			}
+		}
+
+		private void awaitStart() throws InterruptedException {
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+		}
+
+		private void awaitInterrupt() throws InterruptedException {
+			assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		}
+	}
+}
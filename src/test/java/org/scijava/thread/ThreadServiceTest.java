@@ -32,19 +32,37 @@
 
 package org.scijava.thread;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.awt.EventQueue;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.scijava.Context;
+import org.scijava.task.DefaultTask;
+import org.scijava.task.Task;
+import org.scijava.thread.ThreadService.ThreadContext;
 
 /**
  * Tests the {@link ThreadService}.
@@ -174,6 +192,399 @@ public class ThreadServiceTest {
 		assertSame(Thread.currentThread(), ask.parent);
 	}
 
+	/**
+	 * Tests {@link ThreadService#getParent(Thread)} and
+	 * {@link ThreadService#getThreadContext(Thread)} when asked about another
+	 * thread than the current one.
+	 */
+	@Test
+	public void testGetParentOtherThread() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final Thread[] worker = new Thread[1];
+		final Future<?> future = threadService.run(() -> {
+			worker[0] = Thread.currentThread();
+			started.countDown();
+			try {
+				finish.await();
+			}
+			catch (final InterruptedException exc) {
+				throw new IllegalStateException(exc);
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertSame(Thread.currentThread(), threadService.getParent(worker[0]));
+		assertEquals(ThreadContext.SAME, threadService.getThreadContext(
+			worker[0]));
+		finish.countDown();
+		future.get();
+		// NB: Once the task ends, its parent is no longer known.
+		assertNull(threadService.getParent(worker[0]));
+	}
+
+	/**
+	 * Tests that code invoked on the dispatch thread belongs to the context of
+	 * the thread which invoked it.
+	 */
+	@Test
+	public void testThreadContextPropagation() throws Exception {
+		final ThreadContext[] results = new ThreadContext[3];
+		threadService.invoke(() -> results[0] = threadService.getThreadContext(
+			Thread.currentThread()));
+		threadService.run(() -> {
+			threadService.invoke(() -> results[1] = threadService.getThreadContext(
+				Thread.currentThread()));
+			return null;
+		}).get();
+		final Context other = new Context(ThreadService.class);
+		try {
+			final ThreadService otherService = other.service(ThreadService.class);
+			otherService.run(() -> {
+				threadService.invoke(() -> results[2] = threadService
+					.getThreadContext(Thread.currentThread()));
+				return null;
+			}).get();
+		}
+		finally {
+			other.dispose();
+		}
+		assertEquals(ThreadContext.NONE, results[0]);
+		assertEquals(ThreadContext.SAME, results[1]);
+		assertEquals(ThreadContext.OTHER, results[2]);
+	}
+
+	/** Tests that code queued per ID executes in order. */
+	@Test
+	public void testQueueById() throws Exception {
+		final List<Integer> results = new ArrayList<>();
+		Future<Integer> last = null;
+		for (int i = 0; i < 100; i++) {
+			final int value = i;
+			last = threadService.queue("id", () -> {
+				results.add(value);
+				return value;
+			});
+		}
+		assertEquals(99, last.get().intValue());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, results.get(i).intValue());
+		}
+	}
+
+	/** Tests {@link ThreadService#parallelFor}. */
+	@Test
+	public void testParallelFor() throws Exception {
+		final int n = 10_000;
+		final AtomicIntegerArray counts = new AtomicIntegerArray(n);
+		final Task task = new DefaultTask(threadService, null);
+		threadService.parallelFor(0, n, i -> counts.incrementAndGet((int) i),
+			task);
+		for (int i = 0; i < n; i++) {
+			assertEquals(1, counts.get(i));
+		}
+		assertEquals(n, task.getProgressMaximum());
+		assertEquals(n, task.getProgressValue());
+
+		// empty range
+		threadService.parallelFor(5, 5, i -> fail());
+	}
+
+	/** Tests {@link ThreadService#parallelMap}. */
+	@Test
+	public void testParallelMap() throws Exception {
+		final Set<Integer> items = new LinkedHashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			items.add(i);
+		}
+		final List<String> results = threadService.parallelMap(items,
+			i -> "#" + i);
+		assertEquals(1000, results.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("#" + i, results.get(i));
+		}
+	}
+
+	/** Tests {@link ThreadService#parallelReduce}. */
+	@Test
+	public void testParallelReduce() throws Exception {
+		final long sum = threadService.parallelReduce(0, 100_000, 0L, (from,
+			to) -> {
+			long s = 0;
+			for (long i = from; i < to; i++) {
+				s += i;
+			}
+			return s;
+		}, Long::sum);
+		assertEquals(99_999L * 100_000 / 2, sum);
+
+		// chunks are combined in order
+		final String digits = threadService.parallelReduce(0, 50, "", (from,
+			to) -> {
+			final StringBuilder sb = new StringBuilder();
+			for (long i = from; i < to; i++) {
+				sb.append(i % 10);
+			}
+			return sb.toString();
+		}, String::concat);
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			expected.append(i % 10);
+		}
+		assertEquals(expected.toString(), digits);
+	}
+
+	/** Tests that parallel loops stop when their task is canceled. */
+	@Test
+	public void testParallelCancel() throws Exception {
+		final Task task = new DefaultTask(threadService, null);
+		final AtomicInteger processed = new AtomicInteger();
+		try {
+			threadService.parallelFor(0, 100_000, i -> {
+				if (processed.incrementAndGet() == 10) task.cancel("Enough");
+			}, task);
+			fail();
+		}
+		catch (final CancellationException exc) {
+			assertEquals("Enough", exc.getMessage());
+		}
+		assertTrue(processed.get() < 100_000);
+	}
+
+	/** Tests that parallel loops report failures of their body. */
+	@Test
+	public void testParallelFailure() throws Exception {
+		try {
+			threadService.parallelFor(0, 1000, i -> {
+				if (i == 500) throw new IllegalStateException("Failed");
+			});
+			fail();
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	/** Tests the bounded execution mode and its statistics. */
+	@Test
+	public void testBoundedExecutor() throws Exception {
+		final DefaultThreadService service = (DefaultThreadService) threadService;
+		service.setExecutorService(service.newBoundedExecutor(2));
+
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Future<ThreadContext>> futures = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(threadService.run(() -> {
+				release.await();
+				return threadService.getThreadContext(Thread.currentThread());
+			}));
+		}
+		ExecutionStats stats = threadService.getExecutionStats();
+		assertTrue(stats.getActiveCount() <= 2);
+		assertTrue(stats.getQueuedCount() >= 8);
+		assertTrue(stats.getPoolSize() <= 2);
+
+		release.countDown();
+		for (final Future<ThreadContext> future : futures) {
+			assertEquals(ThreadContext.SAME, future.get());
+		}
+		stats = threadService.getExecutionStats();
+		assertEquals(10, stats.getCompletedCount());
+		assertEquals(0, stats.getQueuedCount());
+		assertTrue(stats.getMaximumLatency() >= stats.getAverageLatency());
+	}
+
+	/**
+	 * Tests that tasks of a bounded executor can wait for other tasks without
+	 * starving it.
+	 */
+	@Test
+	public void testBoundedExecutorNested() throws Exception {
+		final DefaultThreadService service = (DefaultThreadService) threadService;
+		service.setExecutorService(service.newBoundedExecutor(1));
+		final Future<Integer> outer = threadService.run(() -> threadService.run(
+			() -> 42).get());
+		assertEquals(42, outer.get(10, TimeUnit.SECONDS).intValue());
+	}
+
+	/** Tests that canceled tasks leave the queue. */
+	@Test
+	public void testCancelQueued() throws Exception {
+		final DefaultThreadService service = (DefaultThreadService) threadService;
+		service.setExecutorService(service.newBoundedExecutor(1));
+		final CountDownLatch release = new CountDownLatch(1);
+		final Future<?> running = threadService.run(() -> {
+			release.await();
+			return null;
+		});
+		final Future<?> queued = threadService.run(() -> {});
+		assertTrue(queued.cancel(false));
+		release.countDown();
+		running.get();
+		final ExecutionStats stats = threadService.getExecutionStats();
+		assertEquals(0, stats.getQueuedCount());
+		assertEquals(1, stats.getCompletedCount());
+	}
+
+	/**
+	 * Tests the virtual execution mode, which falls back to platform threads on
+	 * JVMs without virtual threads.
+	 */
+	@Test
+	public void testVirtualMode() throws Exception {
+		final String mode = System.getProperty(DefaultThreadService.MODE_PROPERTY);
+		System.setProperty(DefaultThreadService.MODE_PROPERTY, "virtual");
+		final Context ctx = new Context(ThreadService.class);
+		try {
+			final ThreadService service = ctx.service(ThreadService.class);
+			final Thread parent = Thread.currentThread();
+			final Thread thread = service.run(() -> {
+				assertSame(parent, service.getParent(null));
+				return Thread.currentThread();
+			}).get();
+			assertEquals(virtualThreadsSupported(), isVirtual(thread));
+			assertEquals(ThreadContext.SAME, service.getThreadContext(thread));
+			assertEquals(ThreadContext.OTHER, threadService.getThreadContext(
+				thread));
+		}
+		finally {
+			ctx.dispose();
+			if (mode == null) System.clearProperty(
+				DefaultThreadService.MODE_PROPERTY);
+			else System.setProperty(DefaultThreadService.MODE_PROPERTY, mode);
+		}
+	}
+
+	/** Tests the lightweight dispatch thread used in headless mode. */
+	@Test
+	public void testHeadlessDispatch() throws Exception {
+		final String mode = System.getProperty(
+			DefaultThreadService.DISPATCH_PROPERTY);
+		System.setProperty(DefaultThreadService.DISPATCH_PROPERTY, "headless");
+		final Context ctx = new Context(ThreadService.class);
+		try {
+			final ThreadService service = ctx.service(ThreadService.class);
+			final Thread[] threads = new Thread[2];
+			service.invoke(() -> {
+				assertTrue(service.isDispatchThread());
+				assertFalse(EventQueue.isDispatchThread());
+				threads[0] = Thread.currentThread();
+			});
+			final CountDownLatch queued = new CountDownLatch(1);
+			service.queue(() -> {
+				threads[1] = Thread.currentThread();
+				queued.countDown();
+			});
+			assertTrue(queued.await(5, TimeUnit.SECONDS));
+			assertSame(threads[0], threads[1]);
+			assertFalse(service.isDispatchThread());
+			// NB: While running a task, the dispatch thread belongs to the context
+			// of the task's submitter, so wait until it is idle.
+			service.invoke(() -> {});
+			assertEquals(ThreadContext.SAME, service.getThreadContext(threads[0]));
+		}
+		finally {
+			ctx.dispose();
+			if (mode == null) System.clearProperty(
+				DefaultThreadService.DISPATCH_PROPERTY);
+			else System.setProperty(DefaultThreadService.DISPATCH_PROPERTY, mode);
+		}
+	}
+
+	/** Tests {@link ThreadService#schedule(Callable, long, TimeUnit)}. */
+	@Test
+	public void testSchedule() throws Exception {
+		final long start = System.nanoTime();
+		final ScheduledFuture<Thread> future = threadService.schedule(
+			Thread::currentThread, 50, TimeUnit.MILLISECONDS);
+		final Thread thread = future.get(5, TimeUnit.SECONDS);
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertNotSame(Thread.currentThread(), thread);
+		assertFalse(thread.getName().endsWith("Scheduler"));
+		assertEquals(ThreadContext.SAME, threadService.getThreadContext(thread));
+
+		final ScheduledFuture<?> canceled = threadService.schedule(() -> fail(
+			"Unexpected"), 1, TimeUnit.HOURS);
+		assertTrue(canceled.getDelay(TimeUnit.MINUTES) > 50);
+		assertTrue(canceled.cancel(false));
+		assertTrue(canceled.isCancelled());
+	}
+
+	/** Tests the periodic {@link ThreadService} scheduling methods. */
+	@Test
+	public void testSchedulePeriodic() throws Exception {
+		final CountDownLatch rate = new CountDownLatch(3);
+		final ScheduledFuture<?> rateFuture = threadService.scheduleAtFixedRate(
+			rate::countDown, 0, 10, TimeUnit.MILLISECONDS);
+		final CountDownLatch delay = new CountDownLatch(3);
+		final ScheduledFuture<?> delayFuture = threadService
+			.scheduleWithFixedDelay(delay::countDown, 0, 10, TimeUnit.MILLISECONDS);
+		assertTrue(rate.await(5, TimeUnit.SECONDS));
+		assertTrue(delay.await(5, TimeUnit.SECONDS));
+		assertFalse(rateFuture.isDone());
+		rateFuture.cancel(false);
+		delayFuture.cancel(false);
+		assertTrue(rateFuture.isDone());
+
+		// executions never overlap, and a failure suppresses further executions
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger count = new AtomicInteger();
+		final ScheduledFuture<?> failing = threadService.scheduleAtFixedRate(
+			() -> {
+				assertEquals(1, running.incrementAndGet());
+				try {
+					Thread.sleep(5);
+				}
+				catch (final InterruptedException exc) {
+					// NB: No action needed.
+				}
+				running.decrementAndGet();
+				if (count.incrementAndGet() == 5) throw new IllegalStateException();
+			}, 0, 1, TimeUnit.MILLISECONDS);
+		try {
+			failing.get(5, TimeUnit.SECONDS);
+			fail("Expected ExecutionException");
+		}
+		catch (final ExecutionException exc) {
+			assertTrue(exc.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(5, count.get());
+	}
+
+	/** Tests that scheduling stops when the service is disposed. */
+	@Test
+	public void testScheduleDisposed() {
+		final Context ctx = new Context(ThreadService.class);
+		final ThreadService service = ctx.service(ThreadService.class);
+		final ScheduledFuture<?> future = service.scheduleWithFixedDelay(() -> {},
+			1, 1, TimeUnit.HOURS);
+		ctx.dispose();
+		assertNull(service.schedule(() -> {}, 0, TimeUnit.SECONDS));
+		assertTrue(future.isCancelled());
+	}
+
+	// -- Helper methods --
+
+	private static boolean virtualThreadsSupported() {
+		try {
+			VirtualThreads.factory("Probe-");
+			return true;
+		}
+		catch (final UnsupportedOperationException exc) {
+			return false;
+		}
+	}
+
+	private static boolean isVirtual(final Thread thread) throws Exception {
+		try {
+			return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+		}
+		catch (final NoSuchMethodException exc) {
+			return false;
+		}
+	}
+
+	// -- Helper classes --
+
 	private static class AskForParentR implements Runnable {
 
 		private final ThreadService threadService;